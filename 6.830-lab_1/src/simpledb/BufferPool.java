@@ -3,6 +3,8 @@ package simpledb;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -11,10 +13,15 @@ import java.util.Set;
 import simpledb.exceptions.DbException;
 import simpledb.exceptions.TransactionAbortedException;
 import simpledb.file.DbFile;
+import simpledb.file.HeapFile;
+import simpledb.file.SecondaryIndex;
 import simpledb.locking.DbLock;
 import simpledb.locking.LockManager;
+import simpledb.page.HeapPage;
+import simpledb.page.HeapPageId;
 import simpledb.page.Page;
 import simpledb.page.PageId;
+import simpledb.tuple.Field;
 import simpledb.tuple.Tuple;
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -35,8 +42,13 @@ public class BufferPool {
     public static final int DEFAULT_PAGES = 50;
 
     private int numPages;
+    // the cached pages and their queue are only used under the monitor of
+    // the pool, since parallel scan workers fetch pages concurrently
     private Map<PageId, Page> bufferedPages = new HashMap<PageId, Page>();
-    private List<PageId> queue;
+    // pages from least to most recently used
+    private Set<PageId> queue;
+    // pages appended by appendPages, per transaction, until it completes
+    private Map<TransactionId, ArrayList<PageId>> appended = new HashMap<TransactionId, ArrayList<PageId>>();
     
     
     /**
@@ -47,7 +59,7 @@ public class BufferPool {
     public BufferPool(int numPages) 
     {
     	this.numPages = numPages;
-    	queue = new ArrayList<PageId>(numPages);
+    	queue = new LinkedHashSet<PageId>();
     	LockManager.getInstance().reset();
     }
 
@@ -67,57 +79,94 @@ public class BufferPool {
      * @param perm the requested permissions on the page
      */
     public Page getPage(TransactionId tid, PageId pid, Permissions perm) throws TransactionAbortedException, DbException {
+    	lockPage(tid, pid, perm);
+    	return fetchPage(pid);
+    }
+
+    /**
+     * Acquires the lock getPage would acquire, without retrieving the page.
+     * May block if that lock is held by another transaction.
+     * <p>
+     * Locks belong to the thread that acquires them, so an operator that reads
+     * pages from worker threads locks them with this method from the thread
+     * running the transaction, and its workers then read them with
+     * {@link #getLockedPage}.
+     *
+     * @param tid the ID of the transaction requesting the lock
+     * @param pid the ID of the page to lock
+     * @param perm the requested permissions on the page
+     */
+    public void lockPage(TransactionId tid, PageId pid, Permissions perm) throws TransactionAbortedException {
+		LockManager lockManager = LockManager.getInstance();
+		DbLock dbLock = lockManager.getLock(pid);
+		synchronized (dbLock) 
+		{
+			lockManager.addLockRequest(tid, pid);
+    		// try to get lock on the page 
+			dbLock.lock(tid, perm);
+    		// notify about the success to lock page.
+    		lockManager.addLockedPage(tid, pid);
+		}
+    }
+
+    /**
+     * Retrieves a page that has already been locked with {@link #lockPage}.
+     * No lock is taken, so this may be called from any thread; the caller is
+     * responsible for the lock being held by its transaction.
+     *
+     * @param pid the ID of the requested page
+     */
+    public Page getLockedPage(PageId pid) throws DbException {
+    	return fetchPage(pid);
+    }
+
+    private synchronized Page fetchPage(PageId pid) throws DbException {
     	try 
     	{
-    		LockManager lockManager = LockManager.getInstance();
-    		DbLock dbLock = lockManager.getLock(pid);
-    		synchronized (dbLock) 
-    		{
-    			lockManager.addLockRequest(tid, pid);
-	    		// try to get lock on the page 
-				dbLock.lock(tid, perm);
-	    		// notify about the success to lock page.
-	    		lockManager.addLockedPage(tid, pid);
-    		}
-    		
     		Page bufferedPage = bufferedPages.get(pid);
-			if (bufferedPage == null)
+			if (bufferedPage != null)
 			{
-				DbFile dbFile = Database.getCatalog().getDbFile(pid.getTableId());
-				bufferedPage = dbFile.readPage(pid);
-				bufferedPage.markDirty(false, null);
+				addToQueue(pid);
+				return bufferedPage;
 			}
+			DbFile dbFile = Database.getCatalog().getDbFile(pid.getTableId());
+			bufferedPage = dbFile.readPage(pid);
+			bufferedPage.markDirty(false, null);
 			if (isEvicationRequered())
 			{
 				evictPage();
 			}
-			addToQueue(pid);				
-			bufferedPages.put(pid, bufferedPage);
+			cachePage(bufferedPage);
 			return bufferedPage;
 		} 
     	catch (NoSuchElementException e) 
 		{
 			throw new DbException(e.getMessage());
 		}
-        
     }
 	
 	private boolean isEvicationRequered() 
 	{
 		
-		return queue.size() == numPages;
+		return queue.size() >= numPages;
+	}
+
+	/** Caches page, or replaces the cached copy, as the most recently used. */
+	private synchronized void cachePage(Page page)
+	{
+		addToQueue(page.getId());
+		bufferedPages.put(page.getId(), page);
+	}
+
+	/** @return the cached copy of a page, or null. */
+	private synchronized Page cachedPage(PageId pid)
+	{
+		return bufferedPages.get(pid);
 	}
 
 	private void addToQueue(PageId pid) {
-		if (!queue.contains(pid))
-		{
-			queue.add(pid);
-		}
-		else
-		{
-			queue.remove(pid);
-			queue.add(pid);
-		}
+		queue.remove(pid);
+		queue.add(pid);
 	}
 
     /**
@@ -168,6 +217,17 @@ public class BufferPool {
     public void transactionComplete(TransactionId tid, boolean commit) throws IOException 
     {
     	LockManager lockManager = LockManager.getInstance();
+    	ArrayList<PageId> appendedPages;
+    	synchronized (appended)
+    	{
+    		appendedPages = appended.remove(tid);
+    	}
+    	if (!commit && appendedPages != null)
+    	{
+    		discardAppended(appendedPages);
+    	}
+    	Database.getTempFileManager().release(tid);
+    	Database.getMemoryBroker().release(tid);
     	Set<PageId> lockedPages = lockManager.getLockedPages(tid);
     	for (PageId p : lockedPages) 
 		{
@@ -175,9 +235,12 @@ public class BufferPool {
 	    	if (commit)
 	    	{
 	    		// use current page contents as the before-image for the next transaction that modifies this page. 
-	    		Page page = bufferedPages.get(p);
-	    		page.setBeforeImage();
-	    		flushPage(p);
+	    		Page page = cachedPage(p);
+	    		if (page != null)
+	    		{
+	    			page.setBeforeImage();
+	    			flushPage(p);
+	    		}
 	    	}
 	    	else
 	    	{
@@ -192,6 +255,7 @@ public class BufferPool {
 	    		dbLock.unlock(tid);
 			}
 		}
+    	Database.getCatalog().transactionComplete(tid, commit);
     }
 
     /**
@@ -203,6 +267,9 @@ public class BufferPool {
      * Marks any pages that were dirtied by the operation as dirty by calling
      * their markDirty bit, and updates cached versions of any pages that have 
      * been dirtied so that future requests see up-to-date pages. 
+     * <p>
+     * The entry for the tuple is added to each secondary index of the
+     * table, by the same transaction.
      *
      * @param tid the transaction adding the tuple
      * @param tableId the table to add the tuple to
@@ -212,12 +279,93 @@ public class BufferPool {
     {
     	Catalog catalog = Database.getCatalog();
     	DbFile dbFile = catalog.getDbFile(tableId);
+    	List<SecondaryIndex> indexes = catalog.getIndexes(tid, tableId);
     	ArrayList<Page> pages = dbFile.addTuple(tid, t);
-    	Page page = pages.get(0);
-    	// mark dirty
-    	page.markDirty(true, tid);
-    	// a possible new page was created during the insertion
-    	bufferedPages.put(page.getId(), page);
+    	for (Page page : pages)
+    	{
+    		// mark dirty
+    		page.markDirty(true, tid);
+    		// a possible new page was created during the insertion
+    		cachePage(page);
+    	}
+    	for (SecondaryIndex index : indexes)
+    	{
+    		index.insert(tid, t);
+    	}
+    }
+
+    /**
+     * Appends n pages built outside the buffer pool, such as those of a
+     * {@link simpledb.file.HeapFileAppender}, to the end of a heap file on
+     * behalf of tid, in one write. Each page is locked for tid and logged
+     * once, as an update from an empty page, before it is written; the log
+     * is forced once for all of them. The pages are not cached. If tid
+     * aborts they are emptied again. The entries for the tuples of the pages
+     * are then added to the secondary indexes of f.
+     *
+     * @param data the page images, one after the other.
+     */
+    public void appendPages(TransactionId tid, HeapFile f, byte[] data, int n)
+        throws IOException, DbException, TransactionAbortedException
+    {
+    	List<SecondaryIndex> indexes = Database.getCatalog().getIndexes(tid, f.getId());
+    	ArrayList<PageId> pids = new ArrayList<PageId>(n);
+    	ArrayList<HeapPage> pages = new ArrayList<HeapPage>(n);
+    	// no other append may take the same page numbers, and the pages must
+    	// be locked before a scan can see them
+    	synchronized (f)
+    	{
+    		int first = f.numPages();
+    		LogFile log = Database.getLogFile();
+    		for (int i = 0; i < n; i++)
+    		{
+    			PageId pid = new HeapPageId(f.getId(), first + i);
+    			lockPage(tid, pid, Permissions.READ_WRITE);
+    			byte[] image = new byte[PAGE_SIZE];
+    			System.arraycopy(data, i * PAGE_SIZE, image, 0, PAGE_SIZE);
+    			HeapPage page = new HeapPage(pid, image);
+    			log.logWrite(tid, new HeapPage(pid, HeapPage.createEmptyPageData()), page);
+    			pids.add(pid);
+    			pages.add(page);
+    		}
+    		log.force();
+    		f.writePages(first, data, n);
+    	}
+    	synchronized (appended)
+    	{
+    		ArrayList<PageId> mine = appended.get(tid);
+    		if (mine == null)
+    		{
+    			mine = new ArrayList<PageId>();
+    			appended.put(tid, mine);
+    		}
+    		mine.addAll(pids);
+    	}
+    	if (!indexes.isEmpty())
+    	{
+    		for (HeapPage page : pages)
+    		{
+    			for (Tuple t : page)
+    			{
+    				for (SecondaryIndex index : indexes)
+    				{
+    					index.insert(tid, t);
+    				}
+    			}
+    		}
+    	}
+    }
+
+    /** Empties pages appended by an aborted transaction, and drops their cached copies. */
+    private synchronized void discardAppended(ArrayList<PageId> pids) throws IOException
+    {
+    	for (PageId pid : pids)
+    	{
+    		bufferedPages.remove(pid);
+    		queue.remove(pid);
+    		DbFile dbFile = Database.getCatalog().getDbFile(pid.getTableId());
+    		dbFile.writePage(new HeapPage(pid, HeapPage.createEmptyPageData()));
+    	}
     }
 
     /**
@@ -229,6 +377,9 @@ public class BufferPool {
      * their markDirty bit.  Does not need to update cached versions of any pages that have 
      * been dirtied, as it is not possible that a new page was created during the deletion
      * (note difference from addTuple).
+     * <p>
+     * The entry for the tuple is removed from each secondary index of the
+     * table as well.
      *
      * @param tid the transaction adding the tuple.
      * @param t the tuple to add
@@ -237,9 +388,120 @@ public class BufferPool {
     {
     	Catalog catalog = Database.getCatalog();
     	DbFile dbFile = catalog.getDbFile(tableId);
+    	List<SecondaryIndex> indexes = catalog.getIndexes(tid, tableId);
     	Page deletedTuplePage = dbFile.deleteTuple(tid, t);
     	// mark dirty
     	deletedTuplePage.markDirty(true, tid);
+    	for (SecondaryIndex index : indexes)
+    	{
+    		index.delete(tid, t);
+    	}
+    }
+
+    /**
+     * Removes the tuples in slots[from..to) of one page of a heap file. The
+     * page is locked once and marked dirty once for all of them, so that it
+     * is logged once when it is flushed. Their entries are removed from the
+     * secondary indexes of f.
+     *
+     * @param tid the transaction deleting the tuples
+     * @param pageno the number of the page within f
+     */
+    public void deleteTuples(TransactionId tid, HeapFile f, int pageno, int[] slots, int from, int to)
+        throws DbException, TransactionAbortedException
+    {
+    	for (SecondaryIndex index : Database.getCatalog().getIndexes(tid, f.getId()))
+    	{
+    		HeapPage p = (HeapPage) getPage(tid, new HeapPageId(f.getId(), pageno), Permissions.READ_WRITE);
+    		for (int i = from; i < to; i++)
+    		{
+    			index.delete(tid, p.getTuple(slots[i]));
+    		}
+    	}
+    	Page page = f.deleteTuples(tid, pageno, slots, from, to);
+    	page.markDirty(true, tid);
+    }
+
+    /**
+     * Overwrites fields of the tuples in slots[from..to) of one page of a
+     * heap file, in place. Like deleteTuples, the page is locked and marked
+     * dirty once for all of them. The entries of tuples whose indexed or
+     * included fields change are replaced in the secondary indexes of f.
+     *
+     * @param fields the indexes of the fields to change
+     * @param values their new values
+     */
+    public void updateTuples(TransactionId tid, HeapFile f, int pageno, int[] slots, int from, int to,
+            int[] fields, Field[] values) throws DbException, TransactionAbortedException
+    {
+    	ArrayList<SecondaryIndex> changed = new ArrayList<SecondaryIndex>();
+    	for (SecondaryIndex index : Database.getCatalog().getIndexes(tid, f.getId()))
+    	{
+    		for (int field : fields)
+    		{
+    			if (index.holds(field))
+    			{
+    				changed.add(index);
+    				break;
+    			}
+    		}
+    	}
+    	Tuple[] old = null;
+    	if (!changed.isEmpty())
+    	{
+    		HeapPage p = (HeapPage) getPage(tid, new HeapPageId(f.getId(), pageno), Permissions.READ_WRITE);
+    		old = new Tuple[to - from];
+    		for (int i = from; i < to; i++)
+    		{
+    			old[i - from] = p.getTuple(slots[i]);
+    		}
+    	}
+    	HeapPage page = (HeapPage) f.updateTuples(tid, pageno, slots, from, to, fields, values);
+    	page.markDirty(true, tid);
+    	if (old != null)
+    	{
+    		// the entries of the tuples whose key or included fields changed are replaced
+    		for (int i = from; i < to; i++)
+    		{
+    			Tuple updated = page.getTuple(slots[i]);
+    			for (SecondaryIndex index : changed)
+    			{
+    				if (index.entryChanges(old[i - from], updated))
+    				{
+    					index.delete(tid, old[i - from]);
+    					try
+    					{
+    						index.insert(tid, updated);
+    					}
+    					catch (IOException e)
+    					{
+    						throw new DbException("could not update index " + index.getName() + ": " + e);
+    					}
+    				}
+    			}
+    		}
+    	}
+    }
+
+    /**
+     * Updates a tuple of a file that cannot be changed in place by
+     * relocating it: the tuple is deleted, and a copy with the new field
+     * values is inserted wherever the file puts it.
+     */
+    public void updateTuple(TransactionId tid, int tableId, Tuple t, int[] fields, Field[] values)
+            throws DbException, IOException, TransactionAbortedException
+    {
+    	Tuple copy = new Tuple(t.getTupleDesc());
+    	for (int j = 0; j < t.getTupleDesc().numFields(); j++)
+    	{
+    		copy.setField(j, t.getField(j));
+    	}
+    	for (int i = 0; i < fields.length; i++)
+    	{
+    		copy.setField(fields[i], values[i]);
+    	}
+    	deleteTuple(tid, tableId, t);
+    	insertTuple(tid, tableId, copy);
     }
 
     /**
@@ -256,6 +518,21 @@ public class BufferPool {
 		}
     }
 
+    /** Drops every cached page of a table, dirty or not, without writing it. */
+    public synchronized void discardPages(int tableId)
+    {
+    	Iterator<PageId> it = bufferedPages.keySet().iterator();
+    	while (it.hasNext())
+    	{
+    		PageId pid = it.next();
+    		if (pid.getTableId() == tableId)
+    		{
+    			it.remove();
+    			queue.remove(pid);
+    		}
+    	}
+    }
+
     /** Remove the specific page id from the buffer pool.
         Needed by the recovery manager to ensure that the
         buffer pool doesn't keep a rolled back page in its
@@ -298,7 +575,7 @@ public class BufferPool {
 			DbFile dbFile = Database.getCatalog().getDbFile(pid.getTableId());
 			p = dbFile.readPage(pid);
 			p.markDirty(false, null);
-			bufferedPages.put(pid, p);
+			cachePage(p);
 		}
     }
 
@@ -3,11 +3,17 @@ package simpledb;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.file.BTreeFile;
 import simpledb.file.DbFile;
 import simpledb.file.HeapFile;
+import simpledb.file.SecondaryIndex;
 import simpledb.tuple.TupleDesc;
 import simpledb.tuple.Type;
 
@@ -22,6 +28,10 @@ import simpledb.tuple.Type;
 public class Catalog {
 
 	private Map<Integer, TableProperties> idToTableProperties;
+	// the file the schema was loaded from, which committed indexes are added to
+	private File schemaFile;
+	// indexes created by transactions still running, seen by them only
+	private final Map<TransactionId, List<SecondaryIndex>> created = new HashMap<TransactionId, List<SecondaryIndex>>();
 	
     /**
      * Constructor.
@@ -29,7 +39,8 @@ public class Catalog {
      */
     public Catalog() 
     {
-    	idToTableProperties = new HashMap<Integer, TableProperties>();
+    	// read by every transaction while indexes are added and dropped
+    	idToTableProperties = new ConcurrentHashMap<Integer, TableProperties>();
     }
 
     /**
@@ -115,9 +126,156 @@ public class Catalog {
 		return file;
     }
 
+    /**
+     * Registers a secondary index of its table, which must be in the
+     * catalog. The index file is added as a table too, named after the
+     * index, so that its pages can be read through the buffer pool.
+     */
+    public void addIndex(SecondaryIndex index)
+    {
+        addTable(index.getFile(), index.getName());
+        idToTableProperties.get(index.getTableId()).getIndexes().add(index);
+    }
+
+    /**
+     * Registers a secondary index created by tid. Until tid commits, only
+     * tid maintains the index, and other transactions changing its table
+     * abort, as they would on a lock tid holds. When tid commits the index
+     * becomes one of its table, as with {@link #addIndex}, and is written to
+     * the schema file, if the catalog was loaded from one, so that it is
+     * loaded again with its table; when tid aborts the index is dropped and
+     * its file deleted.
+     */
+    public void addIndex(TransactionId tid, SecondaryIndex index)
+    {
+        addTable(index.getFile(), index.getName());
+        synchronized (created)
+        {
+            List<SecondaryIndex> indexes = created.get(tid);
+            if (indexes == null)
+            {
+                indexes = new ArrayList<SecondaryIndex>();
+                created.put(tid, indexes);
+            }
+            indexes.add(index);
+        }
+    }
+
+    /**
+     * Keeps or drops the indexes created by tid, once its pages are written
+     * or rolled back. Called by {@link BufferPool#transactionComplete}.
+     */
+    public void transactionComplete(TransactionId tid, boolean commit) throws IOException
+    {
+        List<SecondaryIndex> indexes;
+        synchronized (created)
+        {
+            indexes = created.remove(tid);
+        }
+        if (indexes == null)
+        {
+            return;
+        }
+        for (SecondaryIndex index : indexes)
+        {
+            if (commit)
+            {
+                idToTableProperties.get(index.getTableId()).getIndexes().add(index);
+                saveIndex(index);
+            }
+            else
+            {
+                // no other transaction has written to it
+                idToTableProperties.remove(index.getFile().getId());
+                Database.getBufferPool().discardPages(index.getFile().getId());
+                index.getFile().getFile().delete();
+            }
+        }
+    }
+
+    /** Appends a line declaring index to the schema file, if there is one. */
+    private void saveIndex(SecondaryIndex index) throws IOException
+    {
+        if (schemaFile == null)
+        {
+            return;
+        }
+        TupleDesc td = getTupleDesc(index.getTableId());
+        StringBuilder line = new StringBuilder("index ").append(index.getName()).append(" on ")
+                .append(getTableName(index.getTableId())).append(" (").append(td.getFieldName(index.getField()));
+        for (int field : index.getIncluded())
+        {
+            line.append(", ").append(td.getFieldName(field));
+        }
+        line.append(")");
+        FileWriter out = new FileWriter(schemaFile, true);
+        try
+        {
+            out.write(line.append(System.getProperty("line.separator")).toString());
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * @return the secondary indexes of a table tid changes, those it created
+     *     included, which the buffer pool keeps up to date.
+     * @throws TransactionAbortedException if another transaction is creating
+     *     an index of the table.
+     */
+    public List<SecondaryIndex> getIndexes(TransactionId tid, int tableid) throws TransactionAbortedException
+    {
+        List<SecondaryIndex> indexes = getIndexes(tableid);
+        boolean copied = false;
+        synchronized (created)
+        {
+            for (Map.Entry<TransactionId, List<SecondaryIndex>> e : created.entrySet())
+            {
+                for (SecondaryIndex index : e.getValue())
+                {
+                    if (index.getTableId() != tableid)
+                    {
+                        continue;
+                    }
+                    if (!e.getKey().equals(tid))
+                    {
+                        throw new TransactionAbortedException();
+                    }
+                    if (!copied)
+                    {
+                        indexes = new ArrayList<SecondaryIndex>(indexes);
+                        copied = true;
+                    }
+                    indexes.add(index);
+                }
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * @return the secondary indexes of a table, which the buffer pool keeps
+     *     up to date as tuples are inserted and deleted; empty if it has none.
+     */
+    public List<SecondaryIndex> getIndexes(int tableid)
+    {
+        TableProperties props = idToTableProperties.get(tableid);
+        if (props == null)
+        {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(props.getIndexes());
+    }
+
     /** Delete all tables from the catalog */
     public void clear() {
         idToTableProperties.clear();
+        synchronized (created) {
+            created.clear();
+        }
+        schemaFile = null;
     }
 
     public String getPrimaryKey(int tableid) {
@@ -136,14 +294,22 @@ public class Catalog {
     
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * Lines of the form "index name on table (field, included, ...)" declare
+     * a secondary index of a table declared above, stored in name.idx next
+     * to the file of the table.
      * @param catalogFile
      */
     public void loadSchema(String catalogFile) {
         String line = "";
         try {
-            BufferedReader br = new BufferedReader(new FileReader(new File(catalogFile)));
+            schemaFile = new File(catalogFile);
+            BufferedReader br = new BufferedReader(new FileReader(schemaFile));
 
             while ((line = br.readLine()) != null) {
+                if (line.startsWith("index ")) {
+                    loadIndex(line);
+                    continue;
+                }
                 //assume line is of the format name (field type, field type, ...)
                 String name = line.substring(0, line.indexOf("(")).trim();
                 //System.out.println("TABLE NAME: " + name);
@@ -185,14 +351,40 @@ public class Catalog {
         } catch (IndexOutOfBoundsException e) {
             System.out.println ("Invalid catalog entry : " + line);
             System.exit(0);
+        } catch (NoSuchElementException e) {
+            // an index of an unknown table or field
+            System.out.println ("Invalid catalog entry : " + line);
+            System.exit(0);
         }
     }
     
+    /** Opens the index declared by a line of the schema file and registers it. */
+    private void loadIndex(String line) throws IOException {
+        String[] head = line.substring(0, line.indexOf("(")).trim().split(" +");
+        if (head.length != 4 || !head[2].equals("on")) {
+            throw new IndexOutOfBoundsException();
+        }
+        int tableid = getTableId(head[3]);
+        TupleDesc td = getTupleDesc(tableid);
+        String[] els = line.substring(line.indexOf("(") + 1, line.indexOf(")")).split(",");
+        int[] fields = new int[els.length];
+        for (int i = 0; i < els.length; i++) {
+            fields[i] = td.nameToId(els[i].trim());
+        }
+        int[] included = Arrays.copyOfRange(fields, 1, fields.length);
+        File dir = ((HeapFile) getDbFile(tableid)).getFile().getAbsoluteFile().getParentFile();
+        BTreeFile file = new BTreeFile(new File(dir, head[1] + ".idx"),
+                SecondaryIndex.entryDesc(td, fields[0], included), 0);
+        addIndex(new SecondaryIndex(head[1], tableid, fields[0], included, file));
+        System.out.println("Added index : " + head[1] + " on " + head[3] + " (" + els.length + " fields)");
+    }
+
     private class TableProperties 
     {
     	DbFile file;
     	String tableName;
     	String pk;
+    	List<SecondaryIndex> indexes = new CopyOnWriteArrayList<SecondaryIndex>();
     	
     	public TableProperties(DbFile file, String tableName, String pk) 
     	{
@@ -215,6 +407,11 @@ public class Catalog {
 		{
 			return pk;
 		}
+
+		public List<SecondaryIndex> getIndexes() 
+		{
+			return indexes;
+		}
     }
 }
 
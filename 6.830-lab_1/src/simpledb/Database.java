@@ -2,6 +2,8 @@ package simpledb;
 
 import java.io.*;
 
+import simpledb.file.TempFileManager;
+
 /** Database is a class that initializes several static
     variables used by the database system (the catalog, the buffer pool,
     and the log files, in particular.)
@@ -14,12 +16,16 @@ public class Database {
 	private static Database _instance = new Database();
     private final Catalog _catalog;
     private BufferPool _bufferpool; 
+    private final TempFileManager _tempfiles;
+    private final MemoryBroker _memory;
 
     private final static String LOGFILENAME = "log";
     private LogFile _logfile;
     
     private Database() {
     	_catalog = new Catalog();
+    	_tempfiles = new TempFileManager();
+    	_memory = new MemoryBroker();
     	_bufferpool = new BufferPool(BufferPool.DEFAULT_PAGES);
     	try 
     	{
@@ -49,6 +55,16 @@ public class Database {
         return _instance._catalog;
     }
 
+    /** Return the temporary file manager of the static Database instance*/
+    public static TempFileManager getTempFileManager() {
+        return _instance._tempfiles;
+    }
+
+    /** Return the memory broker of the static Database instance*/
+    public static MemoryBroker getMemoryBroker() {
+        return _instance._memory;
+    }
+
     /** Method used for testing -- create a new instance of the
         buffer pool and return it
     */
@@ -0,0 +1,256 @@
+package simpledb;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.tuple.TupleDesc;
+import simpledb.tuple.Type;
+
+/**
+ * MemoryBroker shares the memory operators hold rows in between queries.
+ * <p>
+ * Operators take a {@link Reservation} and grow it as they keep rows.
+ * Operators that can spill, such as {@link simpledb.operators.Materialize}
+ * and {@link simpledb.operators.Distinct}, ask with
+ * {@link Reservation#tryGrow}, which refuses once their query holds its
+ * per-query budget or every query together hold the global budget, and then
+ * spill to disk; those that cannot, such as
+ * {@link simpledb.operators.OrderBy}, only account for what they hold with
+ * {@link Reservation#grow}.
+ * <p>
+ * A reservation belongs to the transaction whose query runs in the thread
+ * that takes it, the owner set on the {@link simpledb.file.TempFileManager}
+ * by {@link simpledb.parser.Query}. Queries are admitted by {@link #admit},
+ * which waits while less than an eighth of a per-query budget is left
+ * globally, so that concurrent heavy queries queue rather than run the VM
+ * out of memory. The reservations left by a transaction are dropped when it
+ * commits or aborts. Those taken outside a query have no owner and nothing
+ * drops them, so every operator releases its reservation when closed.
+ */
+public class MemoryBroker {
+
+    /** Longest admit waits before it gives up, in milliseconds. */
+    public static final long ADMISSION_TIMEOUT = 30000;
+
+    private long globalBytes;
+    private long queryBytes;
+    private long reserved;
+    // bytes reserved by every transaction holding reservations, null for none
+    private final Map<TransactionId, Long> reservedBy = new HashMap<TransactionId, Long>();
+    private final Set<TransactionId> admitted = new HashSet<TransactionId>();
+
+    /**
+     * Creates a broker with half the maximum heap as global budget, and a
+     * quarter of that per query.
+     */
+    public MemoryBroker()
+    {
+        this(Runtime.getRuntime().maxMemory() / 2, Runtime.getRuntime().maxMemory() / 8);
+    }
+
+    public MemoryBroker(long globalBytes, long queryBytes)
+    {
+        setBudgets(globalBytes, queryBytes);
+    }
+
+    /** Sets the bytes all queries together, and every query, may reserve. */
+    public synchronized void setBudgets(long globalBytes, long queryBytes)
+    {
+        if (queryBytes <= 0 || globalBytes < queryBytes)
+        {
+            throw new IllegalArgumentException("budgets must be positive, the global one at least the per-query one");
+        }
+        this.globalBytes = globalBytes;
+        this.queryBytes = queryBytes;
+        notifyAll();
+    }
+
+    /** @return the bytes all queries together may reserve. */
+    public synchronized long getGlobalBudget()
+    {
+        return globalBytes;
+    }
+
+    /** @return the bytes a query may reserve. */
+    public synchronized long getQueryBudget()
+    {
+        return queryBytes;
+    }
+
+    /**
+     * Admits a query of tid, waiting while the global budget is nearly all
+     * reserved. A transaction with a query already admitted, or the only one
+     * running, is admitted at once.
+     *
+     * @throws TransactionAbortedException if tid waited ADMISSION_TIMEOUT ms.
+     */
+    public synchronized void admit(TransactionId tid) throws TransactionAbortedException
+    {
+        long deadline = System.currentTimeMillis() + ADMISSION_TIMEOUT;
+        while (!admitted.contains(tid) && !admitted.isEmpty() && globalBytes - reserved < queryBytes / 8)
+        {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0)
+            {
+                throw new TransactionAbortedException();
+            }
+            try
+            {
+                wait(left);
+            }
+            catch (InterruptedException e)
+            {
+                throw new TransactionAbortedException();
+            }
+        }
+        admitted.add(tid);
+    }
+
+    /**
+     * Forgets tid: drops what its reservations still hold and lets waiting
+     * queries in. Called when tid commits or aborts.
+     */
+    public synchronized void release(TransactionId tid)
+    {
+        admitted.remove(tid);
+        Long held = reservedBy.remove(tid);
+        if (held != null)
+        {
+            reserved -= held;
+        }
+        notifyAll();
+    }
+
+    /** Takes an empty reservation for the owner of the calling thread. */
+    public Reservation reserve()
+    {
+        return new Reservation(Database.getTempFileManager().getOwner());
+    }
+
+    /** @return the bytes reserved by all queries. */
+    public synchronized long getReserved()
+    {
+        return reserved;
+    }
+
+    /** @return the bytes reserved by tid, or by operators run outside a query if null. */
+    public synchronized long getReserved(TransactionId tid)
+    {
+        Long held = reservedBy.get(tid);
+        return held == null ? 0 : held;
+    }
+
+    /** @return the bytes reserved by every transaction holding reservations. */
+    public synchronized Map<TransactionId, Long> getReservations()
+    {
+        return new HashMap<TransactionId, Long>(reservedBy);
+    }
+
+    /**
+     * A rough estimate of the bytes one row of td takes in memory, whether
+     * in a batch or a Tuple: fields are counted as objects, strings with
+     * their characters.
+     */
+    public static long rowBytes(TupleDesc td)
+    {
+        long bytes = 16;
+        for (int i = 0; i < td.numFields(); i++)
+        {
+            bytes += td.getType(i) == Type.INT_TYPE ? 16 : 40 + 2 * Type.STRING_LEN;
+        }
+        return bytes;
+    }
+
+    private synchronized boolean take(TransactionId owner, long bytes, boolean force)
+    {
+        long held = getReserved(owner);
+        if (!force && (held + bytes > queryBytes || reserved + bytes > globalBytes))
+        {
+            return false;
+        }
+        reserved += bytes;
+        reservedBy.put(owner, held + bytes);
+        return true;
+    }
+
+    private synchronized void give(TransactionId owner, long bytes)
+    {
+        Long held = reservedBy.get(owner);
+        if (held == null)
+        {
+            // released with its transaction already
+            return;
+        }
+        bytes = Math.min(bytes, held);
+        reserved -= bytes;
+        if (held == bytes)
+        {
+            reservedBy.remove(owner);
+        }
+        else
+        {
+            reservedBy.put(owner, held - bytes);
+        }
+        notifyAll();
+    }
+
+    /**
+     * The memory one operator holds. Not thread safe: it is used by the
+     * thread running its operator.
+     */
+    public class Reservation
+    {
+        private final TransactionId owner;
+        private long size;
+
+        private Reservation(TransactionId owner)
+        {
+            this.owner = owner;
+        }
+
+        /** @return the bytes held. */
+        public long size()
+        {
+            return size;
+        }
+
+        /**
+         * Grows this reservation by bytes, unless that goes over the budget
+         * of its query or the global one.
+         * @return false if the operator should spill instead.
+         */
+        public boolean tryGrow(long bytes)
+        {
+            if (!take(owner, bytes, false))
+            {
+                return false;
+            }
+            size += bytes;
+            return true;
+        }
+
+        /** Grows this reservation by bytes, whatever the budgets, for memory held anyway. */
+        public void grow(long bytes)
+        {
+            take(owner, bytes, true);
+            size += bytes;
+        }
+
+        /** Gives back bytes, at most what is held. */
+        public void shrink(long bytes)
+        {
+            bytes = Math.min(bytes, size);
+            give(owner, bytes);
+            size -= bytes;
+        }
+
+        /** Gives back everything held. */
+        public void release()
+        {
+            shrink(size);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package simpledb;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import simpledb.file.TempFileManager;
+
+/**
+ * WorkerPool runs the worker tasks of parallel operators. Its threads are
+ * daemons and are created on demand and reused, so a query with parallelism
+ * n never waits for another query to give a thread back.
+ * <p>
+ * Worker threads never acquire page locks: locks belong to the thread that
+ * acquires them, so the thread running a transaction locks pages on behalf of
+ * its workers.
+ *
+ * @see BufferPool#lockPage
+ * @see BufferPool#getLockedPage
+ */
+public class WorkerPool {
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "simpledb-worker-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /**
+     * Runs task on a worker thread, on behalf of the transaction that owns
+     * the temporary files of the calling thread.
+     */
+    public static Future<?> submit(final Runnable task) {
+        final TransactionId owner = Database.getTempFileManager().getOwner();
+        return executor.submit(new Runnable() {
+            public void run() {
+                TempFileManager tempFiles = Database.getTempFileManager();
+                tempFiles.setOwner(owner);
+                try {
+                    task.run();
+                } finally {
+                    tempFiles.setOwner(null);
+                }
+            }
+        });
+    }
+
+    /** @return the parallelism used when a query asks for one worker per core. */
+    public static int availableProcessors() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+}
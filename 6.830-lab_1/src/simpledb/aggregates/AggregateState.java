@@ -0,0 +1,78 @@
+package simpledb.aggregates;
+
+/**
+ * The running state of an aggregate over one group: the sum, count, min and
+ * max of the values merged so far. Every Aggregator.Op can be computed from
+ * it, and two states over disjoint inputs can be merged into one.
+ */
+public class AggregateState {
+
+    private long sum = 0;
+    private int count = 0;
+    private int min = Integer.MAX_VALUE;
+    private int max = Integer.MIN_VALUE;
+
+    /** Adds a value to this state. */
+    public void add(int value)
+    {
+        sum += value;
+        count++;
+        if (value < min)
+        {
+            min = value;
+        }
+        if (value > max)
+        {
+            max = value;
+        }
+    }
+
+    /** Counts a value whose content does not matter, as COUNT does. */
+    public void addCount()
+    {
+        count++;
+    }
+
+    /** Adds everything merged into other to this state. */
+    public void merge(AggregateState other)
+    {
+        sum += other.sum;
+        count += other.count;
+        if (other.min < min)
+        {
+            min = other.min;
+        }
+        if (other.max > max)
+        {
+            max = other.max;
+        }
+    }
+
+    /** @return the number of values merged into this state. */
+    public int getCount()
+    {
+        return count;
+    }
+
+    /**
+     * @return the value of the aggregate. SUM wraps around like int
+     *         arithmetic and AVG is rounded towards zero.
+     */
+    public int result(Aggregator.Op op)
+    {
+        switch (op)
+        {
+        case MIN:
+            return min;
+        case MAX:
+            return max;
+        case SUM:
+            return (int) sum;
+        case AVG:
+            return count == 0 ? 0 : (int) (sum / count);
+        case COUNT:
+            return count;
+        }
+        throw new IllegalArgumentException("unknown aggregate " + op);
+    }
+}
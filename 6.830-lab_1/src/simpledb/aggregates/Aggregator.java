@@ -1,31 +1,41 @@
 package simpledb.aggregates;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
 
+import simpledb.Database;
+import simpledb.MemoryBroker;
 import simpledb.Utility;
-import simpledb.operators.Aggregate;
 import simpledb.operators.DbIterator;
 import simpledb.operators.TupleArrayIterator;
 import simpledb.tuple.Field;
 import simpledb.tuple.IntField;
 import simpledb.tuple.StringField;
 import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
 import simpledb.tuple.Type;
 
 /**
  * The common interface for any class that can compute an aggregate over a
  * list of Tuples.
+ * <p>
+ * Tuples are folded into one AggregateState per group as they are merged, so
+ * nothing but the states is kept in memory. Groups on an INT_TYPE field are
+ * looked up by their primitive value.
+ * <p>
+ * The groups are accounted for with the {@link MemoryBroker}, GRANT_GROUPS
+ * at a time, as they are created. They cannot be spilled, so the
+ * reservation grows past the budgets if need be; {@link #release} gives it
+ * back.
  */
 public class Aggregator {
     public static final int NO_GROUPING = -1;
 
+    /** Number of groups reserved from the memory broker at a time. */
+    private static final int GRANT_GROUPS = 1024;
+
     public enum Op {
         MIN, MAX, SUM, AVG, COUNT;
 
@@ -54,8 +64,12 @@ public class Aggregator {
 	private int gbfield;
 	private int afield;
 	private Type gbfieldtype;
-	private HashMap<Field, IntField> aggMap;
-	private ArrayList<Map.Entry<Field, Field>> fullList;
+	private AggregateState noGroupState;
+	private IntGroupTable intGroups;
+	private HashMap<Field, AggregateState> fieldGroups;
+	private MemoryBroker.Reservation memory;
+	// groups the reservation covers
+	private int grantedGroups;
 
 	
 	public Aggregator(int gbfield, Type gbfieldtype, int afield, Op what) 
@@ -63,8 +77,18 @@ public class Aggregator {
     	operator = what;
     	this.gbfield = gbfield;
     	this.afield = afield;
-    	fullList = new ArrayList<Entry<Field,Field>>();
     	this.gbfieldtype = gbfieldtype;
+    	if (gbfield != NO_GROUPING)
+    	{
+    		if (gbfieldtype == Type.INT_TYPE)
+    		{
+    			intGroups = new IntGroupTable();
+    		}
+    		else
+    		{
+    			fieldGroups = new HashMap<Field, AggregateState>();
+    		}
+    	}
     }
 	
     /**
@@ -76,14 +100,160 @@ public class Aggregator {
      */
     public void merge(Tuple tup)
     {
-    	if (gbfield == Aggregator.NO_GROUPING)
+    	AggregateState state;
+    	if (gbfield == NO_GROUPING)
+    	{
+    		state = noGroupState();
+    	}
+    	else if (intGroups != null)
+    	{
+    		state = intGroups.get(((IntField) tup.getField(gbfield)).getValue());
+    	}
+    	else
+    	{
+    		state = fieldGroup(tup.getField(gbfield));
+    	}
+    	if (operator == Op.COUNT)
     	{
-    		fullList.add(new AbstractMap.SimpleEntry<Field, Field>(new IntField(-1), tup.getField(afield)));
+    		state.addCount();
     	}
     	else
     	{
-    		fullList.add(new AbstractMap.SimpleEntry<Field, Field>(tup.getField(gbfield), tup.getField(afield)));
+    		state.add(((IntField) tup.getField(afield)).getValue());
+    	}
+    	reserveGroups();
+    }
+
+    /**
+     * Merges every selected row of a batch, as merge(Tuple) would. INT_TYPE
+     * aggregate and group-by fields are read from the primitive columns.
+     *
+     * @param batch rows containing an aggregate field and a group-by field
+     */
+    public void merge(TupleBatch batch)
+    {
+    	int n = batch.numRows();
+    	boolean countOnly = operator == Op.COUNT;
+    	int[] values = countOnly ? null : batch.getIntColumn(afield);
+    	if (gbfield == NO_GROUPING)
+    	{
+    		AggregateState state = noGroupState();
+    		for (int i = 0; i < n; i++)
+    		{
+    			if (countOnly)
+    			{
+    				state.addCount();
+    			}
+    			else
+    			{
+    				state.add(values[batch.rowAt(i)]);
+    			}
+    		}
+    		return;
+    	}
+    	int[] groups = intGroups != null ? batch.getIntColumn(gbfield) : null;
+    	for (int i = 0; i < n; i++)
+    	{
+    		int row = batch.rowAt(i);
+    		AggregateState state = groups != null ? intGroups.get(groups[row])
+    				: fieldGroup(batch.getField(gbfield, row));
+    		if (countOnly)
+    		{
+    			state.addCount();
+    		}
+    		else
+    		{
+    			state.add(values[row]);
+    		}
     	}
+    	reserveGroups();
+    }
+
+    /**
+     * Folds the groups of other into this Aggregator. Both must have been
+     * created with the same fields and operator, and fed disjoint parts of
+     * the input: the result is then the same as if every tuple had been
+     * merged into this Aggregator.
+     *
+     * @param other a partial aggregate over some other tuples
+     */
+    public void merge(Aggregator other)
+    {
+    	if (other.noGroupState != null)
+    	{
+    		noGroupState().merge(other.noGroupState);
+    	}
+    	if (other.intGroups != null)
+    	{
+    		for (int i = 0; i < other.intGroups.capacity(); i++)
+    		{
+    			AggregateState state = other.intGroups.stateAt(i);
+    			if (state != null)
+    			{
+    				intGroups.get(other.intGroups.keyAt(i)).merge(state);
+    			}
+    		}
+    	}
+    	if (other.fieldGroups != null)
+    	{
+    		for (Entry<Field, AggregateState> entry : other.fieldGroups.entrySet())
+    		{
+    			fieldGroup(entry.getKey()).merge(entry.getValue());
+    		}
+    	}
+    	reserveGroups();
+    }
+
+    /** Gives back the memory reserved for the groups, once they are no longer merged into. */
+    public void release()
+    {
+    	if (memory != null)
+    	{
+    		memory.release();
+    		memory = null;
+    	}
+    	grantedGroups = 0;
+    }
+
+    /** Reserves memory for the groups created so far, in the thread merging them. */
+    private void reserveGroups()
+    {
+    	int groups = intGroups != null ? intGroups.size() : fieldGroups != null ? fieldGroups.size() : 0;
+    	if (groups <= grantedGroups)
+    	{
+    		return;
+    	}
+    	if (memory == null)
+    	{
+    		memory = Database.getMemoryBroker().reserve();
+    	}
+    	// a group takes about the room of its result row, its key and its state
+    	long groupBytes = MemoryBroker.rowBytes(new TupleDesc(new Type[] { gbfieldtype, Type.INT_TYPE }));
+    	while (groups > grantedGroups)
+    	{
+    		memory.grow(GRANT_GROUPS * groupBytes);
+    		grantedGroups += GRANT_GROUPS;
+    	}
+    }
+
+    private AggregateState noGroupState()
+    {
+    	if (noGroupState == null)
+    	{
+    		noGroupState = new AggregateState();
+    	}
+    	return noGroupState;
+    }
+
+    private AggregateState fieldGroup(Field key)
+    {
+    	AggregateState state = fieldGroups.get(key);
+    	if (state == null)
+    	{
+    		state = new AggregateState();
+    		fieldGroups.put(key, state);
+    	}
+    	return state;
     }
 
     /**
@@ -91,61 +261,116 @@ public class Aggregator {
      * @see simpledb.operators.TupleIterator for a possible helper
      */
     public DbIterator iterator(){
-    	buildAggregatesMap();
-    	
-    	Tuple tuple;
-    	Set<Entry<Field, IntField>> entrySet = aggMap.entrySet();
     	ArrayList<Tuple> tuples = new ArrayList<Tuple>();
-    	
-    	if (aggMap.containsKey(new IntField(Aggregator.NO_GROUPING)))
+    	if (gbfield == NO_GROUPING)
 		{
-			tuple = Utility.getTuple(new int[]{aggMap.get(new IntField(Aggregator.NO_GROUPING)).getValue()}, 1);
+    		if (noGroupState != null)
+    		{
+    			tuples.add(Utility.getTuple(new int[]{noGroupState.result(operator)}, 1));
+    		}
 		}
+    	else if (intGroups != null)
+    	{
+    		for (int i = 0; i < intGroups.capacity(); i++)
+    		{
+    			AggregateState state = intGroups.stateAt(i);
+    			if (state != null)
+    			{
+    				tuples.add(Utility.getTuple(new int[]{intGroups.keyAt(i), state.result(operator)}, 2));
+    			}
+    		}
+    	}
     	else
     	{
-	    	for (Entry<Field, IntField> entry : entrySet) 
+	    	for (Entry<Field, AggregateState> entry : fieldGroups.entrySet()) 
 	    	{
-	    		Field key = entry.getKey();
-	    		IntField value = entry.getValue();
-	    		int agg = value.getValue();
-	    		if (gbfieldtype == Type.INT_TYPE)
-	    		{
-	    			int groupByInt = ((IntField)key).getValue();
-	    			tuple = Utility.getTuple(new int[]{groupByInt, agg}, 2);
-	    		}
-	    		else
-	    		{
-	    			String groupByString = ((StringField)key).getValue();
-	    			tuple = Utility.getTuple(new Field[]{
-	    					new StringField(groupByString, groupByString.length()), new IntField(agg)}, 2);
-	    		}
-	    		tuples.add(tuple);
+	    		String groupByString = ((StringField) entry.getKey()).getValue();
+	    		tuples.add(Utility.getTuple(new Field[]{
+	    				new StringField(groupByString, groupByString.length()),
+	    				new IntField(entry.getValue().result(operator))}, 2));
 			}
     	}
     	return new TupleArrayIterator(tuples);	
-    	
     }
-    
-    private void buildAggregatesMap()
+
+    /**
+     * Open addressing hash table from int group values to their
+     * AggregateState, so that grouping on an int does not box it.
+     */
+    private static class IntGroupTable
     {
-    	try
+    	private int[] keys = new int[64];
+    	private AggregateState[] states = new AggregateState[64];
+    	private int size = 0;
+
+    	AggregateState get(int key)
     	{
-    		aggMap = new HashMap<Field, IntField>();
-			String aggName = Aggregate.aggName(operator);
-			Method method = AggregatorHandler.class.getMethod(aggName, fullList.getClass(), aggMap.getClass());
-			method.invoke(new AggregatorHandler(),fullList, aggMap);
+    		int mask = keys.length - 1;
+    		int i = hash(key) & mask;
+    		while (states[i] != null)
+    		{
+    			if (keys[i] == key)
+    			{
+    				return states[i];
+    			}
+    			i = (i + 1) & mask;
+    		}
+    		AggregateState state = new AggregateState();
+    		keys[i] = key;
+    		states[i] = state;
+    		if (++size * 2 > keys.length)
+    		{
+    			grow();
+    		}
+    		return state;
     	}
-    	catch (NoSuchMethodException e) 
+
+    	int size()
     	{
-			System.out.println(e);
-		}
-    	catch (InvocationTargetException e)
+    		return size;
+    	}
+
+    	int capacity()
     	{
-    		System.out.println(e);
+    		return keys.length;
     	}
-    	catch (IllegalAccessException e) 
+
+    	int keyAt(int i)
+    	{
+    		return keys[i];
+    	}
+
+    	AggregateState stateAt(int i)
+    	{
+    		return states[i];
+    	}
+
+    	private void grow()
+    	{
+    		int[] oldKeys = keys;
+    		AggregateState[] oldStates = states;
+    		keys = new int[oldKeys.length * 2];
+    		states = new AggregateState[oldKeys.length * 2];
+    		int mask = keys.length - 1;
+    		for (int j = 0; j < oldKeys.length; j++)
+    		{
+    			if (oldStates[j] != null)
+    			{
+    				int i = hash(oldKeys[j]) & mask;
+    				while (states[i] != null)
+    				{
+    					i = (i + 1) & mask;
+    				}
+    				keys[i] = oldKeys[j];
+    				states[i] = oldStates[j];
+    			}
+    		}
+    	}
+
+    	private static int hash(int key)
     	{
-    		System.out.println(e);
+    		int h = key * 0x9E3779B9;
+    		return h ^ (h >>> 16);
     	}
     }
 }
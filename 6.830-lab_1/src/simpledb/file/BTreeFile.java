@@ -0,0 +1,704 @@
+package simpledb.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.Permissions;
+import simpledb.TransactionId;
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.page.BTreeHeaderPage;
+import simpledb.page.BTreeInternalPage;
+import simpledb.page.BTreeLeafPage;
+import simpledb.page.BTreePage;
+import simpledb.page.BTreePageId;
+import simpledb.page.BTreeRootPtrPage;
+import simpledb.page.Page;
+import simpledb.page.PageId;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.Field;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleDesc;
+
+/**
+ * BTreeFile is a DbFile that stores its tuples in a B+ tree, sorted by one
+ * of their fields, the key, which is an int or a string. Equal keys are
+ * allowed.
+ * <p>
+ * Page 0 points to the root, page 1 is the first header page recording
+ * which pages are in use, and every other page is a leaf or an internal
+ * page; header page k &gt; 0 is page k * {@link BTreeHeaderPage#SLOTS}.
+ * Tuples are stored in the leaves, which are chained for range scans, and
+ * internal pages route searches by key. Leaves and internal pages are split
+ * when they overflow, and redistributed with or merged into a sibling when
+ * they fall below half full; merged pages are freed in the header and used
+ * again.
+ * <p>
+ * All pages go through the buffer pool. Searches read lock the pages on
+ * their way down; inserts and deletes write lock the leaf they change, and
+ * then the internal pages, headers and root pointer they change as well.
+ *
+ * @see BTreeLeafPage
+ * @see BTreeInternalPage
+ */
+public class BTreeFile implements DbFile {
+
+    private final File file;
+    private final TupleDesc td;
+    private final int keyField;
+    private final int tableId;
+
+    /** An internal page passed on the way down, and the child taken. */
+    private static class PathEntry
+    {
+        final BTreePageId pid;
+        int child;
+
+        PathEntry(BTreePageId pid, int child)
+        {
+            this.pid = pid;
+            this.child = child;
+        }
+    }
+
+    /**
+     * Opens the B+ tree stored in f, or creates an empty one if f is empty.
+     *
+     * @param keyField the index of the field the tuples are sorted by.
+     */
+    public BTreeFile(File f, TupleDesc td, int keyField) throws IOException
+    {
+        this.file = f;
+        this.td = td;
+        this.keyField = keyField;
+        tableId = f.getAbsoluteFile().hashCode();
+        if (f.length() == 0)
+        {
+            RandomAccessFile raf = new RandomAccessFile(f, "rw");
+            try
+            {
+                raf.write(BTreeRootPtrPage.createPageData(2, BTreePageId.LEAF));
+                raf.write(BTreeHeaderPage.createPageData(0, 1, 2));
+                raf.write(BTreeLeafPage.createEmptyPageData());
+            }
+            finally
+            {
+                raf.close();
+            }
+        }
+    }
+
+    /**
+     * Writes a B+ tree holding the given tuples, sorted by their key, to f
+     * in one pass from the bottom up, rather than inserting them one at a
+     * time: the leaves are filled evenly, and then each level of internal
+     * pages above them. Like {@link HeapFileEncoder}, this writes f
+     * directly, without going through the buffer pool or the log.
+     *
+     * @param sorted tuples of td, in key order.
+     * @return the B+ tree stored in f.
+     */
+    public static BTreeFile bulkLoad(File f, TupleDesc td, int keyField, List<Tuple> sorted) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        try
+        {
+            raf.setLength(0);
+            writeTree(raf, td, keyField, sorted);
+        }
+        finally
+        {
+            raf.close();
+        }
+        // an empty file is given an empty tree
+        return new BTreeFile(f, td, keyField);
+    }
+
+    private static void writeTree(RandomAccessFile raf, TupleDesc td, int keyField, List<Tuple> sorted)
+            throws IOException
+    {
+        if (sorted.isEmpty())
+        {
+            return;
+        }
+        int n = sorted.size();
+        int leaves = (n + BTreeLeafPage.getMaxTuples(td) - 1) / BTreeLeafPage.getMaxTuples(td);
+        int numPages = 2;
+        ArrayList<Integer> children = new ArrayList<Integer>(leaves);
+        for (int i = 0; i < leaves; i++)
+        {
+            numPages = skipHeader(numPages);
+            children.add(numPages++);
+        }
+        ArrayList<Field> lowKeys = new ArrayList<Field>(leaves);
+        for (int i = 0; i < leaves; i++)
+        {
+            int from = (int) ((long) n * i / leaves);
+            int to = (int) ((long) n * (i + 1) / leaves);
+            int next = i + 1 < leaves ? children.get(i + 1) : 0;
+            writePage(raf, children.get(i), BTreeLeafPage.createPageData(td, next, sorted.subList(from, to)));
+            lowKeys.add(sorted.get(from).getField(keyField));
+        }
+
+        // each level of internal pages, keyed by the lowest key below each child
+        int category = BTreePageId.LEAF;
+        int fanout = BTreeInternalPage.getMaxKeys(td.getType(keyField)) + 1;
+        while (children.size() > 1)
+        {
+            int m = children.size();
+            int pages = (m + fanout - 1) / fanout;
+            ArrayList<Integer> parents = new ArrayList<Integer>(pages);
+            ArrayList<Field> parentLowKeys = new ArrayList<Field>(pages);
+            for (int i = 0; i < pages; i++)
+            {
+                int from = (int) ((long) m * i / pages);
+                int to = (int) ((long) m * (i + 1) / pages);
+                numPages = skipHeader(numPages);
+                writePage(raf, numPages, BTreeInternalPage.createPageData(category,
+                        lowKeys.subList(from + 1, to), children.subList(from, to)));
+                parents.add(numPages++);
+                parentLowKeys.add(lowKeys.get(from));
+            }
+            children = parents;
+            lowKeys = parentLowKeys;
+            category = BTreePageId.INTERNAL;
+        }
+
+        writePage(raf, 0, BTreeRootPtrPage.createPageData(children.get(0), category));
+        for (int k = 0; headerPageNo(k) < numPages; k++)
+        {
+            int used = Math.min(BTreeHeaderPage.SLOTS, numPages - k * BTreeHeaderPage.SLOTS);
+            writePage(raf, headerPageNo(k), BTreeHeaderPage.createFullPageData(used));
+        }
+    }
+
+    /** @return pageno, or the page after it if pageno is the place of a header page. */
+    private static int skipHeader(int pageno)
+    {
+        return pageno % BTreeHeaderPage.SLOTS == 0 ? pageno + 1 : pageno;
+    }
+
+    private static void writePage(RandomAccessFile raf, int pageno, byte[] data) throws IOException
+    {
+        raf.seek((long) pageno * BufferPool.PAGE_SIZE);
+        raf.write(data);
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    public int getId()
+    {
+        return tableId;
+    }
+
+    public TupleDesc getTupleDesc()
+    {
+        return td;
+    }
+
+    /** @return the index of the field the tuples are sorted by. */
+    public int keyField()
+    {
+        return keyField;
+    }
+
+    public int numPages()
+    {
+        return (int) (file.length() / BufferPool.PAGE_SIZE);
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid)
+    {
+        byte[] data = new byte[BufferPool.PAGE_SIZE];
+        try
+        {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try
+            {
+                raf.seek((long) pid.pageno() * BufferPool.PAGE_SIZE);
+                raf.readFully(data);
+            }
+            finally
+            {
+                raf.close();
+            }
+            // the kind on disk wins over the one of pid, which may be stale
+            BTreePageId id = new BTreePageId(tableId, pid.pageno(), data[0]);
+            switch (data[0])
+            {
+            case BTreePageId.ROOT_PTR:
+                return new BTreeRootPtrPage(id, data);
+            case BTreePageId.HEADER:
+                return new BTreeHeaderPage(id, data);
+            case BTreePageId.INTERNAL:
+                return new BTreeInternalPage(id, data);
+            case BTreePageId.LEAF:
+                return new BTreeLeafPage(id, data);
+            default:
+                throw new IllegalArgumentException("page " + pid.pageno() + " of " + file + " is not a B+ tree page");
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalArgumentException("cannot read page " + pid.pageno() + " of " + file + ": " + e);
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException
+    {
+        writePage(page.getId().pageno(), page.getPageData());
+    }
+
+    private void writePage(int pageno, byte[] data) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try
+        {
+            raf.seek((long) pageno * BufferPool.PAGE_SIZE);
+            raf.write(data);
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    /** @return all the tuples, in key order. */
+    public DbFileIterator iterator(TransactionId tid)
+    {
+        return new BTreeFileIterator(this, tid, null, false, null, false);
+    }
+
+    /**
+     * @return the tuples whose key satisfies op with key, in key order.
+     * @throws IllegalArgumentException if op is not a comparison a B+ tree
+     *         answers by range, such as NOT_EQUALS or LIKE.
+     */
+    public DbFileIterator indexIterator(TransactionId tid, Predicate.Op op, Field key)
+    {
+        switch (op)
+        {
+        case EQUALS:
+            return rangeIterator(tid, key, true, key, true);
+        case GREATER_THAN:
+            return rangeIterator(tid, key, false, null, false);
+        case GREATER_THAN_OR_EQ:
+            return rangeIterator(tid, key, true, null, false);
+        case LESS_THAN:
+            return rangeIterator(tid, null, false, key, false);
+        case LESS_THAN_OR_EQ:
+            return rangeIterator(tid, null, false, key, true);
+        default:
+            throw new IllegalArgumentException("a B+ tree cannot look up " + op);
+        }
+    }
+
+    /**
+     * @return the tuples with keys between low and high, in key order.
+     * @param low the lowest key, or null for no lower bound.
+     * @param high the highest key, or null for no upper bound.
+     */
+    public DbFileIterator rangeIterator(TransactionId tid, Field low, boolean lowInclusive,
+            Field high, boolean highInclusive)
+    {
+        return new BTreeFileIterator(this, tid, low, lowInclusive, high, highInclusive);
+    }
+
+    /**
+     * @return the number of pages a search reads on its way down, the leaf
+     *         included.
+     */
+    public int height(TransactionId tid) throws DbException, TransactionAbortedException
+    {
+        int height = 1;
+        BTreePageId id = rootId(tid);
+        while (id.category() == BTreePageId.INTERNAL)
+        {
+            id = ((BTreeInternalPage) getPage(tid, id, Permissions.READ_ONLY)).getChildId(0);
+            height++;
+        }
+        return height;
+    }
+
+    private BTreePage getPage(TransactionId tid, BTreePageId pid, Permissions perm)
+            throws DbException, TransactionAbortedException
+    {
+        return (BTreePage) Database.getBufferPool().getPage(tid, pid, perm);
+    }
+
+    /**
+     * Write locks a page and marks it dirty at once, so that it stays in
+     * the buffer pool while more pages are fetched, and adds it to dirtied.
+     */
+    private BTreePage getDirtyPage(TransactionId tid, BTreePageId pid, ArrayList<Page> dirtied)
+            throws DbException, TransactionAbortedException
+    {
+        BTreePage page = getPage(tid, pid, Permissions.READ_WRITE);
+        page.markDirty(true, tid);
+        if (!dirtied.contains(page))
+        {
+            dirtied.add(page);
+        }
+        return page;
+    }
+
+    private BTreePageId rootPtrId()
+    {
+        return new BTreePageId(tableId, 0, BTreePageId.ROOT_PTR);
+    }
+
+    private BTreePageId rootId(TransactionId tid) throws DbException, TransactionAbortedException
+    {
+        return ((BTreeRootPtrPage) getPage(tid, rootPtrId(), Permissions.READ_ONLY)).getRootId();
+    }
+
+    /** @return the page number of header page k. */
+    private static int headerPageNo(int k)
+    {
+        return k == 0 ? 1 : k * BTreeHeaderPage.SLOTS;
+    }
+
+    /**
+     * Descends from the root to the leftmost leaf that may hold key, or the
+     * leftmost leaf if key is null. Internal pages are read locked, and the
+     * leaf locked with perm.
+     *
+     * @param path if not null, receives the internal pages passed and the
+     *        child taken in each, from the root down.
+     */
+    BTreeLeafPage findLeaf(TransactionId tid, Field key, Permissions perm, ArrayList<PathEntry> path)
+            throws DbException, TransactionAbortedException
+    {
+        BTreePageId id = rootId(tid);
+        while (id.category() == BTreePageId.INTERNAL)
+        {
+            BTreeInternalPage p = (BTreeInternalPage) getPage(tid, id, Permissions.READ_ONLY);
+            int i = key == null ? 0 : p.findChild(key);
+            if (path != null)
+            {
+                path.add(new PathEntry(id, i));
+            }
+            id = p.getChildId(i);
+        }
+        return (BTreeLeafPage) getPage(tid, id, perm);
+    }
+
+    /**
+     * Moves path on to the next leaf, the one a scan would go to next.
+     * @return the id of that leaf, or null after the last one.
+     */
+    private BTreePageId nextLeaf(TransactionId tid, ArrayList<PathEntry> path)
+            throws DbException, TransactionAbortedException
+    {
+        int level = path.size() - 1;
+        while (level >= 0)
+        {
+            PathEntry e = path.get(level);
+            BTreeInternalPage p = (BTreeInternalPage) getPage(tid, e.pid, Permissions.READ_ONLY);
+            if (e.child < p.getNumKeys())
+            {
+                break;
+            }
+            level--;
+        }
+        if (level < 0)
+        {
+            return null;
+        }
+        while (path.size() > level + 1)
+        {
+            path.remove(path.size() - 1);
+        }
+        PathEntry e = path.get(level);
+        e.child++;
+        BTreePageId id = ((BTreeInternalPage) getPage(tid, e.pid, Permissions.READ_ONLY)).getChildId(e.child);
+        while (id.category() == BTreePageId.INTERNAL)
+        {
+            path.add(new PathEntry(id, 0));
+            id = ((BTreeInternalPage) getPage(tid, id, Permissions.READ_ONLY)).getChildId(0);
+        }
+        return id;
+    }
+
+    /**
+     * Adds a copy of t to the leaf its key belongs to, splitting the leaf,
+     * and then its ancestors, when full.
+     *
+     * @return every page changed, including the new ones, all marked dirty.
+     */
+    public ArrayList<Page> addTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException
+    {
+        if (t.getTupleDesc().numFields() != td.numFields())
+        {
+            throw new DbException("tuple does not match the schema of the B+ tree");
+        }
+        Tuple copy = new Tuple(td);
+        for (int j = 0; j < td.numFields(); j++)
+        {
+            copy.setField(j, t.getField(j));
+        }
+        Field key = copy.getField(keyField);
+        ArrayList<PathEntry> path = new ArrayList<PathEntry>();
+        ArrayList<Page> dirtied = new ArrayList<Page>();
+        BTreeLeafPage leaf = findLeaf(tid, key, Permissions.READ_WRITE, path);
+        leaf = (BTreeLeafPage) getDirtyPage(tid, leaf.getId(), dirtied);
+        if (!leaf.isFull())
+        {
+            leaf.insertTuple(copy);
+            return dirtied;
+        }
+
+        ArrayList<Tuple> all = leaf.getTuples();
+        all.add(leaf.findFirst(key, false), copy);
+        int half = all.size() / 2;
+        BTreeLeafPage right = (BTreeLeafPage) newPage(tid, BTreePageId.LEAF, dirtied);
+        leaf.setTuples(all.subList(0, half));
+        right.setTuples(all.subList(half, all.size()));
+        right.setNextLeaf(leaf.getNextLeaf());
+        leaf.setNextLeaf(right.getId().pageno());
+        insertEntry(tid, path, leaf.getId(), right.getKey(0), right.getId(), dirtied);
+        return dirtied;
+    }
+
+    /**
+     * Inserts the entry for the new page right, split from left, into the
+     * parent of left, the last page of path, splitting the parent in turn
+     * if full, or adds a new root above left if path is empty.
+     */
+    private void insertEntry(TransactionId tid, ArrayList<PathEntry> path, BTreePageId left, Field key,
+            BTreePageId right, ArrayList<Page> dirtied)
+            throws DbException, IOException, TransactionAbortedException
+    {
+        if (path.isEmpty())
+        {
+            BTreeInternalPage root = (BTreeInternalPage) newPage(tid, BTreePageId.INTERNAL, dirtied);
+            root.setChildCategory(left.category());
+            ArrayList<Field> keys = new ArrayList<Field>();
+            keys.add(key);
+            ArrayList<Integer> children = new ArrayList<Integer>();
+            children.add(left.pageno());
+            children.add(right.pageno());
+            root.setEntries(keys, children);
+            ((BTreeRootPtrPage) getDirtyPage(tid, rootPtrId(), dirtied)).setRootId(root.getId());
+            return;
+        }
+        PathEntry e = path.remove(path.size() - 1);
+        BTreeInternalPage parent = (BTreeInternalPage) getDirtyPage(tid, e.pid, dirtied);
+        if (!parent.isFull())
+        {
+            parent.insertEntry(e.child, key, right.pageno());
+            return;
+        }
+
+        // the middle key moves up, and the keys after it to the new page
+        ArrayList<Field> keys = parent.getKeys();
+        ArrayList<Integer> children = parent.getChildren();
+        keys.add(e.child, key);
+        children.add(e.child + 1, right.pageno());
+        int mid = keys.size() / 2;
+        BTreeInternalPage sibling = (BTreeInternalPage) newPage(tid, BTreePageId.INTERNAL, dirtied);
+        sibling.setChildCategory(parent.getChildCategory());
+        parent.setEntries(keys.subList(0, mid), children.subList(0, mid + 1));
+        sibling.setEntries(keys.subList(mid + 1, keys.size()), children.subList(mid + 1, children.size()));
+        insertEntry(tid, path, parent.getId(), keys.get(mid), sibling.getId(), dirtied);
+    }
+
+    /**
+     * Removes a tuple with the same fields as t, merging or redistributing
+     * the pages that fall below half full.
+     *
+     * @return the leaf t was removed from; the other pages changed are
+     *         marked dirty as well.
+     * @throws DbException if the tree holds no such tuple.
+     */
+    public Page deleteTuple(TransactionId tid, Tuple t) throws DbException, TransactionAbortedException
+    {
+        Field key = t.getField(keyField);
+        ArrayList<PathEntry> path = new ArrayList<PathEntry>();
+        BTreeLeafPage leaf = findLeaf(tid, key, Permissions.READ_WRITE, path);
+        int slot;
+        // equal keys may go on over several leaves
+        while ((slot = leaf.indexOf(t)) < 0)
+        {
+            int n = leaf.getNumTuples();
+            BTreePageId next = n > 0 && compare(leaf.getKey(n - 1), key) > 0 ? null : nextLeaf(tid, path);
+            if (next == null)
+            {
+                throw new DbException("tuple not found in the B+ tree " + file);
+            }
+            leaf = (BTreeLeafPage) getPage(tid, next, Permissions.READ_WRITE);
+        }
+
+        ArrayList<Page> dirtied = new ArrayList<Page>();
+        leaf = (BTreeLeafPage) getDirtyPage(tid, leaf.getId(), dirtied);
+        leaf.deleteTuple(slot);
+        if (!path.isEmpty() && leaf.getNumTuples() < leaf.getMaxTuples() / 2)
+        {
+            rebalanceLeaf(tid, path, dirtied);
+        }
+        return leaf;
+    }
+
+    private static int compare(Field a, Field b)
+    {
+        return BTreePage.compare(a, b);
+    }
+
+    /**
+     * Refills the leaf path leads to, which fell below half full, from a
+     * sibling, or merges the two if they fit on one page.
+     */
+    private void rebalanceLeaf(TransactionId tid, ArrayList<PathEntry> path, ArrayList<Page> dirtied)
+            throws DbException, TransactionAbortedException
+    {
+        PathEntry e = path.remove(path.size() - 1);
+        BTreeInternalPage parent = (BTreeInternalPage) getDirtyPage(tid, e.pid, dirtied);
+        // the key separating left and right in parent
+        int sep = e.child > 0 ? e.child - 1 : e.child;
+        BTreeLeafPage left = (BTreeLeafPage) getDirtyPage(tid, parent.getChildId(sep), dirtied);
+        BTreeLeafPage right = (BTreeLeafPage) getDirtyPage(tid, parent.getChildId(sep + 1), dirtied);
+
+        ArrayList<Tuple> all = left.getTuples();
+        all.addAll(right.getTuples());
+        if (all.size() <= left.getMaxTuples())
+        {
+            left.setTuples(all);
+            left.setNextLeaf(right.getNextLeaf());
+            parent.deleteEntry(sep);
+            freePage(tid, right.getId().pageno(), dirtied);
+            rebalanceInternal(tid, path, parent, dirtied);
+        }
+        else
+        {
+            int half = all.size() / 2;
+            left.setTuples(all.subList(0, half));
+            right.setTuples(all.subList(half, all.size()));
+            parent.setKey(sep, right.getKey(0));
+        }
+    }
+
+    /**
+     * Refills page, the child of the last page of path or the root if path
+     * is empty, if it fell below half full: from a sibling, through the key
+     * separating them in their parent, or by merging the two. A root left
+     * with one child is replaced by that child.
+     */
+    private void rebalanceInternal(TransactionId tid, ArrayList<PathEntry> path, BTreeInternalPage page,
+            ArrayList<Page> dirtied) throws DbException, TransactionAbortedException
+    {
+        if (path.isEmpty())
+        {
+            if (page.getNumKeys() == 0)
+            {
+                ((BTreeRootPtrPage) getDirtyPage(tid, rootPtrId(), dirtied)).setRootId(page.getChildId(0));
+                freePage(tid, page.getId().pageno(), dirtied);
+            }
+            return;
+        }
+        if (page.getNumKeys() >= page.getMaxKeys() / 2)
+        {
+            return;
+        }
+        PathEntry e = path.remove(path.size() - 1);
+        BTreeInternalPage parent = (BTreeInternalPage) getDirtyPage(tid, e.pid, dirtied);
+        int sep = e.child > 0 ? e.child - 1 : e.child;
+        BTreeInternalPage left = (BTreeInternalPage) getDirtyPage(tid, parent.getChildId(sep), dirtied);
+        BTreeInternalPage right = (BTreeInternalPage) getDirtyPage(tid, parent.getChildId(sep + 1), dirtied);
+
+        ArrayList<Field> keys = left.getKeys();
+        keys.add(parent.getKey(sep));
+        keys.addAll(right.getKeys());
+        ArrayList<Integer> children = left.getChildren();
+        children.addAll(right.getChildren());
+        if (keys.size() <= left.getMaxKeys())
+        {
+            left.setEntries(keys, children);
+            parent.deleteEntry(sep);
+            freePage(tid, right.getId().pageno(), dirtied);
+            rebalanceInternal(tid, path, parent, dirtied);
+        }
+        else
+        {
+            int mid = keys.size() / 2;
+            left.setEntries(keys.subList(0, mid), children.subList(0, mid + 1));
+            right.setEntries(keys.subList(mid + 1, keys.size()), children.subList(mid + 1, children.size()));
+            parent.setKey(sep, keys.get(mid));
+        }
+    }
+
+    /**
+     * Takes a free page, or appends one to the file, and makes it an empty
+     * page of the given kind, locked by tid and marked dirty. The page is
+     * only cached by the buffer pool once returned by addTuple.
+     */
+    private BTreePage newPage(TransactionId tid, int category, ArrayList<Page> dirtied)
+            throws DbException, IOException, TransactionAbortedException
+    {
+        byte[] data = category == BTreePageId.LEAF
+                ? BTreeLeafPage.createEmptyPageData() : BTreeInternalPage.createEmptyPageData();
+        BTreePageId pid = new BTreePageId(tableId, allocate(tid, data, dirtied), category);
+        Database.getBufferPool().lockPage(tid, pid, Permissions.READ_WRITE);
+        BTreePage page = category == BTreePageId.LEAF ? new BTreeLeafPage(pid, data) : new BTreeInternalPage(pid, data);
+        page.markDirty(true, tid);
+        dirtied.add(page);
+        return page;
+    }
+
+    /**
+     * Marks the first free page in use, or appends a page with the image
+     * empty if there is none. @return the number of the page.
+     */
+    private int allocate(TransactionId tid, byte[] empty, ArrayList<Page> dirtied)
+            throws DbException, IOException, TransactionAbortedException
+    {
+        int numPages = numPages();
+        for (int k = 0; headerPageNo(k) < numPages; k++)
+        {
+            BTreePageId hid = new BTreePageId(tableId, headerPageNo(k), BTreePageId.HEADER);
+            BTreeHeaderPage header = (BTreeHeaderPage) getPage(tid, hid, Permissions.READ_WRITE);
+            int slot = header.findFree(Math.min(BTreeHeaderPage.SLOTS, numPages - k * BTreeHeaderPage.SLOTS));
+            if (slot >= 0)
+            {
+                getDirtyPage(tid, hid, dirtied);
+                header.setUsed(slot, true);
+                return k * BTreeHeaderPage.SLOTS + slot;
+            }
+        }
+
+        // the header locks taken above keep other transactions from appending
+        int pageno;
+        synchronized (this)
+        {
+            pageno = numPages();
+            if (pageno % BTreeHeaderPage.SLOTS == 0)
+            {
+                // the first page of a header's range is the header itself
+                writePage(pageno, BTreeHeaderPage.createPageData(0));
+                pageno++;
+            }
+            writePage(pageno, empty);
+        }
+        BTreePageId hid = new BTreePageId(tableId, headerPageNo(pageno / BTreeHeaderPage.SLOTS), BTreePageId.HEADER);
+        ((BTreeHeaderPage) getDirtyPage(tid, hid, dirtied)).setUsed(pageno % BTreeHeaderPage.SLOTS, true);
+        return pageno;
+    }
+
+    /** Marks page pageno free in its header page. */
+    private void freePage(TransactionId tid, int pageno, ArrayList<Page> dirtied)
+            throws DbException, TransactionAbortedException
+    {
+        BTreePageId hid = new BTreePageId(tableId, headerPageNo(pageno / BTreeHeaderPage.SLOTS), BTreePageId.HEADER);
+        ((BTreeHeaderPage) getDirtyPage(tid, hid, dirtied)).setUsed(pageno % BTreeHeaderPage.SLOTS, false);
+    }
+}
@@ -0,0 +1,100 @@
+package simpledb.file;
+
+import simpledb.Database;
+import simpledb.Permissions;
+import simpledb.TransactionId;
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.page.BTreeLeafPage;
+import simpledb.page.BTreePage;
+import simpledb.page.BTreePageId;
+import simpledb.tuple.Field;
+import simpledb.tuple.Tuple;
+
+/**
+ * Iterates in key order over the tuples of a {@link BTreeFile} with keys in
+ * a range: it descends to the first leaf that may hold the lowest key, and
+ * follows the chain of leaves until a key goes past the highest one. The
+ * pages are read locked as they are read.
+ */
+public class BTreeFileIterator extends AbstractDbFileIterator {
+
+    private final BTreeFile file;
+    private final TransactionId tid;
+    private final Field low;
+    private final boolean lowInclusive;
+    private final Field high;
+    private final boolean highInclusive;
+    private BTreeLeafPage leaf;
+    private int slot;
+
+    /**
+     * @param low the lowest key, or null for no lower bound.
+     * @param high the highest key, or null for no upper bound.
+     */
+    public BTreeFileIterator(BTreeFile file, TransactionId tid, Field low, boolean lowInclusive,
+            Field high, boolean highInclusive)
+    {
+        this.file = file;
+        this.tid = tid;
+        this.low = low;
+        this.lowInclusive = lowInclusive;
+        this.high = high;
+        this.highInclusive = highInclusive;
+    }
+
+    public void open() throws DbException, TransactionAbortedException
+    {
+        leaf = file.findLeaf(tid, low, Permissions.READ_ONLY, null);
+        slot = low == null ? 0 : leaf.findFirst(low, lowInclusive);
+    }
+
+    protected Tuple readNext() throws DbException, TransactionAbortedException
+    {
+        while (leaf != null)
+        {
+            if (slot >= leaf.getNumTuples())
+            {
+                int next = leaf.getNextLeaf();
+                leaf = next == 0 ? null : (BTreeLeafPage) Database.getBufferPool().getPage(tid,
+                        new BTreePageId(file.getId(), next, BTreePageId.LEAF), Permissions.READ_ONLY);
+                slot = 0;
+                continue;
+            }
+            Field key = leaf.getKey(slot);
+            if (low != null)
+            {
+                // equal keys below the range may go on into the next leaves
+                int c = BTreePage.compare(key, low);
+                if (c < 0 || c == 0 && !lowInclusive)
+                {
+                    slot++;
+                    continue;
+                }
+            }
+            if (high != null)
+            {
+                int c = BTreePage.compare(key, high);
+                if (c > 0 || c == 0 && !highInclusive)
+                {
+                    leaf = null;
+                    break;
+                }
+            }
+            return leaf.getTuple(slot++);
+        }
+        return null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException
+    {
+        close();
+        open();
+    }
+
+    public void close()
+    {
+        super.close();
+        leaf = null;
+    }
+}
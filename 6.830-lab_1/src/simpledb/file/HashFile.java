@@ -0,0 +1,489 @@
+package simpledb.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.Permissions;
+import simpledb.TransactionId;
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.page.HashBucketPage;
+import simpledb.page.HashDirectoryPage;
+import simpledb.page.HashMetaPage;
+import simpledb.page.HashPage;
+import simpledb.page.HashPageId;
+import simpledb.page.Page;
+import simpledb.page.PageId;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.Field;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleDesc;
+
+/**
+ * HashFile is a DbFile that stores its tuples in an extendible hash table
+ * on one of their fields, the key, so that the tuples with a given key are
+ * found by reading the meta page, one directory page and one bucket. Equal
+ * keys are allowed.
+ * <p>
+ * Page 0 is the meta page, holding the global depth d and the page numbers
+ * of the directory pages. Entry i of the directory, for i below 2^d, is the
+ * bucket of the keys whose hash ends with the bits of i. A bucket of local
+ * depth l is the bucket of all the 2^(d - l) entries ending with its own l
+ * bits. A full bucket is split in two on bit l, and the entries of the new
+ * bucket set; when l = d, the directory doubles first.
+ * <p>
+ * The directory doubles incrementally: doubling only increments d. An
+ * entry that was not written since, 0 on disk, stands for the entry with
+ * the same bits but the highest, which is where a full copy of the
+ * directory would have taken it from. Entries are only written by splits,
+ * and directory pages only written once one of their entries is, so a
+ * growing file never copies its directory or rehashes its tuples, beyond
+ * the bucket being split.
+ * <p>
+ * A bucket whose tuples all have the same hash, or that reached the
+ * maximum depth, goes on in a chain of overflow pages. Buckets are not
+ * merged as tuples are deleted, and the pages taken by a split that is
+ * rolled back are left empty.
+ * <p>
+ * All pages go through the buffer pool. Lookups read lock the meta page,
+ * a directory page and the bucket chain; inserts and deletes write lock
+ * the bucket chain, and splits the meta and directory pages as well.
+ *
+ * @see HashBucketPage
+ * @see HashDirectoryPage
+ */
+public class HashFile implements DbFile {
+
+    /** The deepest the directory can go, for its pages to fit on the meta page. */
+    public static final int MAX_DEPTH =
+            31 - Integer.numberOfLeadingZeros(HashMetaPage.MAX_DIRECTORY_PAGES * HashDirectoryPage.ENTRIES);
+
+    private final File file;
+    private final TupleDesc td;
+    private final int keyField;
+    private final int tableId;
+
+    /**
+     * Opens the hash file stored in f, or creates an empty one, with a single
+     * bucket, if f is empty.
+     *
+     * @param keyField the index of the field the tuples are hashed on.
+     */
+    public HashFile(File f, TupleDesc td, int keyField) throws IOException
+    {
+        this.file = f;
+        this.td = td;
+        this.keyField = keyField;
+        tableId = f.getAbsoluteFile().hashCode();
+        if (f.length() == 0)
+        {
+            RandomAccessFile raf = new RandomAccessFile(f, "rw");
+            try
+            {
+                raf.write(HashMetaPage.createPageData(0, 1));
+                raf.write(HashDirectoryPage.createPageData(2));
+                raf.write(HashBucketPage.createEmptyPageData());
+            }
+            finally
+            {
+                raf.close();
+            }
+        }
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    public int getId()
+    {
+        return tableId;
+    }
+
+    public TupleDesc getTupleDesc()
+    {
+        return td;
+    }
+
+    /** @return the index of the field the tuples are hashed on. */
+    public int keyField()
+    {
+        return keyField;
+    }
+
+    public int numPages()
+    {
+        return (int) (file.length() / BufferPool.PAGE_SIZE);
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid)
+    {
+        byte[] data = new byte[BufferPool.PAGE_SIZE];
+        try
+        {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try
+            {
+                raf.seek((long) pid.pageno() * BufferPool.PAGE_SIZE);
+                raf.readFully(data);
+            }
+            finally
+            {
+                raf.close();
+            }
+            HashPageId id = new HashPageId(tableId, pid.pageno());
+            switch (data[0])
+            {
+            case HashPage.META:
+                return new HashMetaPage(id, data);
+            case HashPage.DIRECTORY:
+                return new HashDirectoryPage(id, data);
+            case HashPage.BUCKET:
+                return new HashBucketPage(id, data);
+            default:
+                throw new IllegalArgumentException("page " + pid.pageno() + " of " + file + " is not a hash page");
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalArgumentException("cannot read page " + pid.pageno() + " of " + file + ": " + e);
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException
+    {
+        writePage(page.getId().pageno(), page.getPageData());
+    }
+
+    private void writePage(int pageno, byte[] data) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try
+        {
+            raf.seek((long) pageno * BufferPool.PAGE_SIZE);
+            raf.write(data);
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    /** @return all the tuples, bucket by bucket in file order. */
+    public DbFileIterator iterator(TransactionId tid)
+    {
+        return new HashFileIterator(this, tid, null);
+    }
+
+    /**
+     * @return the tuples whose key satisfies op with key.
+     * @throws IllegalArgumentException if op is not EQUALS, the only
+     *         comparison a hash file answers.
+     */
+    public DbFileIterator indexIterator(TransactionId tid, Predicate.Op op, Field key)
+    {
+        if (op != Predicate.Op.EQUALS)
+        {
+            throw new IllegalArgumentException("a hash file cannot look up " + op);
+        }
+        return new HashFileIterator(this, tid, key);
+    }
+
+    /** @return the global depth of the directory, which has 2^depth entries. */
+    public int getGlobalDepth(TransactionId tid) throws DbException, TransactionAbortedException
+    {
+        return meta(tid, Permissions.READ_ONLY).getGlobalDepth();
+    }
+
+    /** Spreads the bits of the hash code of a key, whose low bits pick its bucket. */
+    static int hash(Field key)
+    {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    private static int mask(int depth)
+    {
+        return depth == 0 ? 0 : -1 >>> (32 - depth);
+    }
+
+    private HashPage getPage(TransactionId tid, int pageno, Permissions perm)
+            throws DbException, TransactionAbortedException
+    {
+        return (HashPage) Database.getBufferPool().getPage(tid, new HashPageId(tableId, pageno), perm);
+    }
+
+    /**
+     * Write locks a page and marks it dirty at once, so that it stays in
+     * the buffer pool while more pages are fetched, and adds it to dirtied.
+     */
+    private HashPage getDirtyPage(TransactionId tid, int pageno, ArrayList<Page> dirtied)
+            throws DbException, TransactionAbortedException
+    {
+        HashPage page = getPage(tid, pageno, Permissions.READ_WRITE);
+        page.markDirty(true, tid);
+        if (!dirtied.contains(page))
+        {
+            dirtied.add(page);
+        }
+        return page;
+    }
+
+    private HashMetaPage meta(TransactionId tid, Permissions perm) throws DbException, TransactionAbortedException
+    {
+        return (HashMetaPage) getPage(tid, 0, perm);
+    }
+
+    /**
+     * @return entry i of the directory, or 0 if it was not written since the
+     *         directory doubled past it.
+     */
+    private int getEntry(TransactionId tid, HashMetaPage meta, int i) throws DbException, TransactionAbortedException
+    {
+        int pageno = meta.getDirectoryPage(i / HashDirectoryPage.ENTRIES);
+        if (pageno == 0)
+        {
+            return 0;
+        }
+        HashDirectoryPage dir = (HashDirectoryPage) getPage(tid, pageno, Permissions.READ_ONLY);
+        return dir.getEntry(i % HashDirectoryPage.ENTRIES);
+    }
+
+    /** @return the page number of the bucket of directory entry i. */
+    private int resolve(TransactionId tid, HashMetaPage meta, int i) throws DbException, TransactionAbortedException
+    {
+        int pageno;
+        // an entry not written since a doubling is the one it was doubled from
+        while ((pageno = getEntry(tid, meta, i)) == 0)
+        {
+            if (i == 0)
+            {
+                throw new DbException("directory of hash file " + file + " has no entry 0");
+            }
+            i -= Integer.highestOneBit(i);
+        }
+        return pageno;
+    }
+
+    /**
+     * @return the page number of the first page of the bucket of key. The
+     *         meta page and a directory page are read locked on the way.
+     */
+    int bucketOf(TransactionId tid, Field key) throws DbException, TransactionAbortedException
+    {
+        HashMetaPage meta = meta(tid, Permissions.READ_ONLY);
+        return resolve(tid, meta, hash(key) & mask(meta.getGlobalDepth()));
+    }
+
+    /**
+     * Adds a copy of t to the bucket of its key. A full bucket is split,
+     * doubling the directory if needed, or given an overflow page if
+     * splitting cannot make room.
+     *
+     * @return every page changed, including the new ones, all marked dirty.
+     */
+    public ArrayList<Page> addTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException
+    {
+        if (t.getTupleDesc().numFields() != td.numFields())
+        {
+            throw new DbException("tuple does not match the schema of the hash file");
+        }
+        Tuple copy = new Tuple(td);
+        for (int j = 0; j < td.numFields(); j++)
+        {
+            copy.setField(j, t.getField(j));
+        }
+        int h = hash(copy.getField(keyField));
+        ArrayList<Page> dirtied = new ArrayList<Page>();
+        while (true)
+        {
+            HashMetaPage meta = meta(tid, Permissions.READ_ONLY);
+            int i = h & mask(meta.getGlobalDepth());
+            int first = resolve(tid, meta, i);
+
+            // any page of the chain with room takes the tuple
+            HashBucketPage page = (HashBucketPage) getPage(tid, first, Permissions.READ_WRITE);
+            boolean sameHash = true;
+            while (true)
+            {
+                if (!page.isFull())
+                {
+                    page = (HashBucketPage) getDirtyPage(tid, page.getId().pageno(), dirtied);
+                    page.insertTuple(copy);
+                    return dirtied;
+                }
+                for (int j = 0; j < page.getNumTuples() && sameHash; j++)
+                {
+                    sameHash = hash(page.getTuple(j).getField(keyField)) == h;
+                }
+                if (page.getNext() == 0)
+                {
+                    break;
+                }
+                page = (HashBucketPage) getPage(tid, page.getNext(), Permissions.READ_WRITE);
+            }
+
+            HashBucketPage bucket = (HashBucketPage) getPage(tid, first, Permissions.READ_ONLY);
+            if (sameHash || bucket.getLocalDepth() == MAX_DEPTH)
+            {
+                // splitting would not separate these tuples
+                HashBucketPage last = (HashBucketPage) getDirtyPage(tid, page.getId().pageno(), dirtied);
+                HashBucketPage overflow = newBucket(tid, dirtied);
+                last.setNext(overflow.getId().pageno());
+                overflow.insertTuple(copy);
+                return dirtied;
+            }
+            split(tid, first, h, dirtied);
+        }
+    }
+
+    /**
+     * Splits the bucket starting at page first, which the hash h belongs
+     * to, on the bit after its local depth, doubling the directory first if
+     * the bucket is as deep as the directory.
+     */
+    private void split(TransactionId tid, int first, int h, ArrayList<Page> dirtied)
+            throws DbException, IOException, TransactionAbortedException
+    {
+        HashMetaPage meta = (HashMetaPage) getDirtyPage(tid, 0, dirtied);
+        HashBucketPage bucket = (HashBucketPage) getDirtyPage(tid, first, dirtied);
+        int l = bucket.getLocalDepth();
+        if (l == meta.getGlobalDepth())
+        {
+            meta.setGlobalDepth(l + 1);
+        }
+        int d = meta.getGlobalDepth();
+
+        ArrayList<Tuple> stay = new ArrayList<Tuple>();
+        ArrayList<Tuple> move = new ArrayList<Tuple>();
+        for (int pageno = first; pageno != 0; )
+        {
+            HashBucketPage p = (HashBucketPage) getDirtyPage(tid, pageno, dirtied);
+            for (Tuple u : p.getTuples())
+            {
+                ((hash(u.getField(keyField)) >>> l & 1) == 0 ? stay : move).add(u);
+            }
+            pageno = p.getNext();
+        }
+        HashBucketPage image = newBucket(tid, dirtied);
+        bucket.setLocalDepth(l + 1);
+        image.setLocalDepth(l + 1);
+        fillChain(tid, bucket, stay, dirtied);
+        fillChain(tid, image, move, dirtied);
+
+        // the entries ending with the l + 1 bits of the new bucket; those not
+        // written since the directory doubled follow the lowest of them
+        int low = (h & mask(l)) | (1 << l);
+        for (int i = low; i < (1 << d); i += 1 << (l + 1))
+        {
+            boolean written = meta.getDirectoryPage(i / HashDirectoryPage.ENTRIES) != 0;
+            if (i == low || written && getEntry(tid, meta, i) != 0)
+            {
+                setEntry(tid, meta, i, image.getId().pageno(), dirtied);
+            }
+        }
+    }
+
+    /**
+     * Puts tuples in the chain starting with page, reusing its pages and
+     * adding overflow pages as needed. Pages left over are left empty.
+     */
+    private void fillChain(TransactionId tid, HashBucketPage page, ArrayList<Tuple> tuples, ArrayList<Page> dirtied)
+            throws DbException, IOException, TransactionAbortedException
+    {
+        int max = HashBucketPage.getMaxTuples(td);
+        int from = 0;
+        while (true)
+        {
+            int to = Math.min(tuples.size(), from + max);
+            page.setTuples(tuples.subList(from, to));
+            from = to;
+            if (from == tuples.size())
+            {
+                for (int pageno = page.getNext(); pageno != 0; )
+                {
+                    HashBucketPage p = (HashBucketPage) getDirtyPage(tid, pageno, dirtied);
+                    p.setTuples(new ArrayList<Tuple>());
+                    pageno = p.getNext();
+                }
+                return;
+            }
+            if (page.getNext() == 0)
+            {
+                page.setNext(newBucket(tid, dirtied).getId().pageno());
+            }
+            page = (HashBucketPage) getDirtyPage(tid, page.getNext(), dirtied);
+        }
+    }
+
+    /** Sets entry i of the directory, writing its directory page first if needed. */
+    private void setEntry(TransactionId tid, HashMetaPage meta, int i, int pageno, ArrayList<Page> dirtied)
+            throws DbException, IOException, TransactionAbortedException
+    {
+        int k = i / HashDirectoryPage.ENTRIES;
+        if (meta.getDirectoryPage(k) == 0)
+        {
+            meta.setDirectoryPage(k, newPage(tid, HashDirectoryPage.createPageData(), dirtied).getId().pageno());
+        }
+        HashDirectoryPage dir = (HashDirectoryPage) getDirtyPage(tid, meta.getDirectoryPage(k), dirtied);
+        dir.setEntry(i % HashDirectoryPage.ENTRIES, pageno);
+    }
+
+    private HashBucketPage newBucket(TransactionId tid, ArrayList<Page> dirtied)
+            throws DbException, IOException, TransactionAbortedException
+    {
+        return (HashBucketPage) newPage(tid, HashBucketPage.createEmptyPageData(), dirtied);
+    }
+
+    /**
+     * Appends a page with the image empty to the file, and reads it through
+     * the buffer pool, locked by tid and marked dirty, so that a split
+     * followed by a retry in addTuple sees the same page object.
+     */
+    private HashPage newPage(TransactionId tid, byte[] empty, ArrayList<Page> dirtied)
+            throws DbException, IOException, TransactionAbortedException
+    {
+        int pageno;
+        synchronized (this)
+        {
+            pageno = numPages();
+            writePage(pageno, empty);
+        }
+        return getDirtyPage(tid, pageno, dirtied);
+    }
+
+    /**
+     * Removes a tuple with the same fields as t from the bucket of its key.
+     *
+     * @return the page t was removed from.
+     * @throws DbException if the file holds no such tuple.
+     */
+    public Page deleteTuple(TransactionId tid, Tuple t) throws DbException, TransactionAbortedException
+    {
+        int pageno = bucketOf(tid, t.getField(keyField));
+        while (pageno != 0)
+        {
+            HashBucketPage page = (HashBucketPage) getPage(tid, pageno, Permissions.READ_WRITE);
+            int slot = page.indexOf(t);
+            if (slot >= 0)
+            {
+                page.deleteTuple(slot);
+                return page;
+            }
+            pageno = page.getNext();
+        }
+        throw new DbException("tuple not found in the hash file " + file);
+    }
+}
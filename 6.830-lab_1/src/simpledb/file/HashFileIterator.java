@@ -0,0 +1,112 @@
+package simpledb.file;
+
+import simpledb.Database;
+import simpledb.Permissions;
+import simpledb.TransactionId;
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.page.HashBucketPage;
+import simpledb.page.HashPageId;
+import simpledb.page.Page;
+import simpledb.tuple.Field;
+import simpledb.tuple.Tuple;
+
+/**
+ * Iterates over the tuples of a {@link HashFile}: those of the bucket of a
+ * key that have that key, following its overflow chain, or all of them,
+ * reading the bucket pages in file order. The pages are read locked as they
+ * are read.
+ */
+public class HashFileIterator extends AbstractDbFileIterator {
+
+    private final HashFile file;
+    private final TransactionId tid;
+    private final Field key;
+    private HashBucketPage page;
+    private int slot;
+    // the page read last, in a scan of the whole file
+    private int pageno;
+
+    /**
+     * @param key the key of the tuples to return, or null for all of them.
+     */
+    public HashFileIterator(HashFile file, TransactionId tid, Field key)
+    {
+        this.file = file;
+        this.tid = tid;
+        this.key = key;
+    }
+
+    public void open() throws DbException, TransactionAbortedException
+    {
+        slot = 0;
+        if (key != null)
+        {
+            page = read(file.bucketOf(tid, key));
+        }
+        else
+        {
+            pageno = 0;
+            page = nextBucket();
+        }
+    }
+
+    private HashBucketPage read(int n) throws DbException, TransactionAbortedException
+    {
+        return (HashBucketPage) Database.getBufferPool().getPage(tid, new HashPageId(file.getId(), n),
+                Permissions.READ_ONLY);
+    }
+
+    /** @return the next bucket page after pageno in the file, or null after the last one. */
+    private HashBucketPage nextBucket() throws DbException, TransactionAbortedException
+    {
+        while (++pageno < file.numPages())
+        {
+            Page p = Database.getBufferPool().getPage(tid, new HashPageId(file.getId(), pageno),
+                    Permissions.READ_ONLY);
+            if (p instanceof HashBucketPage)
+            {
+                return (HashBucketPage) p;
+            }
+        }
+        return null;
+    }
+
+    protected Tuple readNext() throws DbException, TransactionAbortedException
+    {
+        while (page != null)
+        {
+            if (slot >= page.getNumTuples())
+            {
+                if (key != null)
+                {
+                    page = page.getNext() == 0 ? null : read(page.getNext());
+                }
+                else
+                {
+                    page = nextBucket();
+                }
+                slot = 0;
+                continue;
+            }
+            int i = slot++;
+            if (key == null || key.equals(page.getField(i, file.keyField())))
+            {
+                return page.getTuple(i);
+            }
+        }
+        return null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException
+    {
+        close();
+        open();
+    }
+
+    public void close()
+    {
+        super.close();
+        page = null;
+    }
+}
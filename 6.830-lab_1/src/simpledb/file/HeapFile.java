@@ -17,6 +17,7 @@ import simpledb.page.HeapPage;
 import simpledb.page.HeapPageId;
 import simpledb.page.Page;
 import simpledb.page.PageId;
+import simpledb.tuple.Field;
 import simpledb.tuple.Tuple;
 import simpledb.tuple.TupleDesc;
 
@@ -136,6 +137,26 @@ public class HeapFile implements DbFile {
 		}
 	}
 
+	/**
+	 * Writes the images of n consecutive pages, starting with page number
+	 * first, in one write. The file grows if they are past its end.
+	 * 
+	 * @param data the page images, one after the other.
+	 */
+	public void writePages(int first, byte[] data, int n) throws IOException
+	{
+		RandomAccessFile randomAcc = new RandomAccessFile(fileOnDisk, "rw");
+		try
+		{
+			randomAcc.seek((long) first * BufferPool.PAGE_SIZE);
+			randomAcc.write(data, 0, n * BufferPool.PAGE_SIZE);
+		}
+		finally
+		{
+			closeRandomFile(randomAcc);
+		}
+	}
+
 	/**
 	 * Returns the number of pages in this HeapFile.
 	 */
@@ -176,7 +197,8 @@ public class HeapFile implements DbFile {
 		return pages;
 	}
 
-	private PageId addEmptyPage(byte[] data) throws IOException
+	// synchronized with the appends of BufferPool.appendPages
+	private synchronized PageId addEmptyPage(byte[] data) throws IOException
 	{
 		FileOutputStream fos = null;
 		int lastPageNum = numPages() - 1;
@@ -214,6 +236,43 @@ public class HeapFile implements DbFile {
 		return p;
 	}
 
+	/**
+	 * Deletes the tuples in slots[from..to) of one page, which is fetched
+	 * through the buffer pool, and so locked, once for all of them.
+	 * 
+	 * @return the page the tuples were deleted from.
+	 */
+	public Page deleteTuples(TransactionId tid, int pageno, int[] slots, int from, int to)
+			throws DbException, TransactionAbortedException
+	{
+		PageId pageId = new HeapPageId(tableId, pageno);
+		HeapPage p = (HeapPage) Database.getBufferPool().getPage(tid, pageId, Permissions.READ_WRITE);
+		for (int i = from; i < to; i++)
+		{
+			p.deleteSlot(slots[i]);
+		}
+		return p;
+	}
+
+	/**
+	 * Overwrites fields of the tuples in slots[from..to) of one page in place,
+	 * fetching and locking the page once for all of them.
+	 * 
+	 * @return the page the tuples were updated on.
+	 * @see HeapPage#updateSlot
+	 */
+	public Page updateTuples(TransactionId tid, int pageno, int[] slots, int from, int to, int[] fields,
+			Field[] values) throws DbException, TransactionAbortedException
+	{
+		PageId pageId = new HeapPageId(tableId, pageno);
+		HeapPage p = (HeapPage) Database.getBufferPool().getPage(tid, pageId, Permissions.READ_WRITE);
+		for (int i = from; i < to; i++)
+		{
+			p.updateSlot(slots[i], fields, values);
+		}
+		return p;
+	}
+
 	// see DbFile.java for javadocs
 	public DbFileIterator iterator(TransactionId tid) {
 		return new HeapFileIterator(this, tid);
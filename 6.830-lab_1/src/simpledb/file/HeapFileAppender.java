@@ -0,0 +1,141 @@
+package simpledb.file;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.tuple.IntField;
+import simpledb.tuple.StringField;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
+import simpledb.tuple.Type;
+
+/**
+ * HeapFileAppender loads rows into a heap file in bulk. Rather than looking
+ * for a free slot in the existing pages for every row, as
+ * {@link HeapFile#addTuple} does, it serializes rows straight into fresh
+ * page images, in the format of {@link simpledb.page.HeapPage}, and appends
+ * them to the end of the file PAGES_PER_WRITE pages at a time through
+ * {@link BufferPool#appendPages}, which locks and logs each page once.
+ * <p>
+ * Free space left in the existing pages is not reused. Rows added are only
+ * in the file once they have been written, when a run of pages fills up or
+ * on {@link #flush}.
+ */
+public class HeapFileAppender {
+
+    /** Number of pages appended with each write. */
+    public static final int PAGES_PER_WRITE = 64;
+
+    private final TransactionId tid;
+    private final HeapFile file;
+    private final TupleDesc td;
+    private final int slots;
+    private final int headerSize;
+    private final int tupleSize;
+    private final byte[] buffer = new byte[PAGES_PER_WRITE * BufferPool.PAGE_SIZE];
+
+    // pages started in buffer, the last one being filled
+    private int pages;
+    // next free slot of the last page
+    private int slot;
+    private int rows;
+    private int pagesWritten;
+
+    /**
+     * Creates an appender adding rows to file on behalf of tid.
+     */
+    public HeapFileAppender(TransactionId tid, HeapFile file)
+    {
+        this.tid = tid;
+        this.file = file;
+        td = file.getTupleDesc();
+        tupleSize = td.getSize();
+        slots = (BufferPool.PAGE_SIZE * 8) / (tupleSize * 8 + 1);
+        headerSize = (slots + 7) / 8;
+    }
+
+    /** @return the number of rows added so far. */
+    public int getRowsAdded()
+    {
+        return rows;
+    }
+
+    /** @return the number of pages appended to the file so far. */
+    public int getPagesWritten()
+    {
+        return pagesWritten;
+    }
+
+    /** Adds a physical row of batch, which must have the schema of the file. */
+    public void add(TupleBatch batch, int row) throws IOException, DbException, TransactionAbortedException
+    {
+        int off = nextSlot();
+        for (int i = 0; i < td.numFields(); i++)
+        {
+            if (td.getType(i) == Type.INT_TYPE)
+            {
+                IntField.write(buffer, off, batch.getInt(i, row));
+            }
+            else
+            {
+                StringField.write(buffer, off, ((StringField) batch.getField(i, row)).getValue(), Type.STRING_LEN);
+            }
+            off += td.getType(i).getLen();
+        }
+    }
+
+    /** Adds t, which must have the schema of the file. */
+    public void add(Tuple t) throws IOException, DbException, TransactionAbortedException
+    {
+        int off = nextSlot();
+        for (int i = 0; i < td.numFields(); i++)
+        {
+            if (td.getType(i) == Type.INT_TYPE)
+            {
+                IntField.write(buffer, off, ((IntField) t.getField(i)).getValue());
+            }
+            else
+            {
+                StringField.write(buffer, off, ((StringField) t.getField(i)).getValue(), Type.STRING_LEN);
+            }
+            off += td.getType(i).getLen();
+        }
+    }
+
+    /** Appends the pages started so far to the file. */
+    public void flush() throws IOException, DbException, TransactionAbortedException
+    {
+        if (pages == 0)
+        {
+            return;
+        }
+        Database.getBufferPool().appendPages(tid, file, buffer, pages);
+        pagesWritten += pages;
+        Arrays.fill(buffer, 0, pages * BufferPool.PAGE_SIZE, (byte) 0);
+        pages = 0;
+    }
+
+    /** Takes the next slot, starting a page if needed. @return the offset of its record in buffer. */
+    private int nextSlot() throws IOException, DbException, TransactionAbortedException
+    {
+        if (pages == 0 || slot == slots)
+        {
+            if (pages == PAGES_PER_WRITE)
+            {
+                flush();
+            }
+            pages++;
+            slot = 0;
+        }
+        int base = (pages - 1) * BufferPool.PAGE_SIZE;
+        buffer[base + slot / 8] |= 1 << (slot % 8);
+        rows++;
+        return base + headerSize + tupleSize * slot++;
+    }
+}
@@ -10,8 +10,10 @@ import simpledb.TransactionId;
 import simpledb.exceptions.DbException;
 import simpledb.exceptions.TransactionAbortedException;
 import simpledb.page.HeapPage;
+import simpledb.predicates.CompiledPredicate;
 import simpledb.page.HeapPageId;
 import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
 
 public class HeapFileIterator implements DbFileIterator {
 
@@ -22,6 +24,9 @@ public class HeapFileIterator implements DbFileIterator {
 	private HeapFile heapFile;
 	private boolean isOpen = false; 
 	private TransactionId tid;
+	private int batchPageNo;
+	private int batchSlot;
+	private CompiledPredicate[] filters;
 	
 	public HeapFileIterator(HeapFile heapFile, TransactionId tid)
 	{
@@ -29,15 +34,34 @@ public class HeapFileIterator implements DbFileIterator {
 		this.tid = tid;
 	}
 	
+	/**
+	 * Makes this iterator only return the tuples that satisfy every one of
+	 * filters, which are evaluated on the pages before the tuples are
+	 * decoded. Must be called before open.
+	 * @param filters the predicates to apply, or null.
+	 * @see HeapPage#iterator(CompiledPredicate[])
+	 */
+	public void setFilters(CompiledPredicate[] filters)
+	{
+		this.filters = filters;
+	}
+
+	private Iterator<Tuple> tuplesOf(HeapPage page)
+	{
+		return filters == null ? page.iterator() : page.iterator(filters);
+	}
+
 	@Override
 	public void open() throws DbException, TransactionAbortedException 
 	{
 		if (heapFile.numPages() > 0)
 		{
 			isOpen = true;
+			batchPageNo = 0;
+			batchSlot = 0;
 			currentPageId = new HeapPageId(heapFile.getId(), 0);
 			HeapPage page = (HeapPage) pool.getPage(tid, currentPageId, Permissions.READ_ONLY);
-			currentTupleIter = page.iterator();
+			currentTupleIter = tuplesOf(page);
 		}
 		else
 		{
@@ -52,7 +76,18 @@ public class HeapFileIterator implements DbFileIterator {
 		{
 			return false;
 		}
-		return currentTupleIter.hasNext() ;
+		// skip over the pages with no tuple left to return
+		while (!currentTupleIter.hasNext())
+		{
+			if (currentPageId.pageno() >= heapFile.numPages() - 1)
+			{
+				return false;
+			}
+			currentPageId = new HeapPageId(heapFile.getId(), currentPageId.pageno() + 1);
+			HeapPage page = (HeapPage) pool.getPage(tid, currentPageId, Permissions.READ_ONLY);
+			currentTupleIter = tuplesOf(page);
+		}
+		return true;
 	}
 
 	@Override
@@ -62,18 +97,11 @@ public class HeapFileIterator implements DbFileIterator {
 		{
 			throw new NoSuchElementException("this DbFileIterator is closed");
 		}
-		Tuple nextTuple =  currentTupleIter.next();
-		if (!currentTupleIter.hasNext())
+		if (!hasNext())
 		{
-			// read next page
-			if (currentPageId.pageno() < heapFile.numPages() - 1)
-			{
-				currentPageId = new HeapPageId(heapFile.getId(), currentPageId.pageno() + 1);
-				HeapPage page = (HeapPage) pool.getPage(tid, currentPageId, Permissions.READ_ONLY);
-				currentTupleIter = page.iterator();
-			}
+			throw new NoSuchElementException();
 		}
-		return nextTuple;
+		return currentTupleIter.next();
 	}
 
 	@Override
@@ -83,9 +111,51 @@ public class HeapFileIterator implements DbFileIterator {
 		{
 			throw new NoSuchElementException("this DbFileIterator is closed");
 		}
+		batchPageNo = 0;
+		batchSlot = 0;
 		currentPageId = new HeapPageId(heapFile.getId(), 0);
 		HeapPage page = (HeapPage) pool.getPage(tid, currentPageId, Permissions.READ_ONLY);
-		currentTupleIter = page.iterator();
+		currentTupleIter = tuplesOf(page);
+	}
+
+	/**
+	 * Appends the next tuples of the file to batch until either the batch is
+	 * full or the last page has been read. This and hasNext/next must not be
+	 * mixed between an open/rewind and the next rewind/close.
+	 * @return the number of tuples appended; 0 once the file has been read.
+	 */
+	public int fillBatch(TupleBatch batch) throws DbException, TransactionAbortedException
+	{
+		return fillBatch(batch, null);
+	}
+
+	/**
+	 * Like {@link #fillBatch(TupleBatch)}, but only decodes the given fields.
+	 * Only the tuples passing the filters set with {@link #setFilters} are
+	 * appended.
+	 * @param fields the fields to decode, or null for all of them.
+	 * @see HeapPage#fillBatch(TupleBatch, int, int[])
+	 */
+	public int fillBatch(TupleBatch batch, int[] fields) throws DbException, TransactionAbortedException
+	{
+		if (!isOpen)
+		{
+			throw new NoSuchElementException("this DbFileIterator is closed");
+		}
+		int before = batch.size();
+		int numPages = heapFile.numPages();
+		while (!batch.isFull() && batchPageNo < numPages)
+		{
+			HeapPageId pid = new HeapPageId(heapFile.getId(), batchPageNo);
+			HeapPage page = (HeapPage) pool.getPage(tid, pid, Permissions.READ_ONLY);
+			batchSlot = page.fillBatch(batch, batchSlot, fields, filters);
+			if (!batch.isFull())
+			{
+				batchPageNo++;
+				batchSlot = 0;
+			}
+		}
+		return batch.size() - before;
 	}
 
 	@Override
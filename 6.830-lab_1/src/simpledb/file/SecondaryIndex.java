@@ -0,0 +1,382 @@
+package simpledb.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+import simpledb.Database;
+import simpledb.Permissions;
+import simpledb.RecordId;
+import simpledb.TransactionId;
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.page.BTreePage;
+import simpledb.page.HeapPage;
+import simpledb.page.HeapPageId;
+import simpledb.tuple.Field;
+import simpledb.tuple.IntField;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleDesc;
+import simpledb.tuple.Type;
+
+/**
+ * A secondary index on one field of a table stored in a {@link HeapFile}.
+ * It is a {@link BTreeFile} of entries (key, page number, slot), sorted by
+ * key, one for each tuple of the table, which give the record id of the
+ * tuple.
+ * <p>
+ * A covering index also holds the values of some other fields of the
+ * tuples, its included fields, between the key and the page number:
+ * queries only reading the key and included fields are answered from the
+ * entries alone, by {@link #coveringIterator}, without reading the table.
+ * <p>
+ * The index file is a table of the catalog in its own right, so that its
+ * pages go through the buffer pool: entries are inserted and deleted with
+ * {@link simpledb.BufferPool#insertTuple} and
+ * {@link simpledb.BufferPool#deleteTuple} on behalf of the transaction
+ * changing the table, which locks and logs the index pages along with the
+ * pages of the table, and rolls both back together.
+ *
+ * @see simpledb.Catalog#addIndex
+ */
+public class SecondaryIndex {
+
+    private final String name;
+    private final int tableid;
+    private final int field;
+    private final int[] included;
+    private final BTreeFile file;
+
+    /**
+     * @param tableid the indexed table, stored in a HeapFile.
+     * @param field the index of the indexed field in the table.
+     * @param file a B+ tree of entries with the TupleDesc given by
+     *        {@link #entryDesc}, keyed on field 0.
+     */
+    public SecondaryIndex(String name, int tableid, int field, BTreeFile file)
+    {
+        this(name, tableid, field, new int[0], file);
+    }
+
+    /**
+     * Creates a covering index.
+     *
+     * @param included the indexes of the fields of the table held by the
+     *        entries, other than field.
+     * @param file a B+ tree of entries with the TupleDesc given by
+     *        {@link #entryDesc(TupleDesc, int, int[])}, keyed on field 0.
+     */
+    public SecondaryIndex(String name, int tableid, int field, int[] included, BTreeFile file)
+    {
+        this.name = name;
+        this.tableid = tableid;
+        this.field = field;
+        this.included = included.clone();
+        this.file = file;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /** @return the id of the indexed table. */
+    public int getTableId()
+    {
+        return tableid;
+    }
+
+    /** @return the index of the indexed field in the table. */
+    public int getField()
+    {
+        return field;
+    }
+
+    /** @return the indexes of the included fields of the table, other than the indexed one. */
+    public int[] getIncluded()
+    {
+        return included.clone();
+    }
+
+    /** @return true if the entries hold field i of the tuples of the table. */
+    public boolean holds(int i)
+    {
+        if (i == field)
+        {
+            return true;
+        }
+        for (int f : included)
+        {
+            if (f == i)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** @return true if the entries hold every field of the table set in fields. */
+    public boolean covers(boolean[] fields)
+    {
+        for (int i = 0; i < fields.length; i++)
+        {
+            if (fields[i] && !holds(i))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public BTreeFile getFile()
+    {
+        return file;
+    }
+
+    /** @return the TupleDesc of the entries of an index on a field of td. */
+    public static TupleDesc entryDesc(TupleDesc td, int field)
+    {
+        return entryDesc(td, field, new int[0]);
+    }
+
+    /** @return the TupleDesc of the entries of a covering index on a field of td. */
+    public static TupleDesc entryDesc(TupleDesc td, int field, int[] included)
+    {
+        Type[] types = new Type[included.length + 3];
+        String[] names = new String[included.length + 3];
+        types[0] = td.getType(field);
+        names[0] = td.getFieldName(field);
+        for (int i = 0; i < included.length; i++)
+        {
+            types[i + 1] = td.getType(included[i]);
+            names[i + 1] = td.getFieldName(included[i]);
+        }
+        types[included.length + 1] = Type.INT_TYPE;
+        names[included.length + 1] = "pageno";
+        types[included.length + 2] = Type.INT_TYPE;
+        names[included.length + 2] = "slot";
+        return new TupleDesc(types, names);
+    }
+
+    /** @return the entry for t, which must have its record id set. */
+    public Tuple entry(Tuple t)
+    {
+        return entry(file.getTupleDesc(), t, field, included);
+    }
+
+    private static Tuple entry(TupleDesc entryDesc, Tuple t, int field, int[] included)
+    {
+        RecordId rid = t.getRecordId();
+        Tuple e = new Tuple(entryDesc);
+        e.setField(0, t.getField(field));
+        for (int i = 0; i < included.length; i++)
+        {
+            e.setField(i + 1, t.getField(included[i]));
+        }
+        e.setField(included.length + 1, new IntField(rid.getPageId().pageno()));
+        e.setField(included.length + 2, new IntField(rid.tupleno()));
+        return e;
+    }
+
+    /** @return true if the entries for a and b differ, apart from their record ids. */
+    public boolean entryChanges(Tuple a, Tuple b)
+    {
+        if (!a.getField(field).equals(b.getField(field)))
+        {
+            return true;
+        }
+        for (int f : included)
+        {
+            if (!a.getField(f).equals(b.getField(f)))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** @return the record id of the tuple of the table an entry points to. */
+    public RecordId getRecordId(Tuple entry)
+    {
+        return new RecordId(new HeapPageId(tableid, ((IntField) entry.getField(included.length + 1)).getValue()),
+                ((IntField) entry.getField(included.length + 2)).getValue());
+    }
+
+    /**
+     * @return a tuple of the table with the fields an entry holds, and the
+     *         record id it points to; its other fields are not set.
+     * @param td the TupleDesc of the table.
+     */
+    public Tuple tupleOf(TupleDesc td, Tuple entry)
+    {
+        Tuple t = new Tuple(td);
+        t.setField(field, entry.getField(0));
+        for (int i = 0; i < included.length; i++)
+        {
+            t.setField(included[i], entry.getField(i + 1));
+        }
+        t.setRecordId(getRecordId(entry));
+        return t;
+    }
+
+    /** Adds the entry for t, just added to the table by tid. */
+    public void insert(TransactionId tid, Tuple t) throws DbException, IOException, TransactionAbortedException
+    {
+        Database.getBufferPool().insertTuple(tid, file.getId(), entry(t));
+    }
+
+    /** Removes the entry for t, about to be deleted from the table by tid. */
+    public void delete(TransactionId tid, Tuple t) throws DbException, TransactionAbortedException
+    {
+        Database.getBufferPool().deleteTuple(tid, file.getId(), entry(t));
+    }
+
+    /**
+     * @return an iterator over the tuples of the table with keys between low
+     *         and high, in key order, each read from its page of the table.
+     *         The matching entries are all read when the iterator is opened,
+     *         so that tid may change the table, and so the index, before
+     *         reaching the end.
+     * @param low the lowest key, or null for no lower bound.
+     * @param high the highest key, or null for no upper bound.
+     */
+    public DbFileIterator iterator(final TransactionId tid, Field low, boolean lowInclusive, Field high,
+            boolean highInclusive)
+    {
+        final DbFileIterator entries = file.rangeIterator(tid, low, lowInclusive, high, highInclusive);
+        return new AbstractDbFileIterator() {
+            private ArrayList<RecordId> rids;
+            private int next;
+
+            public void open() throws DbException, TransactionAbortedException
+            {
+                rids = new ArrayList<RecordId>();
+                next = 0;
+                entries.open();
+                while (entries.hasNext())
+                {
+                    rids.add(getRecordId(entries.next()));
+                }
+                entries.close();
+            }
+
+            protected Tuple readNext() throws DbException, TransactionAbortedException
+            {
+                if (rids == null || next == rids.size())
+                {
+                    return null;
+                }
+                RecordId rid = rids.get(next++);
+                HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, rid.getPageId(),
+                        Permissions.READ_ONLY);
+                return page.getTuple(rid.tupleno());
+            }
+
+            public void rewind() throws DbException, TransactionAbortedException
+            {
+                close();
+                open();
+            }
+
+            public void close()
+            {
+                super.close();
+                rids = null;
+            }
+        };
+    }
+
+    /**
+     * @return an iterator over the tuples of the table with keys between low
+     *         and high, in key order, as given by {@link #tupleOf}: only the
+     *         fields the entries hold are set, and the table is not read.
+     *         The entries are read as the tuples are, so a query must not
+     *         change the index through this iterator; the planner only
+     *         reads covering indexes for queries, not for DELETE or UPDATE.
+     */
+    public DbFileIterator coveringIterator(TransactionId tid, Field low, boolean lowInclusive, Field high,
+            boolean highInclusive)
+    {
+        final DbFileIterator entries = file.rangeIterator(tid, low, lowInclusive, high, highInclusive);
+        return new AbstractDbFileIterator() {
+            private TupleDesc td;
+
+            public void open() throws DbException, TransactionAbortedException
+            {
+                td = Database.getCatalog().getTupleDesc(tableid);
+                entries.open();
+            }
+
+            protected Tuple readNext() throws DbException, TransactionAbortedException
+            {
+                if (td == null || !entries.hasNext())
+                {
+                    return null;
+                }
+                return tupleOf(td, entries.next());
+            }
+
+            public void rewind() throws DbException, TransactionAbortedException
+            {
+                super.close();
+                entries.rewind();
+            }
+
+            public void close()
+            {
+                super.close();
+                entries.close();
+                td = null;
+            }
+        };
+    }
+
+    /**
+     * Builds an index on a field of a table in f, from the tuples tid reads
+     * from the table: their entries are sorted in memory, and then written
+     * with {@link BTreeFile#bulkLoad}. The index is not registered in the
+     * catalog.
+     *
+     * @throws DbException if the table is not stored in a HeapFile.
+     */
+    public static SecondaryIndex create(TransactionId tid, String name, int tableid, int field, File f)
+            throws DbException, IOException, TransactionAbortedException
+    {
+        return create(tid, name, tableid, field, new int[0], f);
+    }
+
+    /**
+     * Builds a covering index, as {@link #create(TransactionId, String, int, int, File)} does.
+     *
+     * @param included the fields of the table the entries hold, besides field.
+     */
+    public static SecondaryIndex create(TransactionId tid, String name, int tableid, int field, int[] included,
+            File f) throws DbException, IOException, TransactionAbortedException
+    {
+        DbFile table = Database.getCatalog().getDbFile(tableid);
+        if (!(table instanceof HeapFile))
+        {
+            throw new DbException("only tables stored in heap files can be indexed");
+        }
+        TupleDesc entryDesc = entryDesc(table.getTupleDesc(), field, included);
+        ArrayList<Tuple> entries = new ArrayList<Tuple>();
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        while (it.hasNext())
+        {
+            entries.add(entry(entryDesc, it.next(), field, included));
+        }
+        it.close();
+        // stable, so that equal keys stay in the order of their tuples
+        Collections.sort(entries, new Comparator<Tuple>() {
+            public int compare(Tuple a, Tuple b)
+            {
+                return BTreePage.compare(a.getField(0), b.getField(0));
+            }
+        });
+        return new SecondaryIndex(name, tableid, field, included,
+                BTreeFile.bulkLoad(f, entryDesc, 0, entries));
+    }
+}
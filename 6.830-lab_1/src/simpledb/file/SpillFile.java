@@ -0,0 +1,267 @@
+package simpledb.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import simpledb.Database;
+import simpledb.exceptions.DbException;
+import simpledb.tuple.Field;
+import simpledb.tuple.IntField;
+import simpledb.tuple.StringField;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
+import simpledb.tuple.Type;
+
+/**
+ * SpillFile is a temporary file that operators write rows to when they run
+ * out of memory, and read back later in batches.
+ * <p>
+ * Rows are appended with a one byte tag the operator may use as it likes,
+ * and can only be read after every row has been written; the first read
+ * or {@link #rewind} ends the writing, and later rewinds read them again.
+ * Rows are stored compactly: ints in 4 bytes, and strings as their length
+ * and characters, without the padding of their page format. They go
+ * through a buffer of BUFFER_SIZE bytes and a FileChannel.
+ * <p>
+ * The file is created by the {@link TempFileManager} of the database, which
+ * counts the bytes written, and deleted by {@link #delete}.
+ */
+public class SpillFile {
+
+    /** Size of the buffer rows are written and read through. */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private final TupleDesc td;
+    private final TempFileManager manager;
+    private final File file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    // the longest a row can take, tag included
+    private final int maxRowSize;
+    private boolean writing = true;
+    private long readPosition;
+    private int rows;
+    private long bytes;
+
+    /**
+     * Creates an empty spill file.
+     * @param td the schema of the rows written to the file.
+     */
+    public SpillFile(TupleDesc td) throws DbException
+    {
+        this.td = td;
+        manager = Database.getTempFileManager();
+        int size = 1;
+        for (int i = 0; i < td.numFields(); i++)
+        {
+            size += td.getType(i).getLen();
+        }
+        maxRowSize = size;
+        try
+        {
+            file = manager.create("spill");
+            channel = new RandomAccessFile(file, "rw").getChannel();
+        }
+        catch (IOException e)
+        {
+            throw new DbException("cannot create a spill file: " + e);
+        }
+    }
+
+    /** @return the number of rows written to this file. */
+    public int size()
+    {
+        return rows;
+    }
+
+    /** @return the number of bytes written to this file. */
+    public long getBytes()
+    {
+        return bytes;
+    }
+
+    /** Appends a row given by its fields. */
+    public void write(Field[] fields, byte tag) throws DbException
+    {
+        startRow(tag);
+        for (int i = 0; i < fields.length; i++)
+        {
+            if (td.getType(i) == Type.INT_TYPE)
+            {
+                buffer.putInt(((IntField) fields[i]).getValue());
+            }
+            else
+            {
+                putString(((StringField) fields[i]).getValue());
+            }
+        }
+    }
+
+    /** Appends a physical row of batch. */
+    public void write(TupleBatch batch, int row, byte tag) throws DbException
+    {
+        startRow(tag);
+        for (int i = 0; i < td.numFields(); i++)
+        {
+            if (td.getType(i) == Type.INT_TYPE)
+            {
+                buffer.putInt(batch.getInt(i, row));
+            }
+            else
+            {
+                putString(((StringField) batch.getField(i, row)).getValue());
+            }
+        }
+    }
+
+    /**
+     * Clears batch and fills it with the next rows of the file.
+     *
+     * @param batch a batch with the schema of this file.
+     * @param tags receives the tag of every physical row of batch, or null.
+     * @return batch, or null once every row has been read.
+     */
+    public TupleBatch read(TupleBatch batch, byte[] tags) throws DbException
+    {
+        if (writing)
+        {
+            rewind();
+        }
+        batch.clear();
+        while (!batch.isFull())
+        {
+            fill();
+            if (!buffer.hasRemaining())
+            {
+                break;
+            }
+            byte tag = buffer.get();
+            int row = batch.addRow();
+            for (int i = 0; i < td.numFields(); i++)
+            {
+                if (td.getType(i) == Type.INT_TYPE)
+                {
+                    batch.setInt(i, row, buffer.getInt());
+                }
+                else
+                {
+                    batch.setField(i, row, new StringField(getString(), Type.STRING_LEN));
+                }
+            }
+            if (tags != null)
+            {
+                tags[row] = tag;
+            }
+        }
+        return batch.size() == 0 ? null : batch;
+    }
+
+    /** Ends the writing, if not done yet, and makes the next read start from the first row. */
+    public void rewind() throws DbException
+    {
+        if (writing)
+        {
+            flush();
+            writing = false;
+        }
+        readPosition = 0;
+        buffer.clear();
+        buffer.limit(0);
+    }
+
+    /** Closes and deletes the file. */
+    public void delete()
+    {
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            // the file is deleted anyway
+        }
+        manager.delete(file);
+    }
+
+    private void startRow(byte tag) throws DbException
+    {
+        if (!writing)
+        {
+            throw new IllegalStateException("spill file already read");
+        }
+        if (buffer.remaining() < maxRowSize)
+        {
+            flush();
+        }
+        buffer.put(tag);
+        rows++;
+    }
+
+    private void putString(String s)
+    {
+        int len = Math.min(s.length(), Type.STRING_LEN);
+        buffer.putInt(len);
+        for (int i = 0; i < len; i++)
+        {
+            buffer.put((byte) s.charAt(i));
+        }
+    }
+
+    private String getString()
+    {
+        int len = buffer.getInt();
+        char[] chars = new char[len];
+        for (int i = 0; i < len; i++)
+        {
+            chars[i] = (char) (buffer.get() & 0xff);
+        }
+        return new String(chars);
+    }
+
+    /** Writes out the rows in the buffer. */
+    private void flush() throws DbException
+    {
+        buffer.flip();
+        int n = buffer.remaining();
+        try
+        {
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new DbException("cannot write a spill file: " + e);
+        }
+        buffer.clear();
+        bytes += n;
+        manager.written(file, n);
+    }
+
+    /** Reads more of the file unless the buffer holds a whole row, or the rest of the file. */
+    private void fill() throws DbException
+    {
+        if (buffer.remaining() >= maxRowSize)
+        {
+            return;
+        }
+        buffer.compact();
+        try
+        {
+            int n;
+            while (buffer.hasRemaining() && (n = channel.read(buffer, readPosition)) > 0)
+            {
+                readPosition += n;
+            }
+        }
+        catch (IOException e)
+        {
+            throw new DbException("cannot read a spill file: " + e);
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,171 @@
+package simpledb.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import simpledb.TransactionId;
+
+/**
+ * TempFileManager hands out the scratch files operators spill to, such as
+ * {@link SpillFile}s, in one directory, and keeps count of what they write.
+ * <p>
+ * Every file belongs to the transaction whose query runs in the thread that
+ * creates it, as set by {@link #setOwner}; {@link simpledb.WorkerPool} passes
+ * the owner on to the workers of parallel operators. Files are deleted by
+ * their operator when it closes, and those still left when their
+ * transaction commits or aborts are deleted by {@link #release}. Any
+ * others are deleted when the VM exits.
+ * <p>
+ * The directory is the system property simpledb.tmpdir, or java.io.tmpdir.
+ */
+public class TempFileManager {
+
+    private File directory;
+    private final ThreadLocal<TransactionId> owner = new ThreadLocal<TransactionId>();
+
+    // files not deleted yet, and the transaction each belongs to, or null
+    private final Map<File, TransactionId> open = new HashMap<File, TransactionId>();
+    // bytes spilled by every transaction that owns files
+    private final Map<TransactionId, Long> spilledBy = new HashMap<TransactionId, Long>();
+    private long bytesSpilled;
+    private long filesCreated;
+
+    public TempFileManager()
+    {
+        directory = new File(System.getProperty("simpledb.tmpdir", System.getProperty("java.io.tmpdir")));
+    }
+
+    /** @return the directory temporary files are created in. */
+    public synchronized File getDirectory()
+    {
+        return directory;
+    }
+
+    /** Creates later temporary files in dir, which is created if needed. */
+    public synchronized void setDirectory(File dir) throws IOException
+    {
+        if (!dir.isDirectory() && !dir.mkdirs())
+        {
+            throw new IOException("cannot create temporary directory " + dir);
+        }
+        directory = dir;
+    }
+
+    /** Makes tid, or no transaction if null, own the files the calling thread creates. */
+    public void setOwner(TransactionId tid)
+    {
+        if (tid == null)
+        {
+            owner.remove();
+        }
+        else
+        {
+            owner.set(tid);
+        }
+    }
+
+    /** @return the transaction owning the files the calling thread creates, or null. */
+    public TransactionId getOwner()
+    {
+        return owner.get();
+    }
+
+    /**
+     * Creates an empty temporary file, owned by the owner of the calling thread.
+     * @param prefix the start of the file name.
+     */
+    public File create(String prefix) throws IOException
+    {
+        File dir;
+        synchronized (this)
+        {
+            dir = directory;
+        }
+        File f = File.createTempFile(prefix, ".tmp", dir);
+        f.deleteOnExit();
+        synchronized (this)
+        {
+            open.put(f, owner.get());
+            filesCreated++;
+        }
+        return f;
+    }
+
+    /** Counts n bytes written to f. */
+    public synchronized void written(File f, long n)
+    {
+        bytesSpilled += n;
+        TransactionId tid = open.get(f);
+        if (tid != null)
+        {
+            Long spilled = spilledBy.get(tid);
+            spilledBy.put(tid, (spilled == null ? 0 : spilled) + n);
+        }
+    }
+
+    /** Deletes f, a file created by this manager. */
+    public void delete(File f)
+    {
+        synchronized (this)
+        {
+            open.remove(f);
+        }
+        f.delete();
+    }
+
+    /**
+     * Deletes the files tid still owns and forgets its counts. Called when
+     * tid commits or aborts.
+     */
+    public void release(TransactionId tid)
+    {
+        ArrayList<File> left = new ArrayList<File>();
+        synchronized (this)
+        {
+            spilledBy.remove(tid);
+            for (Map.Entry<File, TransactionId> e : open.entrySet())
+            {
+                if (tid.equals(e.getValue()))
+                {
+                    left.add(e.getKey());
+                }
+            }
+            for (File f : left)
+            {
+                open.remove(f);
+            }
+        }
+        for (File f : left)
+        {
+            f.delete();
+        }
+    }
+
+    /** @return the number of bytes written to temporary files so far. */
+    public synchronized long getBytesSpilled()
+    {
+        return bytesSpilled;
+    }
+
+    /** @return the number of bytes written to the files of tid, while it runs. */
+    public synchronized long getBytesSpilled(TransactionId tid)
+    {
+        Long spilled = spilledBy.get(tid);
+        return spilled == null ? 0 : spilled;
+    }
+
+    /** @return the number of temporary files created so far. */
+    public synchronized long getFilesCreated()
+    {
+        return filesCreated;
+    }
+
+    /** @return the number of temporary files not deleted yet. */
+    public synchronized int getOpenFiles()
+    {
+        return open.size();
+    }
+}
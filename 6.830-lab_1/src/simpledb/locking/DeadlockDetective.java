@@ -12,7 +12,8 @@ public class DeadlockDetective
     DeadlockDependencyList dependencyList;
 
     public DeadlockDetective(DeadlockDependencyList list) {
-        timer = new Timer();
+        // a daemon, so that it does not keep the VM alive once the program ends
+        timer = new Timer(true);
         dependencyList = list;
     }
     
@@ -21,6 +21,9 @@ public class LogicalJoinNode {
     /** The join predicate */
     public Predicate.Op p;
 
+    /** Whether t2 is read through an index on f2, looked up for each tuple of t1 */
+    public boolean indexProbe;
+
     public LogicalJoinNode() {
     }
 
@@ -51,8 +54,16 @@ public class LogicalJoinNode {
         return j2;
     }
     
+    /** Return a copy of this LogicalJoinNode that reads t2 through an
+     * index on f2; see {@link #indexProbe}. */
+    public LogicalJoinNode withIndexProbe() {
+        LogicalJoinNode j = new LogicalJoinNode(t1, t2, f1, f2, p);
+        j.indexProbe = true;
+        return j;
+    }
+
     @Override public boolean equals(Object o) {
-        if(o == null)
+        if(o == null || o instanceof LogicalSubplanJoinNode)
         {
         	return false;
         }
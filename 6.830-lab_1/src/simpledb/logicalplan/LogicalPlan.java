@@ -1,7 +1,9 @@
 package simpledb.logicalplan;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Vector;
@@ -11,15 +13,24 @@ import simpledb.Database;
 import simpledb.TransactionId;
 import simpledb.aggregates.Aggregator;
 import simpledb.exceptions.ParsingException;
+import simpledb.file.DbFile;
 import simpledb.file.HeapFile;
 import simpledb.operators.Aggregate;
 import simpledb.operators.DbIterator;
+import simpledb.operators.Distinct;
 import simpledb.operators.Filter;
+import simpledb.operators.IndexNestedLoopJoin;
 import simpledb.operators.OrderBy;
+import simpledb.operators.ParallelAggregate;
+import simpledb.operators.ParallelSeqScan;
 import simpledb.operators.Project;
 import simpledb.operators.SeqScan;
+import simpledb.operators.SortedDistinct;
+import simpledb.optimizing.AccessPath;
+import simpledb.optimizing.ColumnPruner;
 import simpledb.optimizing.JoinOptimizer;
 import simpledb.optimizing.statistics.TableStats;
+import simpledb.pipeline.PipelineCompiler;
 import simpledb.predicates.Predicate;
 import simpledb.tuple.Field;
 import simpledb.tuple.IntField;
@@ -55,9 +66,14 @@ public  class LogicalPlan {
     private boolean hasAgg = false;
     private String aggOp;
     private String aggField;
-    private boolean oByAsc, hasOrderBy = false;
-    private String oByField;
+    private boolean hasOrderBy = false;
+    private Vector<String> oByFields;
+    private Vector<Boolean> oByAsc;
     private String query;
+    private int parallelism = 1;
+    private boolean pipelined = false;
+    private int cardinality = -1;
+    private boolean distinct = false;
 
     /** Constructor -- generate an empty logical plan */
     public LogicalPlan() {
@@ -68,6 +84,8 @@ public  class LogicalPlan {
         tableMap = new HashMap<String,Integer>();
 
         selectList = new Vector<LogicalSelectListNode>();
+        oByFields = new Vector<String>();
+        oByAsc = new Vector<Boolean>();
         this.query = "";
     }
 
@@ -87,6 +105,49 @@ public  class LogicalPlan {
         return query;
     }
 
+    /** Set the number of workers that scan each base table of this plan.
+        With a parallelism greater than one, heap files are scanned with a
+        {@link ParallelSeqScan} and the filters on a table are run by its
+        workers, joins are split into that many instances running on their
+        own workers, and aggregates are computed in two phases by a
+        {@link ParallelAggregate}.
+
+        @param parallelism the number of workers per operator; 1 runs the plan on the calling thread
+    */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /** Get the number of workers per operator set via {@link #setParallelism}.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /** Set whether {@link #physicalPlan} compiles the plan into push-based
+        pipelines with a {@link PipelineCompiler}, instead of returning the
+        tree of operators that pull tuples from each other.
+
+        @param pipelined true to compile the plan into pipelines
+    */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    /** Get whether the physical plan is compiled into pipelines; see {@link #setPipelined}.
+     */
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    /** Get the number of rows the last {@link #physicalPlan} built from this
+        plan is estimated to return, or -1 if no plan was built yet.  Used to
+        estimate the selectivity of joins with a subquery.
+     */
+    public int getEstimatedCardinality() {
+        return cardinality;
+    }
+
     /** Given a table alias, return id of the table object (this id can be supplied to {@link Catalog#getDbFile(int)}).
         Aliases are added as base tables are added via {@link #addScan}.
 
@@ -163,12 +224,47 @@ public  class LogicalPlan {
      *      or is not in one of the tables added via {@link #addScan}
      */
     public void addJoin( String joinField1, DbIterator joinField2, Predicate.Op pred) throws ParsingException {
+        addSubplanJoin(joinField1, joinField2, -1, pred, false);
+    }
+
+    /** Add a semi-join or an anti-join between a field and a subquery, as
+     *  for IN and NOT IN: the rows of the table of joinField1 are kept if
+     *  they match some row of the subquery (or, for an anti-join, none).
+     *  @param joinField1 The name of the join field, resolved as in
+     *    {@link #addJoin(String, String, Predicate.Op)}
+     *  @param subplan the subquery; its join field is the first field
+     *    in its result set
+     *  @param subplanCard the estimated number of rows of the
+     *    subquery, or -1 if unknown
+     *  @param pred The join predicate
+     *  @param anti true to keep the rows without a match
+     *  @throws ParsingException if joinField1 is ambiguous or unknown
+     */
+    public void addSubplanJoin(String joinField1, DbIterator subplan, int subplanCard, Predicate.Op pred, boolean anti) throws ParsingException {
         joinField1 = disambiguateName(joinField1);
 
         String table1 = joinField1.split("[.]")[0];
 
-        LogicalSubplanJoinNode lj = new LogicalSubplanJoinNode(table1,joinField1, joinField2, pred);
-        System.out.println("Added subplan join on " + joinField1);
+        LogicalSubplanJoinNode lj = new LogicalSubplanJoinNode(table1,joinField1, subplan, subplanCard, pred, anti);
+        System.out.println("Added subplan " + (anti ? "anti-join" : "semi-join") + " on " + joinField1);
+        joins.addElement(lj);
+    }
+
+    /** Add an EXISTS (or NOT EXISTS) test of a subquery.  The test is
+     *  attached to the first table added via {@link #addScan}, whose rows
+     *  are all kept or all dropped.
+     *  @param subplan the subquery
+     *  @param subplanCard the estimated number of rows of the
+     *    subquery, or -1 if unknown
+     *  @param negated true for NOT EXISTS
+     *  @throws ParsingException if no table was added yet
+     */
+    public void addExists(DbIterator subplan, int subplanCard, boolean negated) throws ParsingException {
+        if (tables.isEmpty())
+            throw new ParsingException("EXISTS needs a table in the FROM clause");
+        String table1 = tables.firstElement().alias;
+        LogicalSubplanJoinNode lj = new LogicalSubplanJoinNode(table1, null, subplan, subplanCard, null, negated);
+        System.out.println("Added " + (negated ? "NOT EXISTS" : "EXISTS") + " subplan on " + table1);
         joins.addElement(lj);
     }
 
@@ -211,17 +307,30 @@ public  class LogicalPlan {
         hasAgg = true;
     }
 
-    /** Add an ORDER BY expression in the specified order on the specified field.  SimpleDb only supports
-        a single ORDER BY field.
+    /** Add an ORDER BY expression in the specified order on the specified field.  May be called
+        several times; the fields are sorted on in the order they were added.
         @param field the field to order by
         @param asc true if should be ordered in ascending order, false for descending order
     */
     public void addOrderBy(String field, boolean asc) {
-        oByField = field;
-        oByAsc = asc;
+        oByFields.addElement(field);
+        oByAsc.addElement(asc);
         hasOrderBy = true;
     }
 
+    /** Set whether duplicate rows are removed from the output, as for SELECT DISTINCT.
+        @param distinct true to remove duplicate rows
+    */
+    public void setDistinct(boolean distinct) {
+        this.distinct = distinct;
+    }
+
+    /** Get whether duplicate rows are removed from the output; see {@link #setDistinct}.
+     */
+    public boolean isDistinct() {
+        return distinct;
+    }
+
     /** Given a name of a field, try to figure out what table it belongs to by looking
      *   through all of the tables added via {@link #addScan}. 
      *  @return A fully qualified name of the form table.name.  If the name parameter is already qualified
@@ -294,13 +403,19 @@ public  class LogicalPlan {
         HashMap<String,String> equivMap = new HashMap<String,String>();
         HashMap<String,Double> filterSelectivities = new HashMap<String, Double>();
         HashMap<String,TableStats> statsMap = new HashMap<String,TableStats>();
+        HashMap<String,ArrayList<Predicate>> tableFilters = new HashMap<String,ArrayList<Predicate>>();
+        HashMap<String,DbIterator> basePlans = new HashMap<String,DbIterator>();
 
         while (tableIt.hasNext()) 
         {
             LogicalScanNode table = tableIt.next();
-            SeqScan ss = null;
+            DbIterator ss = null;
             try {
-                 ss = new SeqScan(t, Database.getCatalog().getDbFile(table.t).getId(), table.alias);
+                 DbFile file = Database.getCatalog().getDbFile(table.t);
+                 if (parallelism > 1 && file instanceof HeapFile)
+                     ss = new ParallelSeqScan(t, file.getId(), table.alias, parallelism);
+                 else
+                     ss = new SeqScan(t, file.getId(), table.alias);
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown table " + table.t);
             }
@@ -309,6 +424,7 @@ public  class LogicalPlan {
             String baseTableName = Database.getCatalog().getTableName(table.t);
             statsMap.put(table.alias, baseTableStats.get(baseTableName));
             filterSelectivities.put(table.alias, 1.0);
+            tableFilters.put(table.alias, new ArrayList<Predicate>());
 
         }
 
@@ -340,7 +456,14 @@ public  class LogicalPlan {
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown field " + lf.f);
             }
-            subplanMap.put(lf.t, new Filter(p, subplan));
+            if (subplan instanceof ParallelSeqScan)
+                ((ParallelSeqScan)subplan).addFilter(p);
+            else if (subplan instanceof SeqScan && Database.getCatalog().getDbFile(
+                    ((SeqScan)subplan).getTableId()) instanceof HeapFile)
+                ((SeqScan)subplan).addFilter(p);
+            else
+                subplanMap.put(lf.t, new Filter(p, subplan));
+            tableFilters.get(lf.t).add(p);
 
             TableStats s = statsMap.get(lf.t);
             
@@ -349,10 +472,24 @@ public  class LogicalPlan {
 
             //s.addSelectivityFactor(estimateFilterSelectivity(lf,statsMap));
         }
+
+        for (LogicalScanNode table : tables) {
+            if (parallelism == 1)
+                chooseAccessPath(t, table, tableFilters.get(table.alias), statsMap.get(table.alias),
+                        fieldsRead(table, subplanMap.get(table.alias).getTupleDesc()), explain);
+            basePlans.put(table.alias, subplanMap.get(table.alias));
+        }
         
         JoinOptimizer jo = new JoinOptimizer(this,joins);
 
         joins = jo.orderJoins(statsMap,filterSelectivities,explain);
+        if (!joins.isEmpty())
+            cardinality = jo.getCardinality();
+        else if (!tables.isEmpty() && statsMap.get(tables.firstElement().alias) != null)
+            cardinality = statsMap.get(tables.firstElement().alias).estimateTableCardinality(
+                    filterSelectivities.get(tables.firstElement().alias));
+        if (hasAgg && groupByField == null)
+            cardinality = 1;
 
         Iterator<LogicalJoinNode> joinIt = joins.iterator();
         while (joinIt.hasNext()) 
@@ -392,7 +529,15 @@ public  class LogicalPlan {
                 throw new ParsingException("Unknown table in WHERE clause " + lj.t2);
             
             DbIterator j;
-            j = jo.instantiateJoin(lj,plan1,plan2, statsMap);
+            // the table looked up by an index join must not be joined yet
+            if (lj.indexProbe && t2name.equals(lj.t2) && plan2 == basePlans.get(t2name))
+                j = jo.instantiateIndexJoin(t, lj, plan1, tableFilters.get(t2name));
+            else
+                j = jo.instantiateJoin(lj,plan1,plan2, statsMap);
+            if (explain)
+                System.out.println("Join " + lj.f1 + " " + lj.p + " " + (isSubqueryJoin ? "subquery" : lj.f2) + ": "
+                        + j.getClass().getSimpleName()
+                        + (j instanceof IndexNestedLoopJoin ? " looking up " + lj.f2 : ""));
             subplanMap.put(t1name, j);
 
             if (!isSubqueryJoin) 
@@ -472,24 +617,196 @@ public  class LogicalPlan {
             TupleDesc td = node.getTupleDesc();
             Aggregate aggNode;
             try {
-                aggNode = new Aggregate(node,
-                                        td.nameToId(disambiguateName(aggField)),
-                                        groupByField == null?Aggregator.NO_GROUPING:td.nameToId(disambiguateName(groupByField)),
-                                getAggOp(aggOp));
+                int aggId = td.nameToId(disambiguateName(aggField));
+                int groupId = groupByField == null?Aggregator.NO_GROUPING:td.nameToId(disambiguateName(groupByField));
+                if (parallelism > 1) {
+                    node = new ParallelAggregate(node, aggId, groupId, getAggOp(aggOp));
+                } else {
+                    aggNode = new Aggregate(node, aggId, groupId, getAggOp(aggOp));
+                    node = aggNode;
+                }
             } catch (NoSuchElementException e) {
                 throw new simpledb.exceptions.ParsingException(e);
             } catch (IllegalArgumentException e) {
                 throw new simpledb.exceptions.ParsingException(e);
             }
-            node = aggNode;
         }
 
-        if (hasOrderBy) 
-        {
-            node = new OrderBy(node.getTupleDesc().nameToId(disambiguateName(oByField)), oByAsc, node);
+        int[] oByIds = new int[oByFields.size()];
+        boolean[] asc = new boolean[oByFields.size()];
+        for (int i = 0; i < oByIds.length; i++) {
+            oByIds[i] = node.getTupleDesc().nameToId(disambiguateName(oByFields.elementAt(i)));
+            asc[i] = oByAsc.elementAt(i);
+        }
+
+        DbIterator project;
+        if (!distinct) {
+            if (hasOrderBy)
+                node = new OrderBy(oByIds, asc, node);
+            project = ColumnPruner.prune(new Project(outFields, outTypes, node));
+        } else if (hasOrderBy && sameFields(oByIds, outFields)) {
+            // sorted on every output field, so duplicates come out next to each other
+            project = new SortedDistinct(ColumnPruner.prune(
+                    new Project(outFields, outTypes, new OrderBy(oByIds, asc, node))));
+        } else {
+            project = new Distinct(ColumnPruner.prune(new Project(outFields, outTypes, node)));
+            if (hasOrderBy) {
+                int[] outIds = new int[oByIds.length];
+                for (int i = 0; i < oByIds.length; i++) {
+                    outIds[i] = outFields.indexOf(oByIds[i]);
+                    if (outIds[i] < 0)
+                        throw new ParsingException("ORDER BY field " + oByFields.elementAt(i) + " must appear in the SELECT DISTINCT list");
+                }
+                project = new OrderBy(outIds, asc, project);
+            }
+        }
+        return pipelined ? PipelineCompiler.compile(project) : project;
+    }
+
+    /** Get the fields of the table of scan that the query reads anywhere:
+        in its select list, filters, joins, grouping or ordering.
+
+        @param td the TupleDesc of the scan of the table, which the names
+            of the fields are resolved against
+        @return a flag for each field of td
+    */
+    private boolean[] fieldsRead(LogicalScanNode scan, TupleDesc td) {
+        boolean[] read = new boolean[td.numFields()];
+        ArrayList<String> names = new ArrayList<String>();
+        for (LogicalSelectListNode si : selectList)
+            names.add(si.fname);
+        if (groupByField != null)
+            names.add(groupByField);
+        if (aggField != null)
+            names.add(aggField);
+        names.addAll(oByFields);
+        for (LogicalFilterNode lf : filters)
+            names.add(lf.f);
+        for (LogicalJoinNode lj : joins) {
+            names.add(lj.f1);
+            if (!(lj instanceof LogicalSubplanJoinNode))
+                names.add(lj.f2);
+        }
+        for (String name : names) {
+            // an EXISTS test joins on no field
+            if (name == null)
+                continue;
+            try {
+                String qualified = disambiguateName(name);
+                if (qualified.equals("*") || qualified.equals(scan.alias + ".*"))
+                    Arrays.fill(read, true);
+                else if (qualified.startsWith(scan.alias + "."))
+                    read[td.nameToId(qualified)] = true;
+            } catch (ParsingException e) {
+                // reported when the plan reads the field; until then, assume every field is read
+                Arrays.fill(read, true);
+            } catch (NoSuchElementException e) {
+                Arrays.fill(read, true);
+            }
+        }
+        return read;
+    }
+
+    /** Read the table of scan through an index instead of scanning it, if
+        its filters select few enough tuples for the index to read fewer
+        pages than a scan: the cheapest index is read for the tuples passing
+        one of its filters, or two filters bounding a range on both sides,
+        and the other filters are applied to those. An index covering the
+        fields read is read alone, without the table, and may be read
+        whole if it has fewer pages than the table.
+
+        @param filters the filters over the table
+        @param stats the statistics of the table, or null if there are none
+        @param read the fields of the table read by the query
+        @param explain whether to print the access path chosen
+    */
+    private void chooseAccessPath(TransactionId t, LogicalScanNode scan, ArrayList<Predicate> filters,
+            TableStats stats, boolean[] read, boolean explain) {
+        if (stats == null)
+            return;
+        double scanCost = stats.estimateScanCost();
+        AccessPath best = null;
+        Predicate bestFilter = null;
+        Predicate bestOther = null;
+        double bestCost = scanCost;
+        for (Predicate p : filters) {
+            AccessPath path = AccessPath.find(scan.t, p.getField(), p.getOp(), read);
+            if (path == null)
+                continue;
+            double sel = stats.estimateSelectivity(p.getField(), p.getOp(), p.getOperand());
+            Predicate other = null;
+            if (isLowerBound(p.getOp()) || isUpperBound(p.getOp())) {
+                for (Predicate q : filters) {
+                    if (q.getField() == p.getField() && (isLowerBound(p.getOp()) ? isUpperBound(q.getOp()) : isLowerBound(q.getOp()))) {
+                        other = q;
+                        // the tuples below the upper bound, less those below the lower one
+                        sel = Math.max(0.0, sel + stats.estimateSelectivity(q.getField(), q.getOp(), q.getOperand()) - 1.0);
+                        break;
+                    }
+                }
+            }
+            double cost = path.estimateCost(stats, sel);
+            if (cost < bestCost) {
+                best = path;
+                bestFilter = p;
+                bestOther = other;
+                bestCost = cost;
+            }
+        }
+        AccessPath whole = AccessPath.covering(scan.t, read);
+        if (whole != null && whole.estimateCost(stats, 1.0) < bestCost) {
+            best = whole;
+            bestFilter = null;
+            bestOther = null;
+            bestCost = whole.estimateCost(stats, 1.0);
+        }
+        if (best == null) {
+            if (explain)
+                System.out.println("Access path of " + scan.alias + ": SeqScan, cost " + scanCost);
+            return;
         }
+        DbIterator plan;
+        if (bestFilter == null) {
+            plan = best.scan(t, scan.alias);
+        } else if (bestOther == null) {
+            plan = best.scan(t, scan.alias, bestFilter.getOp(), bestFilter.getOperand());
+        } else {
+            Predicate low = isLowerBound(bestFilter.getOp()) ? bestFilter : bestOther;
+            Predicate high = low == bestFilter ? bestOther : bestFilter;
+            plan = best.scan(t, scan.alias, low.getOperand(), low.getOp() == Predicate.Op.GREATER_THAN_OR_EQ,
+                    high.getOperand(), high.getOp() == Predicate.Op.LESS_THAN_OR_EQ);
+        }
+        String access = plan.getClass().getSimpleName() + " of " + best;
+        if (bestFilter != null) {
+            String field = plan.getTupleDesc().getFieldName(bestFilter.getField());
+            access += " for " + field + " " + bestFilter.getOp() + " " + bestFilter.getOperand()
+                    + (bestOther == null ? "" : " and " + field + " " + bestOther.getOp() + " " + bestOther.getOperand());
+        }
+        for (Predicate p : filters) {
+            if (p != bestFilter && p != bestOther)
+                plan = new Filter(p, plan);
+        }
+        subplanMap.put(scan.alias, plan);
+        if (explain)
+            System.out.println("Access path of " + scan.alias + ": " + access
+                    + ", cost " + bestCost + " against " + scanCost + " for a SeqScan");
+    }
+
+    private static boolean isLowerBound(Predicate.Op op) {
+        return op == Predicate.Op.GREATER_THAN || op == Predicate.Op.GREATER_THAN_OR_EQ;
+    }
+
+    private static boolean isUpperBound(Predicate.Op op) {
+        return op == Predicate.Op.LESS_THAN || op == Predicate.Op.LESS_THAN_OR_EQ;
+    }
 
-        return new Project(outFields, outTypes, node);
+    /** Return true if ids and fields hold the same set of field ids. */
+    private static boolean sameFields(int[] ids, ArrayList<Integer> fields) {
+        HashSet<Integer> a = new HashSet<Integer>(fields);
+        HashSet<Integer> b = new HashSet<Integer>();
+        for (int id : ids)
+            b.add(id);
+        return a.equals(b);
     }
 
     public static void main(String argv[]) {
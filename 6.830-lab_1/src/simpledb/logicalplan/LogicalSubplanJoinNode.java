@@ -5,34 +5,49 @@ import simpledb.predicates.Predicate;
 
 /** A LogicalSubplanJoinNode represens the state needed of a join of a
  * table to a subplan in a LogicalQueryPlan -- inherits state from
- * {@link LogicalJoinNode}; t2 and f2 should always be null
+ * {@link LogicalJoinNode}; t2 and f2 should always be null.  The join
+ * is a semi-join (IN, EXISTS) or an anti-join (NOT IN, NOT EXISTS):
+ * it returns the rows of t1 that have (or do not have) a match in the
+ * subplan.  For EXISTS, f1 and p are null as well.
  */
 public class LogicalSubplanJoinNode extends LogicalJoinNode {
     
     /** The subplan (used on the inner) of the join */
     DbIterator subPlan;
+
+    /** True to keep the rows of t1 without a match in the subplan */
+    public boolean anti;
+
+    /** The estimated number of rows of the subplan, or -1 if unknown */
+    public int subplanCard;
     
     public LogicalSubplanJoinNode(String table1, String joinField1, DbIterator sp, Predicate.Op pred) {
+        this(table1, joinField1, sp, -1, pred, false);
+    }
+
+    public LogicalSubplanJoinNode(String table1, String joinField1, DbIterator sp, int spCard, Predicate.Op pred, boolean anti) {
         t1 = table1;
         f1 = joinField1;
         subPlan = sp;
+        subplanCard = spCard;
         p = pred;
+        this.anti = anti;
     }
     
     @Override public int hashCode() {
-        return t1.hashCode() + f1.hashCode() + subPlan.hashCode();
+        return t1.hashCode() + (f1 == null ? 0 : f1.hashCode()) + subPlan.hashCode();
     }
     
     @Override public boolean equals(Object o) {
-        LogicalJoinNode j2 =(LogicalJoinNode)o;
         if (!(o instanceof LogicalSubplanJoinNode))
             return false;
+        LogicalSubplanJoinNode j2 = (LogicalSubplanJoinNode)o;
         
-        return (j2.t1.equals(t1)  && j2.f1.equals(f1) && ((LogicalSubplanJoinNode)o).subPlan.equals(subPlan));
+        return (j2.t1.equals(t1) && (j2.f1 == null ? f1 == null : j2.f1.equals(f1)) && j2.subPlan.equals(subPlan));
     }
     
     public LogicalSubplanJoinNode swapInnerOuter() {
-        LogicalSubplanJoinNode j2 = new LogicalSubplanJoinNode(t1,f1,subPlan, p);
+        LogicalSubplanJoinNode j2 = new LogicalSubplanJoinNode(t1,f1,subPlan,subplanCard,p,anti);
         return j2;
     }
 
@@ -10,6 +10,7 @@ import simpledb.aggregates.Aggregator.Op;
 import simpledb.exceptions.DbException;
 import simpledb.exceptions.TransactionAbortedException;
 import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
 import simpledb.tuple.TupleDesc;
 import simpledb.tuple.Type;
 
@@ -18,7 +19,7 @@ import simpledb.tuple.Type;
  * min).  Note that we only support aggregates over a single column, grouped
  * by a single column.
  */
-public class Aggregate extends AbstractDbIterator {
+public class Aggregate extends AbstractDbIterator implements BatchDbIterator {
 
 	
 	private DbIterator aggItr;
@@ -26,6 +27,7 @@ public class Aggregate extends AbstractDbIterator {
 	private int afield;
 	private int gfield;
 	private Aggregator.Op aop;
+	private TupleBatch batch;
 	
     /**
      * Constructor.  
@@ -47,46 +49,63 @@ public class Aggregate extends AbstractDbIterator {
     	this.aop = aop;
     }
 
+    /** @return the operator this Aggregate reads from. */
+    public DbIterator getChild()
+    {
+    	return child;
+    }
+
+    /** @return the field aggregated over. */
+    public int getAggregateField()
+    {
+    	return afield;
+    }
+
+    /** @return the field grouped on, or Aggregator.NO_GROUPING. */
+    public int getGroupField()
+    {
+    	return gfield;
+    }
+
+    /** @return the aggregate computed. */
+    public Aggregator.Op getAggregateOp()
+    {
+    	return aop;
+    }
+
     private DbIterator buildAggregator(DbIterator child, int afield, int gfield,Op op) 
     {
     	DbIterator aitr = new TupleArrayIterator(new ArrayList<Tuple>());
-    	Type groupType;
-    	if (gfield == Aggregator.NO_GROUPING)
+    	Aggregator agg;
+    	if (gfield == Aggregator.NO_GROUPING || child.getTupleDesc().getType(gfield) == Type.INT_TYPE)
     	{
-    		groupType = Type.INT_TYPE;
+    		agg = new IntAggregator(gfield, Type.INT_TYPE, afield, op);
     	}
     	else
     	{
-    		groupType = child.getTupleDesc().getType(gfield);
+    		agg = new StringAggregator(gfield, Type.STRING_TYPE, afield, op);
     	}
     	try 
     	{
-			child.open();
-    		if(groupType == Type.INT_TYPE)
+			if (child instanceof BatchDbIterator)
 			{
-				IntAggregator intAgg = new IntAggregator(gfield, Type.INT_TYPE, afield, op);
-				
-					for(;child.hasNext();)
-					{
-						Tuple tup = child.next();
-						intAgg.merge(tup);
-					}
-				aitr = intAgg.iterator();	
-			} 
-			
-			else if(groupType == Type.STRING_TYPE)
+				// the child is consumed here only, so it can run in batch mode
+				BatchDbIterator batchChild = (BatchDbIterator) child;
+				TupleBatch batch;
+				while ((batch = batchChild.nextBatch()) != null)
+				{
+					agg.merge(batch);
+				}
+			}
+			else
 			{
-				StringAggregator stringAgg = new StringAggregator(gfield, Type.STRING_TYPE, afield, op);
-				
 				for(;child.hasNext();)
 				{
-					Tuple tup = child.next();
-					stringAgg.merge(tup);
+					agg.merge(child.next());
 				}
-			aitr = stringAgg.iterator();	
 			}
+			aitr = agg.iterator();
 		}
-		
 		catch (NoSuchElementException e) 
 		{
 			System.out.println(e);
@@ -101,6 +120,8 @@ public class Aggregate extends AbstractDbIterator {
 		}
     	finally
     	{
+    		// the results are in aitr now, which accounts for them itself
+    		agg.release();
     		child.close();
     	}
 		return aitr;
@@ -125,8 +146,24 @@ public class Aggregate extends AbstractDbIterator {
 
     public void open() throws NoSuchElementException, DbException, TransactionAbortedException 
     {
-        aggItr = buildAggregator(child, afield, gfield, aop);
-    	aggItr.open();
+    	child.open();
+    	aggItr = null;
+    }
+
+    /**
+     * Aggregates the child the first time a result is read rather than in
+     * open, so that the thread opening a plan does not consume the child: an
+     * Aggregate over one consumer of an {@link Exchange} must run on its own
+     * worker, concurrently with the other consumers.
+     */
+    private DbIterator aggregated() throws DbException, TransactionAbortedException
+    {
+    	if (aggItr == null)
+    	{
+    		aggItr = buildAggregator(child, afield, gfield, aop);
+    		aggItr.open();
+    	}
+    	return aggItr;
     }
 
     /**
@@ -139,7 +176,7 @@ public class Aggregate extends AbstractDbIterator {
      */
     protected Tuple readNext() throws TransactionAbortedException, DbException {
     	Tuple t = null;
-    	if (!aggItr.hasNext())
+    	if (!aggregated().hasNext())
     	{
     		return t;
     	}
@@ -147,7 +184,8 @@ public class Aggregate extends AbstractDbIterator {
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
-        aggItr.rewind();
+        if (aggItr != null)
+            aggItr.rewind();
     }
 
     /**
@@ -180,7 +218,28 @@ public class Aggregate extends AbstractDbIterator {
     	return res;
     }
 
+    /**
+     * Returns the next batch of aggregate results. The rows have the same
+     * layout as the tuples returned by readNext.
+     */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (batch == null) {
+            Type[] types;
+            if (gfield == Aggregator.NO_GROUPING) {
+                types = new Type[]{Type.INT_TYPE};
+            } else {
+                types = new Type[]{child.getTupleDesc().getType(gfield), Type.INT_TYPE};
+            }
+            batch = new TupleBatch(new TupleDesc(types));
+        }
+        batch.clear();
+        return BatchAdapter.fill(aggregated(), batch) == 0 ? null : batch;
+    }
+
     public void close() {
-        aggItr.close();
+        if (aggItr != null)
+            aggItr.close();
+        else
+            child.close();
     }
 }
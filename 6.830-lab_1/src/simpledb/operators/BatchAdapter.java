@@ -0,0 +1,94 @@
+package simpledb.operators;
+
+import java.util.NoSuchElementException;
+
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
+
+/**
+ * BatchAdapter makes any DbIterator usable as a BatchDbIterator by copying
+ * its tuples into batches. The tuple methods are passed through to the
+ * wrapped iterator.
+ */
+public class BatchAdapter implements BatchDbIterator {
+
+    private final DbIterator child;
+    private TupleBatch batch;
+
+    public BatchAdapter(DbIterator child)
+    {
+        this.child = child;
+    }
+
+    /**
+     * @return it if it already produces batches natively, a BatchAdapter over
+     *         it otherwise.
+     */
+    public static BatchDbIterator wrap(DbIterator it)
+    {
+        if (it instanceof BatchDbIterator)
+        {
+            return (BatchDbIterator) it;
+        }
+        return new BatchAdapter(it);
+    }
+
+    /**
+     * Appends tuples of it to batch until either the batch is full or it has
+     * no more tuples.
+     * @return the number of tuples appended.
+     */
+    public static int fill(DbIterator it, TupleBatch batch) throws DbException, TransactionAbortedException
+    {
+        int added = 0;
+        while (!batch.isFull() && it.hasNext())
+        {
+            batch.addTuple(it.next());
+            added++;
+        }
+        return added;
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException
+    {
+        if (batch == null)
+        {
+            batch = new TupleBatch(child.getTupleDesc());
+        }
+        batch.clear();
+        return fill(child, batch) == 0 ? null : batch;
+    }
+
+    public void open() throws DbException, TransactionAbortedException
+    {
+        child.open();
+    }
+
+    public boolean hasNext() throws DbException, TransactionAbortedException
+    {
+        return child.hasNext();
+    }
+
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException
+    {
+        return child.next();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException
+    {
+        child.rewind();
+    }
+
+    public TupleDesc getTupleDesc()
+    {
+        return child.getTupleDesc();
+    }
+
+    public void close()
+    {
+        child.close();
+    }
+}
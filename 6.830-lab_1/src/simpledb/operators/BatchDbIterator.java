@@ -0,0 +1,30 @@
+package simpledb.operators;
+
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.tuple.TupleBatch;
+
+/**
+ * BatchDbIterator is implemented by operators that can produce their output a
+ * TupleBatch at a time instead of a Tuple at a time. Such operators still
+ * implement the whole DbIterator interface, but a caller must use either the
+ * tuple methods (hasNext/next) or nextBatch between an open/rewind and the
+ * following rewind/close, never both.
+ * <p>
+ * An operator may reuse the batch it returns, so a caller must be done with a
+ * batch before asking for the next one. Returned batches are never empty
+ * (numRows() > 0).
+ *
+ * @see BatchAdapter to drive a plain DbIterator as a BatchDbIterator
+ * @see BatchTupleIterator to read the output of a BatchDbIterator as tuples
+ */
+public interface BatchDbIterator extends DbIterator {
+
+    /**
+     * Returns the next batch of tuples from the operator.
+     *
+     * @return the next batch, or null if there are no more tuples.
+     * @throws IllegalStateException If the iterator has not been opened
+     */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException;
+}
@@ -0,0 +1,149 @@
+package simpledb.operators;
+
+import java.util.Arrays;
+import java.util.List;
+
+import simpledb.tuple.Field;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.Type;
+
+/**
+ * BatchHashTable indexes the rows of a list of batches on one field, for the
+ * build side of hash joins.
+ * <p>
+ * Rows are not copied: an entry is the position of a row in the batches,
+ * and entries are chained through arrays, so heads[bucket] is the first
+ * entry of a bucket and next(entry) the following one, or -1. Every batch
+ * must be dense (without a selection vector) and must not change while the
+ * table is in use. A table is not safe for concurrent modification, but once
+ * built it may be probed by any number of threads.
+ */
+public class BatchHashTable {
+
+    private final List<TupleBatch> batches;
+    private final int field;
+    private final boolean intKey;
+    private final int shift;
+    private final int[] heads;
+    private final int[] next;
+    private final int[] hashes;
+    private final int[] batchOf;
+    private final int[] rowOf;
+
+    /**
+     * Hashes the given field of a physical row of batch. Equal values hash
+     * alike whatever batch they are in, so the same function partitions and
+     * probes every input of a join.
+     */
+    public static int hash(TupleBatch batch, int field, int row)
+    {
+        int h;
+        if (batch.getTupleDesc().getType(field) == Type.INT_TYPE)
+        {
+            h = batch.getInt(field, row);
+        }
+        else
+        {
+            Field f = batch.getField(field, row);
+            h = f.hashCode();
+        }
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Builds a table over every row of batches.
+     *
+     * @param batches the dense batches to index.
+     * @param field the field to index the rows on.
+     * @param shift the number of low bits of the hash to ignore, because the
+     *        rows were already partitioned on them; 0 otherwise.
+     */
+    public BatchHashTable(List<TupleBatch> batches, int field, int shift)
+    {
+        this.batches = batches;
+        this.field = field;
+        this.shift = shift;
+        int n = 0;
+        for (TupleBatch b : batches)
+        {
+            n += b.size();
+        }
+        int buckets = 1;
+        while (buckets < n * 2)
+        {
+            buckets <<= 1;
+        }
+        heads = new int[buckets];
+        Arrays.fill(heads, -1);
+        next = new int[n];
+        hashes = new int[n];
+        batchOf = new int[n];
+        rowOf = new int[n];
+        intKey = batches.isEmpty() || batches.get(0).getTupleDesc().getType(field) == Type.INT_TYPE;
+        int e = 0;
+        for (int b = 0; b < batches.size(); b++)
+        {
+            TupleBatch batch = batches.get(b);
+            for (int row = 0; row < batch.size(); row++)
+            {
+                int h = hash(batch, field, row);
+                int bucket = (h >>> shift) & (buckets - 1);
+                hashes[e] = h;
+                batchOf[e] = b;
+                rowOf[e] = row;
+                next[e] = heads[bucket];
+                heads[bucket] = e;
+                e++;
+            }
+        }
+    }
+
+    /** @return the number of rows in this table. */
+    public int size()
+    {
+        return next.length;
+    }
+
+    /** @return the first entry of the chain a hash falls in, or -1. */
+    public int first(int h)
+    {
+        return heads[(h >>> shift) & (heads.length - 1)];
+    }
+
+    /** @return the entry chained after entry e, or -1. */
+    public int next(int e)
+    {
+        return next[e];
+    }
+
+    /** @return the batch holding the row of entry e. */
+    public TupleBatch batchOf(int e)
+    {
+        return batches.get(batchOf[e]);
+    }
+
+    /** @return the physical row of entry e in its batch. */
+    public int rowOf(int e)
+    {
+        return rowOf[e];
+    }
+
+    /**
+     * @return true if entry e holds the same key as a physical row of a
+     *         probe batch, whose key hashes to h.
+     */
+    public boolean matches(int e, int h, TupleBatch probe, int probeField, int row)
+    {
+        if (hashes[e] != h)
+        {
+            return false;
+        }
+        TupleBatch batch = batches.get(batchOf[e]);
+        if (intKey)
+        {
+            return batch.getInt(field, rowOf[e]) == probe.getInt(probeField, row);
+        }
+        return batch.getField(field, rowOf[e]).equals(probe.getField(probeField, row));
+    }
+}
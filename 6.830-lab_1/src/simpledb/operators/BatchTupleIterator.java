@@ -0,0 +1,65 @@
+package simpledb.operators;
+
+import java.util.NoSuchElementException;
+
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
+
+/**
+ * BatchTupleIterator runs a BatchDbIterator in batch mode and hands its output
+ * out one Tuple at a time, so that a batch pipeline can be consumed by code
+ * that only knows about DbIterator.
+ */
+public class BatchTupleIterator extends AbstractDbIterator {
+
+    private final BatchDbIterator child;
+    private TupleBatch batch;
+    private int pos;
+
+    public BatchTupleIterator(BatchDbIterator child)
+    {
+        this.child = child;
+    }
+
+    public void open() throws DbException, NoSuchElementException, TransactionAbortedException
+    {
+        child.open();
+        batch = null;
+    }
+
+    public TupleDesc getTupleDesc()
+    {
+        return child.getTupleDesc();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException
+    {
+        super.close();
+        child.rewind();
+        batch = null;
+    }
+
+    public void close()
+    {
+        super.close();
+        child.close();
+        batch = null;
+    }
+
+    protected Tuple readNext() throws DbException, TransactionAbortedException
+    {
+        if (batch == null || pos == batch.numRows())
+        {
+            batch = child.nextBatch();
+            pos = 0;
+            if (batch == null)
+            {
+                return null;
+            }
+        }
+        return batch.getTuple(batch.rowAt(pos++));
+    }
+}
@@ -1,5 +1,6 @@
 package simpledb.operators;
 
+import java.util.ArrayList;
 import java.util.NoSuchElementException;
 
 import simpledb.BufferPool;
@@ -8,6 +9,7 @@ import simpledb.Debug;
 import simpledb.TransactionId;
 import simpledb.exceptions.DbException;
 import simpledb.exceptions.TransactionAbortedException;
+import simpledb.file.HeapFile;
 import simpledb.tuple.IntField;
 import simpledb.tuple.Tuple;
 import simpledb.tuple.TupleDesc;
@@ -16,6 +18,12 @@ import simpledb.tuple.Type;
 /**
  * The delete operator.  Delete reads tuples from its child operator and
  * removes them from the table they belong to.
+ * <p>
+ * Tuples of a heap file are not deleted as they are read: their record ids
+ * are buffered by a {@link RecordIdBatcher}, then deleted page by page in
+ * file order, so that every page is fetched, locked and dirtied once for
+ * all of its tuples. Tuples of other files are all read before
+ * the first is deleted.
  */
 public class Delete extends AbstractDbIterator {
 
@@ -75,10 +83,24 @@ public class Delete extends AbstractDbIterator {
 			if (!called) 
 			{
 				called = true;
-				for (; child.hasNext();) 
+				if (Database.getCatalog().getDbFile(tableid) instanceof HeapFile)
 				{
-					bufferPool.deleteTuple(t, tableid, child.next());
-					rowCount++;
+					rowCount = deleteByPage();
+				}
+				else
+				{
+					// other files, such as B+ trees, move tuples as they
+					// delete, so the child is read to the end first
+					ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+					while (child.hasNext())
+					{
+						tuples.add(child.next());
+					}
+					for (Tuple next : tuples)
+					{
+						bufferPool.deleteTuple(t, tableid, next);
+						rowCount++;
+					}
 				}
 				tuple = buildRowCountTuple(rowCount);
 			}
@@ -90,6 +112,20 @@ public class Delete extends AbstractDbIterator {
     	return tuple;
     }
 
+	/** Deletes the tuples of child from the heap file page by page. @return the number of tuples. */
+	private int deleteByPage() throws DbException, TransactionAbortedException
+	{
+		final HeapFile f = (HeapFile) Database.getCatalog().getDbFile(tableid);
+		RecordIdBatcher.PageAction delete = new RecordIdBatcher.PageAction() {
+			public void apply(int pageno, int[] slots, int from, int to)
+					throws DbException, TransactionAbortedException
+			{
+				bufferPool.deleteTuples(t, f, pageno, slots, from, to);
+			}
+		};
+		return new RecordIdBatcher(delete, RecordIdBatcher.MAX_BUFFERED).run(child, "delete");
+	}
+
 	private Tuple buildRowCountTuple(int rowCount) 
 	{
 		Type[] typeAr = new Type[]{Type.INT_TYPE};
@@ -0,0 +1,359 @@
+package simpledb.operators;
+
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+
+import simpledb.Database;
+import simpledb.MemoryBroker;
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.file.SpillFile;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
+
+/**
+ * Distinct removes duplicate rows from its child, by hashing.
+ * <p>
+ * Rows are split into partitions on their hash, and every partition keeps
+ * the set of rows it has seen; a row comes out the first time it is seen,
+ * so while everything fits in memory the output streams in the order of
+ * the child. When more than maxRows rows are held, the largest partition
+ * is spilled to a {@link SpillFile}: the rows it has seen are written out,
+ * tagged as already returned, and so is every later row of that partition.
+ * Once the child is exhausted each spilled partition is read back and
+ * deduplicated the same way, on other bits of the hash, returning only the
+ * rows not tagged, so rows of spilled partitions come out last.
+ * <p>
+ * The rows held are reserved from the {@link MemoryBroker}, GRANT_ROWS at
+ * a time; a partition is spilled before maxRows too once the broker
+ * refuses more.
+ * <p>
+ * Batches of the child are passed on with a selection vector of the rows
+ * seen for the first time.
+ *
+ * @see SortedDistinct for inputs already in order
+ */
+public class Distinct extends AbstractDbIterator implements BatchDbIterator {
+
+    /** Number of rows held in memory unless told otherwise. */
+    public static final int DEFAULT_MAX_ROWS = 100000;
+
+    private static final int FANOUT_BITS = 3;
+    private static final int FANOUT = 1 << FANOUT_BITS;
+    /** Deepest pass that may still spill; every pass uses FANOUT_BITS more bits of the hash. */
+    private static final int MAX_LEVEL = 32 / FANOUT_BITS - 1;
+    private static final byte RETURNED = 1;
+    /** Number of rows reserved from the memory broker at a time. */
+    private static final int GRANT_ROWS = 1024;
+
+    private final DbIterator child;
+    private final BatchDbIterator childIn;
+    private final int maxRows;
+    private final TupleDesc td;
+    private final long rowBytes;
+    private MemoryBroker.Reservation memory;
+    // rows the reservation covers
+    private int grantedRows;
+
+    // the pass over the child or over one spilled partition
+    private int level;
+    private SpillFile input;
+    private RowSet[] seen;
+    private SpillFile[] spilled;
+    private int resident;
+    private final LinkedList<Pass> pending = new LinkedList<Pass>();
+    private boolean done;
+    private int spills;
+
+    private TupleBatch inputBatch;
+    private byte[] tags;
+    private int[] selection;
+
+    // batch being read by readNext
+    private TupleBatch current;
+    private int currentPos;
+
+    /**
+     * Constructor.
+     * @param child the rows to remove duplicates from.
+     */
+    public Distinct(DbIterator child)
+    {
+        this(child, DEFAULT_MAX_ROWS);
+    }
+
+    /**
+     * Constructor.
+     * @param child the rows to remove duplicates from.
+     * @param maxRows the number of distinct rows held in memory before a
+     *        partition is spilled.
+     */
+    public Distinct(DbIterator child, int maxRows)
+    {
+        if (maxRows < 1)
+        {
+            throw new IllegalArgumentException("maxRows must be at least 1");
+        }
+        this.child = child;
+        this.maxRows = maxRows;
+        td = child.getTupleDesc();
+        rowBytes = MemoryBroker.rowBytes(td);
+        childIn = BatchAdapter.wrap(child);
+    }
+
+    /** @return the operator this Distinct reads from. */
+    public DbIterator getChild()
+    {
+        return child;
+    }
+
+    /** @return the number of partitions spilled since the last open. */
+    public int getSpillCount()
+    {
+        return spills;
+    }
+
+    public TupleDesc getTupleDesc()
+    {
+        return td;
+    }
+
+    public void open() throws DbException, NoSuchElementException, TransactionAbortedException
+    {
+        child.open();
+        memory = Database.getMemoryBroker().reserve();
+        grantedRows = 0;
+        spills = 0;
+        done = false;
+        current = null;
+        startPass(null, 0);
+    }
+
+    public void close()
+    {
+        super.close();
+        child.close();
+        if (input != null)
+        {
+            input.delete();
+            input = null;
+        }
+        if (spilled != null)
+        {
+            for (SpillFile f : spilled)
+            {
+                if (f != null)
+                {
+                    f.delete();
+                }
+            }
+        }
+        for (Pass p : pending)
+        {
+            p.file.delete();
+        }
+        pending.clear();
+        if (memory != null)
+        {
+            memory.release();
+            memory = null;
+        }
+        seen = null;
+        spilled = null;
+        current = null;
+    }
+
+    /** Removes the duplicates of the child again from the start. */
+    public void rewind() throws DbException, TransactionAbortedException
+    {
+        close();
+        open();
+    }
+
+    private void startPass(SpillFile file, int level)
+    {
+        this.input = file;
+        this.level = level;
+        seen = new RowSet[FANOUT];
+        for (int p = 0; p < FANOUT; p++)
+        {
+            seen[p] = new RowSet(td);
+        }
+        spilled = new SpillFile[FANOUT];
+        resident = 0;
+    }
+
+    protected Tuple readNext() throws DbException, TransactionAbortedException
+    {
+        while (current == null || currentPos == current.numRows())
+        {
+            current = nextBatch();
+            currentPos = 0;
+            if (current == null)
+            {
+                return null;
+            }
+        }
+        return current.getTuple(current.rowAt(currentPos++));
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException
+    {
+        for (;;)
+        {
+            TupleBatch batch = nextInput();
+            if (batch == null)
+            {
+                return null;
+            }
+            if (selection == null || selection.length < batch.capacity())
+            {
+                selection = new int[batch.capacity()];
+            }
+            int passed = 0;
+            int n = batch.numRows();
+            for (int i = 0; i < n; i++)
+            {
+                int row = batch.rowAt(i);
+                boolean returned = input != null && tags[row] == RETURNED;
+                if (add(batch, row, returned) && !returned)
+                {
+                    selection[passed++] = row;
+                }
+            }
+            if (passed > 0)
+            {
+                batch.setSelection(selection, passed);
+                return batch;
+            }
+        }
+    }
+
+    /** @return the next batch of the current pass, moving on to the next pass at the end of one. */
+    private TupleBatch nextInput() throws DbException, TransactionAbortedException
+    {
+        while (!done)
+        {
+            TupleBatch batch;
+            if (input == null)
+            {
+                batch = childIn.nextBatch();
+            }
+            else
+            {
+                if (inputBatch == null)
+                {
+                    inputBatch = new TupleBatch(td);
+                    tags = new byte[inputBatch.capacity()];
+                }
+                batch = input.read(inputBatch, tags);
+            }
+            if (batch != null)
+            {
+                return batch;
+            }
+            for (SpillFile f : spilled)
+            {
+                if (f != null)
+                {
+                    pending.add(new Pass(f, level + 1));
+                }
+            }
+            spilled = null;
+            if (input != null)
+            {
+                input.delete();
+            }
+            if (pending.isEmpty())
+            {
+                input = null;
+                seen = null;
+                done = true;
+            }
+            else
+            {
+                Pass next = pending.removeFirst();
+                startPass(next.file, next.level);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records a physical row of batch.
+     * @return true if the row had not been seen yet and was not spilled.
+     */
+    private boolean add(TupleBatch batch, int row, boolean returned) throws DbException
+    {
+        int h = RowSet.hash(batch, row);
+        int p = partition(h);
+        if (spilled[p] != null)
+        {
+            spilled[p].write(batch, row, returned ? RETURNED : 0);
+            return false;
+        }
+        if (!seen[p].add(batch, row, h))
+        {
+            return false;
+        }
+        if (++resident > maxRows && level < MAX_LEVEL)
+        {
+            spillLargest();
+        }
+        else if (resident > grantedRows)
+        {
+            if (memory.tryGrow(GRANT_ROWS * rowBytes))
+            {
+                grantedRows += GRANT_ROWS;
+            }
+            else if (level < MAX_LEVEL)
+            {
+                spillLargest();
+            }
+        }
+        return true;
+    }
+
+    private int partition(int hash)
+    {
+        int h = hash * 0x9E3779B9;
+        return (h >>> (32 - FANOUT_BITS * (level + 1))) & (FANOUT - 1);
+    }
+
+    /** Writes the rows seen by the largest partition in memory to a new spill file. */
+    private void spillLargest() throws DbException
+    {
+        int largest = -1;
+        for (int p = 0; p < FANOUT; p++)
+        {
+            if (spilled[p] == null && (largest < 0 || seen[p].size() > seen[largest].size()))
+            {
+                largest = p;
+            }
+        }
+        if (largest < 0 || seen[largest].size() == 0)
+        {
+            return;
+        }
+        SpillFile f = new SpillFile(td);
+        seen[largest].writeTo(f, RETURNED);
+        resident -= seen[largest].size();
+        seen[largest] = null;
+        spilled[largest] = f;
+        spills++;
+    }
+
+    /** A spilled partition still to deduplicate. */
+    private static class Pass
+    {
+        final SpillFile file;
+        final int level;
+
+        Pass(SpillFile file, int level)
+        {
+            this.file = file;
+            this.level = level;
+        }
+    }
+}
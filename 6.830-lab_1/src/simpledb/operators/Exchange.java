@@ -0,0 +1,529 @@
+package simpledb.operators;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import simpledb.WorkerPool;
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
+import simpledb.tuple.Type;
+
+/**
+ * Exchange connects producer pipelines and consumer pipelines that run on
+ * different threads, in the style of the Volcano exchange operator.
+ * <p>
+ * Each producer is read in batch mode by its own worker thread, and the
+ * batches it produces are routed through bounded queues to the consumers,
+ * which are the BatchDbIterators returned by {@link #getConsumer(int)}:
+ * <ul>
+ * <li>GATHER merges every producer into a single consumer;</li>
+ * <li>HASH repartitions the tuples on the hash of a field, so that all the
+ * tuples with the same value of that field go to the same consumer;</li>
+ * <li>BROADCAST sends every tuple to every consumer.</li>
+ * </ul>
+ * Tuples come out of a consumer in no particular order. When a queue is full
+ * the producers feeding it wait, so consumers of a HASH or BROADCAST exchange
+ * must be read concurrently, typically by the producers of another exchange.
+ * <p>
+ * The producers are opened, rewound and closed by the thread that opens,
+ * rewinds and closes the consumers, but read by worker threads. Since page
+ * locks belong to the thread that acquires them, the producers must not lock
+ * pages once open: their table scans must be {@link ParallelSeqScan}s, which
+ * lock every page they read when opened.
+ */
+public class Exchange {
+
+    public enum Mode { GATHER, HASH, BROADCAST }
+
+    /** Batches that may wait in the queue of a consumer, per producer. */
+    private static final int QUEUED_BATCHES_PER_PRODUCER = 4;
+
+    /** How long a blocked producer or consumer waits before checking for cancellation. */
+    private static final long POLL_MILLIS = 10;
+
+    private static final TupleBatch END = new TupleBatch(new TupleDesc(new Type[0]), 1);
+
+    /**
+     * The run a worker thread produces for. A producer that reads the
+     * consumer of another exchange gives up waiting once its own run is
+     * cancelled, so that stopping an exchange never waits on upstream
+     * producers that are blocked on consumers nobody reads any more.
+     */
+    private static final ThreadLocal<Run> producing = new ThreadLocal<Run>();
+
+    private final Mode mode;
+    private final BatchDbIterator[] producers;
+    private final int field;
+    private final TupleDesc td;
+    private final Consumer[] consumers;
+
+    private Run run;
+    private int opened = 0;
+    private int rewound = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param mode how the tuples of the producers are routed to the consumers.
+     * @param producers the pipelines producing the tuples; all of them must
+     *        have the same TupleDesc.
+     * @param field the field the tuples are hashed on in HASH mode; ignored
+     *        otherwise.
+     * @param numConsumers the number of consumers; must be 1 in GATHER mode.
+     */
+    public Exchange(Mode mode, DbIterator[] producers, int field, int numConsumers)
+    {
+        if (producers.length == 0 || numConsumers < 1)
+        {
+            throw new IllegalArgumentException("an exchange needs at least one producer and one consumer");
+        }
+        if (mode == Mode.GATHER && numConsumers != 1)
+        {
+            throw new IllegalArgumentException("a gather exchange has a single consumer");
+        }
+        this.mode = mode;
+        this.field = field;
+        this.td = producers[0].getTupleDesc();
+        this.producers = new BatchDbIterator[producers.length];
+        for (int i = 0; i < producers.length; i++)
+        {
+            this.producers[i] = BatchAdapter.wrap(producers[i]);
+        }
+        consumers = new Consumer[numConsumers];
+        for (int i = 0; i < numConsumers; i++)
+        {
+            consumers[i] = new Consumer(i);
+        }
+    }
+
+    /** @return the single consumer of an exchange gathering producers. */
+    public static BatchDbIterator gather(DbIterator[] producers)
+    {
+        return new Exchange(Mode.GATHER, producers, 0, 1).getConsumer(0);
+    }
+
+    /**
+     * @return the consumers of an exchange repartitioning the tuples of
+     *         producers on the hash of field.
+     */
+    public static BatchDbIterator[] repartition(DbIterator[] producers, int field, int numConsumers)
+    {
+        return new Exchange(Mode.HASH, producers, field, numConsumers).consumers.clone();
+    }
+
+    /**
+     * @return the consumers of an exchange sending every tuple of producers to
+     *         every consumer.
+     */
+    public static BatchDbIterator[] broadcast(DbIterator[] producers, int numConsumers)
+    {
+        return new Exchange(Mode.BROADCAST, producers, 0, numConsumers).consumers.clone();
+    }
+
+    /**
+     * Returns the pipelines gathered by it if it is the consumer of a GATHER
+     * exchange that has not been opened, and it alone otherwise. Parallel plans
+     * use this to feed the producers of a gather straight into the next
+     * exchange instead of funnelling them through one thread.
+     */
+    public static DbIterator[] producersOf(DbIterator it)
+    {
+        if (it instanceof Consumer)
+        {
+            Exchange e = ((Consumer) it).exchange();
+            if (e.mode == Mode.GATHER && e.opened == 0 && e.run == null)
+            {
+                return e.producers.clone();
+            }
+        }
+        return new DbIterator[] { it };
+    }
+
+    /** @return how the tuples of the producers are routed to the consumers. */
+    public Mode getMode()
+    {
+        return mode;
+    }
+
+    /** @return the number of consumers of this exchange. */
+    public int numConsumers()
+    {
+        return consumers.length;
+    }
+
+    /** @return the i-th consumer of this exchange. */
+    public BatchDbIterator getConsumer(int i)
+    {
+        return consumers[i];
+    }
+
+    /** Opens the producers and starts the workers once the first consumer is opened. */
+    private void openConsumer() throws DbException, TransactionAbortedException
+    {
+        if (opened++ == 0)
+        {
+            for (BatchDbIterator p : producers)
+            {
+                p.open();
+            }
+            start();
+        }
+    }
+
+    /** Stops the workers and closes the producers once every consumer is closed. */
+    private void closeConsumer()
+    {
+        if (--opened == 0)
+        {
+            stop();
+            for (BatchDbIterator p : producers)
+            {
+                p.close();
+            }
+            rewound = 0;
+        }
+    }
+
+    /**
+     * Restarts the producers once every consumer has asked for a rewind; the
+     * consumers must not be read in between.
+     */
+    private void rewindConsumer() throws DbException, TransactionAbortedException
+    {
+        if (rewound == 0)
+        {
+            stop();
+        }
+        if (++rewound == consumers.length)
+        {
+            rewound = 0;
+            for (BatchDbIterator p : producers)
+            {
+                p.rewind();
+            }
+            start();
+        }
+    }
+
+    private void start()
+    {
+        run = new Run(consumers.length, producers.length);
+        for (BatchDbIterator p : producers)
+        {
+            WorkerPool.submit(new Producer(run, p));
+        }
+    }
+
+    private void stop()
+    {
+        if (run != null)
+        {
+            run.stop();
+            run = null;
+        }
+    }
+
+    private TupleBatch take(int consumer) throws DbException, TransactionAbortedException
+    {
+        if (run == null)
+        {
+            throw new DbException(rewound > 0 ? "exchange is being rewound" : "exchange is not open");
+        }
+        Run r = run;
+        while (r.running[consumer] > 0)
+        {
+            TupleBatch batch = r.take(consumer);
+            if (batch == END)
+            {
+                r.running[consumer]--;
+            }
+            else
+            {
+                return batch;
+            }
+        }
+        return null;
+    }
+
+    /** The state shared by the workers of one open or rewind. */
+    private static class Run
+    {
+        final List<BlockingQueue<TupleBatch>> queues;
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        final CountDownLatch finished;
+        volatile boolean cancelled = false;
+        /** Producers whose END marker a consumer has not taken yet; read by that consumer only. */
+        final int[] running;
+
+        Run(int numConsumers, int numProducers)
+        {
+            queues = new ArrayList<BlockingQueue<TupleBatch>>(numConsumers);
+            running = new int[numConsumers];
+            for (int i = 0; i < numConsumers; i++)
+            {
+                queues.add(new ArrayBlockingQueue<TupleBatch>(numProducers * QUEUED_BATCHES_PER_PRODUCER));
+                running[i] = numProducers;
+            }
+            finished = new CountDownLatch(numProducers);
+        }
+
+        TupleBatch take(int consumer) throws DbException, TransactionAbortedException
+        {
+            Run self = producing.get();
+            for (;;)
+            {
+                checkFailure();
+                if (self != null && self.cancelled)
+                {
+                    throw new DbException("exchange cancelled");
+                }
+                try
+                {
+                    TupleBatch batch = queues.get(consumer).poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (batch != null)
+                    {
+                        return batch;
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    // consumers are never interrupted on purpose; keep waiting
+                }
+            }
+        }
+
+        /** @return false if the exchange was cancelled before batch could be queued. */
+        boolean put(int consumer, TupleBatch batch)
+        {
+            while (!cancelled)
+            {
+                try
+                {
+                    if (queues.get(consumer).offer(batch, POLL_MILLIS, TimeUnit.MILLISECONDS))
+                    {
+                        return true;
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    // workers are never interrupted on purpose; keep waiting
+                }
+            }
+            return false;
+        }
+
+        void checkFailure() throws DbException, TransactionAbortedException
+        {
+            Exception e = failure.get();
+            if (e == null)
+            {
+                return;
+            }
+            if (e instanceof TransactionAbortedException)
+            {
+                throw (TransactionAbortedException) e;
+            }
+            if (e instanceof DbException)
+            {
+                throw (DbException) e;
+            }
+            throw new DbException("exchange producer failed: " + e);
+        }
+
+        /** Asks the producers to stop and waits until all of them have. */
+        void stop()
+        {
+            cancelled = true;
+            for (;;)
+            {
+                try
+                {
+                    finished.await();
+                    return;
+                }
+                catch (InterruptedException e)
+                {
+                    // the coordinator is never interrupted on purpose; keep waiting
+                }
+            }
+        }
+    }
+
+    private class Producer implements Runnable
+    {
+        private final Run run;
+        private final BatchDbIterator in;
+        private TupleBatch[] partitions;
+
+        Producer(Run run, BatchDbIterator in)
+        {
+            this.run = run;
+            this.in = in;
+        }
+
+        public void run()
+        {
+            producing.set(run);
+            try
+            {
+                TupleBatch batch;
+                while (!run.cancelled && (batch = in.nextBatch()) != null)
+                {
+                    route(batch);
+                }
+                if (partitions != null)
+                {
+                    for (int i = 0; i < partitions.length; i++)
+                    {
+                        if (partitions[i].size() > 0)
+                        {
+                            run.put(i, partitions[i]);
+                        }
+                    }
+                }
+                for (int i = 0; i < consumers.length; i++)
+                {
+                    run.put(i, END);
+                }
+            }
+            catch (Exception e)
+            {
+                run.failure.compareAndSet(null, e);
+                run.cancelled = true;
+            }
+            finally
+            {
+                producing.remove();
+                run.finished.countDown();
+            }
+        }
+
+        private void route(TupleBatch batch)
+        {
+            if (mode != Mode.HASH || consumers.length == 1)
+            {
+                TupleBatch copy = batch.copy();
+                for (int i = 0; i < consumers.length; i++)
+                {
+                    // batches are never modified once queued, so consumers may share one
+                    run.put(i, copy);
+                }
+                return;
+            }
+            if (partitions == null)
+            {
+                partitions = new TupleBatch[consumers.length];
+                for (int i = 0; i < partitions.length; i++)
+                {
+                    partitions[i] = new TupleBatch(batch.getTupleDesc());
+                }
+            }
+            int n = batch.numRows();
+            for (int i = 0; i < n; i++)
+            {
+                int row = batch.rowAt(i);
+                int p = (BatchHashTable.hash(batch, field, row) & 0x7fffffff) % partitions.length;
+                TupleBatch out = partitions[p];
+                int to = out.addRow();
+                out.copyColumns(to, 0, batch, row);
+                out.setRecordId(to, batch.getRecordId(row));
+                if (out.isFull())
+                {
+                    run.put(p, out);
+                    partitions[p] = new TupleBatch(batch.getTupleDesc());
+                }
+            }
+        }
+    }
+
+    /** One consumer of the exchange; its batches may be shared with other consumers and must not be modified. */
+    private class Consumer implements BatchDbIterator
+    {
+        private final int index;
+        private boolean open = false;
+        private TupleBatch current;
+        private int pos;
+
+        Consumer(int index)
+        {
+            this.index = index;
+        }
+
+        Exchange exchange()
+        {
+            return Exchange.this;
+        }
+
+        public void open() throws DbException, TransactionAbortedException
+        {
+            if (!open)
+            {
+                openConsumer();
+                open = true;
+            }
+            current = null;
+        }
+
+        public TupleBatch nextBatch() throws DbException, TransactionAbortedException
+        {
+            return take(index);
+        }
+
+        public boolean hasNext() throws DbException, TransactionAbortedException
+        {
+            while (current == null || pos == current.numRows())
+            {
+                current = nextBatch();
+                pos = 0;
+                if (current == null)
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            return current.getTuple(current.rowAt(pos++));
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException
+        {
+            current = null;
+            rewindConsumer();
+        }
+
+        public TupleDesc getTupleDesc()
+        {
+            return td;
+        }
+
+        /**
+         * Must be called even if the consumer has not been read to the end,
+         * since producers wait for room in its queue.
+         */
+        public void close()
+        {
+            if (open)
+            {
+                open = false;
+                current = null;
+                closeConsumer();
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package simpledb.operators;
+
+import java.util.NoSuchElementException;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.page.HeapPage;
+import simpledb.page.PageId;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
+
+/**
+ * Fetch decodes fields of heap file rows that a {@link SeqScan} left unset
+ * (see {@link SeqScan#setFields}), for the rows that reach it only. It is
+ * placed above the filters of a scan, so that the fields only needed by the
+ * operators after the filters are decoded for the rows that pass them: each
+ * row is looked up by its RecordId, which its scan set. The scan locked the
+ * pages of the rows for its transaction, so they are read without locking.
+ * <p>
+ * Tuples read one at a time from a scan are always complete, and pass
+ * through unchanged.
+ */
+public class Fetch extends AbstractDbIterator implements BatchDbIterator {
+
+    private final DbIterator child;
+    private final BatchDbIterator batchChild;
+    private final int[] fields;
+    private final BufferPool pool = Database.getBufferPool();
+
+    /**
+     * Constructor.
+     *
+     * @param child the operator producing rows of a heap file scan.
+     * @param fields the fields to decode.
+     */
+    public Fetch(DbIterator child, int[] fields)
+    {
+        this.child = child;
+        this.batchChild = BatchAdapter.wrap(child);
+        this.fields = fields.clone();
+    }
+
+    /** @return the operator this Fetch reads from. */
+    public DbIterator getChild()
+    {
+        return child;
+    }
+
+    /** @return the fields this Fetch decodes. */
+    public int[] getFields()
+    {
+        return fields.clone();
+    }
+
+    public TupleDesc getTupleDesc()
+    {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, NoSuchElementException, TransactionAbortedException
+    {
+        child.open();
+    }
+
+    public void close()
+    {
+        super.close();
+        child.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException
+    {
+        child.rewind();
+    }
+
+    protected Tuple readNext() throws DbException, TransactionAbortedException
+    {
+        return child.hasNext() ? child.next() : null;
+    }
+
+    /** Returns the next batch of the child, with the fields of its selected rows decoded. */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException
+    {
+        TupleBatch batch = batchChild.nextBatch();
+        if (batch != null)
+        {
+            fill(batch);
+        }
+        return batch;
+    }
+
+    /** Decodes the fields of the selected rows of batch. */
+    public void fill(TupleBatch batch) throws DbException, TransactionAbortedException
+    {
+        HeapPage page = null;
+        int n = batch.numRows();
+        for (int i = 0; i < n; i++)
+        {
+            int row = batch.rowAt(i);
+            PageId pid = batch.getRecordId(row).getPageId();
+            // rows come in page order, so the page of the previous row is usually theirs
+            if (page == null || !page.getId().equals(pid))
+            {
+                page = (HeapPage) pool.getLockedPage(pid);
+            }
+            page.fetchFields(batch.getRecordId(row).tupleno(), batch, row, fields);
+        }
+    }
+}
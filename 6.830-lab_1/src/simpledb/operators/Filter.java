@@ -3,14 +3,16 @@ import java.util.*;
 
 import simpledb.exceptions.DbException;
 import simpledb.exceptions.TransactionAbortedException;
+import simpledb.predicates.CompiledPredicate;
 import simpledb.predicates.Predicate;
 import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
 import simpledb.tuple.TupleDesc;
 
 /**
  * Filter is an operator that implements a relational select.
  */
-public class Filter extends AbstractDbIterator {
+public class Filter extends AbstractDbIterator implements BatchDbIterator {
 
     /**
      * Constructor accepts a predicate to apply and a child
@@ -22,12 +24,30 @@ public class Filter extends AbstractDbIterator {
 	
 	
 	private Predicate p;
+	// applied to batches; single tuples go through p
+	private CompiledPredicate compiled;
 	private DbIterator child;
+	private BatchDbIterator batchChild;
+	private int[] selection;
 	
     public Filter(Predicate p, DbIterator child) 
     {
     	this.p = p;
+    	this.compiled = CompiledPredicate.compile(p, child.getTupleDesc());
     	this.child = child;
+    	this.batchChild = BatchAdapter.wrap(child);
+    }
+
+    /** @return the predicate this Filter applies. */
+    public Predicate getPredicate()
+    {
+        return p;
+    }
+
+    /** @return the operator this Filter reads from. */
+    public DbIterator getChild()
+    {
+        return child;
     }
 
     public TupleDesc getTupleDesc() 
@@ -74,7 +94,6 @@ public class Filter extends AbstractDbIterator {
     			t = child.next();
 		    	if (p.filter(t))
 		    	{
-		    		System.out.println();
 		    		break;
 		    	}
     		}
@@ -82,4 +101,31 @@ public class Filter extends AbstractDbIterator {
         return t;		
         
     }
+
+    /**
+     * Returns the next batch of the child that has at least one row passing
+     * the predicate, with its selection vector narrowed to those rows.
+     * @see CompiledPredicate#filter(TupleBatch, int[])
+     */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException
+    {
+    	for (;;)
+    	{
+    		TupleBatch batch = batchChild.nextBatch();
+    		if (batch == null)
+    		{
+    			return null;
+    		}
+    		if (selection == null || selection.length < batch.capacity())
+    		{
+    			selection = new int[batch.capacity()];
+    		}
+    		int passed = compiled.filter(batch, selection);
+    		if (passed > 0)
+    		{
+    			batch.setSelection(selection, passed);
+    			return batch;
+    		}
+    	}
+    }
 }
@@ -0,0 +1,843 @@
+package simpledb.operators;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import simpledb.Database;
+import simpledb.MemoryBroker;
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.file.HeapFile;
+import simpledb.file.SpillFile;
+import simpledb.predicates.JoinPredicate;
+import simpledb.predicates.Predicate;
+import simpledb.predicates.RuntimeFilter;
+import simpledb.tuple.Field;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
+import simpledb.tuple.Type;
+
+/**
+ * HashJoin computes an equality join by buffering the left input and
+ * probing it with every row of the right input. The output is the
+ * concatenation of the joining left and right tuples, as with {@link Join}.
+ * <p>
+ * How the left input is held is decided once it has been read, from its
+ * size rather than from estimates (see {@link Strategy}): at most
+ * NESTED_LOOP_ROWS rows are compared with every right row as they are;
+ * more, while they fit in memory, are indexed by a {@link BatchHashTable};
+ * and when they do not fit, the join switches to partitions while reading
+ * the left input, without reading any of it again. In memory the output
+ * comes in the order of the right input.
+ * <p>
+ * The rows held are reserved from the {@link MemoryBroker}, GRANT_ROWS at
+ * a time. When more than maxRows rows are held, or the broker refuses more,
+ * the rows read so far are split into partitions on their hash, and from
+ * then on the largest partition is spilled to a {@link SpillFile} whenever
+ * memory runs out again, with every later left row of it. A hash table is
+ * built over each partition left in memory, and the right input, read once
+ * as usual, probes them; its rows falling in a spilled partition are
+ * spilled alongside. Each pair of spilled partitions is then joined the
+ * same way, on other bits of the hash, so those rows come out last; one
+ * holding nearly all the rows of its pass, mostly of one key that no bits
+ * would split, is held in memory at once instead, past the budget if need be.
+ * <p>
+ * Once the left input is held in memory, a {@link RuntimeFilter} of its
+ * keys is pushed down to the scan of a heap file producing the join field
+ * of the right input, through filters, projections, fetches and the inputs
+ * of inner joins, which drop their rows anyway when the key does not match.
+ * The rows of that scan whose key is not on the left side are then mostly
+ * dropped on the page, before they are decoded. The filter is taken off
+ * the scan again when the join is closed. No filter is pushed once the
+ * left input is partitioned, since its keys are partly on disk.
+ */
+public class HashJoin extends AbstractDbIterator implements BatchDbIterator {
+
+    /** How the left input was held at the last open. */
+    public enum Strategy
+    {
+        /** A few rows, compared with every right row. */
+        NESTED_LOOP,
+        /** One hash table over every row. */
+        IN_MEMORY,
+        /** Partitions on the hash, some of them spilled. */
+        PARTITIONED
+    }
+
+    /** Number of left rows held in memory unless told otherwise; the memory broker usually refuses first. */
+    public static final int DEFAULT_MAX_ROWS = 1 << 20;
+    /** Largest left input compared row by row instead of hashed. */
+    public static final int NESTED_LOOP_ROWS = 16;
+
+    private static final int FANOUT_BITS = 3;
+    private static final int FANOUT = 1 << FANOUT_BITS;
+    /** Deepest pass that may still spill; every pass uses FANOUT_BITS more bits of the hash. */
+    private static final int MAX_LEVEL = 32 / FANOUT_BITS - 1;
+    /** Number of rows reserved from the memory broker at a time. */
+    private static final int GRANT_ROWS = 1024;
+    /** Share of the rows of a pass in one spilled partition past which it is not split again, but held. */
+    private static final double SKEWED = 0.9;
+
+    private final JoinPredicate p;
+    private final DbIterator child1;
+    private final DbIterator child2;
+    private final BatchDbIterator leftIn;
+    private final BatchDbIterator rightIn;
+    private final boolean runtimeFilter;
+    private final int maxRows;
+    private final TupleDesc td;
+    private final long rowBytes;
+    private final boolean intKey;
+
+    private MemoryBroker.Reservation memory;
+    // rows the reservation covers
+    private int grantedRows;
+    private Strategy strategy;
+    private int spills;
+
+    // the pass over the inputs or over one pair of spilled partitions
+    private int level;
+    private SpillFile probeInput;
+    private ArrayList<TupleBatch> held;
+    private int heldRows;
+    // set once the rows held are split into partitions
+    private List<List<TupleBatch>> parts;
+    private int[] partRows;
+    // rows of each partition, spilled or not
+    private int[] partTotal;
+    private SpillFile[] buildSpilled;
+    private SpillFile[] probeSpilled;
+    private BatchHashTable[] tables;
+    private final LinkedList<Pass> pending = new LinkedList<Pass>();
+    private boolean done;
+
+    private RuntimeFilter filter;
+    private SeqScan filtered;
+
+    private TupleBatch outBatch;
+    private TupleBatch inputBatch;
+    private TupleBatch probeBatch;
+    private TupleBatch probe;
+    private int probePos;
+    private int probeRow;
+    private int probeHash;
+    private BatchHashTable table;
+    private int entry = -1;
+    // the rows held in one batch, when compared row by row
+    private TupleBatch few;
+    // next row of few to compare the current probe row with, or -1
+    private int loopRow = -1;
+
+    // batch being read by readNext
+    private TupleBatch current;
+    private int currentPos;
+
+    /**
+     * Constructor.
+     * @param p the equality predicate to join on.
+     * @param child1 the left input, which the hash table is built over.
+     * @param child2 the right input, which probes the table.
+     */
+    public HashJoin(JoinPredicate p, DbIterator child1, DbIterator child2)
+    {
+        this(p, child1, child2, true);
+    }
+
+    /**
+     * Constructor.
+     * @param p the equality predicate to join on.
+     * @param child1 the left input, which the hash table is built over.
+     * @param child2 the right input, which probes the table.
+     * @param runtimeFilter whether to push a filter of the left keys down to
+     *        the scan of the right input.
+     */
+    public HashJoin(JoinPredicate p, DbIterator child1, DbIterator child2, boolean runtimeFilter)
+    {
+        this(p, child1, child2, runtimeFilter, DEFAULT_MAX_ROWS);
+    }
+
+    /**
+     * Constructor.
+     * @param p the equality predicate to join on.
+     * @param child1 the left input, which the hash table is built over.
+     * @param child2 the right input, which probes the table.
+     * @param runtimeFilter whether to push a filter of the left keys down to
+     *        the scan of the right input.
+     * @param maxRows the number of left rows held in memory before the left
+     *        input is partitioned.
+     */
+    public HashJoin(JoinPredicate p, DbIterator child1, DbIterator child2, boolean runtimeFilter, int maxRows)
+    {
+        if (p.getOperator() != Predicate.Op.EQUALS)
+        {
+            throw new IllegalArgumentException("a hash join needs an equality predicate");
+        }
+        if (maxRows < 1)
+        {
+            throw new IllegalArgumentException("maxRows must be at least 1");
+        }
+        this.p = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.runtimeFilter = runtimeFilter;
+        this.maxRows = maxRows;
+        leftIn = BatchAdapter.wrap(child1);
+        rightIn = BatchAdapter.wrap(child2);
+        td = TupleDesc.combine(child1.getTupleDesc(), child2.getTupleDesc());
+        rowBytes = MemoryBroker.rowBytes(child1.getTupleDesc());
+        intKey = child1.getTupleDesc().getType(p.getField1()) == Type.INT_TYPE;
+    }
+
+    /** @return the predicate tuples are joined on. */
+    public JoinPredicate getJoinPredicate()
+    {
+        return p;
+    }
+
+    /** @return the left input of this join, which the hash table is built over. */
+    public DbIterator getLeftChild()
+    {
+        return child1;
+    }
+
+    /** @return the right input of this join. */
+    public DbIterator getRightChild()
+    {
+        return child2;
+    }
+
+    /** @return whether this join pushes a runtime filter down its right input. */
+    public boolean hasRuntimeFilter()
+    {
+        return runtimeFilter;
+    }
+
+    /** @return the number of left rows held in memory before the left input is partitioned. */
+    public int getMaxRows()
+    {
+        return maxRows;
+    }
+
+    /** @return how the left input was held at the last open, or null if never opened. */
+    public Strategy getStrategy()
+    {
+        return strategy;
+    }
+
+    /** @return the number of partitions spilled since the last open. */
+    public int getSpillCount()
+    {
+        return spills;
+    }
+
+    /**
+     * @return the scan the runtime filter was pushed down to at the last
+     *         open, or null if there was none.
+     */
+    public SeqScan getFilteredScan()
+    {
+        return filtered;
+    }
+
+    /**
+     * @return the number of rows of the right input dropped by the runtime
+     *         filter since the last open.
+     */
+    public long getRowsDropped()
+    {
+        return filter == null ? 0 : filter.getRowsDropped();
+    }
+
+    public TupleDesc getTupleDesc()
+    {
+        return td;
+    }
+
+    /** Reads the left input and decides how to hold it, then opens the right one. */
+    public void open() throws DbException, NoSuchElementException, TransactionAbortedException
+    {
+        child1.open();
+        memory = Database.getMemoryBroker().reserve();
+        grantedRows = 0;
+        spills = 0;
+        filter = null;
+        filtered = null;
+        build(null, 0);
+        if (parts == null)
+        {
+            strategy = tables == null ? Strategy.NESTED_LOOP : Strategy.IN_MEMORY;
+            if (runtimeFilter)
+            {
+                pushFilter(held);
+            }
+        }
+        else
+        {
+            strategy = Strategy.PARTITIONED;
+        }
+        resetProbe();
+        child2.open();
+    }
+
+    public void close()
+    {
+        super.close();
+        if (filtered != null)
+        {
+            filtered.removeRuntimeFilter(filter);
+        }
+        child1.close();
+        child2.close();
+        deleteSpills();
+        if (memory != null)
+        {
+            memory.release();
+            memory = null;
+        }
+        held = null;
+        few = null;
+        parts = null;
+        tables = null;
+        outBatch = null;
+    }
+
+    /**
+     * Probes the left rows again with the right input from the start. They
+     * are kept if they were held in memory; a partitioned join is run again.
+     */
+    public void rewind() throws DbException, TransactionAbortedException
+    {
+        if (strategy == Strategy.PARTITIONED)
+        {
+            close();
+            open();
+            return;
+        }
+        super.close();
+        child2.rewind();
+        resetProbe();
+    }
+
+    private void resetProbe()
+    {
+        // without left rows an inner join has none: the right input is not read
+        done = parts == null && heldRows == 0;
+        probe = null;
+        probePos = 0;
+        entry = -1;
+        loopRow = -1;
+        current = null;
+    }
+
+    private void deleteSpills()
+    {
+        if (probeInput != null)
+        {
+            probeInput.delete();
+            probeInput = null;
+        }
+        for (SpillFile[] files : new SpillFile[][] { buildSpilled, probeSpilled })
+        {
+            if (files != null)
+            {
+                for (SpillFile f : files)
+                {
+                    if (f != null)
+                    {
+                        f.delete();
+                    }
+                }
+            }
+        }
+        buildSpilled = null;
+        probeSpilled = null;
+        for (Pass pass : pending)
+        {
+            pass.build.delete();
+            pass.probe.delete();
+        }
+        pending.clear();
+    }
+
+    /**
+     * Reads the left rows of a pass, from the left input or from a spilled
+     * partition, and indexes those it keeps in memory.
+     * @param file the spilled left rows, or null for the left input.
+     */
+    private void build(SpillFile file, int level) throws DbException, TransactionAbortedException
+    {
+        this.level = level;
+        held = new ArrayList<TupleBatch>();
+        heldRows = 0;
+        few = null;
+        parts = null;
+        tables = null;
+        buildSpilled = new SpillFile[FANOUT];
+        probeSpilled = new SpillFile[FANOUT];
+        partTotal = new int[FANOUT];
+        TupleBatch batch;
+        while ((batch = file == null ? leftIn.nextBatch() : file.read(inputBatch(), null)) != null)
+        {
+            if (parts == null)
+            {
+                held.add(batch.copy());
+                heldRows += batch.numRows();
+                if (!reserve(heldRows))
+                {
+                    heldRows = 0;
+                    parts = new ArrayList<List<TupleBatch>>(FANOUT);
+                    partRows = new int[FANOUT];
+                    for (int p = 0; p < FANOUT; p++)
+                    {
+                        parts.add(new ArrayList<TupleBatch>());
+                    }
+                    for (TupleBatch b : held)
+                    {
+                        addAll(b);
+                    }
+                    held = null;
+                }
+            }
+            else
+            {
+                addAll(batch);
+            }
+        }
+        if (file != null)
+        {
+            file.delete();
+        }
+        int field1 = p.getField1();
+        if (parts == null)
+        {
+            if (heldRows > NESTED_LOOP_ROWS)
+            {
+                tables = new BatchHashTable[] { new BatchHashTable(held, field1, 0) };
+                return;
+            }
+            few = new TupleBatch(child1.getTupleDesc(), Math.max(heldRows, 1));
+            for (TupleBatch b : held)
+            {
+                for (int row = 0; row < b.size(); row++)
+                {
+                    few.copyColumns(few.addRow(), 0, b, row);
+                }
+            }
+            return;
+        }
+        tables = new BatchHashTable[FANOUT];
+        for (int p = 0; p < FANOUT; p++)
+        {
+            if (buildSpilled[p] == null)
+            {
+                tables[p] = new BatchHashTable(parts.get(p), field1, 0);
+            }
+        }
+    }
+
+    /**
+     * Reserves memory for the given number of rows held.
+     * @return false if they should be partitioned instead.
+     */
+    private boolean reserve(int rows)
+    {
+        boolean mayPartition = level < MAX_LEVEL;
+        if (rows > maxRows && mayPartition)
+        {
+            return false;
+        }
+        while (rows > grantedRows)
+        {
+            if (memory.tryGrow(GRANT_ROWS * rowBytes))
+            {
+                grantedRows += GRANT_ROWS;
+            }
+            else if (mayPartition)
+            {
+                return false;
+            }
+            else
+            {
+                memory.grow(GRANT_ROWS * rowBytes);
+                grantedRows += GRANT_ROWS;
+            }
+        }
+        return true;
+    }
+
+    /** Adds the rows of batch to their partitions, spilling the largest ones while memory runs out. */
+    private void addAll(TupleBatch batch) throws DbException
+    {
+        int field1 = p.getField1();
+        int n = batch.numRows();
+        for (int i = 0; i < n; i++)
+        {
+            int row = batch.rowAt(i);
+            int part = partition(BatchHashTable.hash(batch, field1, row));
+            partTotal[part]++;
+            if (buildSpilled[part] != null)
+            {
+                buildSpilled[part].write(batch, row, (byte) 0);
+                continue;
+            }
+            List<TupleBatch> list = parts.get(part);
+            TupleBatch last = list.isEmpty() ? null : list.get(list.size() - 1);
+            if (last == null || last.isFull())
+            {
+                last = new TupleBatch(child1.getTupleDesc());
+                list.add(last);
+            }
+            last.copyColumns(last.addRow(), 0, batch, row);
+            partRows[part]++;
+            heldRows++;
+            while (!reserve(heldRows) && spillLargest())
+            {
+            }
+        }
+    }
+
+    private int partition(int hash)
+    {
+        int h = hash * 0x9E3779B9;
+        return (h >>> (32 - FANOUT_BITS * (level + 1))) & (FANOUT - 1);
+    }
+
+    /**
+     * Writes the rows of the largest partition in memory to a new spill file.
+     * @return false if no partition in memory holds rows.
+     */
+    private boolean spillLargest() throws DbException
+    {
+        int largest = -1;
+        for (int p = 0; p < FANOUT; p++)
+        {
+            if (buildSpilled[p] == null && (largest < 0 || partRows[p] > partRows[largest]))
+            {
+                largest = p;
+            }
+        }
+        if (largest < 0 || partRows[largest] == 0)
+        {
+            return false;
+        }
+        SpillFile f = new SpillFile(child1.getTupleDesc());
+        for (TupleBatch b : parts.get(largest))
+        {
+            for (int row = 0; row < b.size(); row++)
+            {
+                f.write(b, row, (byte) 0);
+            }
+        }
+        heldRows -= partRows[largest];
+        parts.set(largest, null);
+        partRows[largest] = 0;
+        buildSpilled[largest] = f;
+        spills++;
+        return true;
+    }
+
+    private TupleBatch inputBatch()
+    {
+        if (inputBatch == null)
+        {
+            inputBatch = new TupleBatch(child1.getTupleDesc());
+        }
+        return inputBatch;
+    }
+
+    /** Builds the runtime filter over the rows of batches and adds it to the scan under the right input. */
+    private void pushFilter(List<TupleBatch> batches)
+    {
+        int[] field = new int[] { p.getField2() };
+        SeqScan scan = scanOf(child2, field);
+        if (scan == null || scan.getTupleDesc().getType(field[0]) != child1.getTupleDesc().getType(p.getField1()))
+        {
+            return;
+        }
+        RuntimeFilter f = new RuntimeFilter(field[0], scan.getTupleDesc().getType(field[0]), heldRows);
+        for (TupleBatch b : batches)
+        {
+            for (int row = 0; row < b.size(); row++)
+            {
+                f.add(b, p.getField1(), row);
+            }
+        }
+        if (scan.addRuntimeFilter(f))
+        {
+            filter = f;
+            filtered = scan;
+        }
+    }
+
+    /**
+     * Follows a field of the output of op down to the heap file scan it is
+     * read from, through operators that only return rows holding the value
+     * of the field that the scan returned.
+     * @param field the field of op; on return, the field of the scan.
+     * @return the scan, or null if the field cannot be followed to one.
+     */
+    private static SeqScan scanOf(DbIterator op, int[] field)
+    {
+        for (;;)
+        {
+            if (op instanceof Filter)
+            {
+                op = ((Filter) op).getChild();
+            }
+            else if (op instanceof Fetch)
+            {
+                op = ((Fetch) op).getChild();
+            }
+            else if (op instanceof Project)
+            {
+                field[0] = ((Project) op).getFields()[field[0]];
+                op = ((Project) op).getChild();
+            }
+            else if (op instanceof SemiJoin)
+            {
+                op = ((SemiJoin) op).getOuterChild();
+            }
+            else if (op instanceof Join || op instanceof HashJoin)
+            {
+                DbIterator left = op instanceof Join ? ((Join) op).getLeftChild() : ((HashJoin) op).getLeftChild();
+                DbIterator right = op instanceof Join ? ((Join) op).getRightChild() : ((HashJoin) op).getRightChild();
+                int leftWidth = left.getTupleDesc().numFields();
+                if (field[0] < leftWidth)
+                {
+                    op = left;
+                }
+                else
+                {
+                    field[0] -= leftWidth;
+                    op = right;
+                }
+            }
+            else if (op instanceof SeqScan
+                    && Database.getCatalog().getDbFile(((SeqScan) op).getTableId()) instanceof HeapFile)
+            {
+                return (SeqScan) op;
+            }
+            else
+            {
+                return null;
+            }
+        }
+    }
+
+    protected Tuple readNext() throws DbException, TransactionAbortedException
+    {
+        while (current == null || currentPos == current.numRows())
+        {
+            current = nextBatch();
+            currentPos = 0;
+            if (current == null)
+            {
+                return null;
+            }
+        }
+        return current.getTuple(current.rowAt(currentPos++));
+    }
+
+    /**
+     * Returns the next joined rows. The probe position is kept across calls
+     * so that a batch can be returned as soon as it is full.
+     */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException
+    {
+        if (memory == null)
+        {
+            throw new DbException("HashJoin operator is closed");
+        }
+        if (outBatch == null)
+        {
+            outBatch = new TupleBatch(td);
+        }
+        outBatch.clear();
+        int leftWidth = child1.getTupleDesc().numFields();
+        int field1 = p.getField1();
+        int field2 = p.getField2();
+        while (!outBatch.isFull())
+        {
+            if (few != null && probe != null && (loopRow >= 0 || probePos < probe.numRows()))
+            {
+                compareFew(leftWidth, field1, field2);
+                continue;
+            }
+            if (entry >= 0)
+            {
+                int e = entry;
+                entry = table.next(e);
+                if (table.matches(e, probeHash, probe, field2, probeRow))
+                {
+                    int out = outBatch.addRow();
+                    outBatch.copyColumns(out, 0, table.batchOf(e), table.rowOf(e));
+                    outBatch.copyColumns(out, leftWidth, probe, probeRow);
+                }
+                continue;
+            }
+            if (probe == null || probePos == probe.numRows())
+            {
+                probe = nextProbe();
+                probePos = 0;
+                if (probe == null)
+                {
+                    break;
+                }
+                continue;
+            }
+            probeRow = probe.rowAt(probePos++);
+            probeHash = BatchHashTable.hash(probe, field2, probeRow);
+            int part = parts == null ? 0 : partition(probeHash);
+            table = tables[part];
+            if (table == null)
+            {
+                if (probeSpilled[part] == null)
+                {
+                    probeSpilled[part] = new SpillFile(child2.getTupleDesc());
+                }
+                probeSpilled[part].write(probe, probeRow, (byte) 0);
+                continue;
+            }
+            entry = table.first(probeHash);
+        }
+        return outBatch.size() == 0 ? null : outBatch;
+    }
+
+    /**
+     * Compares the rows of the probe batch, from the current one on, with
+     * every row of few, until the batch ends or outBatch is full.
+     */
+    private void compareFew(int leftWidth, int field1, int field2)
+    {
+        int n = few.size();
+        for (;;)
+        {
+            if (loopRow < 0)
+            {
+                if (probePos == probe.numRows())
+                {
+                    return;
+                }
+                probeRow = probe.rowAt(probePos++);
+                loopRow = intKey ? firstInt(few.getIntColumn(field1), n, probe.getInt(field2, probeRow), 0) : 0;
+            }
+            while (loopRow < n)
+            {
+                int row = loopRow++;
+                if (intKey || few.getField(field1, row).equals(probe.getField(field2, probeRow)))
+                {
+                    int out = outBatch.addRow();
+                    outBatch.copyColumns(out, 0, few, row);
+                    outBatch.copyColumns(out, leftWidth, probe, probeRow);
+                    if (intKey)
+                    {
+                        loopRow = firstInt(few.getIntColumn(field1), n, probe.getInt(field2, probeRow), loopRow);
+                    }
+                    if (outBatch.isFull())
+                    {
+                        return;
+                    }
+                }
+            }
+            loopRow = -1;
+        }
+    }
+
+    /** @return the first index from from on of keys[0..n) holding key, or n. */
+    private static int firstInt(int[] keys, int n, int key, int from)
+    {
+        while (from < n && keys[from] != key)
+        {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * @return the next right rows of the current pass, moving on to the
+     *         next pair of spilled partitions at the end of one, or null at
+     *         the end of the last.
+     */
+    private TupleBatch nextProbe() throws DbException, TransactionAbortedException
+    {
+        while (!done)
+        {
+            TupleBatch batch;
+            if (probeInput == null)
+            {
+                batch = rightIn.nextBatch();
+            }
+            else
+            {
+                if (probeBatch == null)
+                {
+                    probeBatch = new TupleBatch(child2.getTupleDesc());
+                }
+                batch = probeInput.read(probeBatch, null);
+            }
+            if (batch != null)
+            {
+                return batch;
+            }
+            int rows = 0;
+            for (int p = 0; p < FANOUT; p++)
+            {
+                rows += partTotal[p];
+            }
+            for (int p = 0; p < FANOUT; p++)
+            {
+                if (buildSpilled[p] == null)
+                {
+                    continue;
+                }
+                if (probeSpilled[p] != null)
+                {
+                    // a partition that did not split, mostly one key, would
+                    // not split on more bits either: it is held at once
+                    boolean skewed = partTotal[p] >= SKEWED * rows;
+                    pending.add(new Pass(buildSpilled[p], probeSpilled[p], skewed ? MAX_LEVEL : level + 1));
+                }
+                else
+                {
+                    buildSpilled[p].delete();
+                }
+            }
+            buildSpilled = null;
+            probeSpilled = null;
+            if (probeInput != null)
+            {
+                probeInput.delete();
+                probeInput = null;
+            }
+            if (pending.isEmpty())
+            {
+                done = true;
+            }
+            else
+            {
+                Pass next = pending.removeFirst();
+                build(next.build, next.level);
+                probeInput = next.probe;
+            }
+        }
+        return null;
+    }
+
+    /** A pair of spilled partitions still to join. */
+    private static class Pass
+    {
+        final SpillFile build;
+        final SpillFile probe;
+        final int level;
+
+        Pass(SpillFile build, SpillFile probe, int level)
+        {
+            this.build = build;
+            this.probe = probe;
+            this.level = level;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package simpledb.operators;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.file.BTreeFile;
+import simpledb.file.DbFile;
+import simpledb.file.DbFileIterator;
+import simpledb.file.HashFile;
+import simpledb.file.SecondaryIndex;
+import simpledb.predicates.JoinPredicate;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleDesc;
+
+/**
+ * IndexNestedLoopJoin joins its child with a table it reads through an
+ * index on the join field of the table, as an {@link IndexScan} does: for
+ * every tuple of the child, the index is looked up for the tuples of the
+ * table whose join field equals that of the child tuple, and those that pass
+ * the filters over the table are returned. The table is never scanned as a
+ * whole, so that a few child tuples cost a few lookups.
+ * <p>
+ * As for {@link Join}, the output tuples are the child tuple followed by the
+ * tuple of the table.
+ */
+public class IndexNestedLoopJoin extends AbstractDbIterator {
+
+    private final TransactionId tid;
+    private final DbIterator child;
+    private final JoinPredicate p;
+    private final int tableid;
+    private final SecondaryIndex index;
+    private final DbFile file;
+    private final TupleDesc tableTd;
+    private final ArrayList<Predicate> filters;
+
+    private Tuple outer;
+    private DbFileIterator lookup;
+
+    /**
+     * Constructor.
+     *
+     * @param child the outer input.
+     * @param field the join field of the outer input.
+     * @param tableid the table joined, stored in a BTreeFile or a HashFile
+     *        keyed on the join field if index is null.
+     * @param index an index of the table on the join field, or null.
+     * @param tableAlias the alias of the table, as for {@link SeqScan}.
+     * @param filters predicates over the tuples of the table, all of which
+     *        the tuples joined satisfy.
+     */
+    public IndexNestedLoopJoin(TransactionId tid, DbIterator child, int field, int tableid, SecondaryIndex index,
+            String tableAlias, List<Predicate> filters)
+    {
+        this.tid = tid;
+        this.child = child;
+        this.tableid = tableid;
+        this.index = index;
+        this.file = Database.getCatalog().getDbFile(tableid);
+        this.filters = new ArrayList<Predicate>(filters);
+        int key = index != null ? index.getField() : keyField(file);
+        p = new JoinPredicate(field, Predicate.Op.EQUALS, key);
+        tableTd = new TupleDesc(file.getTupleDesc());
+        tableTd.setAliasToFields(tableAlias);
+    }
+
+    private static int keyField(DbFile f)
+    {
+        if (f instanceof BTreeFile)
+        {
+            return ((BTreeFile) f).keyField();
+        }
+        if (f instanceof HashFile)
+        {
+            return ((HashFile) f).keyField();
+        }
+        throw new IllegalArgumentException("table " + f.getId() + " is not stored in an index");
+    }
+
+    /** @return the predicate tuples are joined on; its second field is that of the table. */
+    public JoinPredicate getJoinPredicate()
+    {
+        return p;
+    }
+
+    /** @return the outer input of this join. */
+    public DbIterator getChild()
+    {
+        return child;
+    }
+
+    /** @return the id of the table looked up. */
+    public int getTableId()
+    {
+        return tableid;
+    }
+
+    /** @return the index the table is read through, or null if it is stored in one. */
+    public SecondaryIndex getIndex()
+    {
+        return index;
+    }
+
+    public TupleDesc getTupleDesc()
+    {
+        return TupleDesc.combine(child.getTupleDesc(), tableTd);
+    }
+
+    public void open() throws DbException, NoSuchElementException, TransactionAbortedException
+    {
+        child.open();
+        outer = null;
+        lookup = null;
+    }
+
+    public void close()
+    {
+        super.close();
+        if (lookup != null)
+        {
+            lookup.close();
+            lookup = null;
+        }
+        child.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException
+    {
+        super.close();
+        if (lookup != null)
+        {
+            lookup.close();
+            lookup = null;
+        }
+        child.rewind();
+    }
+
+    protected Tuple readNext() throws DbException, TransactionAbortedException
+    {
+        while (true)
+        {
+            while (lookup != null && lookup.hasNext())
+            {
+                Tuple t = lookup.next();
+                if (passes(t))
+                {
+                    return Tuple.combine(outer, t);
+                }
+            }
+            if (lookup != null)
+            {
+                lookup.close();
+                lookup = null;
+            }
+            if (!child.hasNext())
+            {
+                return null;
+            }
+            outer = child.next();
+            lookup = IndexScan.iterator(tid, file, index, outer.getField(p.getField1()), true,
+                    outer.getField(p.getField1()), true);
+            lookup.open();
+        }
+    }
+
+    private boolean passes(Tuple t)
+    {
+        for (Predicate f : filters)
+        {
+            if (!f.filter(t))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
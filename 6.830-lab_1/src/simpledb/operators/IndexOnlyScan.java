@@ -0,0 +1,100 @@
+package simpledb.operators;
+
+import java.util.NoSuchElementException;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.file.DbFileIterator;
+import simpledb.file.SecondaryIndex;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.Field;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleDesc;
+
+/**
+ * IndexOnlyScan reads the tuples of a table whose indexed field is in a
+ * range from the entries of a covering {@link SecondaryIndex} alone, in key
+ * order, without reading the pages of the table. Only the indexed and
+ * included fields of the tuples are set, as for the batches of a
+ * {@link SeqScan} restricted to some fields, so the operators above must not
+ * read the others.
+ */
+public class IndexOnlyScan extends AbstractDbIterator {
+
+    private final SecondaryIndex index;
+    private final TupleDesc td;
+    private final DbFileIterator fileIter;
+
+    /** Creates a scan of every entry of index. */
+    public IndexOnlyScan(TransactionId tid, SecondaryIndex index, String tableAlias)
+    {
+        this(tid, index, tableAlias, null, true, null, true);
+    }
+
+    /**
+     * Creates a scan of the entries whose key satisfies op with key.
+     *
+     * @param op as for {@link IndexScan#IndexScan(TransactionId, int, String, Predicate.Op, Field)}.
+     */
+    public IndexOnlyScan(TransactionId tid, SecondaryIndex index, String tableAlias, Predicate.Op op, Field key)
+    {
+        this(tid, index, tableAlias, IndexScan.lowOf(op, key), op != Predicate.Op.GREATER_THAN,
+                IndexScan.highOf(op, key), op != Predicate.Op.LESS_THAN);
+    }
+
+    /**
+     * Creates a scan of the entries with keys between low and high.
+     *
+     * @param low the lowest key, or null for no lower bound.
+     * @param high the highest key, or null for no upper bound.
+     */
+    public IndexOnlyScan(TransactionId tid, SecondaryIndex index, String tableAlias, Field low,
+            boolean lowInclusive, Field high, boolean highInclusive)
+    {
+        this.index = index;
+        td = new TupleDesc(Database.getCatalog().getTupleDesc(index.getTableId()));
+        td.setAliasToFields(tableAlias);
+        fileIter = index.coveringIterator(tid, low, lowInclusive, high, highInclusive);
+    }
+
+    /** @return the id of the table scanned. */
+    public int getTableId()
+    {
+        return index.getTableId();
+    }
+
+    /** @return the index read. */
+    public SecondaryIndex getIndex()
+    {
+        return index;
+    }
+
+    public TupleDesc getTupleDesc()
+    {
+        return td;
+    }
+
+    public void open() throws DbException, NoSuchElementException, TransactionAbortedException
+    {
+        fileIter.open();
+    }
+
+    protected Tuple readNext() throws DbException, TransactionAbortedException
+    {
+        return fileIter.hasNext() ? fileIter.next() : null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException
+    {
+        super.close();
+        fileIter.rewind();
+    }
+
+    public void close()
+    {
+        super.close();
+        fileIter.close();
+    }
+}
@@ -0,0 +1,201 @@
+package simpledb.operators;
+
+import java.util.NoSuchElementException;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.file.BTreeFile;
+import simpledb.file.DbFile;
+import simpledb.file.DbFileIterator;
+import simpledb.file.HashFile;
+import simpledb.file.HeapFile;
+import simpledb.file.SecondaryIndex;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.Field;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleDesc;
+
+/**
+ * IndexScan reads the tuples of a table stored in a {@link BTreeFile} whose
+ * key is in a range, in key order, going down the tree instead of reading
+ * the whole table. A table stored in a {@link HashFile} is scanned for a
+ * single key, in the bucket of that key. A table stored in a
+ * {@link HeapFile} is scanned through a {@link SecondaryIndex} on one of
+ * its fields, in the order of that field.
+ */
+public class IndexScan extends AbstractDbIterator {
+
+    private final int tableid;
+    private final SecondaryIndex index;
+    private final TupleDesc td;
+    private final Field low;
+    private final boolean lowInclusive;
+    private final Field high;
+    private final boolean highInclusive;
+    private final DbFileIterator fileIter;
+
+    /**
+     * Creates a scan of the tuples whose key satisfies op with key.
+     *
+     * @param tableid a table stored in a BTreeFile, or a HashFile if op is EQUALS.
+     * @param tableAlias the alias of this table, as for {@link SeqScan}.
+     * @param op EQUALS, GREATER_THAN, GREATER_THAN_OR_EQ, LESS_THAN or LESS_THAN_OR_EQ.
+     */
+    public IndexScan(TransactionId tid, int tableid, String tableAlias, Predicate.Op op, Field key)
+    {
+        this(tid, tableid, tableAlias, lowOf(op, key), op != Predicate.Op.GREATER_THAN, highOf(op, key),
+                op != Predicate.Op.LESS_THAN);
+    }
+
+    /**
+     * Creates a scan of the tuples with keys between low and high.
+     *
+     * @param low the lowest key, or null for no lower bound.
+     * @param high the highest key, or null for no upper bound.
+     */
+    public IndexScan(TransactionId tid, int tableid, String tableAlias, Field low, boolean lowInclusive,
+            Field high, boolean highInclusive)
+    {
+        this(tid, tableid, null, tableAlias, low, lowInclusive, high, highInclusive);
+    }
+
+    /**
+     * Creates a scan of the tuples of the table of index whose indexed field
+     * satisfies op with key.
+     *
+     * @param op as for {@link #IndexScan(TransactionId, int, String, Predicate.Op, Field)}.
+     */
+    public IndexScan(TransactionId tid, SecondaryIndex index, String tableAlias, Predicate.Op op, Field key)
+    {
+        this(tid, index, tableAlias, lowOf(op, key), op != Predicate.Op.GREATER_THAN, highOf(op, key),
+                op != Predicate.Op.LESS_THAN);
+    }
+
+    /**
+     * Creates a scan of the tuples of the table of index whose indexed field
+     * is between low and high.
+     */
+    public IndexScan(TransactionId tid, SecondaryIndex index, String tableAlias, Field low, boolean lowInclusive,
+            Field high, boolean highInclusive)
+    {
+        this(tid, index.getTableId(), index, tableAlias, low, lowInclusive, high, highInclusive);
+    }
+
+    private IndexScan(TransactionId tid, int tableid, SecondaryIndex index, String tableAlias, Field low,
+            boolean lowInclusive, Field high, boolean highInclusive)
+    {
+        DbFile f = Database.getCatalog().getDbFile(tableid);
+        this.tableid = tableid;
+        this.index = index;
+        this.low = low;
+        this.lowInclusive = lowInclusive;
+        this.high = high;
+        this.highInclusive = highInclusive;
+        td = new TupleDesc(f.getTupleDesc());
+        td.setAliasToFields(tableAlias);
+        fileIter = iterator(tid, f, index, low, lowInclusive, high, highInclusive);
+    }
+
+    static Field lowOf(Predicate.Op op, Field key)
+    {
+        if (op == Predicate.Op.NOT_EQUALS || op == Predicate.Op.LIKE)
+        {
+            throw new IllegalArgumentException("an index scan cannot look up " + op);
+        }
+        return op == Predicate.Op.LESS_THAN || op == Predicate.Op.LESS_THAN_OR_EQ ? null : key;
+    }
+
+    static Field highOf(Predicate.Op op, Field key)
+    {
+        return op == Predicate.Op.GREATER_THAN || op == Predicate.Op.GREATER_THAN_OR_EQ ? null : key;
+    }
+
+    /**
+     * @return an iterator over the tuples of f with keys between low and
+     *         high, read through index if it is not null.
+     */
+    static DbFileIterator iterator(TransactionId tid, DbFile f, SecondaryIndex index, Field low,
+            boolean lowInclusive, Field high, boolean highInclusive)
+    {
+        if (index != null)
+        {
+            return index.iterator(tid, low, lowInclusive, high, highInclusive);
+        }
+        if (f instanceof BTreeFile)
+        {
+            return ((BTreeFile) f).rangeIterator(tid, low, lowInclusive, high, highInclusive);
+        }
+        if (f instanceof HashFile)
+        {
+            if (low == null || !low.equals(high) || !lowInclusive || !highInclusive)
+            {
+                throw new IllegalArgumentException("a hash file only looks up single keys");
+            }
+            return ((HashFile) f).indexIterator(tid, Predicate.Op.EQUALS, low);
+        }
+        throw new IllegalArgumentException("table " + f.getId() + " is not stored in an index");
+    }
+
+    /** @return the id of the table scanned. */
+    public int getTableId()
+    {
+        return tableid;
+    }
+
+    /** @return the index the table is read through, or null if it is stored in one. */
+    public SecondaryIndex getIndex()
+    {
+        return index;
+    }
+
+    /** @return the lowest key scanned, or null. */
+    public Field getLow()
+    {
+        return low;
+    }
+
+    public boolean isLowInclusive()
+    {
+        return lowInclusive;
+    }
+
+    /** @return the highest key scanned, or null. */
+    public Field getHigh()
+    {
+        return high;
+    }
+
+    public boolean isHighInclusive()
+    {
+        return highInclusive;
+    }
+
+    public TupleDesc getTupleDesc()
+    {
+        return td;
+    }
+
+    public void open() throws DbException, NoSuchElementException, TransactionAbortedException
+    {
+        fileIter.open();
+    }
+
+    protected Tuple readNext() throws DbException, TransactionAbortedException
+    {
+        return fileIter.hasNext() ? fileIter.next() : null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException
+    {
+        super.close();
+        fileIter.rewind();
+    }
+
+    public void close()
+    {
+        super.close();
+        fileIter.close();
+    }
+}
@@ -8,14 +8,21 @@ import simpledb.Debug;
 import simpledb.TransactionId;
 import simpledb.exceptions.DbException;
 import simpledb.exceptions.TransactionAbortedException;
+import simpledb.file.HeapFile;
+import simpledb.file.HeapFileAppender;
 import simpledb.tuple.IntField;
 import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
 import simpledb.tuple.TupleDesc;
 import simpledb.tuple.Type;
 
 /**
  * Inserts tuples read from the child operator into
- * the tableid specified in the constructor
+ * the tableid specified in the constructor.
+ * <p>
+ * In bulk mode, tuples inserted into a heap file are not put in free slots
+ * of its pages one at a time but written to fresh pages appended to it, see
+ * {@link HeapFileAppender}.
  */
 public class Insert extends AbstractDbIterator {
 	
@@ -24,6 +31,7 @@ public class Insert extends AbstractDbIterator {
 	private TransactionId t;
 	private BufferPool bufferPool;
 	private boolean called = false;
+	private boolean bulk;
 	
     /**
      * Constructor.
@@ -33,13 +41,33 @@ public class Insert extends AbstractDbIterator {
      * @throws DbException if TupleDesc of child differs from table into which we are to insert.
      */
     public Insert(TransactionId t, DbIterator child, int tableid) throws DbException 
+    {
+        this(t, child, tableid, false);
+    }
+
+    /**
+     * Constructor.
+     * @param t The transaction running the insert.
+     * @param child The child operator from which to read tuples to be inserted.
+     * @param tableid The table in which to insert tuples.
+     * @param bulk Whether to append the tuples to a heap file in fresh pages.
+     * @throws DbException if TupleDesc of child differs from table into which we are to insert.
+     */
+    public Insert(TransactionId t, DbIterator child, int tableid, boolean bulk) throws DbException 
     {
         this.tableid = tableid;
         this.child = child;
         this.t = t;
+        this.bulk = bulk;
     	bufferPool = Database.getBufferPool();
     }
 
+    /** @return whether this Insert appends to heap files in fresh pages. */
+    public boolean isBulk()
+    {
+        return bulk;
+    }
+
     public TupleDesc getTupleDesc() 
     {
         return child.getTupleDesc();
@@ -83,10 +111,17 @@ public class Insert extends AbstractDbIterator {
 			if (!called) 
 			{
 				called = true;
-				for (; child.hasNext();) 
+				if (bulk && Database.getCatalog().getDbFile(tableid) instanceof HeapFile)
+				{
+					rowCount = bulkInsert();
+				}
+				else
 				{
-					bufferPool.insertTuple(t, tableid, child.next());
-					rowCount++;
+					for (; child.hasNext();) 
+					{
+						bufferPool.insertTuple(t, tableid, child.next());
+						rowCount++;
+					}
 				}
 				tuple = buildRowCountTuple(rowCount);
 			}
@@ -102,6 +137,24 @@ public class Insert extends AbstractDbIterator {
     	return tuple;
     }
 
+	/** Appends the tuples of child to fresh pages of the heap file. @return the number of tuples. */
+	private int bulkInsert() throws IOException, DbException, TransactionAbortedException
+	{
+		HeapFileAppender appender = new HeapFileAppender(t, (HeapFile) Database.getCatalog().getDbFile(tableid));
+		BatchDbIterator in = BatchAdapter.wrap(child);
+		TupleBatch batch;
+		while ((batch = in.nextBatch()) != null)
+		{
+			int n = batch.numRows();
+			for (int i = 0; i < n; i++)
+			{
+				appender.add(batch, batch.rowAt(i));
+			}
+		}
+		appender.flush();
+		return appender.getRowsAdded();
+	}
+
 	private Tuple buildRowCountTuple(int rowCount) 
 	{
 		Type[] typeAr = new Type[]{Type.INT_TYPE};
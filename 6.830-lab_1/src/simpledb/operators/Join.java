@@ -1,17 +1,22 @@
 package simpledb.operators;
-import java.util.ArrayList;
 import java.util.NoSuchElementException;
 
 import simpledb.exceptions.DbException;
 import simpledb.exceptions.TransactionAbortedException;
 import simpledb.predicates.JoinPredicate;
+import simpledb.predicates.Predicate;
 import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
 import simpledb.tuple.TupleDesc;
+import simpledb.tuple.Type;
 
 /**
  * The Join operator implements the relational join operation.
+ * <p>
+ * The left child is read once, through a {@link Materialize} that spills it
+ * to disk past its memory budget, and replayed for every right row.
  */
-public class Join extends AbstractDbIterator {
+public class Join extends AbstractDbIterator implements BatchDbIterator {
 
     private DbIterator leftChild;
     private DbIterator rightChild;
@@ -21,9 +26,17 @@ public class Join extends AbstractDbIterator {
 	private Tuple tuple_j;
 	private boolean next = true;
 	
-	private DbIterator leftChildCache;
-	private ArrayList<Tuple> leftChildCacheList = new ArrayList<Tuple>();
-	private boolean isCached = false;
+	// the left child, scanned once for every right row
+	private Materialize leftCache;
+
+	// state of the batch nested loop, see nextBatch
+	private BatchDbIterator rightIn;
+	private TupleBatch leftBatch;
+	private boolean scanningLeft;
+	private TupleBatch rightBatch;
+	private TupleBatch outBatch;
+	private int rightPos;
+	private int leftRowIdx;
 	/**
      * Constructor.  Accepts to children to join and the predicate
      * to join them on
@@ -37,13 +50,32 @@ public class Join extends AbstractDbIterator {
     	this.leftChild = child1;
     	this.rightChild = child2;
     	this.p = p;
-    	// init left child cache iterator 
-    	leftChildCache = child1;
+    	// a left child already materialized, with its own budget, is used as is
+    	leftCache = child1 instanceof Materialize ? (Materialize) child1 : new Materialize(child1);
+    	rightIn = BatchAdapter.wrap(child2);
     }
 
     /**
      * @see simpledb.tuple.TupleDesc#combine(TupleDesc, TupleDesc) for possible implementation logic.
      */
+    /** @return the predicate tuples are joined on. */
+    public JoinPredicate getJoinPredicate()
+    {
+        return p;
+    }
+
+    /** @return the left input of this join. */
+    public DbIterator getLeftChild()
+    {
+        return leftChild;
+    }
+
+    /** @return the right input of this join. */
+    public DbIterator getRightChild()
+    {
+        return rightChild;
+    }
+
     public TupleDesc getTupleDesc() 
     {
         return TupleDesc.combine(leftChild.getTupleDesc(), rightChild.getTupleDesc());
@@ -51,15 +83,17 @@ public class Join extends AbstractDbIterator {
 
     public void open() throws DbException, NoSuchElementException, TransactionAbortedException 
     {
-    	leftChild.open();
+    	leftCache.open();
     	rightChild.open();
     	open = true;
+    	next = true;
+    	resetBatchLoop();
     }
 
     public void close() 
     {
     	super.close();
-    	leftChild.close();
+    	leftCache.close();
     	rightChild.close();
     	open = false;
     }
@@ -67,8 +101,10 @@ public class Join extends AbstractDbIterator {
     public void rewind() throws DbException, TransactionAbortedException 
     {
     	super.close();
-    	leftChild.rewind();
+    	leftCache.rewind();
     	rightChild.rewind();
+    	next = true;
+    	resetBatchLoop();
     }
 
     /**
@@ -102,17 +138,12 @@ public class Join extends AbstractDbIterator {
 		{
 			if (next) 
 		 	{
-				setLeftChildCache();
 				tuple_i = rightChild.next();
-				leftChildCache.rewind();
+				leftCache.rewind();
 			}
-			for (;leftChildCache.hasNext();)
+			for (;leftCache.hasNext();)
 			{
-				tuple_j = leftChildCache.next();
-				if (!isCached)
-				{
-					leftChildCacheList.add(tuple_j);
-				}
+				tuple_j = leftCache.next();
 				if (p.filter(tuple_j, tuple_i))
 				{
 					next = false;
@@ -126,19 +157,104 @@ public class Join extends AbstractDbIterator {
  	
     }
 
-	private void setLeftChildCache() throws DbException, TransactionAbortedException {
-		if (leftChildCacheList.isEmpty())
+	private void resetBatchLoop()
+	{
+		leftBatch = null;
+		scanningLeft = false;
+		rightBatch = null;
+		rightPos = 0;
+		leftRowIdx = 0;
+	}
+
+	/**
+	 * Batch version of readNext. As in readNext, each row of the right child
+	 * is compared to every row of the left child, replayed from its
+	 * Materialize, so the output comes out in the same order. When both join
+	 * fields are INT_TYPE they are compared on the primitive columns. The
+	 * loop position is kept across calls so that a batch can be returned as
+	 * soon as it is full.
+	 */
+	public TupleBatch nextBatch() throws DbException, TransactionAbortedException
+	{
+		if (!open)
+		{
+			throw new DbException("Join operator is closed");
+		}
+		if (outBatch == null)
 		{
-			leftChildCache = leftChild;
+			outBatch = new TupleBatch(getTupleDesc());
 		}
-		else
+		outBatch.clear();
+		int leftWidth = leftChild.getTupleDesc().numFields();
+		int f1 = p.getField1();
+		int f2 = p.getField2();
+		Predicate.Op op = p.getOperator();
+		boolean ints = leftChild.getTupleDesc().getType(f1) == Type.INT_TYPE
+				&& rightChild.getTupleDesc().getType(f2) == Type.INT_TYPE;
+		while (!outBatch.isFull())
 		{
-			if (!isCached)
+			if (rightBatch == null || rightPos == rightBatch.numRows())
 			{
-				leftChildCache = new TupleArrayIterator(leftChildCacheList);
-				leftChildCache.open();
-				isCached = true;
+				rightBatch = rightIn.nextBatch();
+				rightPos = 0;
+				if (rightBatch == null)
+				{
+					break;
+				}
+			}
+			int rightRow = rightBatch.rowAt(rightPos);
+			if (!scanningLeft)
+			{
+				leftCache.rewind();
+				leftBatch = leftCache.nextBatch();
+				leftRowIdx = 0;
+				scanningLeft = true;
+			}
+			while (leftBatch != null && !outBatch.isFull())
+			{
+				// replayed batches carry no selection vector
+				int n = leftBatch.size();
+				if (ints)
+				{
+					int[] leftCol = leftBatch.getIntColumn(f1);
+					int rightValue = rightBatch.getInt(f2, rightRow);
+					for (; leftRowIdx < n && !outBatch.isFull(); leftRowIdx++)
+					{
+						if (Predicate.compare(op, leftCol[leftRowIdx], rightValue))
+						{
+							emit(leftBatch, leftRowIdx, rightRow, leftWidth);
+						}
+					}
+				}
+				else
+				{
+					for (; leftRowIdx < n && !outBatch.isFull(); leftRowIdx++)
+					{
+						if (leftBatch.getField(f1, leftRowIdx).compare(op, rightBatch.getField(f2, rightRow)))
+						{
+							emit(leftBatch, leftRowIdx, rightRow, leftWidth);
+						}
+					}
+				}
+				if (leftRowIdx == n)
+				{
+					leftBatch = leftCache.nextBatch();
+					leftRowIdx = 0;
+				}
+			}
+			if (leftBatch == null)
+			{
+				rightPos++;
+				scanningLeft = false;
 			}
 		}
+		return outBatch.size() == 0 ? null : outBatch;
+	}
+
+	private void emit(TupleBatch left, int leftRow, int rightRow, int leftWidth)
+	{
+		int row = outBatch.addRow();
+		outBatch.copyColumns(row, 0, left, leftRow);
+		outBatch.copyColumns(row, leftWidth, rightBatch, rightRow);
 	}
 }
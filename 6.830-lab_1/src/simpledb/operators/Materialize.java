@@ -0,0 +1,230 @@
+package simpledb.operators;
+
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+import simpledb.Database;
+import simpledb.MemoryBroker;
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.file.SpillFile;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
+
+/**
+ * Materialize keeps the rows of its child so that they can be read again
+ * without running the child again, for operators that scan an input many
+ * times, such as the outer side of a nested loop {@link Join}.
+ * <p>
+ * The first pass streams the rows of the child, keeping copies of them:
+ * the first batches, up to maxRows rows, in memory, and the rest in a
+ * {@link SpillFile}. {@link #rewind} reads the rest of the child if the
+ * first pass was left unfinished, then replays the rows in the same order,
+ * the batches held in memory first, without copying them again. Rows read
+ * back from the spill file have no record id.
+ * <p>
+ * The batches held in memory are reserved from the {@link MemoryBroker};
+ * rows are spilled before maxRows too once the broker refuses more.
+ */
+public class Materialize extends AbstractDbIterator implements BatchDbIterator {
+
+    /** Number of rows held in memory unless told otherwise. */
+    public static final int DEFAULT_MAX_ROWS = 100000;
+
+    private final DbIterator child;
+    private final BatchDbIterator childIn;
+    private final int maxRows;
+    private final TupleDesc td;
+    private final long rowBytes;
+    private MemoryBroker.Reservation memory;
+
+    private ArrayList<TupleBatch> batches = new ArrayList<TupleBatch>();
+    private int resident;
+    private SpillFile spill;
+    // true once every row of the child has been kept
+    private boolean complete;
+
+    // replay position: the next batch held in memory, then the spill file
+    private boolean replaying;
+    private int batchIdx;
+    private TupleBatch spillBatch;
+
+    // batch being read by readNext
+    private TupleBatch current;
+    private int currentPos;
+
+    /**
+     * Constructor.
+     * @param child the rows to keep.
+     */
+    public Materialize(DbIterator child)
+    {
+        this(child, DEFAULT_MAX_ROWS);
+    }
+
+    /**
+     * Constructor.
+     * @param child the rows to keep.
+     * @param maxRows the number of rows held in memory; later rows are spilled.
+     */
+    public Materialize(DbIterator child, int maxRows)
+    {
+        if (maxRows < 0)
+        {
+            throw new IllegalArgumentException("maxRows must not be negative");
+        }
+        this.child = child;
+        this.maxRows = maxRows;
+        td = child.getTupleDesc();
+        rowBytes = MemoryBroker.rowBytes(td);
+        childIn = BatchAdapter.wrap(child);
+    }
+
+    /** @return the operator this Materialize reads from. */
+    public DbIterator getChild()
+    {
+        return child;
+    }
+
+    /** @return the number of rows written to the spill file since the last open. */
+    public int getSpilledRows()
+    {
+        return spill == null ? 0 : spill.size();
+    }
+
+    public TupleDesc getTupleDesc()
+    {
+        return td;
+    }
+
+    public void open() throws DbException, NoSuchElementException, TransactionAbortedException
+    {
+        child.open();
+        if (spill != null)
+        {
+            spill.delete();
+            spill = null;
+        }
+        if (memory != null)
+        {
+            memory.release();
+        }
+        memory = Database.getMemoryBroker().reserve();
+        batches.clear();
+        resident = 0;
+        complete = false;
+        replaying = false;
+        current = null;
+    }
+
+    public void close()
+    {
+        super.close();
+        child.close();
+        if (spill != null)
+        {
+            spill.delete();
+            spill = null;
+        }
+        if (memory != null)
+        {
+            memory.release();
+            memory = null;
+        }
+        batches.clear();
+        spillBatch = null;
+        current = null;
+    }
+
+    /** Reads the rows again from the first, without running the child again. */
+    public void rewind() throws DbException, TransactionAbortedException
+    {
+        super.close();
+        if (!complete)
+        {
+            while (readChild() != null)
+            {
+            }
+        }
+        replaying = true;
+        batchIdx = 0;
+        if (spill != null)
+        {
+            spill.rewind();
+        }
+        current = null;
+    }
+
+    protected Tuple readNext() throws DbException, TransactionAbortedException
+    {
+        while (current == null || currentPos == current.numRows())
+        {
+            current = nextBatch();
+            currentPos = 0;
+            if (current == null)
+            {
+                return null;
+            }
+        }
+        return current.getTuple(current.rowAt(currentPos++));
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException
+    {
+        if (!replaying)
+        {
+            return readChild();
+        }
+        if (batchIdx < batches.size())
+        {
+            TupleBatch batch = batches.get(batchIdx++);
+            // drop any selection a reader set on the previous pass
+            batch.setSelection(null, 0);
+            return batch;
+        }
+        if (spill == null)
+        {
+            return null;
+        }
+        if (spillBatch == null)
+        {
+            spillBatch = new TupleBatch(td);
+        }
+        return spill.read(spillBatch, null);
+    }
+
+    /** Reads and keeps the next batch of the child. @return it, or null at its end. */
+    private TupleBatch readChild() throws DbException, TransactionAbortedException
+    {
+        if (complete)
+        {
+            return null;
+        }
+        TupleBatch batch = childIn.nextBatch();
+        if (batch == null)
+        {
+            complete = true;
+            return null;
+        }
+        int n = batch.numRows();
+        // once rows are spilled every later row is too, to keep them in order
+        if (spill == null && resident + n <= maxRows && memory.tryGrow(n * rowBytes))
+        {
+            batches.add(batch.copy());
+            resident += n;
+        }
+        else
+        {
+            if (spill == null)
+            {
+                spill = new SpillFile(td);
+            }
+            for (int i = 0; i < n; i++)
+            {
+                spill.write(batch, batch.rowAt(i), (byte) 0);
+            }
+        }
+        return batch;
+    }
+}
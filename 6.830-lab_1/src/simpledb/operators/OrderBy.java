@@ -1,24 +1,32 @@
 package simpledb.operators;
 import java.util.*;
 
+import simpledb.Database;
+import simpledb.MemoryBroker;
 import simpledb.exceptions.DbException;
 import simpledb.exceptions.TransactionAbortedException;
-import simpledb.predicates.Predicate;
-import simpledb.predicates.Predicate.Op;
-import simpledb.tuple.Field;
 import simpledb.tuple.Tuple;
 import simpledb.tuple.TupleDesc;
 
 /**
  * OrderBy is an operator that implements a relational ORDER BY.
+ * Any number of sort fields, each with its own direction, are supported.
+ * The child is sorted in memory, which is accounted for, but never refused,
+ * by the {@link MemoryBroker}.
+ *
+ * @see TupleSorter
  */
 public class OrderBy extends AbstractDbIterator {
     DbIterator child;
     TupleDesc td;
     ArrayList<Tuple> childTups = new ArrayList<Tuple>();
-    int orderByField;
+    int[] orderByFields;
     Iterator<Tuple> it;
-    boolean asc;
+    boolean[] asc;
+    MemoryBroker.Reservation memory;
+
+    /** Number of rows reserved from the memory broker at a time. */
+    private static final int GRANT_ROWS = 1024;
 
     /**
      * Creates a new OrderBy node over the tuples from the iterator.
@@ -28,9 +36,20 @@ public class OrderBy extends AbstractDbIterator {
      * @param child the tuples to sort.
      */
     public OrderBy(int orderbyField,  boolean asc, DbIterator child) {
+        this(new int[]{orderbyField}, new boolean[]{asc}, child);
+    }
+
+    /**
+     * Creates a new OrderBy node that sorts on several fields.
+     *
+     * @param orderbyFields the fields to which the sort is applied, most significant first.
+     * @param asc asc[i] is true if the sort order of orderbyFields[i] is ascending.
+     * @param child the tuples to sort.
+     */
+    public OrderBy(int[] orderbyFields, boolean[] asc, DbIterator child) {
         this.child = child;
         td= child.getTupleDesc();
-        this.orderByField = orderbyField;
+        this.orderByFields = orderbyFields;
         this.asc = asc;
     }
 
@@ -38,20 +57,53 @@ public class OrderBy extends AbstractDbIterator {
         return td;
     }
 
+    /** @return the fields sorted on, most significant first. */
+    public int[] getOrderByFields() {
+        return orderByFields.clone();
+    }
+
+    /** @return the direction of each sort field; true means ascending. */
+    public boolean[] getAscending() {
+        return asc.clone();
+    }
+
+    /** @return the operator this OrderBy reads from. */
+    public DbIterator getChild() {
+        return child;
+    }
+
     public void open()
         throws DbException, NoSuchElementException, TransactionAbortedException {
         child.open();
+        if (memory != null) {
+            memory.release();
+        }
+        memory = Database.getMemoryBroker().reserve();
         //load all the tuples in a collection, and sort it
+        childTups.clear();
+        long rowBytes = MemoryBroker.rowBytes(td);
         while (child.hasNext())
         {
+            // reserved ahead of the rows, GRANT_ROWS at a time
+            if (childTups.size() % GRANT_ROWS == 0) {
+                memory.grow(GRANT_ROWS * rowBytes);
+            }
             childTups.add((Tuple)child.next());
         }
-        Collections.sort(childTups, new TupleComparator(orderByField, asc));
+        new TupleSorter(orderByFields, asc).sort(childTups);
         it = childTups.iterator();
     }
 
     public void close() {
+        super.close();
         it = null;
+        // the rows are given back with their reservation
+        childTups = new ArrayList<Tuple>();
+        child.close();
+        if (memory != null) {
+            memory.release();
+            memory = null;
+        }
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
@@ -72,25 +124,3 @@ public class OrderBy extends AbstractDbIterator {
             return null;
     }
 }
-
- class TupleComparator implements Comparator<Tuple> {
-     int field;
-     boolean asc;
-
-     public TupleComparator(int field, boolean asc) {
-         this.field = field;
-     this.asc = asc;
-     }
-
-     public int compare(Tuple o1, Tuple o2) {
-         Field t1 = (o1).getField(field);
-         Field t2 = (o2).getField(field);
-         if (t1.compare(Predicate.Op.EQUALS, t2))
-             return 0;
-         if (t1.compare(Predicate.Op.GREATER_THAN, t2))
-             return asc?1:-1;
-         else
-             return asc?-1:1;
-     }
-
-}
@@ -0,0 +1,368 @@
+package simpledb.operators;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import simpledb.WorkerPool;
+import simpledb.aggregates.Aggregator;
+import simpledb.aggregates.IntAggregator;
+import simpledb.aggregates.StringAggregator;
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
+import simpledb.tuple.Type;
+
+/**
+ * ParallelAggregate computes the same aggregate as {@link Aggregate} in two
+ * phases.
+ * <p>
+ * In the first phase every worker folds the tuples it reads into an
+ * Aggregator of its own, which keeps one partial AggregateState (sum, count,
+ * min and max) per group. When the child is a {@link ParallelSeqScan}, or
+ * gathers ParallelSeqScans, the partial aggregation runs as the last stage
+ * of the pipeline of every scan worker, so tuples never leave the thread
+ * that scanned them; any other pipeline producing the child (see
+ * {@link Exchange#producersOf}) is read and aggregated by a worker of its
+ * own. In the second phase the partial Aggregators are merged into one,
+ * which produces the results. The no-grouping case works the same way, with
+ * a single state per worker.
+ * <p>
+ * Like Aggregate, the child is consumed the first time a result is read.
+ * Its pipelines are opened and closed by the thread that opens and closes
+ * this operator, so their table scans must be ParallelSeqScans.
+ */
+public class ParallelAggregate implements BatchDbIterator {
+
+    private final DbIterator child;
+    private final int afield;
+    private final int gfield;
+    private final Aggregator.Op aop;
+    private final TupleDesc td;
+    private final DbIterator[] producers;
+    private final List<Aggregator> partials = Collections.synchronizedList(new ArrayList<Aggregator>());
+
+    private CountDownLatch aggregated;
+    private AtomicReference<Exception> failure;
+    private DbIterator results;
+    private TupleBatch batch;
+
+    /**
+     * Constructor.
+     *
+     * @param child The DbIterator that is feeding us tuples.
+     * @param afield The column over which we are computing an aggregate.
+     * @param gfield The column over which we are grouping the result, or -1 if there is no grouping
+     * @param aop The aggregation operator to use
+     */
+    public ParallelAggregate(DbIterator child, int afield, int gfield, Aggregator.Op aop)
+    {
+        this.child = child;
+        this.afield = afield;
+        this.gfield = gfield;
+        this.aop = aop;
+        TupleDesc childTd = child.getTupleDesc();
+        if (gfield == Aggregator.NO_GROUPING)
+        {
+            td = new TupleDesc(new Type[]{Type.INT_TYPE},
+                    new String[]{childTd.getFieldName(afield)});
+        }
+        else
+        {
+            td = new TupleDesc(new Type[]{childTd.getType(gfield), Type.INT_TYPE},
+                    new String[]{childTd.getFieldName(gfield), childTd.getFieldName(afield)});
+        }
+        producers = Exchange.producersOf(child);
+        for (DbIterator p : producers)
+        {
+            if (p instanceof ParallelSeqScan)
+            {
+                pushInto((ParallelSeqScan) p);
+            }
+        }
+    }
+
+    /** Makes every worker of scan aggregate what it scans before anything is gathered. */
+    private void pushInto(ParallelSeqScan scan)
+    {
+        final ParallelSeqScan.WorkerPipeline inner = scan.getPipeline();
+        scan.setPipeline(new ParallelSeqScan.WorkerPipeline() {
+            public DbIterator build(DbIterator in)
+            {
+                return new PartialAggregate(inner == null ? in : inner.build(in));
+            }
+        });
+    }
+
+    private Aggregator newAggregator(TupleDesc childTd)
+    {
+        if (gfield == Aggregator.NO_GROUPING || childTd.getType(gfield) == Type.INT_TYPE)
+        {
+            return new IntAggregator(gfield, Type.INT_TYPE, afield, aop);
+        }
+        return new StringAggregator(gfield, Type.STRING_TYPE, afield, aop);
+    }
+
+    /**
+     * Returns the TupleDesc of the results: the group by field followed by
+     * the aggregate value, or only the aggregate value without grouping.
+     */
+    public TupleDesc getTupleDesc()
+    {
+        return td;
+    }
+
+    /** Opens the child and starts aggregating the pipelines that are not scans. */
+    public void open() throws DbException, TransactionAbortedException
+    {
+        partials.clear();
+        results = null;
+        failure = new AtomicReference<Exception>();
+        int tasks = 0;
+        for (DbIterator p : producers)
+        {
+            p.open();
+            if (!(p instanceof ParallelSeqScan))
+            {
+                tasks++;
+            }
+        }
+        aggregated = new CountDownLatch(tasks);
+        for (DbIterator p : producers)
+        {
+            if (!(p instanceof ParallelSeqScan))
+            {
+                WorkerPool.submit(new PartialTask(BatchAdapter.wrap(p), aggregated, failure));
+            }
+        }
+    }
+
+    /** Waits for every partial aggregate and merges them, the first time a result is read. */
+    private DbIterator results() throws DbException, TransactionAbortedException
+    {
+        if (results != null)
+        {
+            return results;
+        }
+        for (DbIterator p : producers)
+        {
+            if (p instanceof ParallelSeqScan)
+            {
+                // scan workers only produce partial aggregates, never tuples
+                ParallelSeqScan scan = (ParallelSeqScan) p;
+                while (scan.nextBatch() != null)
+                {
+                }
+            }
+        }
+        awaitTasks();
+        Exception e = failure.get();
+        if (e instanceof TransactionAbortedException)
+        {
+            throw (TransactionAbortedException) e;
+        }
+        if (e instanceof DbException)
+        {
+            throw (DbException) e;
+        }
+        if (e != null)
+        {
+            throw new DbException("partial aggregation failed: " + e);
+        }
+        Aggregator total = newAggregator(child.getTupleDesc());
+        synchronized (partials)
+        {
+            for (Aggregator partial : partials)
+            {
+                total.merge(partial);
+                partial.release();
+            }
+        }
+        results = total.iterator();
+        total.release();
+        results.open();
+        return results;
+    }
+
+    private void awaitTasks()
+    {
+        for (;;)
+        {
+            try
+            {
+                aggregated.await();
+                return;
+            }
+            catch (InterruptedException e)
+            {
+                // the coordinator is never interrupted on purpose; keep waiting
+            }
+        }
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException
+    {
+        if (batch == null)
+        {
+            batch = new TupleBatch(td);
+        }
+        batch.clear();
+        return BatchAdapter.fill(results(), batch) == 0 ? null : batch;
+    }
+
+    public boolean hasNext() throws DbException, TransactionAbortedException
+    {
+        return results().hasNext();
+    }
+
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException
+    {
+        return results().next();
+    }
+
+    /** Returns the same results again; the child is not read again. */
+    public void rewind() throws DbException, TransactionAbortedException
+    {
+        if (results != null)
+        {
+            results.rewind();
+        }
+    }
+
+    /** Closes the child; tasks still aggregating it are waited for first. */
+    public void close()
+    {
+        if (aggregated == null)
+        {
+            return;
+        }
+        awaitTasks();
+        for (DbIterator p : producers)
+        {
+            p.close();
+        }
+        synchronized (partials)
+        {
+            for (Aggregator partial : partials)
+            {
+                partial.release();
+            }
+        }
+        if (results != null)
+        {
+            results.close();
+        }
+        aggregated = null;
+        results = null;
+    }
+
+    /** Folds everything a pipeline produces into a new partial Aggregator. */
+    private void aggregate(BatchDbIterator in) throws DbException, TransactionAbortedException
+    {
+        Aggregator partial = newAggregator(in.getTupleDesc());
+        boolean added = false;
+        try
+        {
+            TupleBatch b;
+            while ((b = in.nextBatch()) != null)
+            {
+                partial.merge(b);
+            }
+            partials.add(partial);
+            added = true;
+        }
+        finally
+        {
+            if (!added)
+            {
+                partial.release();
+            }
+        }
+    }
+
+    /** Aggregates one pipeline that is not a scan on a worker. */
+    private class PartialTask implements Runnable
+    {
+        private final BatchDbIterator in;
+        private final CountDownLatch done;
+        private final AtomicReference<Exception> failure;
+
+        PartialTask(BatchDbIterator in, CountDownLatch done, AtomicReference<Exception> failure)
+        {
+            this.in = in;
+            this.done = done;
+            this.failure = failure;
+        }
+
+        public void run()
+        {
+            try
+            {
+                aggregate(in);
+            }
+            catch (Exception e)
+            {
+                failure.compareAndSet(null, e);
+            }
+            finally
+            {
+                done.countDown();
+            }
+        }
+    }
+
+    /**
+     * The last stage of the pipeline of a scan worker: aggregates the whole
+     * pipeline the first time it is read and produces no tuples.
+     */
+    private class PartialAggregate implements BatchDbIterator
+    {
+        private final BatchDbIterator in;
+
+        PartialAggregate(DbIterator in)
+        {
+            this.in = BatchAdapter.wrap(in);
+        }
+
+        public void open() throws DbException, TransactionAbortedException
+        {
+            in.open();
+        }
+
+        public TupleBatch nextBatch() throws DbException, TransactionAbortedException
+        {
+            aggregate(in);
+            return null;
+        }
+
+        public boolean hasNext() throws DbException, TransactionAbortedException
+        {
+            return nextBatch() != null;
+        }
+
+        public Tuple next() throws NoSuchElementException
+        {
+            throw new NoSuchElementException();
+        }
+
+        public void rewind() throws DbException
+        {
+            throw new DbException("a partial aggregate cannot be rewound");
+        }
+
+        public TupleDesc getTupleDesc()
+        {
+            return td;
+        }
+
+        public void close()
+        {
+            in.close();
+        }
+    }
+}
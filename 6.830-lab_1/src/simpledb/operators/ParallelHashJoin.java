@@ -0,0 +1,461 @@
+package simpledb.operators;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import simpledb.Database;
+import simpledb.MemoryBroker;
+import simpledb.WorkerPool;
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.predicates.JoinPredicate;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
+
+/**
+ * ParallelHashJoin computes an equality join with several worker threads.
+ * <p>
+ * The join runs in two phases. In the partition phase, every pipeline
+ * producing the left or the right input (see {@link Exchange#producersOf})
+ * is read by its own worker, which radix-partitions the tuples it reads on
+ * the low bits of the hash of the join field into buffers private to that
+ * worker, reserved with the {@link MemoryBroker} until close. Once both inputs are partitioned, parallelism workers claim the
+ * partitions one at a time; for each one a worker builds a hash table over
+ * the left tuples of the partition, taken from the buffers of every
+ * partitioning worker, and probes it with the right tuples of the
+ * partition. A hash table is only ever used by the worker that built it, so
+ * no lock is taken on it. The joined tuples are gathered through an
+ * {@link Exchange} and come out in no particular order.
+ * <p>
+ * As with Exchange, the inputs are opened and closed by the thread that
+ * opens and closes this operator but read by workers, so their table scans
+ * must be {@link ParallelSeqScan}s.
+ */
+public class ParallelHashJoin implements BatchDbIterator {
+
+    /** Partitions per worker, so that workers that get small partitions can claim more. */
+    private static final int PARTITIONS_PER_WORKER = 4;
+
+    private final JoinPredicate p;
+    private final DbIterator child1;
+    private final DbIterator child2;
+    private final int parallelism;
+    private final int radixBits;
+    private final TupleDesc td;
+    private final DbIterator[] leftProducers;
+    private final DbIterator[] rightProducers;
+    private final BatchDbIterator out;
+
+    private Partitions partitions;
+
+    /**
+     * Constructor.
+     *
+     * @param p the equality predicate to join on.
+     * @param child1 the left input.
+     * @param child2 the right input.
+     * @param parallelism the number of workers building and probing hash tables.
+     */
+    public ParallelHashJoin(JoinPredicate p, DbIterator child1, DbIterator child2, int parallelism)
+    {
+        if (p.getOperator() != Predicate.Op.EQUALS)
+        {
+            throw new IllegalArgumentException("a hash join needs an equality predicate");
+        }
+        if (parallelism < 1)
+        {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.p = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.parallelism = parallelism;
+        int bits = 0;
+        while ((1 << bits) < parallelism * PARTITIONS_PER_WORKER)
+        {
+            bits++;
+        }
+        radixBits = bits;
+        td = TupleDesc.combine(child1.getTupleDesc(), child2.getTupleDesc());
+        leftProducers = Exchange.producersOf(child1);
+        rightProducers = Exchange.producersOf(child2);
+        DbIterator[] probers = new DbIterator[parallelism];
+        for (int i = 0; i < parallelism; i++)
+        {
+            probers[i] = new Prober();
+        }
+        out = Exchange.gather(probers);
+    }
+
+    /** @return the equality predicate this join is computed on. */
+    public JoinPredicate getJoinPredicate()
+    {
+        return p;
+    }
+
+    /** @return the number of workers building and probing hash tables. */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /** @return the combined TupleDesc of the left and right inputs. */
+    public TupleDesc getTupleDesc()
+    {
+        return td;
+    }
+
+    /** Opens the inputs, starts partitioning them and then starts the probers. */
+    public void open() throws DbException, TransactionAbortedException
+    {
+        for (DbIterator in : leftProducers)
+        {
+            in.open();
+        }
+        for (DbIterator in : rightProducers)
+        {
+            in.open();
+        }
+        partitions = new Partitions(leftProducers.length + rightProducers.length);
+        for (int i = 0; i < leftProducers.length; i++)
+        {
+            WorkerPool.submit(new Partitioner(partitions, partitions.left, i,
+                    BatchAdapter.wrap(leftProducers[i]), p.getField1()));
+        }
+        for (int i = 0; i < rightProducers.length; i++)
+        {
+            WorkerPool.submit(new Partitioner(partitions, partitions.right, i,
+                    BatchAdapter.wrap(rightProducers[i]), p.getField2()));
+        }
+        out.open();
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException
+    {
+        return out.nextBatch();
+    }
+
+    public boolean hasNext() throws DbException, TransactionAbortedException
+    {
+        return out.hasNext();
+    }
+
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException
+    {
+        return out.next();
+    }
+
+    /** Joins the inputs again from the start; the hash tables are not kept. */
+    public void rewind() throws DbException, TransactionAbortedException
+    {
+        close();
+        open();
+    }
+
+    public void close()
+    {
+        if (partitions == null)
+        {
+            return;
+        }
+        partitions.cancelled = true;
+        out.close();
+        partitions.awaitPartitioned();
+        for (MemoryBroker.Reservation memory : partitions.memory)
+        {
+            memory.release();
+        }
+        for (DbIterator in : leftProducers)
+        {
+            in.close();
+        }
+        for (DbIterator in : rightProducers)
+        {
+            in.close();
+        }
+        partitions = null;
+    }
+
+    /**
+     * The partitioned inputs of one open: left.get(i).get(k) holds the
+     * batches of the k-th partition of the i-th left producer, and likewise
+     * for right.
+     */
+    private class Partitions
+    {
+        final List<List<List<TupleBatch>>> left;
+        final List<List<List<TupleBatch>>> right;
+        final CountDownLatch partitioned;
+        final AtomicInteger nextPartition = new AtomicInteger(0);
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        // one per partitioner, taken when it is submitted
+        final List<MemoryBroker.Reservation> memory = new ArrayList<MemoryBroker.Reservation>();
+        volatile boolean cancelled = false;
+
+        Partitions(int producers)
+        {
+            left = slots(leftProducers.length);
+            right = slots(rightProducers.length);
+            partitioned = new CountDownLatch(producers);
+        }
+
+        void awaitPartitioned()
+        {
+            for (;;)
+            {
+                try
+                {
+                    partitioned.await();
+                    return;
+                }
+                catch (InterruptedException e)
+                {
+                    // workers are never interrupted on purpose; keep waiting
+                }
+            }
+        }
+
+        /**
+         * @return a list of n empty slots, one per producer, that each
+         *         producer sets once; the latch publishes them.
+         */
+        private List<List<List<TupleBatch>>> slots(int n)
+        {
+            return new ArrayList<List<List<TupleBatch>>>(Collections.nCopies(n, (List<List<TupleBatch>>) null));
+        }
+
+        /** @return the batches of partition k of every producer of one input. */
+        ArrayList<TupleBatch> partition(List<List<List<TupleBatch>>> side, int k)
+        {
+            ArrayList<TupleBatch> batches = new ArrayList<TupleBatch>();
+            for (List<List<TupleBatch>> producer : side)
+            {
+                batches.addAll(producer.get(k));
+            }
+            return batches;
+        }
+    }
+
+    /** Reads one producer and splits its tuples into its own partition buffers. */
+    private class Partitioner implements Runnable
+    {
+        private final Partitions partitions;
+        private final List<List<List<TupleBatch>>> side;
+        private final int index;
+        private final BatchDbIterator in;
+        private final int field;
+        private final MemoryBroker.Reservation memory;
+
+        Partitioner(Partitions partitions, List<List<List<TupleBatch>>> side, int index, BatchDbIterator in, int field)
+        {
+            this.partitions = partitions;
+            this.side = side;
+            this.index = index;
+            this.in = in;
+            this.field = field;
+            memory = Database.getMemoryBroker().reserve();
+            partitions.memory.add(memory);
+        }
+
+        public void run()
+        {
+            int n = 1 << radixBits;
+            List<List<TupleBatch>> parts = new ArrayList<List<TupleBatch>>(n);
+            TupleBatch[] open = new TupleBatch[n];
+            for (int k = 0; k < n; k++)
+            {
+                parts.add(new ArrayList<TupleBatch>());
+            }
+            try
+            {
+                long rowBytes = MemoryBroker.rowBytes(in.getTupleDesc());
+                TupleBatch batch;
+                while (!partitions.cancelled && (batch = in.nextBatch()) != null)
+                {
+                    int rows = batch.numRows();
+                    for (int i = 0; i < rows; i++)
+                    {
+                        int row = batch.rowAt(i);
+                        int k = BatchHashTable.hash(batch, field, row) & (n - 1);
+                        TupleBatch to = open[k];
+                        if (to == null || to.isFull())
+                        {
+                            to = new TupleBatch(batch.getTupleDesc());
+                            memory.grow(to.capacity() * rowBytes);
+                            open[k] = to;
+                            parts.get(k).add(to);
+                        }
+                        int r = to.addRow();
+                        to.copyColumns(r, 0, batch, row);
+                    }
+                }
+                side.set(index, parts);
+            }
+            catch (Exception e)
+            {
+                partitions.failure.compareAndSet(null, e);
+                partitions.cancelled = true;
+            }
+            finally
+            {
+                partitions.partitioned.countDown();
+            }
+        }
+    }
+
+    /**
+     * One worker of the build and probe phase: claims partitions until there
+     * are none left, joining each in turn. Resumes where it stopped every
+     * time its output batch fills up.
+     */
+    private class Prober implements BatchDbIterator
+    {
+        private TupleBatch outBatch;
+        private BatchHashTable table;
+        private ArrayList<TupleBatch> probe;
+        private int probeBatch;
+        private int probeRow;
+        private int probeHash;
+        private int entry = -1;
+
+        public void open()
+        {
+            table = null;
+        }
+
+        public TupleBatch nextBatch() throws DbException, TransactionAbortedException
+        {
+            Partitions parts = partitions;
+            parts.awaitPartitioned();
+            Exception e = parts.failure.get();
+            if (e instanceof TransactionAbortedException)
+            {
+                throw (TransactionAbortedException) e;
+            }
+            if (e instanceof DbException)
+            {
+                throw (DbException) e;
+            }
+            if (e != null)
+            {
+                throw new DbException("hash join partitioning failed: " + e);
+            }
+            if (outBatch == null)
+            {
+                outBatch = new TupleBatch(td);
+            }
+            outBatch.clear();
+            int leftWidth = child1.getTupleDesc().numFields();
+            int field2 = p.getField2();
+            while (!outBatch.isFull() && !parts.cancelled)
+            {
+                if (table == null && !claim(parts))
+                {
+                    break;
+                }
+                while (probeBatch < probe.size())
+                {
+                    TupleBatch r = probe.get(probeBatch);
+                    while (probeRow < r.size())
+                    {
+                        while (entry >= 0)
+                        {
+                            int e2 = entry;
+                            entry = table.next(e2);
+                            if (table.matches(e2, probeHash, r, field2, probeRow))
+                            {
+                                int row = outBatch.addRow();
+                                outBatch.copyColumns(row, 0, table.batchOf(e2), table.rowOf(e2));
+                                outBatch.copyColumns(row, leftWidth, r, probeRow);
+                                if (outBatch.isFull())
+                                {
+                                    return outBatch;
+                                }
+                            }
+                        }
+                        if (++probeRow < r.size())
+                        {
+                            startProbe(r);
+                        }
+                    }
+                    probeBatch++;
+                    probeRow = 0;
+                    if (probeBatch < probe.size())
+                    {
+                        startProbe(probe.get(probeBatch));
+                    }
+                }
+                table = null;
+            }
+            return outBatch.size() == 0 ? null : outBatch;
+        }
+
+        /** Builds the hash table of the next unclaimed partition; false if there is none. */
+        private boolean claim(Partitions parts)
+        {
+            for (;;)
+            {
+                int k = parts.nextPartition.getAndIncrement();
+                if (k >= (1 << radixBits))
+                {
+                    return false;
+                }
+                ArrayList<TupleBatch> build = parts.partition(parts.left, k);
+                if (build.isEmpty())
+                {
+                    continue;
+                }
+                ArrayList<TupleBatch> probeSide = parts.partition(parts.right, k);
+                if (probeSide.isEmpty())
+                {
+                    continue;
+                }
+                table = new BatchHashTable(build, p.getField1(), radixBits);
+                probe = probeSide;
+                probeBatch = 0;
+                probeRow = 0;
+                startProbe(probe.get(0));
+                return true;
+            }
+        }
+
+        private void startProbe(TupleBatch r)
+        {
+            probeHash = BatchHashTable.hash(r, p.getField2(), probeRow);
+            entry = table.first(probeHash);
+        }
+
+        public boolean hasNext()
+        {
+            throw new UnsupportedOperationException("probers are only read in batch mode");
+        }
+
+        public Tuple next()
+        {
+            throw new UnsupportedOperationException("probers are only read in batch mode");
+        }
+
+        public void rewind() throws DbException
+        {
+            throw new DbException("a prober cannot be rewound");
+        }
+
+        public TupleDesc getTupleDesc()
+        {
+            return td;
+        }
+
+        public void close()
+        {
+            table = null;
+            probe = null;
+        }
+    }
+}
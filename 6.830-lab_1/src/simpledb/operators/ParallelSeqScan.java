@@ -0,0 +1,464 @@
+package simpledb.operators;
+
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.Permissions;
+import simpledb.TransactionId;
+import simpledb.WorkerPool;
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.file.DbFile;
+import simpledb.file.HeapFile;
+import simpledb.page.HeapPage;
+import simpledb.page.HeapPageId;
+import simpledb.predicates.CompiledPredicate;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
+import simpledb.tuple.Type;
+
+/**
+ * ParallelSeqScan scans a heap file with several worker threads.
+ * <p>
+ * The pages of the table are handed out as morsels of MORSEL_PAGES
+ * consecutive pages: each worker claims the next unread morsel from a shared
+ * counter whenever it is done with its current one, so fast workers simply
+ * scan more of the table. Every worker runs its own copy of the pipeline
+ * pushed into the scan (see {@link #addFilter} and {@link #setPipeline}) in
+ * batch mode, and the batches it produces are gathered through a bounded
+ * queue by the thread that reads from this operator. Tuples come out in no
+ * particular order.
+ * <p>
+ * Page locks belong to the thread that acquires them, so open() locks every
+ * page of the table for the transaction before the workers start, and the
+ * workers read the pages without locking.
+ */
+public class ParallelSeqScan implements BatchDbIterator {
+
+    /** Number of consecutive pages a worker claims at a time. */
+    public static final int MORSEL_PAGES = 16;
+
+    /** Batches that may wait in the gather queue, per worker. */
+    private static final int QUEUED_BATCHES_PER_WORKER = 4;
+
+    /** Builds the operators each worker runs over the pages it scans. */
+    public interface WorkerPipeline {
+        /**
+         * Called once per worker every time the scan is opened or rewound.
+         * @param scan the worker's share of the table, after the pushed filters.
+         * @return the root of the worker's pipeline.
+         */
+        DbIterator build(DbIterator scan);
+    }
+
+    private static final TupleBatch END = new TupleBatch(new TupleDesc(new Type[0]), 1);
+
+    private final TransactionId tid;
+    private final HeapFile file;
+    private final TupleDesc scanTd;
+    private final int parallelism;
+    private final ArrayList<Predicate> filters = new ArrayList<Predicate>();
+    private CompiledPredicate[] compiled;
+    private WorkerPipeline pipeline;
+    private TupleDesc td;
+
+    private Run run;
+    private TupleBatch current;
+    private int pos;
+
+    /**
+     * Creates a parallel scan over the specified table as a part of the
+     * specified transaction.
+     *
+     * @param tid The transaction this scan is running as a part of.
+     * @param tableid the table to scan; it must be stored in a HeapFile.
+     * @param tableAlias the alias of this table, as for SeqScan.
+     * @param parallelism the number of workers scanning the table.
+     */
+    public ParallelSeqScan(TransactionId tid, int tableid, String tableAlias, int parallelism)
+    {
+        DbFile dbFile = Database.getCatalog().getDbFile(tableid);
+        if (!(dbFile instanceof HeapFile))
+        {
+            throw new IllegalArgumentException("only heap files can be scanned in parallel");
+        }
+        if (parallelism < 1)
+        {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.tid = tid;
+        this.file = (HeapFile) dbFile;
+        this.parallelism = parallelism;
+        scanTd = new TupleDesc(dbFile.getTupleDesc());
+        scanTd.setAliasToFields(tableAlias);
+        td = scanTd;
+    }
+
+    /** @return the number of workers scanning the table. */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * Makes every worker filter the tuples it scans with p, after the
+     * filters added before it. As in {@link SeqScan#addFilter}, filters are
+     * evaluated on the pages, before the tuples are decoded. Must be called
+     * before open.
+     */
+    public void addFilter(Predicate p)
+    {
+        filters.add(p);
+        CompiledPredicate[] c = new CompiledPredicate[filters.size()];
+        for (int i = 0; i < c.length; i++)
+        {
+            c[i] = CompiledPredicate.compile(filters.get(i), scanTd);
+        }
+        compiled = c;
+    }
+
+    /**
+     * Makes every worker run pipeline over the tuples it scans, after the
+     * pushed filters. Must be called before open.
+     */
+    public void setPipeline(WorkerPipeline pipeline)
+    {
+        this.pipeline = pipeline;
+        td = pipeline.build(new MorselScan(null)).getTupleDesc();
+    }
+
+    /** @return the pipeline set with {@link #setPipeline}, or null. */
+    public WorkerPipeline getPipeline()
+    {
+        return pipeline;
+    }
+
+    /**
+     * Returns the TupleDesc of the worker pipelines, which is the TupleDesc of
+     * the table prefixed with the tableAlias unless a pipeline has been set.
+     */
+    public TupleDesc getTupleDesc()
+    {
+        return td;
+    }
+
+    public void open() throws DbException, TransactionAbortedException
+    {
+        BufferPool pool = Database.getBufferPool();
+        int numPages = file.numPages();
+        for (int i = 0; i < numPages; i++)
+        {
+            pool.lockPage(tid, new HeapPageId(file.getId(), i), Permissions.READ_ONLY);
+        }
+        start(numPages);
+    }
+
+    private void start(int numPages)
+    {
+        int morsels = (numPages + MORSEL_PAGES - 1) / MORSEL_PAGES;
+        int workers = Math.max(1, Math.min(parallelism, morsels));
+        run = new Run(numPages, workers);
+        current = null;
+        for (int i = 0; i < workers; i++)
+        {
+            WorkerPool.submit(new Worker(run));
+        }
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException
+    {
+        if (run == null)
+        {
+            throw new IllegalStateException("ParallelSeqScan is not open");
+        }
+        while (run.running > 0)
+        {
+            TupleBatch batch = run.take();
+            if (batch == END)
+            {
+                run.running--;
+                checkFailure();
+            }
+            else
+            {
+                return batch;
+            }
+        }
+        return null;
+    }
+
+    private void checkFailure() throws DbException, TransactionAbortedException
+    {
+        Exception e = run.failure.get();
+        if (e == null)
+        {
+            return;
+        }
+        run.stop();
+        if (e instanceof TransactionAbortedException)
+        {
+            throw (TransactionAbortedException) e;
+        }
+        if (e instanceof DbException)
+        {
+            throw (DbException) e;
+        }
+        throw new DbException("parallel scan worker failed: " + e);
+    }
+
+    public boolean hasNext() throws DbException, TransactionAbortedException
+    {
+        while (current == null || pos == current.numRows())
+        {
+            current = nextBatch();
+            pos = 0;
+            if (current == null)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        return current.getTuple(current.rowAt(pos++));
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException
+    {
+        if (run == null)
+        {
+            throw new IllegalStateException("ParallelSeqScan is not open");
+        }
+        run.stop();
+        start(run.numPages);
+    }
+
+    /**
+     * Stops the workers; this must be called even if the scan has not been
+     * read to the end, since workers wait for room in the gather queue.
+     */
+    public void close()
+    {
+        if (run != null)
+        {
+            run.stop();
+            run = null;
+        }
+        current = null;
+    }
+
+    /** The state shared by the workers of one open or rewind. */
+    private static class Run
+    {
+        final int numPages;
+        final AtomicInteger nextPage = new AtomicInteger(0);
+        final BlockingQueue<TupleBatch> queue;
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        volatile boolean cancelled = false;
+        /** Workers whose END marker has not been taken yet; coordinator only. */
+        int running;
+
+        Run(int numPages, int workers)
+        {
+            this.numPages = numPages;
+            this.running = workers;
+            queue = new ArrayBlockingQueue<TupleBatch>(workers * QUEUED_BATCHES_PER_WORKER);
+        }
+
+        TupleBatch take()
+        {
+            for (;;)
+            {
+                try
+                {
+                    return queue.take();
+                }
+                catch (InterruptedException e)
+                {
+                    // the coordinator is never interrupted on purpose; keep waiting
+                }
+            }
+        }
+
+        void put(TupleBatch batch)
+        {
+            for (;;)
+            {
+                try
+                {
+                    queue.put(batch);
+                    return;
+                }
+                catch (InterruptedException e)
+                {
+                    // workers are never interrupted on purpose; keep waiting
+                }
+            }
+        }
+
+        /** Asks the workers to stop and waits until all of them have. */
+        void stop()
+        {
+            cancelled = true;
+            while (running > 0)
+            {
+                if (take() == END)
+                {
+                    running--;
+                }
+            }
+        }
+    }
+
+    private class Worker implements Runnable
+    {
+        private final Run run;
+
+        Worker(Run run)
+        {
+            this.run = run;
+        }
+
+        public void run()
+        {
+            try
+            {
+                DbIterator root = new MorselScan(run);
+                if (pipeline != null)
+                {
+                    root = pipeline.build(root);
+                }
+                BatchDbIterator in = BatchAdapter.wrap(root);
+                in.open();
+                try
+                {
+                    TupleBatch batch;
+                    while (!run.cancelled && (batch = in.nextBatch()) != null)
+                    {
+                        run.put(batch.copy());
+                    }
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+            catch (Exception e)
+            {
+                run.failure.compareAndSet(null, e);
+                run.cancelled = true;
+            }
+            finally
+            {
+                run.put(END);
+            }
+        }
+    }
+
+    /**
+     * The part of the table one worker scans: the morsels it claims from the
+     * shared counter, one after the other.
+     */
+    private class MorselScan implements BatchDbIterator
+    {
+        private final Run run;
+        private final BufferPool pool = Database.getBufferPool();
+        private TupleBatch batch;
+        private int page = 0;
+        private int end = 0;
+        private int slot = 0;
+        private TupleBatch current;
+        private int pos;
+
+        MorselScan(Run run)
+        {
+            this.run = run;
+        }
+
+        public TupleBatch nextBatch() throws DbException, TransactionAbortedException
+        {
+            if (batch == null)
+            {
+                batch = new TupleBatch(scanTd);
+            }
+            batch.clear();
+            while (!batch.isFull())
+            {
+                if (page == end)
+                {
+                    int start = run.nextPage.getAndAdd(MORSEL_PAGES);
+                    if (start >= run.numPages || run.cancelled)
+                    {
+                        break;
+                    }
+                    page = start;
+                    end = Math.min(start + MORSEL_PAGES, run.numPages);
+                    slot = 0;
+                }
+                HeapPage p = (HeapPage) pool.getLockedPage(new HeapPageId(file.getId(), page));
+                slot = p.fillBatch(batch, slot, null, compiled);
+                if (!batch.isFull())
+                {
+                    page++;
+                    slot = 0;
+                }
+            }
+            return batch.size() == 0 ? null : batch;
+        }
+
+        public void open()
+        {
+        }
+
+        public boolean hasNext() throws DbException, TransactionAbortedException
+        {
+            while (current == null || pos == current.numRows())
+            {
+                current = nextBatch();
+                pos = 0;
+                if (current == null)
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            return current.getTuple(current.rowAt(pos++));
+        }
+
+        public void rewind() throws DbException
+        {
+            throw new DbException("a morsel scan cannot be rewound");
+        }
+
+        public TupleDesc getTupleDesc()
+        {
+            return scanTd;
+        }
+
+        public void close()
+        {
+        }
+    }
+}
@@ -4,16 +4,19 @@ import java.util.*;
 import simpledb.exceptions.DbException;
 import simpledb.exceptions.TransactionAbortedException;
 import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
 import simpledb.tuple.TupleDesc;
 import simpledb.tuple.Type;
 
 /**
  * Project is an operator that implements a relational projection.
  */
-public class Project extends AbstractDbIterator {
+public class Project extends AbstractDbIterator implements BatchDbIterator {
     DbIterator child;
     TupleDesc td;
     ArrayList<Integer> outFieldIds;
+    private BatchDbIterator batchChild;
+    private int[] outFields;
 
     /**
      * Constructor accepts a child
@@ -35,12 +38,28 @@ public class Project extends AbstractDbIterator {
             fieldAr[i] = childtd.getFieldName(fieldList.get(i));
         }
         td= new TupleDesc(typesList.toArray(new Type[0]), fieldAr);
+        batchChild = BatchAdapter.wrap(child);
+        outFields = new int[fieldList.size()];
+        for (int i = 0; i < outFields.length; i++)
+        {
+            outFields[i] = fieldList.get(i);
+        }
     }
 
     public TupleDesc getTupleDesc() {
         return td;
     }
 
+    /** @return the ids of the fields of the child that make up the output. */
+    public int[] getFields() {
+        return outFields.clone();
+    }
+
+    /** @return the operator this Project reads from. */
+    public DbIterator getChild() {
+        return child;
+    }
+
     public void open()
         throws DbException, NoSuchElementException, TransactionAbortedException {
         child.open();
@@ -66,12 +85,23 @@ public class Project extends AbstractDbIterator {
             Tuple t = child.next();
             Tuple newTuple = new Tuple(td);
             newTuple.setRecordId(t.getRecordId());
-            for (int i = 0; i < td.numFields(); i++) 
+            for (int i = 0; i < outFields.length; i++) 
             {
-                newTuple.setField(i, t.getField(outFieldIds.get(i)));
+                newTuple.setField(i, t.getField(outFields[i]));
             }
             return newTuple;
         }
         return null;
     }
+
+    /**
+     * Returns the next batch of the child with only the projected columns.
+     * No column is copied.
+     * @see TupleBatch#project
+     */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException
+    {
+        TupleBatch batch = batchChild.nextBatch();
+        return batch == null ? null : batch.project(outFields, td);
+    }
 }
@@ -0,0 +1,112 @@
+package simpledb.operators;
+
+import java.util.Arrays;
+
+import simpledb.RecordId;
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.tuple.TupleBatch;
+
+/**
+ * RecordIdBatcher reads the record ids of the tuples of an operator over a
+ * heap file and hands them to a {@link PageAction} page by page: they are
+ * buffered, up to a limit, as page number << 32 | slot, then sorted, so
+ * that every page is fetched, locked and dirtied once for all of its tuples
+ * and the pages are visited in file order.
+ */
+class RecordIdBatcher {
+
+    /** Number of record ids buffered before they are handed over, unless told otherwise. */
+    static final int MAX_BUFFERED = 1 << 20;
+
+    /** What is done to the tuples of one page. */
+    interface PageAction
+    {
+        /** Acts on the tuples in slots[from..to) of page pageno. */
+        void apply(int pageno, int[] slots, int from, int to) throws DbException, TransactionAbortedException;
+    }
+
+    private final PageAction action;
+    private final int maxBuffered;
+    private long[] buffered = new long[1024];
+    private int numBuffered;
+    private int[] slots;
+
+    /**
+     * Constructor.
+     * @param action what is done to the tuples of each page.
+     * @param maxBuffered the number of record ids buffered before the first
+     *        are handed over; Integer.MAX_VALUE reads every tuple first.
+     */
+    RecordIdBatcher(PageAction action, int maxBuffered)
+    {
+        this.action = action;
+        this.maxBuffered = maxBuffered;
+    }
+
+    /**
+     * Reads child to the end and hands over the record ids of its tuples.
+     * @param what the statement, for the error on a tuple without a record id.
+     * @return the number of tuples.
+     */
+    int run(DbIterator child, String what) throws DbException, TransactionAbortedException
+    {
+        BatchDbIterator in = BatchAdapter.wrap(child);
+        int rowCount = 0;
+        TupleBatch batch;
+        while ((batch = in.nextBatch()) != null)
+        {
+            int n = batch.numRows();
+            for (int i = 0; i < n; i++)
+            {
+                RecordId rid = batch.getRecordId(batch.rowAt(i));
+                if (rid == null)
+                {
+                    throw new DbException("tuple to " + what + " has no record id");
+                }
+                if (numBuffered == buffered.length)
+                {
+                    if (numBuffered >= maxBuffered)
+                    {
+                        flush();
+                    }
+                    else
+                    {
+                        buffered = Arrays.copyOf(buffered, numBuffered * 2);
+                    }
+                }
+                buffered[numBuffered++] = ((long) rid.getPageId().pageno() << 32) | rid.tupleno();
+                rowCount++;
+            }
+        }
+        flush();
+        return rowCount;
+    }
+
+    /** Hands over the buffered record ids, one page at a time in file order. */
+    private void flush() throws DbException, TransactionAbortedException
+    {
+        Arrays.sort(buffered, 0, numBuffered);
+        if (slots == null || slots.length < numBuffered)
+        {
+            slots = new int[numBuffered];
+        }
+        for (int i = 0; i < numBuffered; i++)
+        {
+            slots[i] = (int) buffered[i];
+        }
+        int from = 0;
+        while (from < numBuffered)
+        {
+            int pageno = (int) (buffered[from] >>> 32);
+            int to = from + 1;
+            while (to < numBuffered && (int) (buffered[to] >>> 32) == pageno)
+            {
+                to++;
+            }
+            action.apply(pageno, slots, from, to);
+            from = to;
+        }
+        numBuffered = 0;
+    }
+}
@@ -0,0 +1,182 @@
+package simpledb.operators;
+
+import java.util.Arrays;
+
+import simpledb.exceptions.DbException;
+import simpledb.file.SpillFile;
+import simpledb.tuple.Field;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
+import simpledb.tuple.Type;
+
+/**
+ * RowSet is a set of whole rows, for duplicate elimination. Rows are copied
+ * out of batches into flat arrays, INT_TYPE fields as primitive ints, and
+ * found again through an open addressing table of entry numbers, so testing
+ * a row that is already in the set allocates nothing.
+ */
+class RowSet {
+
+    private final TupleDesc td;
+    private final int width;
+    private final boolean[] isInt;
+    private final boolean allInts;
+    private int[] slots;
+    private int[] hashes;
+    private int[] ints;
+    private Field[] others;
+    private int size;
+
+    RowSet(TupleDesc td)
+    {
+        this.td = td;
+        width = td.numFields();
+        isInt = new boolean[width];
+        boolean all = true;
+        for (int i = 0; i < width; i++)
+        {
+            isInt[i] = td.getType(i) == Type.INT_TYPE;
+            all &= isInt[i];
+        }
+        allInts = all;
+        slots = new int[16];
+        hashes = new int[8];
+        ints = new int[8 * width];
+        others = allInts ? null : new Field[8 * width];
+    }
+
+    /** @return the hash of every field of a physical row of batch. */
+    static int hash(TupleBatch batch, int row)
+    {
+        TupleDesc td = batch.getTupleDesc();
+        int h = 1;
+        for (int i = 0; i < td.numFields(); i++)
+        {
+            int v = td.getType(i) == Type.INT_TYPE ? batch.getInt(i, row) : batch.getField(i, row).hashCode();
+            h = 31 * h + v;
+        }
+        return h;
+    }
+
+    /** @return the number of rows in this set. */
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * Adds a physical row of batch, whose hash is h, unless an equal row is
+     * already in the set.
+     * @return true if the row was added.
+     */
+    boolean add(TupleBatch batch, int row, int h)
+    {
+        int mask = slots.length - 1;
+        int s = mix(h) & mask;
+        for (int e = slots[s] - 1; e >= 0; e = slots[s] - 1)
+        {
+            if (hashes[e] == h && equal(e, batch, row))
+            {
+                return false;
+            }
+            s = (s + 1) & mask;
+        }
+        if (size == hashes.length)
+        {
+            grow();
+            s = mix(h) & (slots.length - 1);
+            while (slots[s] != 0)
+            {
+                s = (s + 1) & (slots.length - 1);
+            }
+        }
+        int base = size * width;
+        for (int i = 0; i < width; i++)
+        {
+            if (isInt[i])
+            {
+                ints[base + i] = batch.getInt(i, row);
+            }
+            else
+            {
+                others[base + i] = batch.getField(i, row);
+            }
+        }
+        hashes[size] = h;
+        slots[s] = ++size;
+        return true;
+    }
+
+    /** Appends every row of this set to f with the given tag. */
+    void writeTo(SpillFile f, byte tag) throws DbException
+    {
+        TupleBatch batch = new TupleBatch(td, 1);
+        for (int e = 0; e < size; e++)
+        {
+            batch.clear();
+            batch.addRow();
+            int base = e * width;
+            for (int i = 0; i < width; i++)
+            {
+                if (isInt[i])
+                {
+                    batch.setInt(i, 0, ints[base + i]);
+                }
+                else
+                {
+                    batch.setField(i, 0, others[base + i]);
+                }
+            }
+            f.write(batch, 0, tag);
+        }
+    }
+
+    private boolean equal(int e, TupleBatch batch, int row)
+    {
+        int base = e * width;
+        for (int i = 0; i < width; i++)
+        {
+            if (isInt[i])
+            {
+                if (ints[base + i] != batch.getInt(i, row))
+                {
+                    return false;
+                }
+            }
+            else if (!others[base + i].equals(batch.getField(i, row)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int mix(int h)
+    {
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 15);
+    }
+
+    /** Doubles the number of entries and rebuilds the table. */
+    private void grow()
+    {
+        int entries = hashes.length * 2;
+        hashes = Arrays.copyOf(hashes, entries);
+        ints = Arrays.copyOf(ints, entries * width);
+        if (others != null)
+        {
+            others = Arrays.copyOf(others, entries * width);
+        }
+        slots = new int[entries * 2];
+        int mask = slots.length - 1;
+        for (int e = 0; e < size; e++)
+        {
+            int s = mix(hashes[e]) & mask;
+            while (slots[s] != 0)
+            {
+                s = (s + 1) & mask;
+            }
+            slots[s] = e + 1;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package simpledb.operators;
+
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+import simpledb.Database;
+import simpledb.MemoryBroker;
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.predicates.JoinPredicate;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.Field;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
+
+/**
+ * SemiJoin returns the rows of its outer input that have at least one match
+ * in its inner input, or, as an anti-join, the rows that have none. It is
+ * how IN, NOT IN and EXISTS subqueries are executed: every outer row comes
+ * out at most once, with only the outer fields, and probing stops at the
+ * first match.
+ * <p>
+ * The inner input is read once, the first time a row is asked for, and kept,
+ * reserved with the {@link MemoryBroker}, until close. With an equality predicate it is put into a
+ * {@link BatchHashTable}; with a range predicate only its smallest and
+ * largest keys are kept, since an outer value is below some inner key exactly
+ * when it is below the largest one; otherwise it is scanned for every outer
+ * row until a match is found. Without a predicate the join only tests whether
+ * the inner input has any row, as EXISTS does.
+ * <p>
+ * Outer batches are passed on with a selection vector of the rows that
+ * qualify, so no outer row is copied.
+ */
+public class SemiJoin extends AbstractDbIterator implements BatchDbIterator {
+
+    private final JoinPredicate p;
+    private final DbIterator outer;
+    private final DbIterator inner;
+    private final boolean anti;
+    private final BatchDbIterator outerIn;
+
+    private boolean built;
+    private ArrayList<TupleBatch> innerBatches;
+    private MemoryBroker.Reservation memory;
+    private BatchHashTable table;
+    private Field min;
+    private Field max;
+    private int[] selection;
+
+    // outer batch being read by readNext
+    private TupleBatch current;
+    private int currentPos;
+
+    /**
+     * Constructor.
+     *
+     * @param p the predicate an outer row must satisfy with some inner row;
+     *        field1 is a field of the outer input, field2 of the inner one.
+     *        Null to only test whether the inner input is empty.
+     * @param outer the input whose rows are returned.
+     * @param inner the input that is searched for matches.
+     * @param anti true to return the outer rows without a match instead.
+     */
+    public SemiJoin(JoinPredicate p, DbIterator outer, DbIterator inner, boolean anti)
+    {
+        this.p = p;
+        this.outer = outer;
+        this.inner = inner;
+        this.anti = anti;
+        outerIn = BatchAdapter.wrap(outer);
+    }
+
+    /** @return the predicate rows are matched on, or null for an existence test. */
+    public JoinPredicate getJoinPredicate()
+    {
+        return p;
+    }
+
+    /** @return true if this join returns the outer rows without a match. */
+    public boolean isAnti()
+    {
+        return anti;
+    }
+
+    /** @return the input whose rows are returned. */
+    public DbIterator getOuterChild()
+    {
+        return outer;
+    }
+
+    /** @return the input that is searched for matches. */
+    public DbIterator getInnerChild()
+    {
+        return inner;
+    }
+
+    /** @return the TupleDesc of the outer input. */
+    public TupleDesc getTupleDesc()
+    {
+        return outer.getTupleDesc();
+    }
+
+    public void open() throws DbException, NoSuchElementException, TransactionAbortedException
+    {
+        outer.open();
+        inner.open();
+        built = false;
+        current = null;
+    }
+
+    public void close()
+    {
+        super.close();
+        outer.close();
+        inner.close();
+        innerBatches = null;
+        table = null;
+        min = null;
+        max = null;
+        current = null;
+        if (memory != null)
+        {
+            memory.release();
+            memory = null;
+        }
+    }
+
+    /** Returns the outer rows again; the inner input is not read again. */
+    public void rewind() throws DbException, TransactionAbortedException
+    {
+        super.close();
+        outer.rewind();
+        current = null;
+    }
+
+    protected Tuple readNext() throws DbException, TransactionAbortedException
+    {
+        while (current == null || currentPos == current.numRows())
+        {
+            current = nextBatch();
+            currentPos = 0;
+            if (current == null)
+            {
+                return null;
+            }
+        }
+        return current.getTuple(current.rowAt(currentPos++));
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException
+    {
+        if (!built)
+        {
+            build();
+        }
+        for (;;)
+        {
+            TupleBatch batch = outerIn.nextBatch();
+            if (batch == null)
+            {
+                return null;
+            }
+            if (selection == null || selection.length < batch.capacity())
+            {
+                selection = new int[batch.capacity()];
+            }
+            int passed = 0;
+            int n = batch.numRows();
+            for (int i = 0; i < n; i++)
+            {
+                int row = batch.rowAt(i);
+                if (matches(batch, row) != anti)
+                {
+                    selection[passed++] = row;
+                }
+            }
+            if (passed > 0)
+            {
+                batch.setSelection(selection, passed);
+                return batch;
+            }
+        }
+    }
+
+    /** Reads the inner input and indexes it the way the predicate needs. */
+    private void build() throws DbException, TransactionAbortedException
+    {
+        BatchDbIterator in = BatchAdapter.wrap(inner);
+        innerBatches = new ArrayList<TupleBatch>();
+        if (memory != null)
+        {
+            memory.release();
+        }
+        memory = Database.getMemoryBroker().reserve();
+        long rowBytes = MemoryBroker.rowBytes(inner.getTupleDesc());
+        TupleBatch batch;
+        while ((batch = in.nextBatch()) != null)
+        {
+            TupleBatch copy = batch.copy();
+            memory.grow(copy.size() * rowBytes);
+            innerBatches.add(copy);
+            if (p == null)
+            {
+                break;
+            }
+        }
+        if (p != null)
+        {
+            switch (p.getOperator())
+            {
+            case EQUALS:
+                table = new BatchHashTable(innerBatches, p.getField2(), 0);
+                break;
+            case LESS_THAN:
+            case LESS_THAN_OR_EQ:
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQ:
+                findBounds();
+                break;
+            default:
+                break;
+            }
+        }
+        built = true;
+    }
+
+    private void findBounds()
+    {
+        int f = p.getField2();
+        for (TupleBatch b : innerBatches)
+        {
+            for (int row = 0; row < b.size(); row++)
+            {
+                Field v = b.getField(f, row);
+                if (min == null || v.compare(Predicate.Op.LESS_THAN, min))
+                {
+                    min = v;
+                }
+                if (max == null || v.compare(Predicate.Op.GREATER_THAN, max))
+                {
+                    max = v;
+                }
+            }
+        }
+    }
+
+    /** @return true if a physical row of an outer batch has a match in the inner input. */
+    private boolean matches(TupleBatch batch, int row)
+    {
+        if (p == null)
+        {
+            return !innerBatches.isEmpty();
+        }
+        int f = p.getField1();
+        Predicate.Op op = p.getOperator();
+        switch (op)
+        {
+        case EQUALS:
+            int h = BatchHashTable.hash(batch, f, row);
+            for (int e = table.first(h); e >= 0; e = table.next(e))
+            {
+                if (table.matches(e, h, batch, f, row))
+                {
+                    return true;
+                }
+            }
+            return false;
+        case LESS_THAN:
+        case LESS_THAN_OR_EQ:
+            return max != null && batch.getField(f, row).compare(op, max);
+        case GREATER_THAN:
+        case GREATER_THAN_OR_EQ:
+            return min != null && batch.getField(f, row).compare(op, min);
+        default:
+            Field v = batch.getField(f, row);
+            int f2 = p.getField2();
+            for (TupleBatch b : innerBatches)
+            {
+                for (int r = 0; r < b.size(); r++)
+                {
+                    if (v.compare(op, b.getField(f2, r)))
+                    {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
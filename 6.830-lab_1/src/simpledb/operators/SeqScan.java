@@ -1,4 +1,5 @@
 package simpledb.operators;
+import java.util.ArrayList;
 import java.util.NoSuchElementException;
 
 import simpledb.Catalog;
@@ -8,7 +9,11 @@ import simpledb.exceptions.DbException;
 import simpledb.exceptions.TransactionAbortedException;
 import simpledb.file.DbFile;
 import simpledb.file.DbFileIterator;
+import simpledb.file.HeapFileIterator;
+import simpledb.predicates.CompiledPredicate;
+import simpledb.predicates.Predicate;
 import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
 import simpledb.tuple.TupleDesc;
 
 /**
@@ -16,11 +21,17 @@ import simpledb.tuple.TupleDesc;
  * each tuple of a table in no particular order (e.g., as they are laid out on
  * disk).
  */
-public class SeqScan implements DbIterator {
+public class SeqScan implements BatchDbIterator {
 
 	Catalog catalog = Database.getCatalog();
 	private DbFileIterator fileIter;
 	private TupleDesc td;
+	private TupleBatch batch;
+	private int tableid;
+	private int[] fields;
+	private ArrayList<Predicate> filters = new ArrayList<Predicate>();
+	private ArrayList<CompiledPredicate> compiled = new ArrayList<CompiledPredicate>();
+	private ArrayList<CompiledPredicate> runtime = new ArrayList<CompiledPredicate>();
 	
     /**
      * Creates a sequential scan over the specified table as a part of the
@@ -36,12 +47,96 @@ public class SeqScan implements DbIterator {
      */
     public SeqScan(TransactionId tid, int tableid, String tableAlias) 
     {
+    	this.tableid = tableid;
     	DbFile dbFile = catalog.getDbFile(tableid);
     	td = new TupleDesc(dbFile.getTupleDesc());
     	td.setAliasToFields(tableAlias);
     	fileIter = dbFile.iterator(tid);
     }
 
+    /** @return the id of the table scanned. */
+    public int getTableId()
+    {
+        return tableid;
+    }
+
+    /**
+     * Restricts the fields decoded into the batches of this scan to the given
+     * ones; the other columns of the batches are left unset, and must not be
+     * read. Tuples read one at a time are always complete.
+     * @param fields the fields to decode, or null for all of them.
+     */
+    public void setFields(int[] fields)
+    {
+        this.fields = fields == null ? null : fields.clone();
+    }
+
+    /**
+     * Makes the scan only return the tuples that satisfy p, as well as the
+     * filters added before it. The filters are evaluated on the pages, before
+     * the tuples are decoded; the fields they read need not be decoded into
+     * batches. Only scans of heap files take filters. Must be called before
+     * open.
+     */
+    public void addFilter(Predicate p)
+    {
+        if (!(fileIter instanceof HeapFileIterator))
+        {
+            throw new UnsupportedOperationException("only scans of heap files take filters");
+        }
+        filters.add(p);
+        compiled.add(CompiledPredicate.compile(p, td));
+        updateFilters();
+    }
+
+    /**
+     * Adds a filter built while the query runs, such as the
+     * {@link simpledb.predicates.RuntimeFilter} of a hash join, evaluated on
+     * the pages after the filters added with {@link #addFilter}. Unlike
+     * those, it is not part of the plan and is removed again with
+     * {@link #removeRuntimeFilter} by the operator that added it.
+     * @return false, and the filter is not added, if the scan is not of a
+     *         heap file.
+     */
+    public boolean addRuntimeFilter(CompiledPredicate p)
+    {
+        if (!(fileIter instanceof HeapFileIterator))
+        {
+            return false;
+        }
+        runtime.add(p);
+        updateFilters();
+        return true;
+    }
+
+    /** Removes a filter added with {@link #addRuntimeFilter}. */
+    public void removeRuntimeFilter(CompiledPredicate p)
+    {
+        if (runtime.remove(p))
+        {
+            updateFilters();
+        }
+    }
+
+    private void updateFilters()
+    {
+        ArrayList<CompiledPredicate> all = new ArrayList<CompiledPredicate>(compiled);
+        all.addAll(runtime);
+        ((HeapFileIterator) fileIter).setFilters(all.isEmpty() ? null : all.toArray(new CompiledPredicate[all.size()]));
+    }
+
+    /** @return the predicates added with {@link #addFilter}, in the order they were added. */
+    public ArrayList<Predicate> getFilters()
+    {
+        return new ArrayList<Predicate>(filters);
+    }
+
+    /** @return the fields decoded into batches, or null if they all are. */
+    public int[] getFields()
+    {
+        return fields == null ? null : fields.clone();
+    }
+
     public void open() throws DbException, TransactionAbortedException 
     {
     	fileIter.open();
@@ -67,6 +162,28 @@ public class SeqScan implements DbIterator {
     	return fileIter.next();
     }
 
+    /**
+     * Returns the next batch of tuples of the table. Heap files copy their
+     * pages straight into the batch; other files go through their iterator.
+     */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (batch == null) {
+            batch = new TupleBatch(td);
+        }
+        batch.clear();
+        int added;
+        if (fileIter instanceof HeapFileIterator) {
+            added = ((HeapFileIterator) fileIter).fillBatch(batch, fields);
+        } else {
+            added = 0;
+            while (!batch.isFull() && fileIter.hasNext()) {
+                batch.addTuple(fileIter.next());
+                added++;
+            }
+        }
+        return added == 0 ? null : batch;
+    }
+
     public void close() {
         fileIter.close();
     }
@@ -0,0 +1,149 @@
+package simpledb.operators;
+
+import java.util.NoSuchElementException;
+
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.tuple.Field;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
+
+/**
+ * SortedDistinct removes duplicate rows from a child whose equal rows are
+ * next to each other, as they are when it is sorted on every field. Only
+ * the last row returned is kept, so it runs in constant memory; a row comes
+ * out when it differs from the one before it.
+ *
+ * @see Distinct for inputs in any order
+ */
+public class SortedDistinct extends AbstractDbIterator implements BatchDbIterator {
+
+    private final DbIterator child;
+    private final BatchDbIterator childIn;
+    private final TupleDesc td;
+    private Field[] last;
+    private int[] selection;
+
+    // batch being read by readNext
+    private TupleBatch current;
+    private int currentPos;
+
+    /**
+     * Constructor.
+     * @param child the rows to remove duplicates from, with equal rows next
+     *        to each other.
+     */
+    public SortedDistinct(DbIterator child)
+    {
+        this.child = child;
+        td = child.getTupleDesc();
+        childIn = BatchAdapter.wrap(child);
+    }
+
+    /** @return the operator this SortedDistinct reads from. */
+    public DbIterator getChild()
+    {
+        return child;
+    }
+
+    public TupleDesc getTupleDesc()
+    {
+        return td;
+    }
+
+    public void open() throws DbException, NoSuchElementException, TransactionAbortedException
+    {
+        child.open();
+        last = null;
+        current = null;
+    }
+
+    public void close()
+    {
+        super.close();
+        child.close();
+        last = null;
+        current = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException
+    {
+        super.close();
+        child.rewind();
+        last = null;
+        current = null;
+    }
+
+    protected Tuple readNext() throws DbException, TransactionAbortedException
+    {
+        while (current == null || currentPos == current.numRows())
+        {
+            current = nextBatch();
+            currentPos = 0;
+            if (current == null)
+            {
+                return null;
+            }
+        }
+        return current.getTuple(current.rowAt(currentPos++));
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException
+    {
+        for (;;)
+        {
+            TupleBatch batch = childIn.nextBatch();
+            if (batch == null)
+            {
+                return null;
+            }
+            if (selection == null || selection.length < batch.capacity())
+            {
+                selection = new int[batch.capacity()];
+            }
+            int passed = 0;
+            int n = batch.numRows();
+            for (int i = 0; i < n; i++)
+            {
+                int row = batch.rowAt(i);
+                if (!sameAsLast(batch, row))
+                {
+                    selection[passed++] = row;
+                }
+            }
+            if (passed > 0)
+            {
+                batch.setSelection(selection, passed);
+                return batch;
+            }
+        }
+    }
+
+    /** @return true if a physical row of batch equals the last row returned; otherwise it becomes the last one. */
+    private boolean sameAsLast(TupleBatch batch, int row)
+    {
+        int n = td.numFields();
+        if (last != null)
+        {
+            boolean same = true;
+            for (int i = 0; i < n && same; i++)
+            {
+                same = last[i].equals(batch.getField(i, row));
+            }
+            if (same)
+            {
+                return true;
+            }
+        }
+        else
+        {
+            last = new Field[n];
+        }
+        for (int i = 0; i < n; i++)
+        {
+            last[i] = batch.getField(i, row);
+        }
+        return false;
+    }
+}
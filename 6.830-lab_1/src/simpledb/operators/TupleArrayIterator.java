@@ -4,14 +4,21 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
+import simpledb.Database;
+import simpledb.MemoryBroker;
 import simpledb.exceptions.DbException;
 import simpledb.exceptions.TransactionAbortedException;
 import simpledb.tuple.Tuple;
 import simpledb.tuple.TupleDesc;
 
+/**
+ * Iterates over a list of tuples held in memory. While it is open, the
+ * tuples are accounted for with the {@link MemoryBroker}.
+ */
 public class TupleArrayIterator implements DbIterator {
     ArrayList<Tuple> tups;
     Iterator<Tuple> it = null;
+    private MemoryBroker.Reservation memory;
 
     public TupleArrayIterator(ArrayList<Tuple> tups) {
         this.tups = tups;
@@ -20,6 +27,10 @@ public class TupleArrayIterator implements DbIterator {
     public void open()
         throws DbException, TransactionAbortedException {
         it = tups.iterator();
+        if (memory == null && !tups.isEmpty()) {
+            memory = Database.getMemoryBroker().reserve();
+            memory.grow(tups.size() * MemoryBroker.rowBytes(getTupleDesc()));
+        }
     }
 
     /** @return true if the iterator has more items. */
@@ -57,6 +68,10 @@ public class TupleArrayIterator implements DbIterator {
      * Closes the iterator.
      */
     public void close() {
+        if (memory != null) {
+            memory.release();
+            memory = null;
+        }
     }
 
 }
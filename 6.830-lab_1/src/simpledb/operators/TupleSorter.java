@@ -0,0 +1,206 @@
+package simpledb.operators;
+
+import java.util.Arrays;
+import java.util.List;
+
+import simpledb.tuple.IntField;
+import simpledb.tuple.StringField;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleDesc;
+import simpledb.tuple.Type;
+
+/**
+ * TupleSorter sorts a list of tuples on one or more fields, each with its own
+ * direction.
+ * <p>
+ * Instead of comparing Field objects through Field.compare for every
+ * comparison, the sort keys are extracted once per Type into primitive
+ * arrays and the sort permutes an int array of row indexes. A single INT_TYPE
+ * key is packed together with the row index into a long and sorted with
+ * Arrays.sort; any other combination of keys uses a stable merge sort over
+ * the index permutation. Equal keys keep their input order in both cases.
+ */
+public class TupleSorter {
+
+    private final int[] fields;
+    private final boolean[] asc;
+
+    /**
+     * Constructor.
+     *
+     * @param fields the fields to sort on, most significant first.
+     * @param asc asc[i] is true if fields[i] should be sorted in ascending order.
+     */
+    public TupleSorter(int[] fields, boolean[] asc)
+    {
+        if (fields.length == 0 || fields.length != asc.length)
+        {
+            throw new IllegalArgumentException("one direction is required for each sort field");
+        }
+        this.fields = fields.clone();
+        this.asc = asc.clone();
+    }
+
+    /**
+     * Sorts the specified list in place.
+     * @param tuples the tuples to sort; all of them must share the same TupleDesc.
+     */
+    public void sort(List<Tuple> tuples)
+    {
+        int n = tuples.size();
+        if (n < 2)
+        {
+            return;
+        }
+        Tuple[] rows = tuples.toArray(new Tuple[n]);
+        int[] perm;
+        TupleDesc td = rows[0].getTupleDesc();
+        if (fields.length == 1 && td.getType(fields[0]) == Type.INT_TYPE)
+        {
+            perm = sortSingleInt(rows);
+        }
+        else
+        {
+            perm = sortKeys(rows, td);
+        }
+        for (int i = 0; i < n; i++)
+        {
+            tuples.set(i, rows[perm[i]]);
+        }
+    }
+
+    /**
+     * Packs (key, row index) into a long so that the natural order of the longs
+     * is the requested order of the rows, with ties broken by input position.
+     */
+    private int[] sortSingleInt(Tuple[] rows)
+    {
+        int n = rows.length;
+        int field = fields[0];
+        boolean ascending = asc[0];
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++)
+        {
+            int v = ((IntField) rows[i].getField(field)).getValue();
+            // ~v reverses the order of ints without overflowing
+            int key = ascending ? v : ~v;
+            packed[i] = ((long) key << 32) | i;
+        }
+        Arrays.sort(packed);
+        int[] perm = new int[n];
+        for (int i = 0; i < n; i++)
+        {
+            perm[i] = (int) packed[i];
+        }
+        return perm;
+    }
+
+    private int[] sortKeys(Tuple[] rows, TupleDesc td)
+    {
+        int n = rows.length;
+        int[][] intKeys = new int[fields.length][];
+        String[][] stringKeys = new String[fields.length][];
+        for (int k = 0; k < fields.length; k++)
+        {
+            int field = fields[k];
+            if (td.getType(field) == Type.INT_TYPE)
+            {
+                int[] keys = new int[n];
+                for (int i = 0; i < n; i++)
+                {
+                    keys[i] = ((IntField) rows[i].getField(field)).getValue();
+                }
+                intKeys[k] = keys;
+            }
+            else
+            {
+                String[] keys = new String[n];
+                for (int i = 0; i < n; i++)
+                {
+                    keys[i] = ((StringField) rows[i].getField(field)).getValue();
+                }
+                stringKeys[k] = keys;
+            }
+        }
+        int[] perm = new int[n];
+        for (int i = 0; i < n; i++)
+        {
+            perm[i] = i;
+        }
+        mergeSort(perm, new int[n], 0, n, intKeys, stringKeys);
+        return perm;
+    }
+
+    private int compareRows(int a, int b, int[][] intKeys, String[][] stringKeys)
+    {
+        for (int k = 0; k < fields.length; k++)
+        {
+            int c;
+            if (intKeys[k] != null)
+            {
+                int x = intKeys[k][a];
+                int y = intKeys[k][b];
+                c = x < y ? -1 : (x == y ? 0 : 1);
+            }
+            else
+            {
+                c = stringKeys[k][a].compareTo(stringKeys[k][b]);
+            }
+            if (c != 0)
+            {
+                return asc[k] ? c : -c;
+            }
+        }
+        return 0;
+    }
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    /** Stable merge sort of perm[from, to) using tmp as scratch space. */
+    private void mergeSort(int[] perm, int[] tmp, int from, int to, int[][] intKeys, String[][] stringKeys)
+    {
+        if (to - from <= INSERTION_SORT_THRESHOLD)
+        {
+            for (int i = from + 1; i < to; i++)
+            {
+                int row = perm[i];
+                int j = i - 1;
+                while (j >= from && compareRows(perm[j], row, intKeys, stringKeys) > 0)
+                {
+                    perm[j + 1] = perm[j];
+                    j--;
+                }
+                perm[j + 1] = row;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(perm, tmp, from, mid, intKeys, stringKeys);
+        mergeSort(perm, tmp, mid, to, intKeys, stringKeys);
+        if (compareRows(perm[mid - 1], perm[mid], intKeys, stringKeys) <= 0)
+        {
+            return;
+        }
+        System.arraycopy(perm, from, tmp, from, to - from);
+        int i = from, j = mid, out = from;
+        while (i < mid && j < to)
+        {
+            if (compareRows(tmp[j], tmp[i], intKeys, stringKeys) < 0)
+            {
+                perm[out++] = tmp[j++];
+            }
+            else
+            {
+                perm[out++] = tmp[i++];
+            }
+        }
+        while (i < mid)
+        {
+            perm[out++] = tmp[i++];
+        }
+        while (j < to)
+        {
+            perm[out++] = tmp[j++];
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package simpledb.operators;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.Debug;
+import simpledb.TransactionId;
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.file.HeapFile;
+import simpledb.file.SecondaryIndex;
+import simpledb.tuple.Field;
+import simpledb.tuple.IntField;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleDesc;
+import simpledb.tuple.Type;
+
+/**
+ * The update operator. Update reads tuples from its child operator and sets
+ * some of their fields to constant values in the table they belong to.
+ * <p>
+ * Every field of a heap file has a fixed width, so its tuples are changed in
+ * place, in the slot they already occupy: like Delete, the record ids are
+ * buffered by a {@link RecordIdBatcher}, then updated page by page in file
+ * order. Tuples of other files are relocated, deleted and inserted
+ * again with the new values, once all of them have been read.
+ */
+public class Update extends AbstractDbIterator {
+
+	private int tableid;
+	private DbIterator child;
+	private TransactionId t;
+	private int[] fields;
+	private Field[] values;
+	private BufferPool bufferPool;
+	private boolean called;
+
+	/**
+	 * Constructor.
+	 * @param t The transaction this update runs in
+	 * @param tableid The table whose tuples are updated
+	 * @param child The child operator from which to read tuples to update
+	 * @param fields The indexes of the fields to set
+	 * @param values Their new values, of the types of the fields
+	 * @throws DbException if a value does not have the type of its field
+	 */
+	public Update(TransactionId t, int tableid, DbIterator child, int[] fields, Field[] values)
+			throws DbException
+	{
+		if (fields.length != values.length)
+		{
+			throw new DbException("UPDATE sets " + fields.length + " fields to " + values.length + " values");
+		}
+		TupleDesc td = Database.getCatalog().getTupleDesc(tableid);
+		for (int i = 0; i < fields.length; i++)
+		{
+			if (td.getType(fields[i]) != values[i].getType())
+			{
+				throw new DbException("value " + values[i] + " does not have the type of field " + fields[i]);
+			}
+		}
+		this.t = t;
+		this.tableid = tableid;
+		this.child = child;
+		this.fields = fields;
+		this.values = values;
+		bufferPool = Database.getBufferPool();
+	}
+
+	public TupleDesc getTupleDesc()
+	{
+		return new TupleDesc(new Type[] { Type.INT_TYPE });
+	}
+
+	public void open() throws DbException, TransactionAbortedException
+	{
+		child.open();
+	}
+
+	public void close()
+	{
+		child.close();
+	}
+
+	public void rewind() throws DbException, TransactionAbortedException
+	{
+		child.rewind();
+	}
+
+	/**
+	 * Updates the tuples read from the child operator, through the buffer pool.
+	 * @return A 1-field tuple containing the number of updated records.
+	 * @see BufferPool#updateTuples
+	 * @see BufferPool#updateTuple
+	 */
+	protected Tuple readNext() throws TransactionAbortedException, DbException
+	{
+		Tuple tuple = null;
+		try
+		{
+			if (!called)
+			{
+				called = true;
+				int rowCount;
+				if (Database.getCatalog().getDbFile(tableid) instanceof HeapFile)
+				{
+					rowCount = updateInPlace();
+				}
+				else
+				{
+					rowCount = relocate();
+				}
+				tuple = new Tuple(getTupleDesc());
+				tuple.setField(0, new IntField(rowCount));
+			}
+		}
+		catch (NoSuchElementException e)
+		{
+			Debug.log("%s", e);
+		}
+		return tuple;
+	}
+
+	/**
+	 * Updates the tuples of child in their slots, page by page. When an index
+	 * of the table holds an updated field, its entries move as pages are
+	 * updated, so a scan of it could meet the tuples again: they are then all
+	 * read before the first is updated. @return the number of tuples.
+	 */
+	private int updateInPlace() throws DbException, TransactionAbortedException
+	{
+		final HeapFile f = (HeapFile) Database.getCatalog().getDbFile(tableid);
+		RecordIdBatcher.PageAction update = new RecordIdBatcher.PageAction() {
+			public void apply(int pageno, int[] slots, int from, int to)
+					throws DbException, TransactionAbortedException
+			{
+				bufferPool.updateTuples(t, f, pageno, slots, from, to, fields, values);
+			}
+		};
+		int maxBuffered = updatesIndex() ? Integer.MAX_VALUE : RecordIdBatcher.MAX_BUFFERED;
+		return new RecordIdBatcher(update, maxBuffered).run(child, "update");
+	}
+
+	/** @return whether an index of the table holds one of the fields set. */
+	private boolean updatesIndex() throws TransactionAbortedException
+	{
+		for (SecondaryIndex index : Database.getCatalog().getIndexes(t, tableid))
+		{
+			for (int field : fields)
+			{
+				if (index.holds(field))
+				{
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Relocates the tuples of child. They are all read first, so that the
+	 * scan does not meet the tuples inserted again. @return the number of tuples.
+	 */
+	private int relocate() throws DbException, TransactionAbortedException
+	{
+		ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+		while (child.hasNext())
+		{
+			tuples.add(child.next());
+		}
+		try
+		{
+			for (Tuple tuple : tuples)
+			{
+				bufferPool.updateTuple(t, tableid, tuple, fields, values);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new DbException("could not relocate updated tuple: " + e);
+		}
+		return tuples.size();
+	}
+}
@@ -0,0 +1,205 @@
+package simpledb.optimizing;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.file.BTreeFile;
+import simpledb.file.DbFile;
+import simpledb.file.HashFile;
+import simpledb.file.SecondaryIndex;
+import simpledb.operators.DbIterator;
+import simpledb.operators.IndexOnlyScan;
+import simpledb.operators.IndexScan;
+import simpledb.optimizing.statistics.TableStats;
+import simpledb.page.BTreeInternalPage;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.Field;
+
+/**
+ * AccessPath is an index a table can be read through by an
+ * {@link IndexScan}, on one of its fields: the {@link BTreeFile} or
+ * {@link HashFile} the table is stored in, if it is keyed on that field, or
+ * a {@link SecondaryIndex} of the table on that field.
+ * <p>
+ * The planner costs reading a table through an access path with
+ * {@link TableStats#estimateIndexScanCost}, against scanning it. The height
+ * of a B+ tree is worked out from its number of pages, as if its internal
+ * pages were full, so that no page of the index is read while planning.
+ * <p>
+ * A secondary index holding every field a query reads of the table covers
+ * it: the table is then read by an {@link IndexOnlyScan}, which costs as
+ * much as a scan of a table stored in the index.
+ */
+public class AccessPath {
+
+    private final int tableid;
+    private final int field;
+    private final SecondaryIndex index;
+    private final DbFile file;
+    private final boolean covering;
+
+    private AccessPath(int tableid, int field, SecondaryIndex index, DbFile file, boolean covering)
+    {
+        this.tableid = tableid;
+        this.field = field;
+        this.index = index;
+        this.file = file;
+        this.covering = covering;
+    }
+
+    /**
+     * @return an access path to the tuples of table tableid whose field
+     *         satisfies op with some constant, or null if there is none. The
+     *         file the table is stored in comes before its secondary indexes.
+     */
+    public static AccessPath find(int tableid, int field, Predicate.Op op)
+    {
+        return find(tableid, field, op, null);
+    }
+
+    /**
+     * @return an access path as {@link #find(int, int, Predicate.Op)} does,
+     *         preferring a secondary index that covers the fields set in
+     *         read.
+     * @param read the fields of the table read by the query, or null.
+     */
+    public static AccessPath find(int tableid, int field, Predicate.Op op, boolean[] read)
+    {
+        if (op == Predicate.Op.NOT_EQUALS || op == Predicate.Op.LIKE)
+        {
+            return null;
+        }
+        DbFile f = Database.getCatalog().getDbFile(tableid);
+        if (f instanceof BTreeFile && ((BTreeFile) f).keyField() == field
+                || f instanceof HashFile && ((HashFile) f).keyField() == field && op == Predicate.Op.EQUALS)
+        {
+            return new AccessPath(tableid, field, null, f, false);
+        }
+        AccessPath found = null;
+        for (SecondaryIndex index : Database.getCatalog().getIndexes(tableid))
+        {
+            if (index.getField() == field)
+            {
+                if (read != null && index.covers(read))
+                {
+                    return new AccessPath(tableid, field, index, index.getFile(), true);
+                }
+                if (found == null)
+                {
+                    found = new AccessPath(tableid, field, index, index.getFile(), false);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return an access path through the secondary index of table tableid
+     *         with the fewest pages among those covering the fields set in
+     *         read, on any field, or null if there is none.
+     */
+    public static AccessPath covering(int tableid, boolean[] read)
+    {
+        SecondaryIndex best = null;
+        for (SecondaryIndex index : Database.getCatalog().getIndexes(tableid))
+        {
+            if (index.covers(read) && (best == null || index.getFile().numPages() < best.getFile().numPages()))
+            {
+                best = index;
+            }
+        }
+        return best == null ? null : new AccessPath(tableid, best.getField(), best, best.getFile(), true);
+    }
+
+    public int getTableId()
+    {
+        return tableid;
+    }
+
+    public int getField()
+    {
+        return field;
+    }
+
+    /** @return the secondary index read, or null if the table is stored in its index. */
+    public SecondaryIndex getIndex()
+    {
+        return index;
+    }
+
+    /** @return true if the tuples are read from a covering index alone. */
+    public boolean isCovering()
+    {
+        return covering;
+    }
+
+    /** @return the number of pages read from the index before the first tuple. */
+    public int height()
+    {
+        if (file instanceof HashFile)
+        {
+            // the meta page and a directory page
+            return 2;
+        }
+        int fanout = BTreeInternalPage.getMaxKeys(file.getTupleDesc().getType(((BTreeFile) file).keyField())) + 1;
+        int height = 1;
+        for (int pages = file.numPages(); pages > 1; pages = (pages + fanout - 1) / fanout)
+        {
+            height++;
+        }
+        return height;
+    }
+
+    /**
+     * @return the estimated cost of reading the fraction selectivity of the
+     *         tuples of the table through this access path.
+     * @param stats the statistics of the table.
+     */
+    public double estimateCost(TableStats stats, double selectivity)
+    {
+        return stats.estimateIndexScanCost(height(), file.numPages(), selectivity, index == null || covering);
+    }
+
+    /** @return a scan of the tuples of the table whose field satisfies op with key. */
+    public DbIterator scan(TransactionId tid, String tableAlias, Predicate.Op op, Field key)
+    {
+        if (covering)
+        {
+            return new IndexOnlyScan(tid, index, tableAlias, op, key);
+        }
+        if (index != null)
+        {
+            return new IndexScan(tid, index, tableAlias, op, key);
+        }
+        return new IndexScan(tid, tableid, tableAlias, op, key);
+    }
+
+    /** @return a scan of the tuples of the table whose field is between low and high. */
+    public DbIterator scan(TransactionId tid, String tableAlias, Field low, boolean lowInclusive, Field high,
+            boolean highInclusive)
+    {
+        if (covering)
+        {
+            return new IndexOnlyScan(tid, index, tableAlias, low, lowInclusive, high, highInclusive);
+        }
+        if (index != null)
+        {
+            return new IndexScan(tid, index, tableAlias, low, lowInclusive, high, highInclusive);
+        }
+        return new IndexScan(tid, tableid, tableAlias, low, lowInclusive, high, highInclusive);
+    }
+
+    /** @return a scan of every tuple of the table, in the order of the field. */
+    public DbIterator scan(TransactionId tid, String tableAlias)
+    {
+        return scan(tid, tableAlias, null, true, null, true);
+    }
+
+    public String toString()
+    {
+        if (index != null)
+        {
+            return (covering ? "covering index " : "secondary index ") + index.getName();
+        }
+        return (file instanceof HashFile ? "hash file" : "B+ tree file") + " of the table";
+    }
+}
@@ -0,0 +1,214 @@
+package simpledb.optimizing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import simpledb.Database;
+import simpledb.file.HeapFile;
+import simpledb.operators.Aggregate;
+import simpledb.operators.DbIterator;
+import simpledb.operators.Fetch;
+import simpledb.operators.Filter;
+import simpledb.operators.HashJoin;
+import simpledb.operators.Join;
+import simpledb.operators.OrderBy;
+import simpledb.operators.Project;
+import simpledb.operators.SeqScan;
+import simpledb.predicates.JoinPredicate;
+import simpledb.tuple.Type;
+
+/**
+ * ColumnPruner pushes the set of fields a plan reads down to its table
+ * scans, so that batches of rows only decode those fields (see
+ * {@link SeqScan#setFields}). A scan of a heap file under filters only
+ * decodes the fields the filters read; the fields read after them are
+ * decoded by a {@link Fetch} above the filters, for the rows that pass.
+ * <p>
+ * Pruning stops at operators ColumnPruner does not know, and the scans below
+ * them decode every field.
+ */
+public class ColumnPruner {
+
+    /**
+     * Prunes the fields decoded by the scans of plan.
+     * @return the plan to run instead of plan; operators above a Fetch are
+     *         rebuilt, the others are plan's own.
+     */
+    public static DbIterator prune(DbIterator plan)
+    {
+        boolean[] all = new boolean[plan.getTupleDesc().numFields()];
+        Arrays.fill(all, true);
+        return prune(plan, all);
+    }
+
+    /** @param needed the fields of the output of op that are read. */
+    private static DbIterator prune(DbIterator op, boolean[] needed)
+    {
+        if (op instanceof Project)
+        {
+            Project pr = (Project) op;
+            DbIterator child = pr.getChild();
+            boolean[] in = new boolean[child.getTupleDesc().numFields()];
+            int[] fields = pr.getFields();
+            for (int i = 0; i < fields.length; i++)
+            {
+                in[fields[i]] |= needed[i];
+            }
+            DbIterator pruned = prune(child, in);
+            if (pruned == child)
+            {
+                return op;
+            }
+            ArrayList<Integer> fieldList = new ArrayList<Integer>();
+            ArrayList<Type> typesList = new ArrayList<Type>();
+            for (int i = 0; i < fields.length; i++)
+            {
+                fieldList.add(fields[i]);
+                typesList.add(pr.getTupleDesc().getType(i));
+            }
+            return new Project(fieldList, typesList, pruned);
+        }
+        if (op instanceof Filter)
+        {
+            return pruneFilters((Filter) op, needed);
+        }
+        if (op instanceof Join || op instanceof HashJoin)
+        {
+            boolean hash = op instanceof HashJoin;
+            JoinPredicate p = hash ? ((HashJoin) op).getJoinPredicate() : ((Join) op).getJoinPredicate();
+            DbIterator left = hash ? ((HashJoin) op).getLeftChild() : ((Join) op).getLeftChild();
+            DbIterator right = hash ? ((HashJoin) op).getRightChild() : ((Join) op).getRightChild();
+            int leftWidth = left.getTupleDesc().numFields();
+            boolean[] l = Arrays.copyOfRange(needed, 0, leftWidth);
+            boolean[] r = Arrays.copyOfRange(needed, leftWidth, needed.length);
+            l[p.getField1()] = true;
+            r[p.getField2()] = true;
+            DbIterator prunedLeft = prune(left, l);
+            DbIterator prunedRight = prune(right, r);
+            if (prunedLeft == left && prunedRight == right)
+            {
+                return op;
+            }
+            if (hash)
+            {
+                return new HashJoin(p, prunedLeft, prunedRight, ((HashJoin) op).hasRuntimeFilter(),
+                        ((HashJoin) op).getMaxRows());
+            }
+            return new Join(p, prunedLeft, prunedRight);
+        }
+        if (op instanceof Aggregate)
+        {
+            Aggregate a = (Aggregate) op;
+            DbIterator child = a.getChild();
+            boolean[] in = new boolean[child.getTupleDesc().numFields()];
+            in[a.getAggregateField()] = true;
+            if (a.getGroupField() >= 0)
+            {
+                in[a.getGroupField()] = true;
+            }
+            DbIterator pruned = prune(child, in);
+            if (pruned == child)
+            {
+                return op;
+            }
+            return new Aggregate(pruned, a.getAggregateField(), a.getGroupField(), a.getAggregateOp());
+        }
+        if (op instanceof OrderBy)
+        {
+            OrderBy o = (OrderBy) op;
+            boolean[] in = needed.clone();
+            for (int f : o.getOrderByFields())
+            {
+                in[f] = true;
+            }
+            DbIterator pruned = prune(o.getChild(), in);
+            if (pruned == o.getChild())
+            {
+                return op;
+            }
+            return new OrderBy(o.getOrderByFields(), o.getAscending(), pruned);
+        }
+        if (op instanceof SeqScan)
+        {
+            ((SeqScan) op).setFields(fieldsOf(needed));
+        }
+        return op;
+    }
+
+    /** Prunes a chain of Filters, starting with its top one. */
+    private static DbIterator pruneFilters(Filter top, boolean[] needed)
+    {
+        ArrayList<Filter> chain = new ArrayList<Filter>();
+        DbIterator bottom = top;
+        while (bottom instanceof Filter)
+        {
+            chain.add((Filter) bottom);
+            bottom = ((Filter) bottom).getChild();
+        }
+        boolean[] filtered = new boolean[needed.length];
+        for (Filter f : chain)
+        {
+            filtered[f.getPredicate().getField()] = true;
+        }
+        if (bottom instanceof SeqScan
+                && Database.getCatalog().getDbFile(((SeqScan) bottom).getTableId()) instanceof HeapFile)
+        {
+            SeqScan scan = (SeqScan) bottom;
+            boolean[] late = new boolean[needed.length];
+            for (int i = 0; i < needed.length; i++)
+            {
+                late[i] = needed[i] && !filtered[i];
+            }
+            scan.setFields(fieldsOf(filtered));
+            // the filters read at least one field, so some flag of late is clear
+            int[] fetched = fieldsOf(late);
+            if (fetched.length == 0)
+            {
+                return top;
+            }
+            return new Fetch(top, fetched);
+        }
+        boolean[] in = needed.clone();
+        for (int i = 0; i < in.length; i++)
+        {
+            in[i] |= filtered[i];
+        }
+        DbIterator pruned = prune(bottom, in);
+        if (pruned == bottom)
+        {
+            return top;
+        }
+        for (int i = chain.size() - 1; i >= 0; i--)
+        {
+            pruned = new Filter(chain.get(i).getPredicate(), pruned);
+        }
+        return pruned;
+    }
+
+    /** @return the indexes of the set flags, or null if every flag is set. */
+    private static int[] fieldsOf(boolean[] flags)
+    {
+        int n = 0;
+        for (boolean f : flags)
+        {
+            if (f)
+            {
+                n++;
+            }
+        }
+        if (n == flags.length)
+        {
+            return null;
+        }
+        int[] fields = new int[n];
+        n = 0;
+        for (int i = 0; i < flags.length; i++)
+        {
+            if (flags[i])
+            {
+                fields[n++] = i;
+            }
+        }
+        return fields;
+    }
+}
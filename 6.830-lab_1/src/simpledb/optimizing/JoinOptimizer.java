@@ -2,6 +2,7 @@ package simpledb.optimizing;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.Vector;
@@ -17,15 +18,24 @@ import javax.swing.tree.DefaultTreeCellRenderer;
 
 import simpledb.Catalog;
 import simpledb.Database;
+import simpledb.TransactionId;
 import simpledb.exceptions.ParsingException;
 import simpledb.logicalplan.LogicalJoinNode;
 import simpledb.logicalplan.LogicalPlan;
 import simpledb.logicalplan.LogicalSubplanJoinNode;
 import simpledb.operators.DbIterator;
+import simpledb.operators.Exchange;
+import simpledb.operators.HashJoin;
+import simpledb.operators.IndexNestedLoopJoin;
 import simpledb.operators.Join;
+import simpledb.operators.ParallelHashJoin;
+import simpledb.operators.SemiJoin;
 import simpledb.optimizing.statistics.JoinCardinalityEstimator;
+import simpledb.optimizing.statistics.SemiJoinCardinalityEstimator;
 import simpledb.optimizing.statistics.TableStats;
 import simpledb.predicates.JoinPredicate;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.TupleDesc;
 
 /** The JoinOptimizer class is responsible for ordering a series of
  *    joins optimally, and for selecting the best instantiation of a
@@ -34,6 +44,9 @@ import simpledb.predicates.JoinPredicate;
 public class JoinOptimizer {
     LogicalPlan p;
     Vector<LogicalJoinNode> joins;
+    int cardinality = -1;
+    // the access paths of the join fields looked up so far, null for none
+    HashMap<String, AccessPath> probePaths = new HashMap<String, AccessPath>();
 
     /** Constructor
         @param p the logical plan being optimized
@@ -61,6 +74,9 @@ public class JoinOptimizer {
         int t1id=0, t2id=0;
         DbIterator j;
 
+        if (lj instanceof LogicalSubplanJoinNode && lj.f1 == null)
+            return new SemiJoin(null, plan1, plan2, ((LogicalSubplanJoinNode)lj).anti);
+
         try {
             t1id = plan1.getTupleDesc().nameToId(p.disambiguateName(lj.f1));
         } catch (NoSuchElementException e) {
@@ -78,12 +94,76 @@ public class JoinOptimizer {
         }
         
         JoinPredicate p = new JoinPredicate(t1id,lj.p,t2id);
+
+        if (lj instanceof LogicalSubplanJoinNode)
+            return new SemiJoin(p, plan1, plan2, ((LogicalSubplanJoinNode)lj).anti);
        
-        j = new Join(p,plan1,plan2);
+        int parallelism = this.p.getParallelism();
+        if (parallelism > 1 && lj.p == Predicate.Op.EQUALS)
+            j = new ParallelHashJoin(p, plan1, plan2, parallelism);
+        else if (parallelism > 1)
+            j = parallelJoin(p, plan1, plan2, parallelism);
+        else if (lj.p == Predicate.Op.EQUALS)
+            j = new HashJoin(p, plan1, plan2);
+        else
+            j = new Join(p,plan1,plan2);
         
         return j;
 
     }
+
+    /** Return an {@link IndexNestedLoopJoin} of plan1 with the table of
+     *   lj.t2, for a join {@link #orderJoins} chose to run as one (see
+     *   {@link LogicalJoinNode#indexProbe}).
+     *
+     *  @param lj The join being considered
+     *  @param plan1 The left join node's child
+     *  @param filters the filters over the fields of the table of lj.t2,
+     *    applied to the tuples looked up
+     */
+    public DbIterator instantiateIndexJoin(TransactionId tid, LogicalJoinNode lj, DbIterator plan1, List<Predicate> filters) throws ParsingException {
+        int t1id;
+        try {
+            t1id = plan1.getTupleDesc().nameToId(p.disambiguateName(lj.f1));
+        } catch (NoSuchElementException e) {
+            throw new ParsingException("Unknown field " + lj.f1);
+        }
+        AccessPath path = probePath(lj.t2, lj.f2);
+        if (path == null)
+            throw new ParsingException("No index on " + lj.f2);
+        return new IndexNestedLoopJoin(tid, plan1, t1id, path.getTableId(), path.getIndex(), lj.t2, filters);
+    }
+
+    /** Return the access path an index join can look up field of table
+     *  through, or null if there is none. */
+    private AccessPath probePath(String table, String field) {
+        if (!probePaths.containsKey(field)) {
+            AccessPath path;
+            try {
+                int tableid = p.getTableId(table);
+                TupleDesc td = Database.getCatalog().getTupleDesc(tableid);
+                path = AccessPath.find(tableid, td.nameToId(field.substring(field.indexOf('.') + 1)), Predicate.Op.EQUALS);
+            } catch (NoSuchElementException e) {
+                path = null;
+            }
+            probePaths.put(field, path);
+        }
+        return probePaths.get(field);
+    }
+
+    /** Run a join that is not an equality join as n Joins, each on its own
+     *  worker, and gather their output: every Join gets the whole left input
+     *  and an arbitrary part of the right input.
+     */
+    private static DbIterator parallelJoin(JoinPredicate p, DbIterator plan1, DbIterator plan2, int n) {
+        DbIterator[] left = Exchange.broadcast(Exchange.producersOf(plan1), n);
+        DbIterator[] right = Exchange.repartition(Exchange.producersOf(plan2), p.getField2(), n);
+
+        DbIterator[] joins = new DbIterator[n];
+        for (int i = 0; i < n; i++)
+            joins[i] = new Join(p, left[i], right[i]);
+        return Exchange.gather(joins);
+    }
     
     /**
      * Estimate the cost of a join.
@@ -106,9 +186,10 @@ public class JoinOptimizer {
     public double estimateJoinCost(LogicalJoinNode j, int card1, int card2, double cost1, double cost2) {
         if (j instanceof LogicalSubplanJoinNode) 
         {
-        	// A LogicalSubplanJoinNode represents a subquery.
-        	// You do not need to implement proper support for these for Lab 4.
-        	return card1 + cost1 + cost2;
+        	// a semi-join reads the subquery once into a hash table and
+        	// probes it once per outer row
+        	int subplanCard = Math.max(((LogicalSubplanJoinNode) j).subplanCard, 0);
+        	return cost1 + cost2 + subplanCard + card1;
         } 
         else 
         {
@@ -116,6 +197,30 @@ public class JoinOptimizer {
         }
     }
 
+    /**
+     * Estimate the cost of an index nested-loop join, which reads the
+     * left-hand side once and looks up the index of the right-hand table on
+     * its join field for each left-hand tuple, for the right-hand tuples
+     * expected to match it.
+     *
+     * @param j A LogicalJoinNode representing the join operation being performed.
+     * @param card1 Estimated cardinality of the left-hand side of the query
+     * @param cost1 Estimated cost of one full scan of the table on the left-hand side of the query
+     * @param stats Statistics for each table involved in the join
+     * @param joinCard Estimated cardinality of the join of the two tables
+     * @return An estimate of the cost of this join, or Double.MAX_VALUE if
+     *   the right-hand table has no index on its join field
+     */
+    public double estimateIndexJoinCost(LogicalJoinNode j, int card1, double cost1, HashMap<String, TableStats> stats, int joinCard) {
+        AccessPath path = probePath(j.t2, j.f2);
+        if (path == null)
+            return Double.MAX_VALUE;
+        int rows1 = stats.get(j.t1).estimateTableCardinality(1.0);
+        int rows2 = stats.get(j.t2).estimateTableCardinality(1.0);
+        double selectivity = rows1 == 0 || rows2 == 0 ? 0 : Math.min(1.0, (double) joinCard / rows1 / rows2);
+        return cost1 + card1 * path.estimateCost(stats.get(j.t2), selectivity);
+    }
+
     /**
      * Estimate the cardinality of a join.  The cardinality of a join
      * is the number of tuples produced by the join.
@@ -134,9 +239,8 @@ public class JoinOptimizer {
     public int estimateJoinCardinality(LogicalJoinNode j, TableStats stats1, TableStats stats2) {
         if (j instanceof LogicalSubplanJoinNode) 
         {
-            // A LogicalSubplanJoinNode represents a subquery.
-            // You do not need to implement proper support for these for Lab 4.
-            return 0;
+            return estimateSubplanJoinCardinality((LogicalSubplanJoinNode) j,
+                    stats1.estimateTableCardinality(1.0), stats1);
         } 
         else 
         {
@@ -145,7 +249,36 @@ public class JoinOptimizer {
         }
     }
 
-   
+
+    /**
+     * Estimate the cardinality of a semi-join or anti-join with a subquery:
+     * the number of outer rows it keeps.
+     *
+     * @param j the join with the subquery
+     * @param outerCard the estimated cardinality of the outer input
+     * @param outerStats statistics of the table of the outer join field
+     * @return The cardinality of the join
+     */
+    public int estimateSubplanJoinCardinality(LogicalSubplanJoinNode j, int outerCard, TableStats outerStats) {
+        int field = -1;
+        if (j.f1 != null) {
+            try {
+                TupleDesc td = Database.getCatalog().getTupleDesc(p.getTableId(j.t1));
+                field = td.nameToId(j.f1.substring(j.f1.indexOf('.') + 1));
+            } catch (NoSuchElementException e) {
+                field = -1;
+            }
+        }
+        return new SemiJoinCardinalityEstimator(j, outerCard, outerStats, field).estimateJoinCardinality();
+    }
+
+    /**
+     * @return the estimated cardinality of the joins ordered by the last
+     *   call to {@link #orderJoins}, or -1 if there was none.
+     */
+    public int getCardinality() {
+        return cardinality;
+    }
 
 	/** Helper method to enumerate all of the subsets of a given size
         of a specified vector.
@@ -198,6 +331,11 @@ public class JoinOptimizer {
                                               HashMap<String, Double> filterSelectivities,  
                                               boolean explain) throws ParsingException 
     {
+    	if (joins.isEmpty())
+    	{
+    		// single table query: nothing to order
+    		return joins;
+    	}
     	PlanCache pc = new PlanCache();
     	CostCard costCard = new CostCard();
     	int s = joins.size();
@@ -227,7 +365,12 @@ public class JoinOptimizer {
     			printJoins(costCard.plan, pc, stats, filterSelectivities);
     		}
         }
-    	return pc.getOrder(new HashSet<LogicalJoinNode>(joins));
+    	HashSet<LogicalJoinNode> all = new HashSet<LogicalJoinNode>(joins);
+    	if (pc.getCard(all) != null)
+    	{
+    		cardinality = pc.getCard(all);
+    	}
+    	return pc.getOrder(all);
     } 
  
     //===================== Private Methods =================================
@@ -271,7 +414,7 @@ public class JoinOptimizer {
 
         if (stats.get(j.t1) == null)
             throw new ParsingException("Unknown table " + j.t1);
-        if (stats.get(j.t2) == null)
+        if (j.t2 != null && stats.get(j.t2) == null)
             throw new ParsingException("Unknown table " + j.t2);
 
         Set<LogicalJoinNode> news = (Set<LogicalJoinNode>) ((HashSet)joinSet).clone();
@@ -337,7 +480,7 @@ public class JoinOptimizer {
 
         LogicalJoinNode j2 = j.swapInnerOuter();
         double cost2 = estimateJoinCost(j2,t2card,t1card, t2cost,t1cost);
-        if (cost2 < cost1) 
+        if (cost2 < cost1 && !(j instanceof LogicalSubplanJoinNode)) 
         {
             boolean tmp;
             j = j2;
@@ -346,13 +489,45 @@ public class JoinOptimizer {
             rightPkey = leftPkey;
             leftPkey = tmp;
         }
+        // an equality join with a table not joined yet can look up an index
+        // of that table for each tuple of the other side instead; the join is
+        // otherwise a HashJoin, which reads both sides once
+        if (!(joinToRemove instanceof LogicalSubplanJoinNode) && joinToRemove.p == Predicate.Op.EQUALS
+                && p.getParallelism() == 1 && (probePath(joinToRemove.t1, joinToRemove.f1) != null
+                        || probePath(joinToRemove.t2, joinToRemove.f2) != null))
+        {
+            LogicalJoinNode j1 = joinToRemove;
+            int joinCard = estimateJoinCardinality(j1, stats.get(j1.t1), stats.get(j1.t2));
+            // the left side is j1.t1 unless prevBest joins j1.t2
+            LogicalJoinNode probe = news.isEmpty() || doesJoin(prevBest, j1.t1) ? j1 : j1.swapInnerOuter();
+            double probeCost = estimateIndexJoinCost(probe, t1card, t1cost, stats, joinCard);
+            if (news.isEmpty())
+            {
+                // both are base relations, either can be looked up
+                LogicalJoinNode probe2 = probe.swapInnerOuter();
+                double probeCost2 = estimateIndexJoinCost(probe2, t2card, t2cost, stats, joinCard);
+                if (probeCost2 < probeCost)
+                {
+                    probe = probe2;
+                    probeCost = probeCost2;
+                }
+            }
+            if (probeCost < t1cost + t2cost + t1card + t2card)
+            {
+                j = probe.withIndexProbe();
+                cost1 = probeCost;
+            }
+        }
         if (cost1 >= bestCostSoFar)
         {
             return null;
         }
         CostCard cc = new CostCard();
         
-        cc.card = estimateJoinCardinality(j, stats.get(j.t1),stats.get(j.t2));
+        if (j instanceof LogicalSubplanJoinNode)
+            cc.card = estimateSubplanJoinCardinality((LogicalSubplanJoinNode) j, t1card, stats.get(j.t1));
+        else
+            cc.card = estimateJoinCardinality(j, stats.get(j.t1),stats.get(j.t2));
         cc.cost = cost1;
         cc.plan = (Vector<LogicalJoinNode>)prevBest.clone();
         cc.plan.addElement(j);  //prevbest is left -- add new join to end
@@ -429,7 +604,7 @@ public class JoinOptimizer {
             Double c = pc.getCost(pathSoFar);
             neither = true;
 
-            root = new DefaultMutableTreeNode("Join " + j + " (Cost =" + pc.getCost(pathSoFar) + 
+            root = new DefaultMutableTreeNode("Join " + j + (j.indexProbe ? " looking up " + j.f2 : "") + " (Cost =" + pc.getCost(pathSoFar) + 
                                               ", card = " + pc.getCard(pathSoFar)+ ")");
             DefaultMutableTreeNode n = m.get(j.t1);
             if (n == null) {  //never seen this table before
@@ -0,0 +1,101 @@
+package simpledb.optimizing.statistics;
+
+import java.util.Iterator;
+
+import simpledb.logicalplan.LogicalSubplanJoinNode;
+
+/**
+ * Estimates how many rows of its outer input a semi-join or an anti-join
+ * with a subquery returns.
+ * <p>
+ * For IN, the keys of the subquery are assumed to be distinct and drawn from
+ * the values of the outer field, so a fraction subplanCard / distinct of the
+ * outer rows match, where distinct is the number of values of the outer field
+ * read off its histogram. A range predicate matches half of the outer rows,
+ * any other predicate all of them, and EXISTS all of them, unless the
+ * subquery is known to be empty. An anti-join returns the outer rows the
+ * semi-join does not.
+ */
+public class SemiJoinCardinalityEstimator {
+
+	/** Fraction of outer rows assumed to match when nothing better is known. */
+	private static final double DEFAULT_SELECTIVITY = 0.5;
+
+	private LogicalSubplanJoinNode j;
+	private int outerCard;
+	private TableStats outerStats;
+	private int outerField;
+
+	/**
+	 * @param j the join with the subquery.
+	 * @param outerCard the estimated number of rows of the outer input.
+	 * @param outerStats the statistics of the table of the outer field, or null.
+	 * @param outerField the index of the outer field in its table, or -1 if unknown.
+	 */
+	public SemiJoinCardinalityEstimator(LogicalSubplanJoinNode j, int outerCard, TableStats outerStats, int outerField)
+	{
+		this.j = j;
+		this.outerCard = outerCard;
+		this.outerStats = outerStats;
+		this.outerField = outerField;
+	}
+
+	public int estimateJoinCardinality()
+	{
+		int semi = (int) (outerCard * estimateSelectivity());
+		return j.anti ? outerCard - semi : semi;
+	}
+
+	/** @return the fraction of outer rows with a match in the subquery. */
+	private double estimateSelectivity()
+	{
+		if (j.subplanCard == 0)
+		{
+			return 0;
+		}
+		if (j.p == null)
+		{
+			return 1;
+		}
+		switch (j.p)
+		{
+		case EQUALS:
+			if (j.subplanCard < 0)
+			{
+				return DEFAULT_SELECTIVITY;
+			}
+			return Math.min(1.0, (double) j.subplanCard / estimateDistinct());
+		case LESS_THAN:
+		case LESS_THAN_OR_EQ:
+		case GREATER_THAN:
+		case GREATER_THAN_OR_EQ:
+		case LIKE:
+			return DEFAULT_SELECTIVITY;
+		default:
+			return 1;
+		}
+	}
+
+	/**
+	 * @return the number of distinct values of the outer field: every bucket
+	 *         of its histogram holds at most one value per unit of width.
+	 */
+	private int estimateDistinct()
+	{
+		if (outerStats == null || outerField < 0)
+		{
+			return Math.max(outerCard, 1);
+		}
+		int distinct = 0;
+		Iterator<Bucket> buckets = outerStats.getHistogram(outerField).getBucketIterator();
+		while (buckets.hasNext())
+		{
+			Bucket b = buckets.next();
+			if (b.height > 0)
+			{
+				distinct += Math.min(b.height, Math.max(1, (int) Math.ceil(b.getWidth())));
+			}
+		}
+		return Math.max(distinct, 1);
+	}
+}
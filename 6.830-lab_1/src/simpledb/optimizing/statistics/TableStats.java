@@ -221,6 +221,29 @@ public class TableStats {
 		return dbFile.numPages()*ioCpstPerPage;
     }
 
+    /**
+     * Estimates the cost of reading the tuples that satisfy predicates of
+     * selectivity selectivityFactor through an index, counted as for
+     * {@link #estimateScanCost}: height pages down to the first leaf, the
+     * fraction selectivityFactor of the leafPages leaves of the index and,
+     * unless the index holds the tuples themselves, the pages of the table
+     * holding the tuples. Those are read in no particular order, so each
+     * tuple is counted as a page, up to every page of the table.
+     *
+     * @param clustered true if the table is stored in the index.
+     * @return The estimated cost of the index scan.
+     */
+    public double estimateIndexScanCost(int height, int leafPages, double selectivityFactor, boolean clustered)
+    {
+    	double pages = height + Math.ceil(selectivityFactor * leafPages);
+    	if (!clustered)
+    	{
+    		int tablePages = Database.getCatalog().getDbFile(tableid).numPages();
+    		pages += Math.min(Math.ceil(selectivityFactor * rowCount), tablePages);
+    	}
+		return pages * ioCpstPerPage;
+    }
+
     /** 
      * This method returns the number of tuples in the relation,
      * given that a predicate with selectivity selectivityFactor is
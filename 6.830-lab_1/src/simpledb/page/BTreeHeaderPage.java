@@ -0,0 +1,96 @@
+package simpledb.page;
+
+import simpledb.BufferPool;
+
+/**
+ * A page recording which pages of a {@link simpledb.file.BTreeFile} are in
+ * use, one bit each, so that the pages freed by merges are used again.
+ * Header k covers the SLOTS pages starting with page k * SLOTS; its format
+ * is the kind byte followed by the bitmap.
+ */
+public class BTreeHeaderPage extends BTreePage {
+
+    /** Number of pages a header page covers. */
+    public static final int SLOTS = (BufferPool.PAGE_SIZE - 1) * 8;
+
+    private final byte[] bitmap = new byte[BufferPool.PAGE_SIZE - 1];
+
+    public BTreeHeaderPage(PageId id, byte[] data)
+    {
+        super(id);
+        System.arraycopy(data, 1, bitmap, 0, bitmap.length);
+        setBeforeImage();
+    }
+
+    /** @return whether the page in slot i of this header is in use. */
+    public boolean isUsed(int i)
+    {
+        return (bitmap[i / 8] & (1 << (i % 8))) != 0;
+    }
+
+    public void setUsed(int i, boolean used)
+    {
+        if (used)
+        {
+            bitmap[i / 8] |= 1 << (i % 8);
+        }
+        else
+        {
+            bitmap[i / 8] &= ~(1 << (i % 8));
+        }
+    }
+
+    /** @return the first slot below limit whose page is free, or -1. */
+    public int findFree(int limit)
+    {
+        for (int b = 0; b * 8 < limit; b++)
+        {
+            if (bitmap[b] == (byte) 0xff)
+            {
+                continue;
+            }
+            for (int i = b * 8; i < b * 8 + 8 && i < limit; i++)
+            {
+                if (!isUsed(i))
+                {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    public byte[] getPageData()
+    {
+        byte[] data = emptyPageData(BTreePageId.HEADER);
+        System.arraycopy(bitmap, 0, data, 1, bitmap.length);
+        return data;
+    }
+
+    public BTreeHeaderPage getBeforeImage()
+    {
+        return new BTreeHeaderPage(pid, getBeforeImageData());
+    }
+
+    /** @return the image of a header page with the pages in the given slots in use. */
+    public static byte[] createPageData(int... used)
+    {
+        byte[] data = emptyPageData(BTreePageId.HEADER);
+        for (int i : used)
+        {
+            data[1 + i / 8] |= 1 << (i % 8);
+        }
+        return data;
+    }
+
+    /** @return the image of a header page with its first n slots in use. */
+    public static byte[] createFullPageData(int n)
+    {
+        byte[] data = emptyPageData(BTreePageId.HEADER);
+        for (int i = 0; i < n; i++)
+        {
+            data[1 + i / 8] |= 1 << (i % 8);
+        }
+        return data;
+    }
+}
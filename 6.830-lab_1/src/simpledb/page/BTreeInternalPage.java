@@ -0,0 +1,250 @@
+package simpledb.page;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.file.BTreeFile;
+import simpledb.tuple.Field;
+import simpledb.tuple.Type;
+
+/**
+ * An internal page of a {@link BTreeFile}: n keys separating n + 1
+ * children, which are all leaves or all internal pages. Child i holds the
+ * keys from key i - 1 to key i, both included, since equal keys may be
+ * split between neighbouring children.
+ * <p>
+ * The format is the kind byte, the kind of the children, the number of
+ * keys n, and then child 0, key 0, child 1, ..., key n - 1, child n, with
+ * keys in the format of their Field and children as page numbers.
+ */
+public class BTreeInternalPage extends BTreePage {
+
+    private final Type keyType;
+    private final int maxKeys;
+    private int childCategory;
+    private int numKeys;
+    private final Field[] keys;
+    private final int[] children;
+
+    public BTreeInternalPage(PageId id, byte[] data) throws IOException
+    {
+        super(id);
+        BTreeFile f = (BTreeFile) Database.getCatalog().getDbFile(id.getTableId());
+        keyType = f.getTupleDesc().getType(f.keyField());
+        maxKeys = getMaxKeys(keyType);
+        keys = new Field[maxKeys];
+        children = new int[maxKeys + 1];
+
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        dis.readByte();
+        childCategory = dis.readByte();
+        numKeys = dis.readInt();
+        children[0] = dis.readInt();
+        try
+        {
+            for (int i = 0; i < numKeys; i++)
+            {
+                keys[i] = keyType.parse(dis);
+                children[i + 1] = dis.readInt();
+            }
+        }
+        catch (ParseException e)
+        {
+            throw new IOException("cannot parse the keys of " + id);
+        }
+        setBeforeImage();
+    }
+
+    /** @return the number of keys an internal page with keys of type t holds. */
+    public static int getMaxKeys(Type t)
+    {
+        return (BufferPool.PAGE_SIZE - 10) / (t.getLen() + 4);
+    }
+
+    public int getMaxKeys()
+    {
+        return maxKeys;
+    }
+
+    public int getNumKeys()
+    {
+        return numKeys;
+    }
+
+    public boolean isFull()
+    {
+        return numKeys == maxKeys;
+    }
+
+    /** @return the kind of the children, LEAF or INTERNAL. */
+    public int getChildCategory()
+    {
+        return childCategory;
+    }
+
+    public void setChildCategory(int category)
+    {
+        childCategory = category;
+    }
+
+    public Field getKey(int i)
+    {
+        return keys[i];
+    }
+
+    public void setKey(int i, Field key)
+    {
+        keys[i] = key;
+    }
+
+    public BTreePageId getChildId(int i)
+    {
+        return new BTreePageId(pid.getTableId(), children[i], childCategory);
+    }
+
+    /**
+     * @return the first child that may hold key: the child before the
+     *         first key at least key, or the last child.
+     */
+    public int findChild(Field key)
+    {
+        int lo = 0;
+        int hi = numKeys;
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (compare(keys[mid], key) < 0)
+            {
+                lo = mid + 1;
+            }
+            else
+            {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Inserts key at i, with the page right as the child after it. The page must not be full. */
+    public void insertEntry(int i, Field key, int right)
+    {
+        System.arraycopy(keys, i, keys, i + 1, numKeys - i);
+        System.arraycopy(children, i + 1, children, i + 2, numKeys - i);
+        keys[i] = key;
+        children[i + 1] = right;
+        numKeys++;
+    }
+
+    /** Removes key i and the child after it. */
+    public void deleteEntry(int i)
+    {
+        System.arraycopy(keys, i + 1, keys, i, numKeys - i - 1);
+        System.arraycopy(children, i + 2, children, i + 1, numKeys - i - 1);
+        numKeys--;
+        keys[numKeys] = null;
+    }
+
+    /** @return a copy of the keys. */
+    public ArrayList<Field> getKeys()
+    {
+        ArrayList<Field> l = new ArrayList<Field>(numKeys + 1);
+        for (int i = 0; i < numKeys; i++)
+        {
+            l.add(keys[i]);
+        }
+        return l;
+    }
+
+    /** @return a copy of the page numbers of the children. */
+    public ArrayList<Integer> getChildren()
+    {
+        ArrayList<Integer> l = new ArrayList<Integer>(numKeys + 2);
+        for (int i = 0; i <= numKeys; i++)
+        {
+            l.add(children[i]);
+        }
+        return l;
+    }
+
+    /** Replaces the entries of this page with the given keys and one more children. */
+    public void setEntries(List<Field> keys, List<Integer> children)
+    {
+        if (keys.size() > maxKeys || children.size() != keys.size() + 1)
+        {
+            throw new IllegalArgumentException("bad entries for an internal page");
+        }
+        Arrays.fill(this.keys, null);
+        numKeys = keys.size();
+        for (int i = 0; i < numKeys; i++)
+        {
+            this.keys[i] = keys.get(i);
+        }
+        for (int i = 0; i <= numKeys; i++)
+        {
+            this.children[i] = children.get(i);
+        }
+    }
+
+    public byte[] getPageData()
+    {
+        return createPageData(childCategory, getKeys(), getChildren());
+    }
+
+    /**
+     * @return the image of an internal page with the given keys and one
+     *         more children, all of kind childCategory.
+     */
+    public static byte[] createPageData(int childCategory, List<Field> keys, List<Integer> children)
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(BufferPool.PAGE_SIZE);
+        DataOutputStream dos = new DataOutputStream(baos);
+        try
+        {
+            dos.writeByte(BTreePageId.INTERNAL);
+            dos.writeByte(childCategory);
+            dos.writeInt(keys.size());
+            dos.writeInt(children.get(0));
+            for (int i = 0; i < keys.size(); i++)
+            {
+                keys.get(i).serialize(dos);
+                dos.writeInt(children.get(i + 1));
+            }
+            dos.write(new byte[BufferPool.PAGE_SIZE - dos.size()]);
+            dos.flush();
+        }
+        catch (IOException e)
+        {
+            // writing to memory does not fail
+            throw new RuntimeException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    public BTreeInternalPage getBeforeImage()
+    {
+        try
+        {
+            return new BTreeInternalPage(pid, getBeforeImageData());
+        }
+        catch (IOException e)
+        {
+            // we parsed it OK before
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** @return the image of an empty internal page. */
+    public static byte[] createEmptyPageData()
+    {
+        return emptyPageData(BTreePageId.INTERNAL);
+    }
+}
@@ -0,0 +1,256 @@
+package simpledb.page;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.RecordId;
+import simpledb.file.BTreeFile;
+import simpledb.tuple.Field;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleDesc;
+
+/**
+ * A leaf page of a {@link BTreeFile}, holding tuples sorted by their key.
+ * Tuples with equal keys are kept in the order they were inserted. Leaves
+ * are chained from left to right for range scans.
+ * <p>
+ * The format is the kind byte, the page number of the next leaf, or 0 for
+ * the last one, the number of tuples, and the tuples one after the other.
+ * The record id of a tuple is its position on the page, which changes as
+ * tuples before it are inserted or deleted.
+ */
+public class BTreeLeafPage extends BTreePage {
+
+    private final TupleDesc td;
+    private final int keyField;
+    private final int maxTuples;
+    private int nextLeaf;
+    private final ArrayList<Tuple> tuples;
+
+    public BTreeLeafPage(PageId id, byte[] data) throws IOException
+    {
+        super(id);
+        BTreeFile f = (BTreeFile) Database.getCatalog().getDbFile(id.getTableId());
+        td = f.getTupleDesc();
+        keyField = f.keyField();
+        maxTuples = getMaxTuples(td);
+
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        dis.readByte();
+        nextLeaf = dis.readInt();
+        int n = dis.readInt();
+        tuples = new ArrayList<Tuple>(maxTuples);
+        try
+        {
+            for (int i = 0; i < n; i++)
+            {
+                Tuple t = new Tuple(td);
+                for (int j = 0; j < td.numFields(); j++)
+                {
+                    t.setField(j, td.getType(j).parse(dis));
+                }
+                tuples.add(t);
+            }
+        }
+        catch (ParseException e)
+        {
+            throw new IOException("cannot parse the tuples of " + id);
+        }
+        setBeforeImage();
+    }
+
+    /** @return the number of tuples of td a leaf page holds. */
+    public static int getMaxTuples(TupleDesc td)
+    {
+        return (BufferPool.PAGE_SIZE - 9) / td.getSize();
+    }
+
+    public int getMaxTuples()
+    {
+        return maxTuples;
+    }
+
+    public int getNumTuples()
+    {
+        return tuples.size();
+    }
+
+    public boolean isFull()
+    {
+        return tuples.size() == maxTuples;
+    }
+
+    /** @return the page number of the next leaf, or 0 if this is the last one. */
+    public int getNextLeaf()
+    {
+        return nextLeaf;
+    }
+
+    public void setNextLeaf(int pageno)
+    {
+        nextLeaf = pageno;
+    }
+
+    /** @return tuple i, with its record id set. */
+    public Tuple getTuple(int i)
+    {
+        Tuple t = tuples.get(i);
+        t.setRecordId(new RecordId(pid, i));
+        return t;
+    }
+
+    public Field getKey(int i)
+    {
+        return tuples.get(i).getField(keyField);
+    }
+
+    /**
+     * @return the first position whose key is at least key if inclusive,
+     *         or above key otherwise; the number of tuples if none is.
+     */
+    public int findFirst(Field key, boolean inclusive)
+    {
+        int lo = 0;
+        int hi = tuples.size();
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            int c = compare(getKey(mid), key);
+            if (c < 0 || c == 0 && !inclusive)
+            {
+                lo = mid + 1;
+            }
+            else
+            {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** @return the position of a tuple with the same fields as t, or -1. */
+    public int indexOf(Tuple t)
+    {
+        Field key = t.getField(keyField);
+        for (int i = findFirst(key, true); i < tuples.size() && getKey(i).equals(key); i++)
+        {
+            if (sameFields(tuples.get(i), t))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean sameFields(Tuple a, Tuple b)
+    {
+        for (int j = 0; j < td.numFields(); j++)
+        {
+            if (!a.getField(j).equals(b.getField(j)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Inserts t after the tuples with keys up to its own. The page must not
+     * be full. @return the position of t.
+     */
+    public int insertTuple(Tuple t)
+    {
+        if (isFull())
+        {
+            throw new IllegalStateException("leaf page is full");
+        }
+        int i = findFirst(t.getField(keyField), false);
+        tuples.add(i, t);
+        return i;
+    }
+
+    public void deleteTuple(int i)
+    {
+        tuples.remove(i);
+    }
+
+    /** @return a copy of the list of tuples. */
+    public ArrayList<Tuple> getTuples()
+    {
+        return new ArrayList<Tuple>(tuples);
+    }
+
+    /** Replaces the tuples of this page with the given sorted ones. */
+    public void setTuples(List<Tuple> sorted)
+    {
+        if (sorted.size() > maxTuples)
+        {
+            throw new IllegalArgumentException("too many tuples for a leaf page");
+        }
+        tuples.clear();
+        tuples.addAll(sorted);
+    }
+
+    public byte[] getPageData()
+    {
+        return createPageData(td, nextLeaf, tuples);
+    }
+
+    /**
+     * @return the image of a leaf page holding the given sorted tuples of td,
+     *         followed by leaf nextLeaf, or 0 for none.
+     */
+    public static byte[] createPageData(TupleDesc td, int nextLeaf, List<Tuple> tuples)
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(BufferPool.PAGE_SIZE);
+        DataOutputStream dos = new DataOutputStream(baos);
+        try
+        {
+            dos.writeByte(BTreePageId.LEAF);
+            dos.writeInt(nextLeaf);
+            dos.writeInt(tuples.size());
+            for (Tuple t : tuples)
+            {
+                for (int j = 0; j < td.numFields(); j++)
+                {
+                    t.getField(j).serialize(dos);
+                }
+            }
+            dos.write(new byte[BufferPool.PAGE_SIZE - dos.size()]);
+            dos.flush();
+        }
+        catch (IOException e)
+        {
+            // writing to memory does not fail
+            throw new RuntimeException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    public BTreeLeafPage getBeforeImage()
+    {
+        try
+        {
+            return new BTreeLeafPage(pid, getBeforeImageData());
+        }
+        catch (IOException e)
+        {
+            // we parsed it OK before
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** @return the image of an empty leaf page, the last of its file. */
+    public static byte[] createEmptyPageData()
+    {
+        return emptyPageData(BTreePageId.LEAF);
+    }
+}
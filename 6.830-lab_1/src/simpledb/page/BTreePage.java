@@ -0,0 +1,67 @@
+package simpledb.page;
+
+import simpledb.BufferPool;
+import simpledb.TransactionId;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.Field;
+
+/**
+ * Base of the pages of a {@link simpledb.file.BTreeFile}: keeps the id,
+ * dirty state and before image common to all of them. The first byte of
+ * every page is its kind, one of the categories of {@link BTreePageId}.
+ */
+public abstract class BTreePage implements Page {
+
+    protected final BTreePageId pid;
+    private TransactionId dirtier;
+    private byte[] oldData;
+
+    protected BTreePage(PageId id)
+    {
+        pid = (BTreePageId) id;
+    }
+
+    public BTreePageId getId()
+    {
+        return pid;
+    }
+
+    public TransactionId isDirty()
+    {
+        return dirtier;
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid)
+    {
+        dirtier = dirty ? tid : null;
+    }
+
+    public void setBeforeImage()
+    {
+        oldData = getPageData();
+    }
+
+    /** @return the image of this page as last read or committed. */
+    protected byte[] getBeforeImageData()
+    {
+        return oldData;
+    }
+
+    /** Orders the keys of a B+ tree: negative, zero or positive as a is below, equal to or above b. */
+    public static int compare(Field a, Field b)
+    {
+        if (a.equals(b))
+        {
+            return 0;
+        }
+        return a.compare(Predicate.Op.LESS_THAN, b) ? -1 : 1;
+    }
+
+    /** @return a page image of the given kind, otherwise empty. */
+    protected static byte[] emptyPageData(int category)
+    {
+        byte[] data = new byte[BufferPool.PAGE_SIZE];
+        data[0] = (byte) category;
+        return data;
+    }
+}
@@ -0,0 +1,79 @@
+package simpledb.page;
+
+/**
+ * Unique identifier for the pages of a {@link simpledb.file.BTreeFile}.
+ * <p>
+ * Besides the table and page number, the id tells which kind of page it
+ * refers to. The kind is only a hint, and is not part of equals: a page
+ * freed by a merge keeps its number, and may come back as another kind.
+ * The kind of a page read from disk is taken from its first byte.
+ */
+public class BTreePageId implements PageId {
+
+    /** The page holding the root pointer, always page 0. */
+    public static final int ROOT_PTR = 1;
+    public static final int INTERNAL = 2;
+    public static final int LEAF = 3;
+    /** The pages recording which pages of the file are in use. */
+    public static final int HEADER = 4;
+
+    private final int tableId;
+    private final int pgNo;
+    private final int category;
+
+    /**
+     * @param tableId The table that is being referenced
+     * @param pgNo The page number in that table.
+     * @param category ROOT_PTR, INTERNAL, LEAF or HEADER.
+     */
+    public BTreePageId(int tableId, int pgNo, int category)
+    {
+        this.tableId = tableId;
+        this.pgNo = pgNo;
+        this.category = category;
+    }
+
+    public int getTableId()
+    {
+        return tableId;
+    }
+
+    public int pageno()
+    {
+        return pgNo;
+    }
+
+    /** @return the kind of page, ROOT_PTR, INTERNAL, LEAF or HEADER. */
+    public int category()
+    {
+        return category;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * (31 + pgNo) + tableId;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (!(obj instanceof BTreePageId))
+        {
+            return false;
+        }
+        BTreePageId other = (BTreePageId) obj;
+        return tableId == other.tableId && pgNo == other.pgNo;
+    }
+
+    public int[] serialize()
+    {
+        return new int[] { tableId, pgNo, category };
+    }
+
+    @Override
+    public String toString()
+    {
+        return "BTreePageId [tableId=" + tableId + ", pgNo=" + pgNo + ", category=" + category + "]";
+    }
+}
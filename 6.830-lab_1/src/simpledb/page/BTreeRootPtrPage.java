@@ -0,0 +1,53 @@
+package simpledb.page;
+
+import simpledb.tuple.IntField;
+
+/**
+ * The first page of a {@link simpledb.file.BTreeFile}, which points to the
+ * root of the tree. Its format is the kind byte, the page number of the
+ * root and the kind of the root, a leaf or an internal page.
+ */
+public class BTreeRootPtrPage extends BTreePage {
+
+    private int root;
+    private int rootCategory;
+
+    public BTreeRootPtrPage(PageId id, byte[] data)
+    {
+        super(id);
+        root = IntField.read(data, 1);
+        rootCategory = data[5];
+        setBeforeImage();
+    }
+
+    /** @return the id of the root page. */
+    public BTreePageId getRootId()
+    {
+        return new BTreePageId(pid.getTableId(), root, rootCategory);
+    }
+
+    public void setRootId(BTreePageId id)
+    {
+        root = id.pageno();
+        rootCategory = id.category();
+    }
+
+    public byte[] getPageData()
+    {
+        return createPageData(root, rootCategory);
+    }
+
+    public BTreeRootPtrPage getBeforeImage()
+    {
+        return new BTreeRootPtrPage(pid, getBeforeImageData());
+    }
+
+    /** @return the image of a root pointer page pointing to page root of the given kind. */
+    public static byte[] createPageData(int root, int rootCategory)
+    {
+        byte[] data = emptyPageData(BTreePageId.ROOT_PTR);
+        IntField.write(data, 1, root);
+        data[5] = (byte) rootCategory;
+        return data;
+    }
+}
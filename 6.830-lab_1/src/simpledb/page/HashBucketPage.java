@@ -0,0 +1,217 @@
+package simpledb.page;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.RecordId;
+import simpledb.tuple.Field;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleDesc;
+
+/**
+ * A bucket of a {@link simpledb.file.HashFile}, holding the tuples whose
+ * hashed keys end with the same local depth bits, in no particular order.
+ * A bucket that cannot be split further goes on in a chain of overflow
+ * pages, which have the same format.
+ * <p>
+ * The format is the kind byte, the local depth, the page number of the
+ * next page of the chain, or 0 for the last one, the number of tuples, and
+ * the tuples one after the other.
+ */
+public class HashBucketPage extends HashPage {
+
+    private final TupleDesc td;
+    private final int maxTuples;
+    private int localDepth;
+    private int next;
+    private final ArrayList<Tuple> tuples;
+
+    public HashBucketPage(PageId id, byte[] data) throws IOException
+    {
+        super(id);
+        td = Database.getCatalog().getTupleDesc(id.getTableId());
+        maxTuples = getMaxTuples(td);
+
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        dis.readByte();
+        localDepth = dis.readByte();
+        next = dis.readInt();
+        int n = dis.readInt();
+        tuples = new ArrayList<Tuple>(maxTuples);
+        try
+        {
+            for (int i = 0; i < n; i++)
+            {
+                Tuple t = new Tuple(td);
+                for (int j = 0; j < td.numFields(); j++)
+                {
+                    t.setField(j, td.getType(j).parse(dis));
+                }
+                tuples.add(t);
+            }
+        }
+        catch (ParseException e)
+        {
+            throw new IOException("cannot parse the tuples of " + id);
+        }
+        setBeforeImage();
+    }
+
+    /** @return the number of tuples of td a bucket page holds. */
+    public static int getMaxTuples(TupleDesc td)
+    {
+        return (BufferPool.PAGE_SIZE - 10) / td.getSize();
+    }
+
+    public int getNumTuples()
+    {
+        return tuples.size();
+    }
+
+    public boolean isFull()
+    {
+        return tuples.size() == maxTuples;
+    }
+
+    /** @return the number of low bits of the hashed keys all the tuples of this bucket share. */
+    public int getLocalDepth()
+    {
+        return localDepth;
+    }
+
+    public void setLocalDepth(int depth)
+    {
+        localDepth = depth;
+    }
+
+    /** @return the page number of the next page of the chain, or 0 if this is the last one. */
+    public int getNext()
+    {
+        return next;
+    }
+
+    public void setNext(int pageno)
+    {
+        next = pageno;
+    }
+
+    /** @return tuple i, with its record id set. */
+    public Tuple getTuple(int i)
+    {
+        Tuple t = tuples.get(i);
+        t.setRecordId(new RecordId(pid, i));
+        return t;
+    }
+
+    /** @return field j of tuple i, without setting its record id. */
+    public Field getField(int i, int j)
+    {
+        return tuples.get(i).getField(j);
+    }
+
+    /** @return the position of a tuple with the same fields as t, or -1. */
+    public int indexOf(Tuple t)
+    {
+        for (int i = 0; i < tuples.size(); i++)
+        {
+            Tuple u = tuples.get(i);
+            boolean same = true;
+            for (int j = 0; j < td.numFields() && same; j++)
+            {
+                same = u.getField(j).equals(t.getField(j));
+            }
+            if (same)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Adds t to this page, which must not be full. */
+    public void insertTuple(Tuple t)
+    {
+        if (isFull())
+        {
+            throw new IllegalStateException("bucket page is full");
+        }
+        tuples.add(t);
+    }
+
+    public void deleteTuple(int i)
+    {
+        tuples.remove(i);
+    }
+
+    /** @return a copy of the list of tuples. */
+    public ArrayList<Tuple> getTuples()
+    {
+        return new ArrayList<Tuple>(tuples);
+    }
+
+    /** Replaces the tuples of this page with the given ones. */
+    public void setTuples(List<Tuple> l)
+    {
+        if (l.size() > maxTuples)
+        {
+            throw new IllegalArgumentException("too many tuples for a bucket page");
+        }
+        tuples.clear();
+        tuples.addAll(l);
+    }
+
+    public byte[] getPageData()
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(BufferPool.PAGE_SIZE);
+        DataOutputStream dos = new DataOutputStream(baos);
+        try
+        {
+            dos.writeByte(BUCKET);
+            dos.writeByte(localDepth);
+            dos.writeInt(next);
+            dos.writeInt(tuples.size());
+            for (Tuple t : tuples)
+            {
+                for (int j = 0; j < td.numFields(); j++)
+                {
+                    t.getField(j).serialize(dos);
+                }
+            }
+            dos.write(new byte[BufferPool.PAGE_SIZE - dos.size()]);
+            dos.flush();
+        }
+        catch (IOException e)
+        {
+            // writing to memory does not fail
+            throw new RuntimeException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    public HashBucketPage getBeforeImage()
+    {
+        try
+        {
+            return new HashBucketPage(pid, getBeforeImageData());
+        }
+        catch (IOException e)
+        {
+            // we parsed it OK before
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** @return the image of an empty bucket page with local depth 0, the last of its chain. */
+    public static byte[] createEmptyPageData()
+    {
+        return emptyPageData(BUCKET);
+    }
+}
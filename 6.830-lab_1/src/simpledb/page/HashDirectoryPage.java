@@ -0,0 +1,60 @@
+package simpledb.page;
+
+import simpledb.BufferPool;
+import simpledb.tuple.IntField;
+
+/**
+ * A page of the directory of a {@link simpledb.file.HashFile}, holding
+ * ENTRIES consecutive entries, each the page number of a bucket, or 0 for
+ * an entry that was not written since the directory last doubled. Its
+ * format is the kind byte and the entries.
+ */
+public class HashDirectoryPage extends HashPage {
+
+    /** Number of entries on a directory page. */
+    public static final int ENTRIES = (BufferPool.PAGE_SIZE - 1) / 4;
+
+    private final int[] entries = new int[ENTRIES];
+
+    public HashDirectoryPage(PageId id, byte[] data)
+    {
+        super(id);
+        for (int i = 0; i < ENTRIES; i++)
+        {
+            entries[i] = IntField.read(data, 1 + 4 * i);
+        }
+        setBeforeImage();
+    }
+
+    /** @return the page number of the bucket of entry i of this page, or 0. */
+    public int getEntry(int i)
+    {
+        return entries[i];
+    }
+
+    public void setEntry(int i, int pageno)
+    {
+        entries[i] = pageno;
+    }
+
+    public byte[] getPageData()
+    {
+        return createPageData(entries);
+    }
+
+    public HashDirectoryPage getBeforeImage()
+    {
+        return new HashDirectoryPage(pid, getBeforeImageData());
+    }
+
+    /** @return the image of a directory page whose first entries are the given ones. */
+    public static byte[] createPageData(int... entries)
+    {
+        byte[] data = emptyPageData(DIRECTORY);
+        for (int i = 0; i < entries.length; i++)
+        {
+            IntField.write(data, 1 + 4 * i, entries[i]);
+        }
+        return data;
+    }
+}
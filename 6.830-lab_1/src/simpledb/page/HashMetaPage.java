@@ -0,0 +1,73 @@
+package simpledb.page;
+
+import simpledb.BufferPool;
+import simpledb.tuple.IntField;
+
+/**
+ * The first page of a {@link simpledb.file.HashFile}: the global depth d of
+ * the directory, which has 2^d entries, and the page numbers of the pages
+ * the directory is stored in, or 0 for the pages not written yet. Its
+ * format is the kind byte, d, and the page numbers.
+ */
+public class HashMetaPage extends HashPage {
+
+    /** Number of directory pages the meta page can point to. */
+    public static final int MAX_DIRECTORY_PAGES = (BufferPool.PAGE_SIZE - 2) / 4;
+
+    private int globalDepth;
+    private final int[] directoryPages = new int[MAX_DIRECTORY_PAGES];
+
+    public HashMetaPage(PageId id, byte[] data)
+    {
+        super(id);
+        globalDepth = data[1];
+        for (int k = 0; k < MAX_DIRECTORY_PAGES; k++)
+        {
+            directoryPages[k] = IntField.read(data, 2 + 4 * k);
+        }
+        setBeforeImage();
+    }
+
+    public int getGlobalDepth()
+    {
+        return globalDepth;
+    }
+
+    public void setGlobalDepth(int d)
+    {
+        globalDepth = d;
+    }
+
+    /** @return the page number of directory page k, or 0 if it was not written yet. */
+    public int getDirectoryPage(int k)
+    {
+        return directoryPages[k];
+    }
+
+    public void setDirectoryPage(int k, int pageno)
+    {
+        directoryPages[k] = pageno;
+    }
+
+    public byte[] getPageData()
+    {
+        return createPageData(globalDepth, directoryPages);
+    }
+
+    public HashMetaPage getBeforeImage()
+    {
+        return new HashMetaPage(pid, getBeforeImageData());
+    }
+
+    /** @return the image of a meta page with the given depth and directory pages. */
+    public static byte[] createPageData(int globalDepth, int... directoryPages)
+    {
+        byte[] data = emptyPageData(META);
+        data[1] = (byte) globalDepth;
+        for (int k = 0; k < directoryPages.length; k++)
+        {
+            IntField.write(data, 2 + 4 * k, directoryPages[k]);
+        }
+        return data;
+    }
+}
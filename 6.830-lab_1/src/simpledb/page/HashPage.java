@@ -0,0 +1,61 @@
+package simpledb.page;
+
+import simpledb.BufferPool;
+import simpledb.TransactionId;
+
+/**
+ * Base of the pages of a {@link simpledb.file.HashFile}: keeps the id,
+ * dirty state and before image common to all of them. The first byte of
+ * every page is its kind, META, DIRECTORY or BUCKET.
+ */
+public abstract class HashPage implements Page {
+
+    /** The page holding the global depth and the directory page numbers, always page 0. */
+    public static final int META = 1;
+    public static final int DIRECTORY = 2;
+    /** A bucket, or a page of overflow chained to one. */
+    public static final int BUCKET = 3;
+
+    protected final HashPageId pid;
+    private TransactionId dirtier;
+    private byte[] oldData;
+
+    protected HashPage(PageId id)
+    {
+        pid = (HashPageId) id;
+    }
+
+    public HashPageId getId()
+    {
+        return pid;
+    }
+
+    public TransactionId isDirty()
+    {
+        return dirtier;
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid)
+    {
+        dirtier = dirty ? tid : null;
+    }
+
+    public void setBeforeImage()
+    {
+        oldData = getPageData();
+    }
+
+    /** @return the image of this page as last read or committed. */
+    protected byte[] getBeforeImageData()
+    {
+        return oldData;
+    }
+
+    /** @return a page image of the given kind, otherwise empty. */
+    protected static byte[] emptyPageData(int kind)
+    {
+        byte[] data = new byte[BufferPool.PAGE_SIZE];
+        data[0] = (byte) kind;
+        return data;
+    }
+}
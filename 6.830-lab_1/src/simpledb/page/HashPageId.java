@@ -0,0 +1,60 @@
+package simpledb.page;
+
+/**
+ * Unique identifier for the pages of a {@link simpledb.file.HashFile}. The
+ * pages of a hash file are never freed, so a page keeps its kind, which is
+ * read from its first byte.
+ */
+public class HashPageId implements PageId {
+
+    private final int tableId;
+    private final int pgNo;
+
+    /**
+     * @param tableId The table that is being referenced
+     * @param pgNo The page number in that table.
+     */
+    public HashPageId(int tableId, int pgNo)
+    {
+        this.tableId = tableId;
+        this.pgNo = pgNo;
+    }
+
+    public int getTableId()
+    {
+        return tableId;
+    }
+
+    public int pageno()
+    {
+        return pgNo;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * (31 + pgNo) + tableId;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (!(obj instanceof HashPageId))
+        {
+            return false;
+        }
+        HashPageId other = (HashPageId) obj;
+        return tableId == other.tableId && pgNo == other.pgNo;
+    }
+
+    public int[] serialize()
+    {
+        return new int[] { tableId, pgNo };
+    }
+
+    @Override
+    public String toString()
+    {
+        return "HashPageId [tableId=" + tableId + ", pgNo=" + pgNo + "]";
+    }
+}
@@ -6,6 +6,7 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.AbstractMap.SimpleEntry;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
@@ -17,9 +18,14 @@ import simpledb.RecordId;
 import simpledb.TransactionId;
 import simpledb.exceptions.DbException;
 import simpledb.file.HeapFile;
+import simpledb.predicates.CompiledPredicate;
 import simpledb.tuple.Field;
+import simpledb.tuple.IntField;
+import simpledb.tuple.StringField;
 import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
 import simpledb.tuple.TupleDesc;
+import simpledb.tuple.Type;
 
 /**
  * HeapPage stores pages of HeapFiles and implements the Page interface that
@@ -34,8 +40,12 @@ public class HeapPage implements Page , Iterable<Tuple> {
 	private PageId pid;
     private TupleDesc td;
     private byte header[];
-    private Tuple tuples[];
+    private volatile Tuple tuples[];
     private int numSlots;
+    // the page as read, which holds the records until they are decoded
+    private final byte[] data;
+    // offset of every field within a record
+    private final int[] offsets;
 
     private byte[] oldData;
     private Entry<Boolean, TransactionId> isDirty;
@@ -60,29 +70,58 @@ public class HeapPage implements Page , Iterable<Tuple> {
         this.pid = id;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        this.data = data;
+        this.offsets = new int[td.numFields()];
+        for (int j = 1; j < offsets.length; j++)
+        {
+            offsets[j] = offsets[j - 1] + td.getType(j - 1).getLen();
+        }
 
-        // allocate and read the header slots of this page
+        // allocate and read the header slots of this page; the records are
+        // only decoded when they are first needed
         header = new byte[getHeaderSize()];
-        for (int i=0; i<header.length; i++)
+        System.arraycopy(data, 0, header, 0, header.length);
+
+        setBeforeImage();
+    }
+
+    /**
+     * Returns the records of this page, decoding all of them the first time
+     * they are needed. Until then data holds the records, and batches are
+     * filled straight from it.
+     */
+    private Tuple[] tuples()
+    {
+        Tuple[] t = tuples;
+        if (t != null)
         {
-            header[i] = dis.readByte();
+            return t;
         }
-        try
+        synchronized (this)
         {
-            // allocate and read the actual records of this page
-            tuples = new Tuple[numSlots];
-            for (int i=0; i<tuples.length; i++)
+            if (tuples == null)
             {
-                tuples[i] = readNextTuple(dis,i);
+                DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+                t = new Tuple[numSlots];
+                try
+                {
+                    dis.skipBytes(header.length);
+                    for (int i=0; i<t.length; i++)
+                    {
+                        t[i] = readNextTuple(dis,i);
+                    }
+                }
+                catch(NoSuchElementException e){
+                    e.printStackTrace();
+                }
+                catch (IOException e)
+                {
+                    e.printStackTrace();
+                }
+                tuples = t;
             }
+            return tuples;
         }
-        catch(NoSuchElementException e){
-            e.printStackTrace();
-        }
-        dis.close();
-
-        setBeforeImage();
     }
 
     /** Retrieve the number of tuples on this page.
@@ -182,6 +221,12 @@ public class HeapPage implements Page , Iterable<Tuple> {
      * @return A byte array correspond to the bytes of this page.
      */
     public byte[] getPageData() {
+        Tuple[] tuples = this.tuples;
+        if (tuples == null)
+        {
+            // nothing was changed since the page was read
+            return data.clone();
+        }
         int len = BufferPool.PAGE_SIZE;
         ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
         DataOutputStream dos = new DataOutputStream(baos);
@@ -276,10 +321,85 @@ public class HeapPage implements Page , Iterable<Tuple> {
     	{
     		throw new DbException("tuple slot is already empty.");
     	}
-    	tuples[i] = null;
+    	tuples()[i] = null;
     	setSlot(i, false);
     }
 
+    /**
+     * Deletes the tuple in a slot of the page. A page that has not been
+     * decoded is changed in place, without decoding it.
+     * @throws DbException if the slot is already empty.
+     */
+    public void deleteSlot(int slot) throws DbException
+    {
+    	if (slot >= numSlots || !getSlot(slot))
+    	{
+    		throw new DbException("slot " + slot + " of page " + pid.pageno() + " is already empty.");
+    	}
+    	setSlot(slot, false);
+    	Tuple[] decoded = tuples;
+    	if (decoded != null)
+    	{
+    		decoded[slot] = null;
+    	}
+    	else
+    	{
+    		// keep the image getPageData returns in step with the header
+    		data[slot / BITS_8] = header[slot / BITS_8];
+    		int base = header.length + slot * td.getSize();
+    		Arrays.fill(data, base, base + td.getSize(), (byte) 0);
+    	}
+    }
+
+    /**
+     * Overwrites some fields of the tuple in a slot of the page, keeping it in
+     * its slot. A page that has not been decoded is changed in place, without
+     * decoding it.
+     * @param fields the indexes of the fields to change
+     * @param values their new values, of the types of the fields
+     * @throws DbException if the slot is empty.
+     */
+    public void updateSlot(int slot, int[] fields, Field[] values) throws DbException
+    {
+    	if (slot >= numSlots || !getSlot(slot))
+    	{
+    		throw new DbException("slot " + slot + " of page " + pid.pageno() + " is empty.");
+    	}
+    	Tuple[] decoded = tuples;
+    	if (decoded != null)
+    	{
+    		// tuples handed out may still be read, so replace rather than change it
+    		Tuple old = decoded[slot];
+    		Tuple t = new Tuple(td);
+    		for (int j = 0; j < td.numFields(); j++)
+    		{
+    			t.setField(j, old.getField(j));
+    		}
+    		for (int i = 0; i < fields.length; i++)
+    		{
+    			t.setField(fields[i], values[i]);
+    		}
+    		t.setRecordId(old.getRecordId());
+    		decoded[slot] = t;
+    	}
+    	else
+    	{
+    		int base = header.length + slot * td.getSize();
+    		for (int i = 0; i < fields.length; i++)
+    		{
+    			int off = base + offsets[fields[i]];
+    			if (td.getType(fields[i]) == Type.INT_TYPE)
+    			{
+    				IntField.write(data, off, ((IntField) values[i]).getValue());
+    			}
+    			else
+    			{
+    				StringField.write(data, off, ((StringField) values[i]).getValue(), Type.STRING_LEN);
+    			}
+    		}
+    	}
+    }
+
     /**
      * Adds the specified tuple to the page;  the tuple should be updated to reflect
      *  that it is now stored on this page.
@@ -297,7 +417,7 @@ public class HeapPage implements Page , Iterable<Tuple> {
     	{
     		if(!getSlot(i))
     		{
-    			tuples[i] = t;
+    			tuples()[i] = t;
     			setSlot(i, true);
     			RecordId rid = new RecordId(pid, i);
     			t.setRecordId(rid);
@@ -385,7 +505,226 @@ public class HeapPage implements Page , Iterable<Tuple> {
     {
     	return new SlotInterator();
     }
+
+    /**
+     * @return an iterator over the tuples on this page that satisfy every one
+     *         of filters. The filters are evaluated on the page image, and
+     *         until the page is decoded only the tuples that pass are, each
+     *         into a new Tuple.
+     */
+    public Iterator<Tuple> iterator(final CompiledPredicate[] filters)
+    {
+        return new Iterator<Tuple>() {
+            // the next slot to look at, and the passing slot found, or -1
+            private int slot = 0;
+            private int found = -1;
+
+            public boolean hasNext()
+            {
+                if (found >= 0)
+                {
+                    return true;
+                }
+                Tuple[] decoded = tuples;
+                for (; slot < numSlots; slot++)
+                {
+                    if (getSlot(slot) && passes(decoded, slot, filters))
+                    {
+                        found = slot++;
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            public Tuple next()
+            {
+                if (!hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                int s = found;
+                found = -1;
+                Tuple[] decoded = tuples;
+                return decoded != null ? decoded[s] : readTuple(s);
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
     
+    /**
+     * Appends the tuples in the used slots of this page, starting at slot
+     * fromSlot, to batch until either the batch is full or the last slot has
+     * been read.
+     * @return the slot to continue from, or a value &gt;= the number of slots
+     *         once the whole page has been read.
+     */
+    public int fillBatch(TupleBatch batch, int fromSlot)
+    {
+        return fillBatch(batch, fromSlot, null);
+    }
+
+    /**
+     * Like {@link #fillBatch(TupleBatch, int)}, but only decodes the given
+     * fields; the other columns of the rows appended are left unset.
+     * @param fields the fields to decode, or null for all of them.
+     */
+    public int fillBatch(TupleBatch batch, int fromSlot, int[] fields)
+    {
+        return fillBatch(batch, fromSlot, fields, null);
+    }
+
+    /**
+     * Like {@link #fillBatch(TupleBatch, int, int[])}, but only appends the
+     * tuples that satisfy every one of filters. The filters are evaluated on
+     * the page image, so the tuples they reject are never decoded.
+     * @param filters the predicates to apply, or null.
+     */
+    public int fillBatch(TupleBatch batch, int fromSlot, int[] fields, CompiledPredicate[] filters)
+    {
+        Tuple[] decoded = tuples;
+        int slot = fromSlot;
+        for (; slot < numSlots && !batch.isFull(); slot++)
+        {
+            if (!getSlot(slot) || !passes(decoded, slot, filters))
+            {
+                continue;
+            }
+            int row = batch.addRow();
+            if (decoded != null)
+            {
+                copyFields(decoded[slot], batch, row, fields);
+                batch.setRecordId(row, decoded[slot].getRecordId());
+            }
+            else
+            {
+                readFields(slot, batch, row, fields);
+                batch.setRecordId(row, new RecordId(pid, slot));
+            }
+        }
+        return slot;
+    }
+
+    /** @return true if the tuple in a used slot satisfies every one of filters. */
+    private boolean passes(Tuple[] decoded, int slot, CompiledPredicate[] filters)
+    {
+        if (filters == null)
+        {
+            return true;
+        }
+        int base = header.length + slot * td.getSize();
+        for (CompiledPredicate p : filters)
+        {
+            if (decoded != null ? !p.filter(decoded[slot]) : !p.filter(data, base + offsets[p.getField()]))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the tuple in a used slot from the page image, without keeping
+     * it in the page.
+     */
+    private Tuple readTuple(int slot)
+    {
+        Tuple t = new Tuple(td);
+        t.setRecordId(new RecordId(pid, slot));
+        int base = header.length + slot * td.getSize();
+        for (int j = 0; j < offsets.length; j++)
+        {
+            int off = base + offsets[j];
+            if (td.getType(j) == Type.INT_TYPE)
+            {
+                t.setField(j, new IntField(IntField.read(data, off)));
+            }
+            else
+            {
+                t.setField(j, new StringField(new String(data, off + 4, IntField.read(data, off)), Type.STRING_LEN));
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Sets the given fields of a row of batch to those of the tuple in a slot
+     * of this page.
+     * @throws DbException if the slot is empty.
+     */
+    public void fetchFields(int slot, TupleBatch batch, int row, int[] fields) throws DbException
+    {
+        if (slot >= numSlots || !getSlot(slot))
+        {
+            throw new DbException("slot " + slot + " of page " + pid.pageno() + " is empty.");
+        }
+        Tuple[] decoded = tuples;
+        if (decoded != null)
+        {
+            copyFields(decoded[slot], batch, row, fields);
+        }
+        else
+        {
+            readFields(slot, batch, row, fields);
+        }
+    }
+
+    /**
+     * Returns the tuple in a slot of this page, with its record id set,
+     * without decoding the other records of a page that has not been decoded.
+     * @throws DbException if the slot is empty.
+     */
+    public Tuple getTuple(int slot) throws DbException
+    {
+        if (slot >= numSlots || !getSlot(slot))
+        {
+            throw new DbException("slot " + slot + " of page " + pid.pageno() + " is empty.");
+        }
+        Tuple[] decoded = tuples;
+        return decoded != null ? decoded[slot] : readTuple(slot);
+    }
+
+    private static void copyFields(Tuple t, TupleBatch batch, int row, int[] fields)
+    {
+        if (fields == null)
+        {
+            for (int j = 0; j < batch.getTupleDesc().numFields(); j++)
+            {
+                batch.setField(j, row, t.getField(j));
+            }
+            return;
+        }
+        for (int j : fields)
+        {
+            batch.setField(j, row, t.getField(j));
+        }
+    }
+
+    /** Decodes fields of the record in a slot straight from the page image. */
+    private void readFields(int slot, TupleBatch batch, int row, int[] fields)
+    {
+        int base = header.length + slot * td.getSize();
+        int n = fields == null ? offsets.length : fields.length;
+        for (int i = 0; i < n; i++)
+        {
+            int j = fields == null ? i : fields[i];
+            int off = base + offsets[j];
+            if (td.getType(j) == Type.INT_TYPE)
+            {
+                batch.setInt(j, row, IntField.read(data, off));
+            }
+            else
+            {
+                int len = IntField.read(data, off);
+                batch.setField(j, row, new StringField(new String(data, off + 4, len), Type.STRING_LEN));
+            }
+        }
+    }
+
     public static void main(String[] args) {
     	int x = 3;
     	System.out.println(x++);
@@ -406,6 +745,7 @@ public class HeapPage implements Page , Iterable<Tuple> {
 		public Tuple next() 
 		{
 			Tuple next = null;
+			Tuple[] tuples = tuples();
 			for (; curpos < tuples.length;)
 			{
 				if (getSlot(curpos))
@@ -424,7 +764,7 @@ public class HeapPage implements Page , Iterable<Tuple> {
 		{
 			boolean filled = false;
 			int _curpos = curpos;
-			for (; _curpos < tuples.length;)
+			for (; _curpos < numSlots;)
 			{
 				if (getSlot(_curpos++))
 				{
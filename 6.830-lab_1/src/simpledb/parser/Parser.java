@@ -10,10 +10,13 @@ import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Vector;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import jline.ArgumentCompletor;
 import jline.ConsoleReader;
@@ -21,15 +24,21 @@ import jline.SimpleCompletor;
 import simpledb.Database;
 import simpledb.Transaction;
 import simpledb.TransactionId;
+import simpledb.WorkerPool;
 import simpledb.exceptions.DbException;
 import simpledb.exceptions.TransactionAbortedException;
+import simpledb.file.DbFile;
+import simpledb.file.HeapFile;
+import simpledb.file.SecondaryIndex;
 import simpledb.logicalplan.LogicalPlan;
 import simpledb.operators.DbIterator;
 import simpledb.operators.Delete;
 import simpledb.operators.Insert;
 import simpledb.operators.TupleArrayIterator;
+import simpledb.operators.Update;
 import simpledb.optimizing.statistics.TableStats;
 import simpledb.predicates.Predicate;
+import simpledb.tuple.Field;
 import simpledb.tuple.IntField;
 import simpledb.tuple.StringField;
 import simpledb.tuple.Tuple;
@@ -47,10 +56,15 @@ import Zql.ZQuery;
 import Zql.ZSelectItem;
 import Zql.ZStatement;
 import Zql.ZTransactStmt;
+import Zql.ZUpdate;
 import Zql.ZqlParser;
 
 public class Parser {
     public static boolean explain = false;
+    /** Number of workers that scan each table of a query; see LogicalPlan#setParallelism. */
+    public static int parallelism = 1;
+    /** Whether queries are compiled into push-based pipelines; see LogicalPlan#setPipelined. */
+    public static boolean pipelined = false;
     public static HashMap<String, TableStats> statsMap = new HashMap<String,TableStats>();
     private static final int IOCOSTPERPAGE = 1000;
     private static Object lock = new Object();
@@ -69,6 +83,8 @@ public class Parser {
         if (s.equals("~")) return Predicate.Op.LIKE;
         if (s.equals("<>")) return Predicate.Op.NOT_EQUALS;
         if (s.equals("!=")) return Predicate.Op.NOT_EQUALS;
+        if (s.equals("IN")) return Predicate.Op.EQUALS;
+        if (s.equals("NOT IN")) return Predicate.Op.EQUALS;
 
         throw new simpledb.exceptions.ParsingException("Unknown predicate " + s);
     }
@@ -85,6 +101,8 @@ public class Parser {
             }
         } else if (wx.getOperator().equals("OR")) {
             throw new simpledb.exceptions.ParsingException("OR expressions currently unsupported.");
+        } else if (wx.getOperator().equals("EXISTS") || wx.getOperator().equals("NOT")) {
+            processExists(tid, wx, lp);
         } else {
             // this is a binary expression comparing two constants
             @SuppressWarnings("unchecked")
@@ -120,7 +138,10 @@ public class Parser {
 
                 if (!op2const) { //right op is a nested query
                     try {
-                        lp.addJoin(tab1field,parseQuery(tid, (ZQuery)ops.elementAt(1)), op);
+                        LogicalPlan sub = parseQueryLogicalPlan(tid, (ZQuery)ops.elementAt(1));
+                        DbIterator subplan = sub.physicalPlan(tid, statsMap, explain);
+                        boolean anti = wx.getOperator().equals("NOT IN");
+                        lp.addSubplanJoin(tab1field, subplan, sub.getEstimatedCardinality(), op, anti);
                     } catch (IOException e) {
                         throw new simpledb.exceptions.ParsingException("Invalid subquery " + ops.elementAt(1));
                     } catch (Zql.ParseException e) {
@@ -151,11 +172,38 @@ public class Parser {
 
     }
 
+    /** Adds an EXISTS or NOT EXISTS test of an uncorrelated subquery to lp. */
+    static void processExists(TransactionId tid, ZExpression wx, LogicalPlan lp) throws simpledb.exceptions.ParsingException {
+        boolean negated = false;
+        if (wx.getOperator().equals("NOT")) {
+            if (!(wx.getOperand(0) instanceof ZExpression)
+                    || !((ZExpression)wx.getOperand(0)).getOperator().equals("EXISTS")) {
+                throw new simpledb.exceptions.ParsingException("NOT is only supported before EXISTS.");
+            }
+            wx = (ZExpression)wx.getOperand(0);
+            negated = true;
+        }
+        if (!(wx.getOperand(0) instanceof ZQuery)) {
+            throw new simpledb.exceptions.ParsingException("EXISTS needs a subquery.");
+        }
+        try {
+            LogicalPlan sub = parseQueryLogicalPlan(tid, (ZQuery)wx.getOperand(0));
+            lp.addExists(sub.physicalPlan(tid, statsMap, explain), sub.getEstimatedCardinality(), negated);
+        } catch (IOException e) {
+            throw new simpledb.exceptions.ParsingException("Invalid subquery " + wx.getOperand(0));
+        } catch (Zql.ParseException e) {
+            throw new simpledb.exceptions.ParsingException("Invalid subquery " + wx.getOperand(0));
+        }
+    }
+
     public static LogicalPlan parseQueryLogicalPlan(TransactionId tid, ZQuery q) throws IOException, Zql.ParseException, simpledb.exceptions.ParsingException { 
         @SuppressWarnings("unchecked")
         Vector<ZFromItem> from = q.getFrom();
         LogicalPlan lp = new LogicalPlan();
         lp.setQuery(q.toString());
+        lp.setParallelism(parallelism);
+        lp.setPipelined(pipelined);
+        lp.setDistinct(q.isDistinct());
         //walk through tables in the FROM clause
         for (int i = 0; i < from.size(); i++) {
             ZFromItem fromIt = from.elementAt(i);
@@ -255,16 +303,14 @@ public class Parser {
         if (q.getOrderBy() != null) {
             @SuppressWarnings("unchecked")
                 Vector<ZOrderBy> obys = q.getOrderBy();
-            if (obys.size() > 1)  {
-                throw new simpledb.exceptions.ParsingException("Multi-attribute ORDER BY is not supported.");
-            }
-            ZOrderBy oby = obys.elementAt(0);
-            if (!(oby.getExpression() instanceof ZConstant)) {
-                throw new simpledb.exceptions.ParsingException("Complex ORDER BY's are not supported");
-            }
-            ZConstant f = (ZConstant)oby.getExpression();
+            for (ZOrderBy oby : obys) {
+                if (!(oby.getExpression() instanceof ZConstant)) {
+                    throw new simpledb.exceptions.ParsingException("Complex ORDER BY's are not supported");
+                }
+                ZConstant f = (ZConstant)oby.getExpression();
 
-            lp.addOrderBy(f.getValue(), oby.getAscOrder());
+                lp.addOrderBy(f.getValue(), oby.getAscOrder());
+            }
 
         }
         return lp;
@@ -302,6 +348,8 @@ public class Parser {
             cnt++;
         }
         System.out.println("\n " + cnt + " rows.");
+        if (sdbq.getBytesSpilled() > 0)
+            System.out.println(" Spilled " + sdbq.getBytesSpilled() + " bytes to temporary files.");
         sdbq.close();
     }
 
@@ -357,7 +405,8 @@ public class Parser {
             newTups = parseQuery(curtrans.getId(),query);
         }
 
-        Query sdbq = new Query(new Insert(curtrans.getId(), newTups, id), curtrans.getId());
+        // the rows of a query are appended in bulk
+        Query sdbq = new Query(new Insert(curtrans.getId(), newTups, id, s.getValues() == null), curtrans.getId());
         // XXX print field names
         sdbq.start();
         System.out.print("Inserted ");
@@ -398,6 +447,73 @@ public class Parser {
 
     }
 
+    public static void handleUpdateStatement(ZUpdate s) throws TransactionAbortedException, DbException, IOException, simpledb.exceptions.ParsingException, Zql.ParseException  {
+        int id;
+        try {
+            id = Database.getCatalog().getTableId(s.getTable()); //will fall through if table doesn't exist
+        } catch (NoSuchElementException e) {
+            throw new simpledb.exceptions.ParsingException ("Unknown table : " + s.getTable());
+        }
+        String name = s.getTable();
+        TupleDesc td = Database.getCatalog().getTupleDesc(id);
+
+        // column updates are numbered from 1
+        int n = s.getColumnUpdateCount();
+        int[] fields = new int[n];
+        Field[] values = new Field[n];
+        for (int i = 0; i < n; i++) {
+            String col = s.getColumnUpdateName(i + 1);
+            if (col.indexOf('.') >= 0)
+                col = col.substring(col.lastIndexOf('.') + 1);
+            fields[i] = -1;
+            for (int j = 0; j < td.numFields(); j++) {
+                if (col.equals(td.getFieldName(j))) {
+                    fields[i] = j;
+                    break;
+                }
+            }
+            if (fields[i] == -1)
+                throw new simpledb.exceptions.ParsingException("Unknown field " + col + " in table " + name);
+
+            ZExp e = s.getColumnUpdate(i + 1);
+            if (!(e instanceof ZConstant))
+                throw new simpledb.exceptions.ParsingException("Complex expressions not allowed in UPDATE statements.");
+            ZConstant zc = (ZConstant)e;
+            if (zc.getType() == ZConstant.NUMBER) {
+                if (td.getType(fields[i]) != Type.INT_TYPE) {
+                    throw new simpledb.exceptions.ParsingException("Value " + zc.getValue() + " is not an integer, expected a string.");
+                }
+                values[i] = new IntField(Integer.parseInt(zc.getValue()));
+            } else if (zc.getType() == ZConstant.STRING) {
+                if (td.getType(fields[i]) != Type.STRING_TYPE) {
+                    throw new simpledb.exceptions.ParsingException("Value " + zc.getValue() + " is a string, expected an integer.");
+                }
+                values[i] = new StringField(zc.getValue(), Type.STRING_LEN);
+            } else {
+                throw new simpledb.exceptions.ParsingException("Only string or int fields are supported.");
+            }
+        }
+
+        LogicalPlan lp = new LogicalPlan();
+        lp.setQuery(s.toString());
+
+        lp.addScan(id, name);
+        if (s.getWhere() != null)
+            processExpression(curtrans.getId(), (ZExpression)s.getWhere(), lp);
+        lp.addProjectField("null.*",null);
+
+        Query sdbq = new Query(new Update(curtrans.getId(), id, lp.physicalPlan(curtrans.getId(), statsMap, false), fields, values), curtrans.getId());
+        // XXX print field names
+        sdbq.start();
+        System.out.print("Updated ");
+        while (sdbq.hasNext()) {
+            Tuple tup = sdbq.next();
+            System.out.println(tup);
+        }
+        sdbq.close();
+
+    }
+
     public static void handleTransactStatement(ZTransactStmt s) throws TransactionAbortedException, DbException, IOException, simpledb.exceptions.ParsingException, Zql.ParseException {
         if (s.getStmtType().equals("COMMIT")) {
             curtrans.transactionComplete(false);
@@ -450,8 +566,127 @@ public class Parser {
 		}    	
     }
     
+    /** SET PARALLELISM n, which ZQL cannot parse; n = 0 means one worker per core. */
+    private static final Pattern SET_PARALLELISM = Pattern.compile(
+            "\\s*set\\s+parallelism\\s*=?\\s*(\\d+)\\s*;?\\s*", Pattern.CASE_INSENSITIVE);
+
+    /** SET PIPELINED ON|OFF, which switches between push-based and pull-based execution. */
+    private static final Pattern SET_PIPELINED = Pattern.compile(
+            "\\s*set\\s+pipelined\\s*=?\\s*(on|off)\\s*;?\\s*", Pattern.CASE_INSENSITIVE);
+
+    /** CREATE INDEX name ON table (column) [INCLUDE (column, ...)], which ZQL cannot parse. */
+    private static final Pattern CREATE_INDEX = Pattern.compile(
+            "\\s*create\\s+index\\s+(\\w+)\\s+on\\s+(\\w+)\\s*\\(\\s*([\\w.]+)\\s*\\)"
+            + "(?:\\s*include\\s*\\(\\s*([\\w.]+(?:\\s*,\\s*[\\w.]+)*)\\s*\\))?\\s*;?\\s*",
+            Pattern.CASE_INSENSITIVE);
+
+    /** Longest statement that is checked for a SimpleDB specific statement before ZQL parses it. */
+    private static final int MAX_PEEK = 256;
+
+    /**
+     * Handles the statements that are specific to SimpleDB.
+     * @return true if s was one of them.
+     */
+    private static boolean handleSimpleDbStatement(String s)
+            throws TransactionAbortedException, DbException, IOException, simpledb.exceptions.ParsingException {
+        Matcher m = SET_PARALLELISM.matcher(s);
+        if (m.matches()) {
+            int n = Integer.parseInt(m.group(1));
+            parallelism = n == 0 ? WorkerPool.availableProcessors() : n;
+            System.out.println("Parallelism set to " + parallelism + ".");
+            return true;
+        }
+        m = SET_PIPELINED.matcher(s);
+        if (m.matches()) {
+            pipelined = m.group(1).equalsIgnoreCase("on");
+            System.out.println("Pipelined execution " + (pipelined ? "enabled." : "disabled."));
+            return true;
+        }
+        m = CREATE_INDEX.matcher(s);
+        if (m.matches()) {
+            String[] include = m.group(4) == null ? new String[0] : m.group(4).split("\\s*,\\s*");
+            handleCreateIndexStatement(m.group(1), m.group(2), m.group(3), include);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Builds a secondary index on a column of a table with a bulk load of
+     * its sorted entries, and registers it in the catalog, after which it is
+     * maintained by inserts, deletes and updates. The index is stored next
+     * to the file of the table, in name.idx. It is added to the catalog file
+     * when the transaction commits; if it aborts, the index is dropped and
+     * name.idx, written outside the log, deleted.
+     */
+    public static void handleCreateIndexStatement(String name, String table, String column)
+            throws TransactionAbortedException, DbException, IOException, simpledb.exceptions.ParsingException {
+        handleCreateIndexStatement(name, table, column, new String[0]);
+    }
+
+    /**
+     * Builds a covering index, whose entries also hold the included columns,
+     * as {@link #handleCreateIndexStatement(String, String, String)} does.
+     */
+    public static void handleCreateIndexStatement(String name, String table, String column, String[] include)
+            throws TransactionAbortedException, DbException, IOException, simpledb.exceptions.ParsingException {
+        int id;
+        try {
+            id = Database.getCatalog().getTableId(table);
+        } catch (NoSuchElementException e) {
+            throw new simpledb.exceptions.ParsingException("Unknown table : " + table);
+        }
+        try {
+            // the index file is a table named after the index
+            Database.getCatalog().getTableId(name);
+            throw new simpledb.exceptions.ParsingException("A table or index named " + name + " already exists.");
+        } catch (NoSuchElementException e) {
+            // the name is free
+        }
+        DbFile f = Database.getCatalog().getDbFile(id);
+        if (!(f instanceof HeapFile))
+            throw new simpledb.exceptions.ParsingException("Only tables stored in heap files can be indexed.");
+        TupleDesc td = f.getTupleDesc();
+        int field = fieldOf(td, table, column);
+        int[] included = new int[include.length];
+        for (int i = 0; i < include.length; i++) {
+            included[i] = fieldOf(td, table, include[i]);
+            if (included[i] == field)
+                throw new simpledb.exceptions.ParsingException("The indexed field " + column + " cannot be included.");
+        }
+
+        File dir = ((HeapFile) f).getFile().getAbsoluteFile().getParentFile();
+        SecondaryIndex index = SecondaryIndex.create(curtrans.getId(), name, id, field, included,
+                new File(dir, name + ".idx"));
+        Database.getCatalog().addIndex(curtrans.getId(), index);
+        System.out.println("Created index " + name + " on " + table + "(" + column + ")"
+                + (include.length == 0 ? "" : " including " + Arrays.toString(include)) + ", "
+                + index.getFile().numPages() + " pages.");
+    }
+
+    /** @return the index of the field of td named column, which may be qualified by its table. */
+    private static int fieldOf(TupleDesc td, String table, String column) throws simpledb.exceptions.ParsingException {
+        if (column.indexOf('.') >= 0)
+            column = column.substring(column.lastIndexOf('.') + 1);
+        for (int j = 0; j < td.numFields(); j++) {
+            if (column.equals(td.getFieldName(j)))
+                return j;
+        }
+        throw new simpledb.exceptions.ParsingException("Unknown field " + column + " in table " + table);
+    }
+
     public static void processNextStatement(InputStream is) {
         try {
+            is = new BufferedInputStream(is);
+            is.mark(MAX_PEEK);
+            byte[] peek = new byte[MAX_PEEK];
+            int len = 0, n;
+            while (len < MAX_PEEK && (n = is.read(peek, len, MAX_PEEK - len)) > 0)
+                len += n;
+            is.reset();
+            if (len < MAX_PEEK && handleSimpleDbStatement(new String(peek, 0, len, "UTF-8")))
+                return;
+
             ZqlParser p = new ZqlParser(is);
             ZStatement s = p.readStatement();
 
@@ -461,10 +696,12 @@ public class Parser {
                 handleInsertStatement((ZInsert)s);
             else if (s instanceof ZDelete)
                 handleDeleteStatement((ZDelete)s);
+            else if (s instanceof ZUpdate)
+                handleUpdateStatement((ZUpdate)s);
             else if (s instanceof ZQuery)
                 handleQueryStatement((ZQuery)s);
             else {
-                System.out.println("Can't parse " + s + "\n -- parser only handles SQL transactions, insert, delete, and select statements");
+                System.out.println("Can't parse " + s + "\n -- parser only handles SQL transactions, insert, delete, update, and select statements");
             }
 
         } catch (TransactionAbortedException e) {
@@ -502,9 +739,10 @@ public class Parser {
 
     public static void main(String argv[]) throws IOException {
 
-        String usage = "Usage: parser catalogFile [-explain] [-f queryFile]";
+        String usage = "Usage: parser catalogFile [-explain] [-parallel n] [-pipelined] [-f queryFile]";
 
-        if (argv.length < 1 || argv.length > 4) {
+        // the flags are checked one by one below
+        if (argv.length < 1) {
             System.out.println("Invalid number of arguments.\n" + usage);
             System.exit(0);
         }
@@ -535,10 +773,24 @@ public class Parser {
                     explain = true;
                     System.out.println("Explain mode enabled.");
                 } 
+                else if (argv[i].equals("-parallel")) 
+                {
+                    if (++i == argv.length) {
+                        System.out.println("Expected number of workers after -parallel\n" + usage);
+                        System.exit(0);
+                    }
+                    parallelism = Integer.parseInt(argv[i]);
+                    System.out.println("Scanning tables with " + parallelism + " workers.");
+                }
+                else if (argv[i].equals("-pipelined")) 
+                {
+                    pipelined = true;
+                    System.out.println("Pipelined execution enabled.");
+                }
                 else if (argv[i].equals("-f")) 
                 {
                     interactive = false;
-                    if (i++ == argv.length) {
+                    if (++i == argv.length) {
                         System.out.println("Expected file name after -f\n" + usage);
                         System.exit(0);
                     }
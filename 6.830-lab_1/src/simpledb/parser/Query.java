@@ -3,9 +3,11 @@ package simpledb.parser;
 import java.io.*;
 import java.util.*;
 
+import simpledb.Database;
 import simpledb.TransactionId;
 import simpledb.exceptions.DbException;
 import simpledb.exceptions.TransactionAbortedException;
+import simpledb.file.TempFileManager;
 import simpledb.operators.DbIterator;
 import simpledb.tuple.Tuple;
 
@@ -21,6 +23,8 @@ public class Query {
     DbIterator op;
     TransactionId tid;
     boolean started = false;
+    // bytes the transaction had spilled when the query started
+    long spilledBefore;
 
     public Query(DbIterator root, TransactionId t) {
         op = root;
@@ -28,6 +32,12 @@ public class Query {
     }
 
     public void start() throws IOException, DbException, TransactionAbortedException {
+        // the files operators spill to belong to the transaction
+        TempFileManager tempFiles = Database.getTempFileManager();
+        tempFiles.setOwner(tid);
+        spilledBefore = tempFiles.getBytesSpilled(tid);
+        // wait for memory to run in
+        Database.getMemoryBroker().admit(tid);
         op.open();
 
         started = true;
@@ -53,9 +63,16 @@ public class Query {
         return op.next();
     }
 
+    /** @return the number of bytes spilled to temporary files since the query started,
+        until its transaction completes. */
+    public long getBytesSpilled() {
+        return Database.getTempFileManager().getBytesSpilled(tid) - spilledBefore;
+    }
+
     /** Close the iterator */
     public void close() throws IOException {
         op.close();
         started = false;
+        Database.getTempFileManager().setOwner(null);
     }
 }
@@ -0,0 +1,143 @@
+package simpledb.pipeline;
+
+import java.util.NoSuchElementException;
+
+import simpledb.aggregates.Aggregator;
+import simpledb.aggregates.IntAggregator;
+import simpledb.aggregates.StringAggregator;
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.operators.BatchAdapter;
+import simpledb.operators.BatchDbIterator;
+import simpledb.operators.DbIterator;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
+import simpledb.tuple.Type;
+
+/**
+ * Ends a pipeline with an aggregate, and is the source of the pipeline
+ * reading its results. Rows pushed to it are folded into an Aggregator; once
+ * the stream has ended the results can be read as from an
+ * {@link simpledb.operators.Aggregate}: the group by field, if any, followed
+ * by the aggregate value.
+ */
+public class AggregateSink implements Stage, BatchDbIterator {
+
+    private final int afield;
+    private final int gfield;
+    private final Aggregator.Op aop;
+    private final Type groupType;
+    private final TupleDesc td;
+    private Aggregator aggregator;
+    private DbIterator results;
+    private TupleBatch batch;
+
+    /**
+     * @param childTd the schema of the rows pushed.
+     * @param afield the field aggregated over.
+     * @param gfield the field grouped on, or Aggregator.NO_GROUPING.
+     * @param aop the aggregate to compute.
+     */
+    public AggregateSink(TupleDesc childTd, int afield, int gfield, Aggregator.Op aop)
+    {
+        this.afield = afield;
+        this.gfield = gfield;
+        this.aop = aop;
+        if (gfield == Aggregator.NO_GROUPING)
+        {
+            groupType = null;
+            td = new TupleDesc(new Type[]{Type.INT_TYPE});
+        }
+        else
+        {
+            groupType = childTd.getType(gfield);
+            td = new TupleDesc(new Type[]{groupType, Type.INT_TYPE});
+        }
+    }
+
+    /**
+     * Starts a new stream, dropping the results of the previous one. As a
+     * source, this sink is opened before the pipeline feeding it runs.
+     */
+    public void open()
+    {
+        if (groupType == null || groupType == Type.INT_TYPE)
+        {
+            aggregator = new IntAggregator(gfield, Type.INT_TYPE, afield, aop);
+        }
+        else
+        {
+            aggregator = new StringAggregator(gfield, Type.STRING_TYPE, afield, aop);
+        }
+        results = null;
+    }
+
+    public void push(TupleBatch batch)
+    {
+        aggregator.merge(batch);
+    }
+
+    public void finish() throws DbException, TransactionAbortedException
+    {
+        results = aggregator.iterator();
+        results.open();
+        // the results account for themselves
+        aggregator.release();
+        aggregator = null;
+    }
+
+    private DbIterator results()
+    {
+        if (results == null)
+        {
+            throw new IllegalStateException("the aggregate has not been computed");
+        }
+        return results;
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException
+    {
+        if (batch == null)
+        {
+            batch = new TupleBatch(td);
+        }
+        batch.clear();
+        return BatchAdapter.fill(results(), batch) == 0 ? null : batch;
+    }
+
+    public boolean hasNext() throws DbException, TransactionAbortedException
+    {
+        return results().hasNext();
+    }
+
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException
+    {
+        return results().next();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException
+    {
+        results().rewind();
+    }
+
+    public TupleDesc getTupleDesc()
+    {
+        return td;
+    }
+
+    /** Drops the results; as a stage and as a source, this sink is closed twice. */
+    public void close()
+    {
+        if (aggregator != null)
+        {
+            aggregator.release();
+            aggregator = null;
+        }
+        if (results != null)
+        {
+            results.close();
+            results = null;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package simpledb.pipeline;
+
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.operators.Fetch;
+import simpledb.tuple.TupleBatch;
+
+/** Decodes the fields a {@link Fetch} decodes, for the rows it is pushed. */
+public class FetchStage implements Stage {
+
+    private final Fetch fetch;
+    private final Stage next;
+
+    public FetchStage(Fetch fetch, Stage next)
+    {
+        this.fetch = fetch;
+        this.next = next;
+    }
+
+    public void open() throws DbException, TransactionAbortedException
+    {
+        next.open();
+    }
+
+    public void push(TupleBatch batch) throws DbException, TransactionAbortedException
+    {
+        fetch.fill(batch);
+        next.push(batch);
+    }
+
+    public void finish() throws DbException, TransactionAbortedException
+    {
+        next.finish();
+    }
+
+    public void close()
+    {
+        next.close();
+    }
+}
@@ -0,0 +1,52 @@
+package simpledb.pipeline;
+
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.predicates.CompiledPredicate;
+import simpledb.tuple.TupleBatch;
+
+/**
+ * Narrows the selection vector of every batch to the rows passing a
+ * predicate, and passes on the batches with at least one such row.
+ */
+public class FilterStage implements Stage {
+
+    private final CompiledPredicate predicate;
+    private final Stage next;
+    private int[] selection;
+
+    public FilterStage(CompiledPredicate predicate, Stage next)
+    {
+        this.predicate = predicate;
+        this.next = next;
+    }
+
+    public void open() throws DbException, TransactionAbortedException
+    {
+        next.open();
+    }
+
+    public void push(TupleBatch batch) throws DbException, TransactionAbortedException
+    {
+        if (selection == null || selection.length < batch.capacity())
+        {
+            selection = new int[batch.capacity()];
+        }
+        int passed = predicate.filter(batch, selection);
+        if (passed > 0)
+        {
+            batch.setSelection(selection, passed);
+            next.push(batch);
+        }
+    }
+
+    public void finish() throws DbException, TransactionAbortedException
+    {
+        next.finish();
+    }
+
+    public void close()
+    {
+        next.close();
+    }
+}
@@ -0,0 +1,67 @@
+package simpledb.pipeline;
+
+import java.util.ArrayList;
+
+import simpledb.Database;
+import simpledb.MemoryBroker;
+import simpledb.operators.BatchHashTable;
+import simpledb.tuple.TupleBatch;
+
+/**
+ * Ends the pipeline producing the build side of a hash join: keeps a copy
+ * of every row pushed to it and indexes them once the stream ends. The
+ * copies are accounted for, but never refused, by the {@link MemoryBroker}
+ * until the sink is closed.
+ */
+public class HashBuildSink implements Stage {
+
+    private final int field;
+    private final ArrayList<TupleBatch> batches = new ArrayList<TupleBatch>();
+    private BatchHashTable table;
+    private MemoryBroker.Reservation memory;
+
+    /** @param field the field the rows are joined on. */
+    public HashBuildSink(int field)
+    {
+        this.field = field;
+    }
+
+    public void open()
+    {
+        close();
+        memory = Database.getMemoryBroker().reserve();
+    }
+
+    public void push(TupleBatch batch)
+    {
+        TupleBatch copy = batch.copy();
+        memory.grow(copy.size() * MemoryBroker.rowBytes(copy.getTupleDesc()));
+        batches.add(copy);
+    }
+
+    public void finish()
+    {
+        table = new BatchHashTable(batches, field, 0);
+    }
+
+    public void close()
+    {
+        batches.clear();
+        table = null;
+        if (memory != null)
+        {
+            memory.release();
+            memory = null;
+        }
+    }
+
+    /** @return the table over the rows pushed, once the stream has ended. */
+    public BatchHashTable getTable()
+    {
+        if (table == null)
+        {
+            throw new IllegalStateException("the build side has not been run");
+        }
+        return table;
+    }
+}
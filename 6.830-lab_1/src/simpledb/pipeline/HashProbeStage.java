@@ -0,0 +1,90 @@
+package simpledb.pipeline;
+
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.operators.BatchHashTable;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
+
+/**
+ * Probes the table built by a {@link HashBuildSink} with every row pushed to
+ * it, and pushes on batches of joined rows: the columns of the build row
+ * followed by the columns of the probe row.
+ */
+public class HashProbeStage implements Stage {
+
+    private final HashBuildSink build;
+    private final int field;
+    private final TupleDesc td;
+    private final int buildWidth;
+    private final Stage next;
+    private BatchHashTable table;
+    private TupleBatch out;
+
+    /**
+     * @param build the build side, which must have run before this stage is opened.
+     * @param field the field of the pushed rows to probe with.
+     * @param td the schema of the joined rows.
+     * @param buildWidth the number of fields of the build rows.
+     * @param next the stage joined rows are pushed to.
+     */
+    public HashProbeStage(HashBuildSink build, int field, TupleDesc td, int buildWidth, Stage next)
+    {
+        this.build = build;
+        this.field = field;
+        this.td = td;
+        this.buildWidth = buildWidth;
+        this.next = next;
+    }
+
+    public void open() throws DbException, TransactionAbortedException
+    {
+        table = build.getTable();
+        if (out == null)
+        {
+            out = new TupleBatch(td);
+        }
+        out.clear();
+        next.open();
+    }
+
+    public void push(TupleBatch batch) throws DbException, TransactionAbortedException
+    {
+        int n = batch.numRows();
+        for (int i = 0; i < n; i++)
+        {
+            int row = batch.rowAt(i);
+            int h = BatchHashTable.hash(batch, field, row);
+            for (int e = table.first(h); e >= 0; e = table.next(e))
+            {
+                if (table.matches(e, h, batch, field, row))
+                {
+                    int to = out.addRow();
+                    out.copyColumns(to, 0, table.batchOf(e), table.rowOf(e));
+                    out.copyColumns(to, buildWidth, batch, row);
+                    if (out.isFull())
+                    {
+                        next.push(out);
+                        out = new TupleBatch(td);
+                    }
+                }
+            }
+        }
+    }
+
+    public void finish() throws DbException, TransactionAbortedException
+    {
+        if (out.size() > 0)
+        {
+            next.push(out);
+            out = new TupleBatch(td);
+        }
+        next.finish();
+    }
+
+    public void close()
+    {
+        table = null;
+        next.close();
+    }
+}
@@ -0,0 +1,53 @@
+package simpledb.pipeline;
+
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.operators.BatchDbIterator;
+import simpledb.tuple.TupleBatch;
+
+/**
+ * A Pipeline reads every batch of a source and pushes it through a chain of
+ * stages in a tight loop. Pipelines end at an operator that has to see its
+ * whole input before producing anything, such as the build side of a hash
+ * join, an aggregate or a sort, and that operator is the source of the next
+ * pipeline.
+ */
+public class Pipeline {
+
+    private final BatchDbIterator source;
+    private final Stage head;
+
+    /**
+     * @param source where the batches come from; opened and closed by the caller.
+     * @param head the first stage of the chain.
+     */
+    public Pipeline(BatchDbIterator source, Stage head)
+    {
+        this.source = source;
+        this.head = head;
+    }
+
+    /** @return where the batches of this pipeline come from. */
+    public BatchDbIterator getSource()
+    {
+        return source;
+    }
+
+    /** @return the first stage of this pipeline. */
+    public Stage getHead()
+    {
+        return head;
+    }
+
+    /** Pushes every batch of the open source through the stages, then ends the stream. */
+    public void run() throws DbException, TransactionAbortedException
+    {
+        head.open();
+        TupleBatch batch;
+        while ((batch = source.nextBatch()) != null)
+        {
+            head.push(batch);
+        }
+        head.finish();
+    }
+}
@@ -0,0 +1,58 @@
+package simpledb.pipeline;
+
+import java.util.ArrayList;
+
+import simpledb.operators.BatchDbIterator;
+import simpledb.tuple.TupleDesc;
+
+/**
+ * A pipeline under construction by the {@link PipelineCompiler}: its source,
+ * the stages added so far, and the pipelines that must run before it.
+ */
+class PipelineBuilder {
+
+    /** Creates a stage once the stage following it is known. */
+    abstract static class StageFactory {
+        abstract Stage create(Stage next);
+    }
+
+    final BatchDbIterator source;
+    final ArrayList<Pipeline> dependencies = new ArrayList<Pipeline>();
+    private final ArrayList<StageFactory> stages = new ArrayList<StageFactory>();
+    private TupleDesc td;
+
+    PipelineBuilder(BatchDbIterator source)
+    {
+        this.source = source;
+        this.td = source.getTupleDesc();
+    }
+
+    /** @return the schema of the rows leaving the last stage added. */
+    TupleDesc getTupleDesc()
+    {
+        return td;
+    }
+
+    boolean hasStages()
+    {
+        return !stages.isEmpty();
+    }
+
+    /** Appends a stage whose output rows have the schema out. */
+    void add(StageFactory stage, TupleDesc out)
+    {
+        stages.add(stage);
+        td = out;
+    }
+
+    /** @return the pipeline made of the stages added so far, ending at sink. */
+    Pipeline terminate(Stage sink)
+    {
+        Stage head = sink;
+        for (int i = stages.size() - 1; i >= 0; i--)
+        {
+            head = stages.get(i).create(head);
+        }
+        return new Pipeline(source, head);
+    }
+}
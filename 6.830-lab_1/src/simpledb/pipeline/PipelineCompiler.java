@@ -0,0 +1,153 @@
+package simpledb.pipeline;
+
+import simpledb.operators.Aggregate;
+import simpledb.operators.BatchAdapter;
+import simpledb.operators.BatchDbIterator;
+import simpledb.operators.DbIterator;
+import simpledb.operators.Fetch;
+import simpledb.operators.Filter;
+import simpledb.operators.HashJoin;
+import simpledb.operators.Join;
+import simpledb.operators.OrderBy;
+import simpledb.operators.Project;
+import simpledb.predicates.CompiledPredicate;
+import simpledb.predicates.JoinPredicate;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.TupleDesc;
+
+/**
+ * PipelineCompiler turns a tree of pull-based operators into push-based
+ * {@link Pipeline}s.
+ * <p>
+ * Filters, projections and fetches become stages fused into the pipeline of
+ * their input. A pipeline is broken at every blocking operator: an equality
+ * Join or a {@link HashJoin} becomes a hash join whose left input ends in a
+ * {@link HashBuildSink} and whose right input continues through a
+ * {@link HashProbeStage}, and Aggregate and OrderBy end their input's pipeline in a sink that is the
+ * source of the next one. Any other operator is kept as it is, and read in
+ * batches as the source of a pipeline; a Join that is not an equality join
+ * keeps its nested loops over compiled inputs. HashJoin's runtime filters
+ * are not pushed down in pipelines.
+ */
+public class PipelineCompiler {
+
+    /**
+     * @return an operator computing the same tuples as plan, in the same
+     *         order where plan defines one, through pipelines; plan itself if
+     *         nothing in it can be pipelined.
+     */
+    public static DbIterator compile(DbIterator plan)
+    {
+        PipelineBuilder builder = build(plan);
+        if (builder.dependencies.isEmpty() && !builder.hasStages())
+        {
+            return builder.source;
+        }
+        return new PipelinedPlan(builder);
+    }
+
+    private static PipelineBuilder build(DbIterator op)
+    {
+        if (op instanceof Filter)
+        {
+            Filter f = (Filter) op;
+            PipelineBuilder in = build(f.getChild());
+            final CompiledPredicate p = CompiledPredicate.compile(f.getPredicate(), in.getTupleDesc());
+            in.add(new PipelineBuilder.StageFactory() {
+                Stage create(Stage next)
+                {
+                    return new FilterStage(p, next);
+                }
+            }, in.getTupleDesc());
+            return in;
+        }
+        if (op instanceof Fetch)
+        {
+            final Fetch f = (Fetch) op;
+            PipelineBuilder in = build(f.getChild());
+            in.add(new PipelineBuilder.StageFactory() {
+                Stage create(Stage next)
+                {
+                    return new FetchStage(f, next);
+                }
+            }, in.getTupleDesc());
+            return in;
+        }
+        if (op instanceof Project)
+        {
+            Project pr = (Project) op;
+            PipelineBuilder in = build(pr.getChild());
+            final int[] fields = pr.getFields();
+            final TupleDesc td = pr.getTupleDesc();
+            in.add(new PipelineBuilder.StageFactory() {
+                Stage create(Stage next)
+                {
+                    return new ProjectStage(fields, td, next);
+                }
+            }, td);
+            return in;
+        }
+        if (op instanceof Join)
+        {
+            Join j = (Join) op;
+            JoinPredicate p = j.getJoinPredicate();
+            if (p.getOperator() != Predicate.Op.EQUALS)
+            {
+                return new PipelineBuilder(BatchAdapter.wrap(
+                        new Join(p, compile(j.getLeftChild()), compile(j.getRightChild()))));
+            }
+            return hashJoin(p, j.getLeftChild(), j.getRightChild(), j.getTupleDesc());
+        }
+        if (op instanceof HashJoin)
+        {
+            HashJoin j = (HashJoin) op;
+            return hashJoin(j.getJoinPredicate(), j.getLeftChild(), j.getRightChild(), j.getTupleDesc());
+        }
+        if (op instanceof Aggregate)
+        {
+            Aggregate a = (Aggregate) op;
+            PipelineBuilder in = build(a.getChild());
+            AggregateSink sink = new AggregateSink(in.getTupleDesc(), a.getAggregateField(),
+                    a.getGroupField(), a.getAggregateOp());
+            return breakAt(in, sink, sink);
+        }
+        if (op instanceof OrderBy)
+        {
+            OrderBy o = (OrderBy) op;
+            PipelineBuilder in = build(o.getChild());
+            SortSink sink = new SortSink(in.getTupleDesc(), o.getOrderByFields(), o.getAscending());
+            return breakAt(in, sink, sink);
+        }
+        return new PipelineBuilder(BatchAdapter.wrap(op));
+    }
+
+    /** Builds a hash table over left in one pipeline and probes it with right in another. */
+    private static PipelineBuilder hashJoin(JoinPredicate p, DbIterator leftChild, DbIterator rightChild,
+            final TupleDesc td)
+    {
+        PipelineBuilder left = build(leftChild);
+        final HashBuildSink build = new HashBuildSink(p.getField1());
+        Pipeline buildSide = left.terminate(build);
+        PipelineBuilder right = build(rightChild);
+        right.dependencies.addAll(left.dependencies);
+        right.dependencies.add(buildSide);
+        final int field = p.getField2();
+        final int buildWidth = left.getTupleDesc().numFields();
+        right.add(new PipelineBuilder.StageFactory() {
+            Stage create(Stage next)
+            {
+                return new HashProbeStage(build, field, td, buildWidth, next);
+            }
+        }, td);
+        return right;
+    }
+
+    /** Ends in at sink, and starts the pipeline reading from it. */
+    private static PipelineBuilder breakAt(PipelineBuilder in, Stage sink, BatchDbIterator source)
+    {
+        PipelineBuilder out = new PipelineBuilder(source);
+        out.dependencies.addAll(in.dependencies);
+        out.dependencies.add(in.terminate(sink));
+        return out;
+    }
+}
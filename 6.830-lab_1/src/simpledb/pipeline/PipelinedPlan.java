@@ -0,0 +1,178 @@
+package simpledb.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.operators.BatchDbIterator;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
+
+/**
+ * PipelinedPlan runs a plan compiled by the {@link PipelineCompiler} behind
+ * the pull API.
+ * <p>
+ * The first time a result is read, the pipelines the plan depends on run to
+ * completion, in order. The last pipeline is then driven by the reader: every
+ * call that needs more rows pushes one more batch of its source through its
+ * stages, and returns what comes out.
+ */
+public class PipelinedPlan implements BatchDbIterator {
+
+    private final ArrayList<Pipeline> dependencies;
+    private final Pipeline last;
+    private final Output output = new Output();
+    private final TupleDesc td;
+    private boolean prepared = false;
+    private TupleBatch current;
+    private int pos;
+
+    PipelinedPlan(PipelineBuilder builder)
+    {
+        dependencies = builder.dependencies;
+        td = builder.getTupleDesc();
+        last = builder.terminate(output);
+    }
+
+    /** @return the pipelines that run before the last one, in the order they run. */
+    public ArrayList<Pipeline> getDependencies()
+    {
+        return dependencies;
+    }
+
+    public TupleDesc getTupleDesc()
+    {
+        return td;
+    }
+
+    public void open() throws DbException, TransactionAbortedException
+    {
+        for (Pipeline p : dependencies)
+        {
+            p.getSource().open();
+        }
+        last.getSource().open();
+        prepared = false;
+        current = null;
+    }
+
+    private void prepare() throws DbException, TransactionAbortedException
+    {
+        if (!prepared)
+        {
+            for (Pipeline p : dependencies)
+            {
+                p.run();
+            }
+            last.getHead().open();
+            prepared = true;
+        }
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException
+    {
+        prepare();
+        for (;;)
+        {
+            TupleBatch batch = output.batches.poll();
+            if (batch != null)
+            {
+                return batch;
+            }
+            if (output.finished)
+            {
+                return null;
+            }
+            TupleBatch in = last.getSource().nextBatch();
+            if (in == null)
+            {
+                last.getHead().finish();
+            }
+            else
+            {
+                last.getHead().push(in);
+            }
+        }
+    }
+
+    public boolean hasNext() throws DbException, TransactionAbortedException
+    {
+        while (current == null || pos == current.numRows())
+        {
+            current = nextBatch();
+            pos = 0;
+            if (current == null)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        return current.getTuple(current.rowAt(pos++));
+    }
+
+    /** Runs the last pipeline again; what the pipelines before it built is kept. */
+    public void rewind() throws DbException, TransactionAbortedException
+    {
+        current = null;
+        if (prepared)
+        {
+            last.getSource().rewind();
+            last.getHead().open();
+        }
+    }
+
+    public void close()
+    {
+        for (Pipeline p : dependencies)
+        {
+            p.getSource().close();
+            p.getHead().close();
+        }
+        last.getSource().close();
+        last.getHead().close();
+        current = null;
+    }
+
+    /**
+     * The end of the last pipeline: keeps what comes out until it is read.
+     * Nothing is copied, since the source is only read again once every
+     * batch it produced has been returned.
+     */
+    private static class Output implements Stage
+    {
+        final ArrayDeque<TupleBatch> batches = new ArrayDeque<TupleBatch>();
+        boolean finished;
+
+        public void open()
+        {
+            batches.clear();
+            finished = false;
+        }
+
+        public void push(TupleBatch batch)
+        {
+            batches.add(batch);
+        }
+
+        public void finish()
+        {
+            finished = true;
+        }
+
+        public void close()
+        {
+            batches.clear();
+        }
+    }
+}
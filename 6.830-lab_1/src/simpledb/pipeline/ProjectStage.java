@@ -0,0 +1,46 @@
+package simpledb.pipeline;
+
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
+
+/** Passes on every batch restricted to some of its columns, without copying them. */
+public class ProjectStage implements Stage {
+
+    private final int[] fields;
+    private final TupleDesc td;
+    private final Stage next;
+
+    /**
+     * @param fields the fields of the pushed batches that make up the output.
+     * @param td the schema of the output.
+     * @param next the stage the projected batches are pushed to.
+     */
+    public ProjectStage(int[] fields, TupleDesc td, Stage next)
+    {
+        this.fields = fields;
+        this.td = td;
+        this.next = next;
+    }
+
+    public void open() throws DbException, TransactionAbortedException
+    {
+        next.open();
+    }
+
+    public void push(TupleBatch batch) throws DbException, TransactionAbortedException
+    {
+        next.push(batch.project(fields, td));
+    }
+
+    public void finish() throws DbException, TransactionAbortedException
+    {
+        next.finish();
+    }
+
+    public void close()
+    {
+        next.close();
+    }
+}
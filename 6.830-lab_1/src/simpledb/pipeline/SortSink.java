@@ -0,0 +1,127 @@
+package simpledb.pipeline;
+
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+import simpledb.Database;
+import simpledb.MemoryBroker;
+import simpledb.operators.BatchDbIterator;
+import simpledb.operators.TupleSorter;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
+
+/**
+ * Ends a pipeline with a sort, and is the source of the pipeline reading the
+ * sorted rows. Rows pushed to it are kept until the stream ends, then sorted
+ * as an {@link simpledb.operators.OrderBy} would, and accounted for with the
+ * {@link MemoryBroker} the same way, until the sink is closed.
+ */
+public class SortSink implements Stage, BatchDbIterator {
+
+    private final TupleDesc td;
+    private final TupleSorter sorter;
+    private final ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+    private boolean sorted = false;
+    private int pos;
+    private TupleBatch batch;
+    private MemoryBroker.Reservation memory;
+
+    /**
+     * @param td the schema of the rows pushed.
+     * @param fields the fields to sort on, most significant first.
+     * @param asc asc[i] is true if fields[i] should be sorted in ascending order.
+     */
+    public SortSink(TupleDesc td, int[] fields, boolean[] asc)
+    {
+        this.td = td;
+        sorter = new TupleSorter(fields, asc);
+    }
+
+    /**
+     * Starts a new stream, dropping the rows of the previous one. As a
+     * source, this sink is opened before the pipeline feeding it runs.
+     */
+    public void open()
+    {
+        close();
+        memory = Database.getMemoryBroker().reserve();
+    }
+
+    public void push(TupleBatch batch)
+    {
+        int n = batch.numRows();
+        memory.grow(n * MemoryBroker.rowBytes(td));
+        for (int i = 0; i < n; i++)
+        {
+            tuples.add(batch.getTuple(batch.rowAt(i)));
+        }
+    }
+
+    public void finish()
+    {
+        sorter.sort(tuples);
+        sorted = true;
+    }
+
+    private void checkSorted()
+    {
+        if (!sorted)
+        {
+            throw new IllegalStateException("the rows have not been sorted");
+        }
+    }
+
+    public TupleBatch nextBatch()
+    {
+        checkSorted();
+        if (batch == null)
+        {
+            batch = new TupleBatch(td);
+        }
+        batch.clear();
+        while (!batch.isFull() && pos < tuples.size())
+        {
+            batch.addTuple(tuples.get(pos++));
+        }
+        return batch.size() == 0 ? null : batch;
+    }
+
+    public boolean hasNext()
+    {
+        checkSorted();
+        return pos < tuples.size();
+    }
+
+    public Tuple next() throws NoSuchElementException
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        return tuples.get(pos++);
+    }
+
+    public void rewind()
+    {
+        pos = 0;
+    }
+
+    public TupleDesc getTupleDesc()
+    {
+        return td;
+    }
+
+    /** Drops the rows; as a stage and as a source, this sink is closed twice. */
+    public void close()
+    {
+        tuples.clear();
+        sorted = false;
+        pos = 0;
+        if (memory != null)
+        {
+            memory.release();
+            memory = null;
+        }
+    }
+}
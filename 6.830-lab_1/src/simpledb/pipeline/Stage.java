@@ -0,0 +1,31 @@
+package simpledb.pipeline;
+
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.tuple.TupleBatch;
+
+/**
+ * A Stage is one step of a push-based {@link Pipeline}: the stage before it
+ * calls push with every batch it produces, and the stage passes what it
+ * produces on to the next stage, in the same call.
+ * <p>
+ * A pushed batch belongs to the caller and stays valid until the source of
+ * the pipeline produces its next batch: a stage that keeps rows for longer
+ * must copy them, and a stage that pushes several batches in one call must
+ * push distinct batches. A stage may narrow the selection vector of a batch
+ * it is pushed before passing the batch on.
+ */
+public interface Stage {
+
+    /** Prepares the stage, and the stages after it, for a new stream of batches. */
+    void open() throws DbException, TransactionAbortedException;
+
+    /** Processes one batch; the batch is never empty. */
+    void push(TupleBatch batch) throws DbException, TransactionAbortedException;
+
+    /** Signals the end of the stream, after which the stage flushes what it holds. */
+    void finish() throws DbException, TransactionAbortedException;
+
+    /** Drops what the stage, and the stages after it, hold, until it is opened again. */
+    void close();
+}
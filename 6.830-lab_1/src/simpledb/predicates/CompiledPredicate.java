@@ -0,0 +1,439 @@
+package simpledb.predicates;
+
+import simpledb.tuple.Field;
+import simpledb.tuple.IntField;
+import simpledb.tuple.StringField;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
+import simpledb.tuple.Type;
+
+/**
+ * CompiledPredicate is a Predicate bound, at plan time, to the schema of the
+ * rows it will be applied to, for the paths that evaluate it over many rows
+ * at once: batches and page images. {@link #compile} picks a final class
+ * specialized for the column type and the operator, with the field index and
+ * the operand held as primitives, so that the loop over a batch does not go
+ * through the Field.compare switch. One tuple at a time this gains nothing
+ * over {@link Predicate#filter}, which Filter keeps using for tuples;
+ * {@link #filter(Tuple)} is only there for the tuples of pages already
+ * decoded.
+ * <p>
+ * Every INT_TYPE comparison has its own class; other types fall back to a
+ * class that calls Field.compare.
+ * <p>
+ * A CompiledPredicate can also be evaluated on a record still serialized in
+ * a page image, without decoding it: ints are compared where they are
+ * stored, and strings byte by byte against the operand serialized the way
+ * StringField serializes it, one byte per character.
+ */
+public abstract class CompiledPredicate {
+
+    protected final int field;
+
+    protected CompiledPredicate(int field)
+    {
+        this.field = field;
+    }
+
+    /** @return the index of the field the predicate reads. */
+    public int getField()
+    {
+        return field;
+    }
+
+    /**
+     * @return a CompiledPredicate that accepts the same tuples of schema td as p.
+     */
+    public static CompiledPredicate compile(Predicate p, TupleDesc td)
+    {
+        int field = p.getField();
+        Field operand = p.getOperand();
+        if (td.getType(field) != Type.INT_TYPE || !(operand instanceof IntField))
+        {
+            return new Generic(field, td.getType(field), p.getOp(), operand);
+        }
+        int value = ((IntField) operand).getValue();
+        switch (p.getOp())
+        {
+        case EQUALS:
+        case LIKE:
+            return new IntEquals(field, value);
+        case NOT_EQUALS:
+            return new IntNotEquals(field, value);
+        case GREATER_THAN:
+            return new IntGreaterThan(field, value);
+        case GREATER_THAN_OR_EQ:
+            return new IntGreaterThanOrEq(field, value);
+        case LESS_THAN:
+            return new IntLessThan(field, value);
+        case LESS_THAN_OR_EQ:
+            return new IntLessThanOrEq(field, value);
+        }
+        return new Generic(field, td.getType(field), p.getOp(), operand);
+    }
+
+    /**
+     * @return true if t satisfies the predicate.
+     * @see Predicate#filter
+     */
+    public abstract boolean filter(Tuple t);
+
+    /**
+     * Applies the predicate to the selected rows of a batch and writes the
+     * physical indexes of the rows that pass into out, in order.
+     *
+     * @param batch the batch to filter
+     * @param out receives the passing rows; must hold batch.numRows() entries
+     *        and may be the selection vector of batch itself.
+     * @return the number of rows written to out.
+     */
+    public abstract int filter(TupleBatch batch, int[] out);
+
+    /**
+     * @return true if the record serialized in data, whose field the
+     *         predicate reads is stored at offset off, satisfies the
+     *         predicate.
+     */
+    public abstract boolean filter(byte[] data, int off);
+
+    /** Field.compare on any type, for everything that has no specialization. */
+    private static final class Generic extends CompiledPredicate
+    {
+        private final Type type;
+        private final Predicate.Op op;
+        private final Field operand;
+        // the operand of a string comparison as StringField serializes it
+        private final byte[] bytes;
+
+        Generic(int field, Type type, Predicate.Op op, Field operand)
+        {
+            super(field);
+            this.type = type;
+            this.op = op;
+            this.operand = operand;
+            if (type == Type.STRING_TYPE && operand instanceof StringField)
+            {
+                String s = ((StringField) operand).getValue();
+                bytes = new byte[Math.min(s.length(), Type.STRING_LEN)];
+                for (int i = 0; i < bytes.length; i++)
+                {
+                    bytes[i] = (byte) s.charAt(i);
+                }
+            }
+            else
+            {
+                bytes = null;
+            }
+        }
+
+        public boolean filter(Tuple t)
+        {
+            return t.getField(field).compare(op, operand);
+        }
+
+        public int filter(TupleBatch batch, int[] out)
+        {
+            int n = batch.numRows();
+            int passed = 0;
+            for (int i = 0; i < n; i++)
+            {
+                int row = batch.rowAt(i);
+                if (batch.getField(field, row).compare(op, operand))
+                {
+                    out[passed++] = row;
+                }
+            }
+            return passed;
+        }
+
+        public boolean filter(byte[] data, int off)
+        {
+            if (bytes == null)
+            {
+                Field f = type == Type.INT_TYPE
+                        ? new IntField(IntField.read(data, off))
+                        : new StringField(new String(data, off + 4, IntField.read(data, off)), Type.STRING_LEN);
+                return f.compare(op, operand);
+            }
+            int len = IntField.read(data, off);
+            int start = off + 4;
+            if (op == Predicate.Op.LIKE)
+            {
+                return indexOf(data, start, len) >= 0;
+            }
+            int cmp = compareTo(data, start, len);
+            switch (op)
+            {
+            case EQUALS:
+                return cmp == 0;
+            case NOT_EQUALS:
+                return cmp != 0;
+            case GREATER_THAN:
+                return cmp > 0;
+            case GREATER_THAN_OR_EQ:
+                return cmp >= 0;
+            case LESS_THAN:
+                return cmp < 0;
+            case LESS_THAN_OR_EQ:
+                return cmp <= 0;
+            }
+            return false;
+        }
+
+        /** Compares len bytes at start of data with the operand, as String.compareTo would. */
+        private int compareTo(byte[] data, int start, int len)
+        {
+            int n = Math.min(len, bytes.length);
+            for (int i = 0; i < n; i++)
+            {
+                int c = (data[start + i] & 0xff) - (bytes[i] & 0xff);
+                if (c != 0)
+                {
+                    return c;
+                }
+            }
+            return len - bytes.length;
+        }
+
+        /** @return where the operand first occurs in len bytes at start of data, or -1. */
+        private int indexOf(byte[] data, int start, int len)
+        {
+            for (int i = 0; i + bytes.length <= len; i++)
+            {
+                int j = 0;
+                while (j < bytes.length && data[start + i + j] == bytes[j])
+                {
+                    j++;
+                }
+                if (j == bytes.length)
+                {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static final class IntEquals extends CompiledPredicate
+    {
+        private final int value;
+
+        IntEquals(int field, int value)
+        {
+            super(field);
+            this.value = value;
+        }
+
+        public boolean filter(Tuple t)
+        {
+            return ((IntField) t.getField(field)).getValue() == value;
+        }
+
+        public int filter(TupleBatch batch, int[] out)
+        {
+            int[] col = batch.getIntColumn(field);
+            int n = batch.numRows();
+            int passed = 0;
+            for (int i = 0; i < n; i++)
+            {
+                int row = batch.rowAt(i);
+                if (col[row] == value)
+                {
+                    out[passed++] = row;
+                }
+            }
+            return passed;
+        }
+
+        public boolean filter(byte[] data, int off)
+        {
+            return IntField.read(data, off) == value;
+        }
+    }
+
+    private static final class IntNotEquals extends CompiledPredicate
+    {
+        private final int value;
+
+        IntNotEquals(int field, int value)
+        {
+            super(field);
+            this.value = value;
+        }
+
+        public boolean filter(Tuple t)
+        {
+            return ((IntField) t.getField(field)).getValue() != value;
+        }
+
+        public int filter(TupleBatch batch, int[] out)
+        {
+            int[] col = batch.getIntColumn(field);
+            int n = batch.numRows();
+            int passed = 0;
+            for (int i = 0; i < n; i++)
+            {
+                int row = batch.rowAt(i);
+                if (col[row] != value)
+                {
+                    out[passed++] = row;
+                }
+            }
+            return passed;
+        }
+
+        public boolean filter(byte[] data, int off)
+        {
+            return IntField.read(data, off) != value;
+        }
+    }
+
+    private static final class IntGreaterThan extends CompiledPredicate
+    {
+        private final int value;
+
+        IntGreaterThan(int field, int value)
+        {
+            super(field);
+            this.value = value;
+        }
+
+        public boolean filter(Tuple t)
+        {
+            return ((IntField) t.getField(field)).getValue() > value;
+        }
+
+        public int filter(TupleBatch batch, int[] out)
+        {
+            int[] col = batch.getIntColumn(field);
+            int n = batch.numRows();
+            int passed = 0;
+            for (int i = 0; i < n; i++)
+            {
+                int row = batch.rowAt(i);
+                if (col[row] > value)
+                {
+                    out[passed++] = row;
+                }
+            }
+            return passed;
+        }
+
+        public boolean filter(byte[] data, int off)
+        {
+            return IntField.read(data, off) > value;
+        }
+    }
+
+    private static final class IntGreaterThanOrEq extends CompiledPredicate
+    {
+        private final int value;
+
+        IntGreaterThanOrEq(int field, int value)
+        {
+            super(field);
+            this.value = value;
+        }
+
+        public boolean filter(Tuple t)
+        {
+            return ((IntField) t.getField(field)).getValue() >= value;
+        }
+
+        public int filter(TupleBatch batch, int[] out)
+        {
+            int[] col = batch.getIntColumn(field);
+            int n = batch.numRows();
+            int passed = 0;
+            for (int i = 0; i < n; i++)
+            {
+                int row = batch.rowAt(i);
+                if (col[row] >= value)
+                {
+                    out[passed++] = row;
+                }
+            }
+            return passed;
+        }
+
+        public boolean filter(byte[] data, int off)
+        {
+            return IntField.read(data, off) >= value;
+        }
+    }
+
+    private static final class IntLessThan extends CompiledPredicate
+    {
+        private final int value;
+
+        IntLessThan(int field, int value)
+        {
+            super(field);
+            this.value = value;
+        }
+
+        public boolean filter(Tuple t)
+        {
+            return ((IntField) t.getField(field)).getValue() < value;
+        }
+
+        public int filter(TupleBatch batch, int[] out)
+        {
+            int[] col = batch.getIntColumn(field);
+            int n = batch.numRows();
+            int passed = 0;
+            for (int i = 0; i < n; i++)
+            {
+                int row = batch.rowAt(i);
+                if (col[row] < value)
+                {
+                    out[passed++] = row;
+                }
+            }
+            return passed;
+        }
+
+        public boolean filter(byte[] data, int off)
+        {
+            return IntField.read(data, off) < value;
+        }
+    }
+
+    private static final class IntLessThanOrEq extends CompiledPredicate
+    {
+        private final int value;
+
+        IntLessThanOrEq(int field, int value)
+        {
+            super(field);
+            this.value = value;
+        }
+
+        public boolean filter(Tuple t)
+        {
+            return ((IntField) t.getField(field)).getValue() <= value;
+        }
+
+        public int filter(TupleBatch batch, int[] out)
+        {
+            int[] col = batch.getIntColumn(field);
+            int n = batch.numRows();
+            int passed = 0;
+            for (int i = 0; i < n; i++)
+            {
+                int row = batch.rowAt(i);
+                if (col[row] <= value)
+                {
+                    out[passed++] = row;
+                }
+            }
+            return passed;
+        }
+
+        public boolean filter(byte[] data, int off)
+        {
+            return IntField.read(data, off) <= value;
+        }
+    }
+}
@@ -42,4 +42,22 @@ public class JoinPredicate {
     	}
        return t1.getField(field1).compare(op, t2.getField(field2));
     }
+
+    /** @return the field index into the first tuple. */
+    public int getField1()
+    {
+        return field1;
+    }
+
+    /** @return the field index into the second tuple. */
+    public int getField2()
+    {
+        return field2;
+    }
+
+    /** @return the operation this predicate applies. */
+    public Predicate.Op getOperator()
+    {
+        return op;
+    }
 }
@@ -62,6 +62,49 @@ public class Predicate {
     public boolean filter(Tuple t) {
         return t.getField(fieldIndex).compare(op, operand);
     }
+
+    /**
+     * Compares two ints with the semantics of IntField.compare.
+     * @return true if left op right holds.
+     */
+    public static boolean compare(Op op, int left, int right)
+    {
+        switch (op)
+        {
+        case EQUALS:
+        case LIKE:
+            return left == right;
+        case NOT_EQUALS:
+            return left != right;
+        case GREATER_THAN:
+            return left > right;
+        case GREATER_THAN_OR_EQ:
+            return left >= right;
+        case LESS_THAN:
+            return left < right;
+        case LESS_THAN_OR_EQ:
+            return left <= right;
+        }
+        return false;
+    }
+
+    /** @return the field number this predicate compares. */
+    public int getField()
+    {
+        return fieldIndex;
+    }
+
+    /** @return the operation this predicate applies. */
+    public Op getOp()
+    {
+        return op;
+    }
+
+    /** @return the value fields are compared to. */
+    public Field getOperand()
+    {
+        return operand;
+    }
     
     /**
      * Returns something useful, like
@@ -0,0 +1,159 @@
+package simpledb.predicates;
+
+import simpledb.tuple.Field;
+import simpledb.tuple.IntField;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.Type;
+
+/**
+ * RuntimeFilter is a Bloom filter over the join keys of the build side of a
+ * hash join, applied to a field of the probe side as a CompiledPredicate. It
+ * is built once the build side has been read, and pushed down to the scan
+ * producing the probe side (see {@link simpledb.operators.SeqScan#addRuntimeFilter}),
+ * where rows whose key is certainly not on the build side are dropped on the
+ * page, before they are decoded.
+ * <p>
+ * A key is set in HASHES bits out of at least BITS_PER_KEY bits per key, so
+ * about 2% of the keys that are not on the build side still pass; a key that
+ * is on it always does. Keys hash as in the tuples: ints by value, strings by
+ * String.hashCode, which the serialized bytes give as well since StringField
+ * stores one byte per character.
+ * <p>
+ * The filter counts the rows it tests and the rows it drops. It is meant to
+ * be used by one scan at a time.
+ */
+public final class RuntimeFilter extends CompiledPredicate {
+
+    private static final int BITS_PER_KEY = 10;
+    private static final int HASHES = 3;
+
+    private final Type type;
+    private final long[] bits;
+    private final int mask;
+    private long tested;
+    private long dropped;
+
+    /**
+     * Creates an empty filter, which drops every row until keys are added.
+     * @param field the field of the probe side holding the key.
+     * @param type the type of the key.
+     * @param keys the number of keys that will be added.
+     */
+    public RuntimeFilter(int field, Type type, int keys)
+    {
+        super(field);
+        this.type = type;
+        int n = 64;
+        while (n < keys * BITS_PER_KEY && n < (1 << 30))
+        {
+            n <<= 1;
+        }
+        bits = new long[n >>> 6];
+        mask = n - 1;
+    }
+
+    /** Adds the key held in the given field of a physical row of batch. */
+    public void add(TupleBatch batch, int keyField, int row)
+    {
+        int h = type == Type.INT_TYPE ? batch.getInt(keyField, row) : batch.getField(keyField, row).hashCode();
+        int h1 = mix1(h);
+        int h2 = mix2(h);
+        for (int i = 0; i < HASHES; i++)
+        {
+            int bit = (h1 + i * h2) & mask;
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /** @return the number of rows tested since the filter was built. */
+    public long getRowsTested()
+    {
+        return tested;
+    }
+
+    /** @return the number of rows dropped since the filter was built. */
+    public long getRowsDropped()
+    {
+        return dropped;
+    }
+
+    /** @return true if a key hashing to h may have been added. */
+    private boolean mightContain(int h)
+    {
+        tested++;
+        int h1 = mix1(h);
+        int h2 = mix2(h);
+        for (int i = 0; i < HASHES; i++)
+        {
+            int bit = (h1 + i * h2) & mask;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0)
+            {
+                dropped++;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int mix1(int h)
+    {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int mix2(int h)
+    {
+        h *= 0x85EBCA6B;
+        return (h ^ (h >>> 13)) | 1;
+    }
+
+    public boolean filter(Tuple t)
+    {
+        Field f = t.getField(field);
+        return mightContain(type == Type.INT_TYPE ? ((IntField) f).getValue() : f.hashCode());
+    }
+
+    public int filter(TupleBatch batch, int[] out)
+    {
+        int n = batch.numRows();
+        int passed = 0;
+        if (type == Type.INT_TYPE)
+        {
+            int[] col = batch.getIntColumn(field);
+            for (int i = 0; i < n; i++)
+            {
+                int row = batch.rowAt(i);
+                if (mightContain(col[row]))
+                {
+                    out[passed++] = row;
+                }
+            }
+            return passed;
+        }
+        for (int i = 0; i < n; i++)
+        {
+            int row = batch.rowAt(i);
+            if (mightContain(batch.getField(field, row).hashCode()))
+            {
+                out[passed++] = row;
+            }
+        }
+        return passed;
+    }
+
+    public boolean filter(byte[] data, int off)
+    {
+        if (type == Type.INT_TYPE)
+        {
+            return mightContain(IntField.read(data, off));
+        }
+        int len = IntField.read(data, off);
+        int h = 0;
+        for (int i = 0; i < len; i++)
+        {
+            h = 31 * h + (data[off + 4 + i] & 0xff);
+        }
+        return mightContain(h);
+    }
+}
@@ -44,6 +44,20 @@ public class IntField implements Field {
         dos.writeInt(value);
     }
 
+    /** @return the value serialized at offset off of data. */
+    public static int read(byte[] data, int off) {
+        return (data[off] << 24) | ((data[off + 1] & 0xff) << 16)
+                | ((data[off + 2] & 0xff) << 8) | (data[off + 3] & 0xff);
+    }
+
+    /** Serializes v at offset off of data, as serialize would. */
+    public static void write(byte[] data, int off, int v) {
+        data[off] = (byte) (v >>> 24);
+        data[off + 1] = (byte) (v >>> 16);
+        data[off + 2] = (byte) (v >>> 8);
+        data[off + 3] = (byte) v;
+    }
+
     /**
      * Compare the specified field to the value of this Field.
      * Return semantics are as specified by Field.compare
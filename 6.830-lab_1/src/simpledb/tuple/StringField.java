@@ -66,6 +66,19 @@ public class StringField implements Field {
         dos.write((byte)0);
     }
 
+    /**
+     * Serializes s at offset off of data as serialize would: truncated to
+     * maxSize characters and padded with zeros to maxSize + 4 bytes.
+     */
+    public static void write(byte[] data, int off, String s, int maxSize) {
+        int len = Math.min(s.length(), maxSize);
+        IntField.write(data, off, len);
+        for (int i = 0; i < len; i++)
+            data[off + 4 + i] = (byte) s.charAt(i);
+        for (int i = len; i < maxSize; i++)
+            data[off + 4 + i] = 0;
+    }
+
     /**
      * Compare the specified field to the value of this Field.
      * Return semantics are as specified by Field.compare
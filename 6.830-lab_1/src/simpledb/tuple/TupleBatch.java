@@ -0,0 +1,286 @@
+package simpledb.tuple;
+
+import simpledb.RecordId;
+
+/**
+ * TupleBatch is a columnar block of up to {@link #capacity()} rows that
+ * operators implementing {@link simpledb.operators.BatchDbIterator} pass to
+ * each other instead of one Tuple at a time.
+ * <p>
+ * INT_TYPE columns are stored as primitive int arrays; other columns keep
+ * their Field objects. A batch may carry a selection vector: when present,
+ * only the physical rows listed in it (in increasing order) are part of the
+ * batch, which lets a filter drop rows without copying any column. Rows are
+ * therefore addressed in two ways: {@link #numRows()} and {@link #rowAt(int)}
+ * enumerate the selected rows, and every accessor takes a physical row index.
+ */
+public class TupleBatch {
+
+    /** Number of rows operators put in a batch unless told otherwise. */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final TupleDesc td;
+    private final int capacity;
+    private final int[][] intColumns;
+    private final Field[][] fieldColumns;
+    private final RecordId[] recordIds;
+    private int size = 0;
+    private int[] selection = null;
+    private int selected = 0;
+
+    /**
+     * Creates an empty batch of DEFAULT_CAPACITY rows.
+     * @param td the schema of the rows in this batch.
+     */
+    public TupleBatch(TupleDesc td)
+    {
+        this(td, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty batch.
+     * @param td the schema of the rows in this batch.
+     * @param capacity the maximum number of physical rows in this batch.
+     */
+    public TupleBatch(TupleDesc td, int capacity)
+    {
+        this.td = td;
+        this.capacity = capacity;
+        int n = td.numFields();
+        intColumns = new int[n][];
+        fieldColumns = new Field[n][];
+        for (int i = 0; i < n; i++)
+        {
+            if (td.getType(i) == Type.INT_TYPE)
+            {
+                intColumns[i] = new int[capacity];
+            }
+            else
+            {
+                fieldColumns[i] = new Field[capacity];
+            }
+        }
+        recordIds = new RecordId[capacity];
+    }
+
+    /** Creates a batch that shares the given columns; used by {@link #project}. */
+    private TupleBatch(TupleDesc td, int capacity, int[][] intColumns, Field[][] fieldColumns,
+            RecordId[] recordIds, int size, int[] selection, int selected)
+    {
+        this.td = td;
+        this.capacity = capacity;
+        this.intColumns = intColumns;
+        this.fieldColumns = fieldColumns;
+        this.recordIds = recordIds;
+        this.size = size;
+        this.selection = selection;
+        this.selected = selected;
+    }
+
+    /** @return the schema of the rows in this batch. */
+    public TupleDesc getTupleDesc()
+    {
+        return td;
+    }
+
+    /** @return the maximum number of physical rows in this batch. */
+    public int capacity()
+    {
+        return capacity;
+    }
+
+    /** @return the number of physical rows in this batch, selected or not. */
+    public int size()
+    {
+        return size;
+    }
+
+    /** @return true if no more rows can be appended to this batch. */
+    public boolean isFull()
+    {
+        return size == capacity;
+    }
+
+    /** @return the number of selected rows in this batch. */
+    public int numRows()
+    {
+        return selection == null ? size : selected;
+    }
+
+    /** @return the physical index of the i-th selected row. */
+    public int rowAt(int i)
+    {
+        return selection == null ? i : selection[i];
+    }
+
+    /** @return true if this batch carries a selection vector. */
+    public boolean hasSelection()
+    {
+        return selection != null;
+    }
+
+    /**
+     * Restricts this batch to the listed physical rows. The array is kept, not
+     * copied.
+     * @param rows physical row indexes in increasing order.
+     * @param count the number of valid entries in rows.
+     */
+    public void setSelection(int[] rows, int count)
+    {
+        selection = rows;
+        selected = count;
+    }
+
+    /** Removes every row and the selection vector from this batch. */
+    public void clear()
+    {
+        size = 0;
+        selection = null;
+        selected = 0;
+    }
+
+    /**
+     * Appends an empty row; its columns must then be set with setInt/setField.
+     * @return the physical index of the new row.
+     */
+    public int addRow()
+    {
+        if (size == capacity)
+        {
+            throw new IllegalStateException("batch is full");
+        }
+        recordIds[size] = null;
+        return size++;
+    }
+
+    /** Appends a copy of the fields of t to this batch. */
+    public void addTuple(Tuple t)
+    {
+        int row = addRow();
+        for (int i = 0; i < intColumns.length; i++)
+        {
+            setField(i, row, t.getField(i));
+        }
+        recordIds[row] = t.getRecordId();
+    }
+
+    /** @return the primitive column of an INT_TYPE field; valid up to size(). */
+    public int[] getIntColumn(int col)
+    {
+        return intColumns[col];
+    }
+
+    /** @return the value of an INT_TYPE field at a physical row. */
+    public int getInt(int col, int row)
+    {
+        return intColumns[col][row];
+    }
+
+    /** Sets the value of an INT_TYPE field at a physical row. */
+    public void setInt(int col, int row, int value)
+    {
+        intColumns[col][row] = value;
+    }
+
+    /** @return the value of any field at a physical row as a Field. */
+    public Field getField(int col, int row)
+    {
+        if (intColumns[col] != null)
+        {
+            return new IntField(intColumns[col][row]);
+        }
+        return fieldColumns[col][row];
+    }
+
+    /** Sets the value of any field at a physical row. */
+    public void setField(int col, int row, Field f)
+    {
+        if (intColumns[col] != null)
+        {
+            intColumns[col][row] = ((IntField) f).getValue();
+        }
+        else
+        {
+            fieldColumns[col][row] = f;
+        }
+    }
+
+    /** @return the RecordId of a physical row, or null if it has none. */
+    public RecordId getRecordId(int row)
+    {
+        return recordIds[row];
+    }
+
+    /** Sets the RecordId of a physical row. */
+    public void setRecordId(int row, RecordId rid)
+    {
+        recordIds[row] = rid;
+    }
+
+    /**
+     * Copies every column of a physical row of another batch into columns
+     * [offset, offset + other.numFields) of a physical row of this batch.
+     */
+    public void copyColumns(int row, int offset, TupleBatch other, int otherRow)
+    {
+        for (int i = 0; i < other.intColumns.length; i++)
+        {
+            if (other.intColumns[i] != null)
+            {
+                intColumns[offset + i][row] = other.intColumns[i][otherRow];
+            }
+            else
+            {
+                fieldColumns[offset + i][row] = other.fieldColumns[i][otherRow];
+            }
+        }
+    }
+
+    /** @return a new Tuple holding the values of a physical row. */
+    public Tuple getTuple(int row)
+    {
+        Tuple t = new Tuple(td);
+        for (int i = 0; i < intColumns.length; i++)
+        {
+            t.setField(i, getField(i, row));
+        }
+        t.setRecordId(recordIds[row]);
+        return t;
+    }
+
+    /**
+     * Returns a batch made of some of the columns of this one. Column arrays
+     * and the selection vector are shared, not copied.
+     * @param fields the fields of this batch that make up the new batch.
+     * @param projected the schema of the new batch.
+     */
+    public TupleBatch project(int[] fields, TupleDesc projected)
+    {
+        int[][] ints = new int[fields.length][];
+        Field[][] others = new Field[fields.length][];
+        for (int i = 0; i < fields.length; i++)
+        {
+            ints[i] = intColumns[fields[i]];
+            others[i] = fieldColumns[fields[i]];
+        }
+        return new TupleBatch(projected, capacity, ints, others, recordIds, size, selection, selected);
+    }
+
+    /**
+     * @return a new batch holding copies of the selected rows of this one, with
+     *         no selection vector and a capacity equal to its size.
+     */
+    public TupleBatch copy()
+    {
+        int n = numRows();
+        TupleBatch copy = new TupleBatch(td, Math.max(n, 1));
+        for (int i = 0; i < n; i++)
+        {
+            int row = rowAt(i);
+            int to = copy.addRow();
+            copy.copyColumns(to, 0, this, row);
+            copy.recordIds[to] = recordIds[row];
+        }
+        return copy;
+    }
+}
@@ -109,13 +109,22 @@ public class TupleDesc {
     {
     	int index = 0;
     	boolean found = false;
-    	if (fieldsName == null)
+    	if (fieldsName == null || name == null)
     	{
     		throw new NoSuchElementException();
     	}
     	for (int i = 0; !found && i < fieldsName.length; i++) 
     	{
-    		if (ignoreTableNameEquels(fieldsName[i],name));
+    		if (name.equals(fieldsName[i]))
+			{
+				index = i;
+				found = true;
+			}
+		}
+    	// an unqualified name, or one qualified by another alias of the table
+    	for (int i = 0; !found && i < fieldsName.length; i++) 
+    	{
+    		if (fieldsName[i] != null && ignoreTableNameEquels(fieldsName[i],name))
 			{
 				index = i;
 				found = true;
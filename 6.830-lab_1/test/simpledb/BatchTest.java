@@ -0,0 +1,138 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.aggregates.Aggregator;
+import simpledb.aggregates.IntAggregator;
+import simpledb.file.HeapFile;
+import simpledb.operators.Aggregate;
+import simpledb.operators.BatchDbIterator;
+import simpledb.operators.BatchTupleIterator;
+import simpledb.operators.DbIterator;
+import simpledb.operators.Filter;
+import simpledb.operators.Join;
+import simpledb.operators.Project;
+import simpledb.operators.SeqScan;
+import simpledb.predicates.JoinPredicate;
+import simpledb.predicates.Predicate;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.tuple.IntField;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.Type;
+
+/**
+ * Checks that every operator returns the same tuples in batch mode as it does
+ * in tuple mode.
+ */
+public class BatchTest extends SimpleDbTestBase {
+
+  HeapFile big;
+  HeapFile small;
+  TransactionId tid;
+
+  @Before public void createTables() throws Exception {
+    // big spans several pages, so batches cross page boundaries
+    big = SystemTestUtil.createRandomHeapFile(3, 5000, 20,
+        new HashMap<Integer, Integer>(), new ArrayList<ArrayList<Integer>>());
+    small = SystemTestUtil.createRandomHeapFile(2, 300, 20,
+        new HashMap<Integer, Integer>(), new ArrayList<ArrayList<Integer>>());
+    tid = new TransactionId();
+  }
+
+  private void compareModes(DbIterator tupleMode, BatchDbIterator batchMode) throws Exception {
+    tupleMode.open();
+    DbIterator batches = new BatchTupleIterator(batchMode);
+    batches.open();
+    TestUtil.compareDbIterators(tupleMode, batches);
+    tupleMode.close();
+    batches.close();
+  }
+
+  private Filter filter(HeapFile table, Predicate.Op op, int value) {
+    return new Filter(new Predicate(1, op, new IntField(value)),
+        new SeqScan(tid, table.getId(), ""));
+  }
+
+  @Test public void seqScan() throws Exception {
+    compareModes(new SeqScan(tid, big.getId(), ""), new SeqScan(tid, big.getId(), ""));
+  }
+
+  @Test public void filter() throws Exception {
+    compareModes(filter(big, Predicate.Op.LESS_THAN, 7), filter(big, Predicate.Op.LESS_THAN, 7));
+    compareModes(filter(big, Predicate.Op.EQUALS, 100), filter(big, Predicate.Op.EQUALS, 100));
+  }
+
+  @Test public void project() throws Exception {
+    ArrayList<Integer> fields = new ArrayList<Integer>();
+    fields.add(2);
+    fields.add(0);
+    ArrayList<Type> types = new ArrayList<Type>();
+    types.add(Type.INT_TYPE);
+    types.add(Type.INT_TYPE);
+    compareModes(new Project(fields, types, filter(big, Predicate.Op.GREATER_THAN, 10)),
+        new Project(fields, types, filter(big, Predicate.Op.GREATER_THAN, 10)));
+  }
+
+  @Test public void join() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 1);
+    compareModes(new Join(pred, new SeqScan(tid, small.getId(), "a"), filter(big, Predicate.Op.LESS_THAN, 2)),
+        new Join(pred, new SeqScan(tid, small.getId(), "a"), filter(big, Predicate.Op.LESS_THAN, 2)));
+  }
+
+  @Test public void joinRewind() throws Exception {
+    JoinPredicate pred = new JoinPredicate(1, Predicate.Op.LESS_THAN, 0);
+    Join join = new Join(pred, new SeqScan(tid, small.getId(), "a"), new SeqScan(tid, small.getId(), "b"));
+    join.open();
+    int first = 0;
+    for (TupleBatch b = join.nextBatch(); b != null; b = join.nextBatch()) {
+      first += b.numRows();
+    }
+    join.rewind();
+    int second = 0;
+    for (TupleBatch b = join.nextBatch(); b != null; b = join.nextBatch()) {
+      second += b.numRows();
+    }
+    join.close();
+    assertTrue(first > 0);
+    assertEquals(first, second);
+  }
+
+  @Test public void aggregate() throws Exception {
+    for (Aggregator.Op op : Aggregator.Op.values()) {
+      IntAggregator expected = new IntAggregator(0, Type.INT_TYPE, 2, op);
+      DbIterator scan = new SeqScan(tid, big.getId(), "");
+      scan.open();
+      while (scan.hasNext()) {
+        expected.merge(scan.next());
+      }
+      scan.close();
+      DbIterator expectedIt = expected.iterator();
+      expectedIt.open();
+
+      Aggregate agg = new Aggregate(filter(big, Predicate.Op.GREATER_THAN_OR_EQ, 0), 2, 0, op);
+      DbIterator actual = new BatchTupleIterator(agg);
+      actual.open();
+      TestUtil.matchAllTuples(expectedIt, actual);
+      expectedIt.rewind();
+      agg.open();
+      TestUtil.matchAllTuples(agg, expectedIt);
+    }
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(BatchTest.class);
+  }
+}
@@ -0,0 +1,72 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.predicates.CompiledPredicate;
+import simpledb.predicates.Predicate;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.tuple.IntField;
+import simpledb.tuple.StringField;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
+import simpledb.tuple.Type;
+
+public class CompiledPredicateTest extends SimpleDbTestBase {
+
+  /**
+   * Every operator on an int column accepts the same tuples as Predicate.filter,
+   * both on tuples and on batches
+   */
+  @Test public void intOps() {
+    TupleDesc td = Utility.getTupleDesc(2);
+    TupleBatch batch = new TupleBatch(td);
+    for (int i = -5; i <= 5; i++) {
+      batch.addTuple(Utility.getHeapTuple(new int[] { 0, i }));
+    }
+    int[] sel = new int[batch.capacity()];
+    for (Predicate.Op op : Predicate.Op.values()) {
+      Predicate p = new Predicate(1, op, TestUtil.getField(0));
+      CompiledPredicate c = CompiledPredicate.compile(p, td);
+      int expected = 0;
+      for (int row = 0; row < batch.size(); row++) {
+        Tuple t = batch.getTuple(row);
+        assertEquals(op.toString(), p.filter(t), c.filter(t));
+        if (p.filter(t)) {
+          expected++;
+        }
+      }
+      assertEquals(op.toString(), expected, c.filter(batch, sel));
+    }
+  }
+
+  /**
+   * String columns, and batches that already carry a selection vector
+   */
+  @Test public void stringsAndSelection() {
+    TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE });
+    TupleBatch batch = new TupleBatch(td);
+    String[] values = { "a", "b", "c", "b" };
+    for (String v : values) {
+      int row = batch.addRow();
+      batch.setField(0, row, new StringField(v, Type.STRING_LEN));
+    }
+    batch.setSelection(new int[] { 1, 2, 3 }, 3);
+    Predicate p = new Predicate(0, Predicate.Op.EQUALS, new StringField("b", Type.STRING_LEN));
+    int[] sel = new int[batch.capacity()];
+    assertEquals(2, CompiledPredicate.compile(p, td).filter(batch, sel));
+    assertEquals(1, sel[0]);
+    assertEquals(3, sel[1]);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(CompiledPredicateTest.class);
+  }
+}
@@ -18,6 +18,8 @@ import simpledb.page.HeapPage;
 import simpledb.page.HeapPageId;
 import simpledb.systemtest.SimpleDbTestBase;
 import simpledb.systemtest.SystemTestUtil;
+import simpledb.tuple.Field;
+import simpledb.tuple.IntField;
 import simpledb.tuple.Tuple;
 
 public class HeapPageWriteTest extends SimpleDbTestBase {
@@ -137,6 +139,87 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for HeapPage.deleteSlot(), on a page that is not decoded:
+     * the image of the page reflects the deletions.
+     */
+    @Test public void deleteSlot() throws Exception
+    {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        int free = page.getNumEmptySlots();
+        int deleted = 0;
+        for (int slot = 0; slot < 504; slot++)
+        {
+            if (page.getSlot(slot) && slot % 3 == 0)
+            {
+                page.deleteSlot(slot);
+                deleted++;
+            }
+        }
+        assertEquals(free + deleted, page.getNumEmptySlots());
+
+        HeapPage copy = new HeapPage(pid, page.getPageData());
+        assertEquals(free + deleted, copy.getNumEmptySlots());
+        Iterator<Tuple> it = copy.iterator();
+        while (it.hasNext())
+        {
+            assertTrue(it.next().getRecordId().tupleno() % 3 != 0);
+        }
+        try
+        {
+            page.deleteSlot(0);
+            throw new Exception("slot should be empty; expected DbException");
+        }
+        catch (DbException e)
+        {
+            // explicitly ignored
+        }
+    }
+
+    /**
+     * Unit test for HeapPage.updateSlot(), on a page that is not decoded and
+     * on one that is: the tuples keep their slots and take the new values.
+     */
+    @Test public void updateSlot() throws Exception
+    {
+        int[] fields = new int[] { 1 };
+        Field[] values = new Field[] { new IntField(-7) };
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        HeapPage decoded = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        decoded.iterator().next();
+        int used = 504 - page.getNumEmptySlots();
+        for (int slot = 0; slot < 504; slot++)
+        {
+            if (page.getSlot(slot) && slot % 2 == 0)
+            {
+                page.updateSlot(slot, fields, values);
+                decoded.updateSlot(slot, fields, values);
+            }
+        }
+
+        HeapPage[] copies = new HeapPage[] { new HeapPage(pid, page.getPageData()), decoded };
+        for (HeapPage copy : copies)
+        {
+            assertEquals(504 - used, copy.getNumEmptySlots());
+            Iterator<Tuple> it = copy.iterator();
+            while (it.hasNext())
+            {
+                Tuple t = it.next();
+                boolean updated = t.getRecordId().tupleno() % 2 == 0;
+                assertEquals(updated, t.getField(1).equals(values[0]));
+            }
+        }
+        try
+        {
+            page.updateSlot(503, fields, values);
+            throw new Exception("slot should be empty; expected DbException");
+        }
+        catch (DbException e)
+        {
+            // explicitly ignored
+        }
+    }
+
     /**
      * JUnit suite target
      */
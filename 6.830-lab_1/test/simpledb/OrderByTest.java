@@ -0,0 +1,88 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.operators.DbIterator;
+import simpledb.operators.OrderBy;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class OrderByTest extends SimpleDbTestBase {
+
+  int width = 2;
+  DbIterator scan;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createTupleList() throws Exception {
+    this.scan = TestUtil.createTupleList(width,
+        new int[] { 3, 1,
+                    1, 7,
+                    2, 5,
+                    1, 9,
+                    3, 0,
+                    2, 5 });
+  }
+
+  /**
+   * Unit test for OrderBy.getNext() on a single descending key
+   */
+  @Test public void singleKeyDesc() throws Exception {
+    OrderBy op = new OrderBy(1, false, scan);
+    op.open();
+    DbIterator expected = TestUtil.createTupleList(width,
+        new int[] { 1, 9,
+                    1, 7,
+                    2, 5,
+                    2, 5,
+                    3, 1,
+                    3, 0 });
+    TestUtil.compareDbIterators(expected, op);
+  }
+
+  /**
+   * Unit test for OrderBy.getNext() on two keys with mixed directions
+   */
+  @Test public void multiKeyMixed() throws Exception {
+    OrderBy op = new OrderBy(new int[] { 0, 1 }, new boolean[] { false, true }, scan);
+    op.open();
+    DbIterator expected = TestUtil.createTupleList(width,
+        new int[] { 3, 0,
+                    3, 1,
+                    2, 5,
+                    2, 5,
+                    1, 7,
+                    1, 9 });
+    TestUtil.compareDbIterators(expected, op);
+  }
+
+  /**
+   * Unit test for OrderBy.rewind()
+   */
+  @Test public void rewind() throws Exception {
+    OrderBy op = new OrderBy(0, true, scan);
+    op.open();
+    while (op.hasNext()) {
+      op.next();
+    }
+    op.rewind();
+    DbIterator expected = TestUtil.createTupleList(width,
+        new int[] { 1, 7,
+                    1, 9,
+                    2, 5,
+                    2, 5,
+                    3, 1,
+                    3, 0 });
+    TestUtil.compareDbIterators(expected, op);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(OrderByTest.class);
+  }
+}
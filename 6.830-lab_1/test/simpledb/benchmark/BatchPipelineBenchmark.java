@@ -0,0 +1,60 @@
+package simpledb.benchmark;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.aggregates.Aggregator;
+import simpledb.aggregates.IntAggregator;
+import simpledb.file.HeapFile;
+import simpledb.operators.Aggregate;
+import simpledb.operators.DbIterator;
+import simpledb.operators.Filter;
+import simpledb.operators.SeqScan;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.IntField;
+import simpledb.tuple.Type;
+
+/**
+ * Runs SELECT c0, SUM(c2) FROM t WHERE c1 &lt; 500 GROUP BY c0 over a table
+ * that fits in the buffer pool, once pulling a Tuple at a time through
+ * SeqScan and Filter into an IntAggregator, and once in batch mode, which is
+ * what Aggregate does when its child produces batches.
+ */
+public class BatchPipelineBenchmark {
+
+    private static final int ROWS = 500000;
+
+    public static void main(String[] args) throws Exception {
+        Database.resetBufferPool(4000);
+        final HeapFile table = BenchmarkUtil.randomHeapFile(ROWS, 3, 1000, 42);
+        final TransactionId tid = new TransactionId();
+        final Predicate pred = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(500));
+
+        double tuples = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+            public void run() throws Exception {
+                DbIterator filter = new Filter(pred, new SeqScan(tid, table.getId(), "t"));
+                IntAggregator agg = new IntAggregator(0, Type.INT_TYPE, 2, Aggregator.Op.SUM);
+                filter.open();
+                while (filter.hasNext()) {
+                    agg.merge(filter.next());
+                }
+                filter.close();
+                agg.iterator();
+            }
+        }, 3, 5);
+        BenchmarkUtil.report("tuple at a time", tuples, ROWS);
+
+        double batches = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+            public void run() throws Exception {
+                DbIterator agg = new Aggregate(new Filter(pred, new SeqScan(tid, table.getId(), "t")),
+                        2, 0, Aggregator.Op.SUM);
+                agg.open();
+                while (agg.hasNext()) {
+                    agg.next();
+                }
+                agg.close();
+            }
+        }, 3, 5);
+        BenchmarkUtil.report("batches of 1024", batches, ROWS);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
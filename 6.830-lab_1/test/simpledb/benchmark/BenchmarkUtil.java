@@ -0,0 +1,95 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.Utility;
+import simpledb.file.HeapFile;
+import simpledb.file.HeapFileEncoder;
+import simpledb.tuple.IntField;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleDesc;
+
+/**
+ * Helpers shared by the benchmarks in this package.  Benchmarks are plain
+ * main() programs; run one with <code>ant runbench -Dbench=ClassName</code>.
+ */
+public class BenchmarkUtil {
+
+    /** A unit of work that is timed by {@link #time}. */
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    /**
+     * Runs task warmup times untimed, then runs it runs times and returns
+     * the fastest run in milliseconds.
+     */
+    public static double time(Task task, int warmup, int runs) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            task.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            task.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e6;
+    }
+
+    /** Prints one result line in a format that is easy to compare across runs. */
+    public static void report(String name, double millis, long rows) {
+        System.out.printf("%-40s %10.2f ms %10.1f ns/row%n", name, millis, millis * 1e6 / rows);
+    }
+
+    /** @return rows tuples of width int fields with values in [0, maxValue). */
+    public static ArrayList<Tuple> randomTuples(int rows, int width, int maxValue, long seed) {
+        Random r = new Random(seed);
+        TupleDesc td = Utility.getTupleDesc(width);
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>(rows);
+        for (int i = 0; i < rows; i++) {
+            Tuple t = new Tuple(td);
+            for (int j = 0; j < width; j++) {
+                t.setField(j, new IntField(r.nextInt(maxValue)));
+            }
+            tuples.add(t);
+        }
+        return tuples;
+    }
+
+    /**
+     * Writes rows random tuples of width int fields with values in
+     * [0, maxValue) to a temporary heap file and adds it to the catalog.
+     */
+    public static HeapFile randomHeapFile(int rows, int width, int maxValue, long seed) throws IOException {
+        Random r = new Random(seed);
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>(rows);
+        for (int i = 0; i < rows; i++) {
+            ArrayList<Integer> t = new ArrayList<Integer>(width);
+            for (int j = 0; j < width; j++) {
+                t.add(r.nextInt(maxValue));
+            }
+            tuples.add(t);
+        }
+        File f = File.createTempFile("bench", ".dat");
+        f.deleteOnExit();
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, width);
+        return Utility.openHeapFile(width, f);
+    }
+
+    /**
+     * Like {@link #randomHeapFile}, but names the columns c0, c1, ... and
+     * adds the table to the catalog as name, so that queries can refer to it.
+     */
+    public static HeapFile namedHeapFile(String name, int rows, int width, int maxValue, long seed) throws IOException {
+        HeapFile unnamed = randomHeapFile(rows, width, maxValue, seed);
+        HeapFile named = new HeapFile(unnamed.getFile(), Utility.getTupleDesc(width, "c"));
+        Database.getCatalog().addTable(named, name);
+        return named;
+    }
+}
@@ -0,0 +1,40 @@
+package simpledb.benchmark;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.file.HeapFile;
+import simpledb.operators.Insert;
+import simpledb.operators.SeqScan;
+
+/**
+ * Copies a 20000 row table of 4 fields into an empty one, inserting every
+ * row on its own, then appending them in bulk. Each run inserts into a new
+ * table and commits.
+ */
+public class BulkInsertBenchmark {
+
+    private static final int ROWS = 20000;
+
+    private static void time(String name, final HeapFile source, final boolean bulk) throws Exception {
+        double millis = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+            public void run() throws Exception {
+                HeapFile destination = BenchmarkUtil.randomHeapFile(0, 4, 1, 0);
+                TransactionId tid = new TransactionId();
+                Insert insert = new Insert(tid, new SeqScan(tid, source.getId(), "s"), destination.getId(), bulk);
+                insert.open();
+                insert.next();
+                insert.close();
+                Database.getBufferPool().transactionComplete(tid);
+            }
+        }, 1, 3);
+        BenchmarkUtil.report(name, millis, ROWS);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Database.resetBufferPool(10000);
+        HeapFile source = BenchmarkUtil.randomHeapFile(ROWS, 4, 100000, 42);
+
+        time("Insert one row at a time", source, false);
+        time("Insert in bulk", source, true);
+    }
+}
@@ -0,0 +1,66 @@
+package simpledb.benchmark;
+
+import java.util.ArrayList;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.file.HeapFile;
+import simpledb.operators.BatchAdapter;
+import simpledb.operators.BatchDbIterator;
+import simpledb.operators.DbIterator;
+import simpledb.operators.Filter;
+import simpledb.operators.Project;
+import simpledb.operators.SeqScan;
+import simpledb.optimizing.ColumnPruner;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.IntField;
+import simpledb.tuple.Type;
+
+/**
+ * Reads one field of the rows of a 16 field table passing a filter on
+ * another field that keeps 10% of them, in batches: once decoding every
+ * field of every row, then with the plan pruned by ColumnPruner, so that the
+ * scan only decodes the filtered field and a Fetch decodes the projected one.
+ */
+public class ColumnPruningBenchmark {
+
+    private static final int ROWS = 500000;
+    private static final int WIDTH = 16;
+
+    private static void run(DbIterator it) throws Exception {
+        BatchDbIterator batches = BatchAdapter.wrap(it);
+        batches.open();
+        while (batches.nextBatch() != null) {
+        }
+        batches.close();
+    }
+
+    private static DbIterator plan(TransactionId tid, HeapFile table) {
+        ArrayList<Integer> fields = new ArrayList<Integer>();
+        ArrayList<Type> types = new ArrayList<Type>();
+        fields.add(5);
+        types.add(Type.INT_TYPE);
+        Predicate p = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(100));
+        return new Project(fields, types, new Filter(p, new SeqScan(tid, table.getId(), "t")));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Database.resetBufferPool(20000);
+        final HeapFile table = BenchmarkUtil.randomHeapFile(ROWS, WIDTH, 1000, 42);
+        final TransactionId tid = new TransactionId();
+
+        double millis = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+            public void run() throws Exception {
+                ColumnPruningBenchmark.run(plan(tid, table));
+            }
+        }, 2, 5);
+        BenchmarkUtil.report("every field decoded", millis, ROWS);
+        millis = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+            public void run() throws Exception {
+                ColumnPruningBenchmark.run(ColumnPruner.prune(plan(tid, table)));
+            }
+        }, 2, 5);
+        BenchmarkUtil.report("pruned, fetched after filter", millis, ROWS);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
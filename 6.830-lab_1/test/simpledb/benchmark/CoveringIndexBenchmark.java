@@ -0,0 +1,109 @@
+package simpledb.benchmark;
+
+import java.io.File;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.file.HeapFile;
+import simpledb.file.SecondaryIndex;
+import simpledb.operators.DbIterator;
+import simpledb.operators.IndexOnlyScan;
+import simpledb.operators.IndexScan;
+import simpledb.operators.SeqScan;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.IntField;
+import simpledb.tuple.Tuple;
+
+/**
+ * Reads two fields of a 200000 row table of 16 fields: 10000 lookups through
+ * a secondary index on one of them, which then read the tuples from the
+ * table, against the same lookups answered by an index that also includes
+ * the other field; and a scan of the whole table against a scan of the whole
+ * covering index.
+ */
+public class CoveringIndexBenchmark {
+
+    private static final int ROWS = 200000;
+    private static final int WIDTH = 16;
+    private static final int MAX_VALUE = 1000000;
+    private static final int LOOKUPS = 10000;
+
+    private static SecondaryIndex index(HeapFile heap, int[] included) throws Exception {
+        File f = File.createTempFile("index", ".dat");
+        f.deleteOnExit();
+        TransactionId tid = new TransactionId();
+        SecondaryIndex index = SecondaryIndex.create(tid, f.getName(), heap.getId(), 1, included, f);
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getCatalog().addTable(index.getFile(), index.getName());
+        return index;
+    }
+
+    /** @return the sum of field 2 of the tuples of it, so that they are read. */
+    private static long drain(DbIterator it) throws Exception {
+        long sum = 0;
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            sum += ((IntField) t.getField(2)).getValue();
+        }
+        it.close();
+        return sum;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Database.resetBufferPool(10000);
+        final HeapFile heap = BenchmarkUtil.namedHeapFile("wide", ROWS, WIDTH, MAX_VALUE, 1);
+        final SecondaryIndex plain = index(heap, new int[0]);
+        final SecondaryIndex covering = index(heap, new int[] { 2 });
+
+        final int[] keys = new int[LOOKUPS];
+        TransactionId tid = new TransactionId();
+        DbIterator scan = new SeqScan(tid, heap.getId(), "w");
+        scan.open();
+        for (int i = 0; i < ROWS && scan.hasNext(); i++) {
+            Tuple t = scan.next();
+            if (i % (ROWS / LOOKUPS) == 0) {
+                keys[i / (ROWS / LOOKUPS)] = ((IntField) t.getField(1)).getValue();
+            }
+        }
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        double[] lookups = new double[2];
+        for (int mode = 0; mode < 2; mode++) {
+            final boolean indexOnly = mode == 1;
+            lookups[mode] = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+                public void run() throws Exception {
+                    TransactionId tid = new TransactionId();
+                    for (int key : keys) {
+                        IntField k = new IntField(key);
+                        DbIterator it = indexOnly
+                                ? new IndexOnlyScan(tid, covering, "w", Predicate.Op.EQUALS, k)
+                                : new IndexScan(tid, plain, "w", Predicate.Op.EQUALS, k);
+                        if (drain(it) < 0) {
+                            throw new IllegalStateException();
+                        }
+                    }
+                    Database.getBufferPool().transactionComplete(tid);
+                }
+            }, 1, 5);
+        }
+        double[] scans = new double[2];
+        for (int mode = 0; mode < 2; mode++) {
+            final boolean indexOnly = mode == 1;
+            scans[mode] = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+                public void run() throws Exception {
+                    TransactionId tid = new TransactionId();
+                    drain(indexOnly ? new IndexOnlyScan(tid, covering, "w") : new SeqScan(tid, heap.getId(), "w"));
+                    Database.getBufferPool().transactionComplete(tid);
+                }
+            }, 1, 5);
+        }
+        System.out.println("table " + heap.numPages() + " pages, index " + plain.getFile().numPages()
+                + " pages, covering index " + covering.getFile().numPages() + " pages");
+        BenchmarkUtil.report("IndexScan, " + LOOKUPS + " lookups", lookups[0], LOOKUPS);
+        BenchmarkUtil.report("IndexOnlyScan, " + LOOKUPS + " lookups", lookups[1], LOOKUPS);
+        BenchmarkUtil.report("SeqScan of the table", scans[0], ROWS);
+        BenchmarkUtil.report("IndexOnlyScan of the index", scans[1], ROWS);
+    }
+}
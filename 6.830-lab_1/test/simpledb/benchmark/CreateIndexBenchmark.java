@@ -0,0 +1,56 @@
+package simpledb.benchmark;
+
+import java.io.File;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.file.BTreeFile;
+import simpledb.file.DbFileIterator;
+import simpledb.file.HeapFile;
+import simpledb.file.SecondaryIndex;
+import simpledb.tuple.Tuple;
+
+/**
+ * Builds a secondary index on a 100000 row table, first by inserting its
+ * entries one at a time through the buffer pool, then with the bulk load
+ * of sorted entries CREATE INDEX uses.
+ */
+public class CreateIndexBenchmark {
+
+    private static final int ROWS = 100000;
+
+    public static void main(String[] args) throws Exception {
+        Database.resetBufferPool(10000);
+        final HeapFile heap = BenchmarkUtil.randomHeapFile(ROWS, 2, 1000000, 1);
+
+        double inserts = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+            public void run() throws Exception {
+                File f = File.createTempFile("index", ".dat");
+                f.deleteOnExit();
+                BTreeFile tree = new BTreeFile(f, SecondaryIndex.entryDesc(heap.getTupleDesc(), 1), 0);
+                Database.getCatalog().addTable(tree, f.getName());
+                SecondaryIndex index = new SecondaryIndex(f.getName(), heap.getId(), 1, tree);
+                TransactionId tid = new TransactionId();
+                DbFileIterator it = heap.iterator(tid);
+                it.open();
+                while (it.hasNext()) {
+                    Tuple t = it.next();
+                    Database.getBufferPool().insertTuple(tid, tree.getId(), index.entry(t));
+                }
+                it.close();
+                Database.getBufferPool().transactionComplete(tid);
+            }
+        }, 1, 3);
+        double bulk = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+            public void run() throws Exception {
+                File f = File.createTempFile("index", ".dat");
+                f.deleteOnExit();
+                TransactionId tid = new TransactionId();
+                SecondaryIndex.create(tid, f.getName(), heap.getId(), 1, f);
+                Database.getBufferPool().transactionComplete(tid);
+            }
+        }, 1, 3);
+        BenchmarkUtil.report("repeated inserts", inserts, ROWS);
+        BenchmarkUtil.report("bulk sorted load", bulk, ROWS);
+    }
+}
@@ -0,0 +1,61 @@
+package simpledb.benchmark;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.file.HeapFile;
+import simpledb.operators.Delete;
+import simpledb.operators.Filter;
+import simpledb.operators.SeqScan;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.IntField;
+import simpledb.tuple.Tuple;
+
+/**
+ * Deletes half the rows of a 200000 row table, one tuple at a time through
+ * BufferPool.deleteTuple, then with the Delete operator, which deletes them
+ * page by page. Every run deletes from a new table and commits; only the
+ * deletion is timed.
+ */
+public class DeleteBenchmark {
+
+    private static final int ROWS = 200000;
+    private static final int RUNS = 3;
+
+    private static Predicate half() {
+        return new Predicate(0, Predicate.Op.LESS_THAN, new IntField(50000));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Database.resetBufferPool(10000);
+        for (int mode = 0; mode < 2; mode++) {
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS + 1; run++) {
+                HeapFile table = BenchmarkUtil.randomHeapFile(ROWS, 4, 100000, run);
+                TransactionId tid = new TransactionId();
+                long start = System.nanoTime();
+                if (mode == 0) {
+                    BufferPool pool = Database.getBufferPool();
+                    Filter in = new Filter(half(), new SeqScan(tid, table.getId(), "t"));
+                    in.open();
+                    while (in.hasNext()) {
+                        Tuple t = in.next();
+                        pool.deleteTuple(tid, table.getId(), t);
+                    }
+                    in.close();
+                } else {
+                    Delete delete = new Delete(tid, table.getId(),
+                            new Filter(half(), new SeqScan(tid, table.getId(), "t")));
+                    delete.open();
+                    delete.next();
+                    delete.close();
+                }
+                if (run > 0) {
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                Database.getBufferPool().transactionComplete(tid);
+            }
+            BenchmarkUtil.report(mode == 0 ? "BufferPool.deleteTuple per row" : "Delete by page", best / 1e6, ROWS);
+        }
+    }
+}
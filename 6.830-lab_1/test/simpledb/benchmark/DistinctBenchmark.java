@@ -0,0 +1,77 @@
+package simpledb.benchmark;
+
+import java.util.ArrayList;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.aggregates.Aggregator;
+import simpledb.file.HeapFile;
+import simpledb.operators.Aggregate;
+import simpledb.operators.BatchAdapter;
+import simpledb.operators.BatchDbIterator;
+import simpledb.operators.DbIterator;
+import simpledb.operators.Distinct;
+import simpledb.operators.Project;
+import simpledb.operators.SeqScan;
+import simpledb.tuple.Type;
+
+/**
+ * Removes the duplicates of a field with 20000 distinct values over a
+ * 500000 row table: emulated with a COUNT grouped on the field, then with
+ * Distinct, holding every value in memory or spilling partitions when more
+ * than 2000 are held. Distinct of both fields, where nearly every row is
+ * distinct, spills with the default memory limit.
+ */
+public class DistinctBenchmark {
+
+    private static final int ROWS = 500000;
+
+    private interface Plan {
+        DbIterator build();
+    }
+
+    private static void time(String name, final Plan plan) throws Exception {
+        double millis = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+            public void run() throws Exception {
+                BatchDbIterator it = BatchAdapter.wrap(plan.build());
+                it.open();
+                while (it.nextBatch() != null) {
+                }
+                it.close();
+            }
+        }, 2, 5);
+        BenchmarkUtil.report(name, millis, ROWS);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Database.resetBufferPool(10000);
+        final HeapFile table = BenchmarkUtil.randomHeapFile(ROWS, 2, 20000, 42);
+        final TransactionId tid = new TransactionId();
+        final ArrayList<Integer> fields = new ArrayList<Integer>();
+        fields.add(1);
+        final ArrayList<Type> types = new ArrayList<Type>();
+        types.add(Type.INT_TYPE);
+
+        time("GROUP BY", new Plan() {
+            public DbIterator build() {
+                return new Aggregate(new SeqScan(tid, table.getId(), "t"), 1, 1, Aggregator.Op.COUNT);
+            }
+        });
+        time("Distinct of both fields, nearly all distinct", new Plan() {
+            public DbIterator build() {
+                return new Distinct(new SeqScan(tid, table.getId(), "t"));
+            }
+        });
+        time("Distinct in memory", new Plan() {
+            public DbIterator build() {
+                return new Distinct(new Project(fields, types, new SeqScan(tid, table.getId(), "t")));
+            }
+        });
+        time("Distinct spilling", new Plan() {
+            public DbIterator build() {
+                return new Distinct(new Project(fields, types, new SeqScan(tid, table.getId(), "t")), 2000);
+            }
+        });
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
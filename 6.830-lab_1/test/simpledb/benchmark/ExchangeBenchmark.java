@@ -0,0 +1,67 @@
+package simpledb.benchmark;
+
+import java.util.HashMap;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.WorkerPool;
+import simpledb.file.HeapFile;
+import simpledb.logicalplan.LogicalPlan;
+import simpledb.operators.DbIterator;
+import simpledb.optimizing.statistics.TableStats;
+import simpledb.predicates.Predicate;
+
+/**
+ * Runs a three-table equality join planned by LogicalPlan with increasing
+ * parallelism, up to the number of cores or args[0]. With a parallelism
+ * greater than one the scans run in parallel and every join is split into
+ * that many Joins over hash partitions of its inputs, connected by
+ * Exchanges.
+ */
+public class ExchangeBenchmark {
+
+    private static final int FACT_ROWS = 50000;
+    private static final int DIM_ROWS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        Database.resetBufferPool(10000);
+        HeapFile fact = BenchmarkUtil.namedHeapFile("fact", FACT_ROWS, 2, DIM_ROWS, 1);
+        HeapFile dim1 = BenchmarkUtil.namedHeapFile("dim1", DIM_ROWS, 2, DIM_ROWS, 2);
+        HeapFile dim2 = BenchmarkUtil.namedHeapFile("dim2", DIM_ROWS, 2, DIM_ROWS, 3);
+        final HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put("fact", new TableStats(fact.getId(), 1000));
+        stats.put("dim1", new TableStats(dim1.getId(), 1000));
+        stats.put("dim2", new TableStats(dim2.getId(), 1000));
+        final int[] ids = { fact.getId(), dim1.getId(), dim2.getId() };
+        final TransactionId tid = new TransactionId();
+        final long[] rows = new long[1];
+
+        int max = args.length > 0 ? Integer.parseInt(args[0]) : WorkerPool.availableProcessors();
+        for (int n = 1; n <= Math.max(max, 2); n *= 2) {
+            final int parallelism = n;
+            double millis = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+                public void run() throws Exception {
+                    LogicalPlan lp = new LogicalPlan();
+                    lp.addScan(ids[0], "fact");
+                    lp.addScan(ids[1], "dim1");
+                    lp.addScan(ids[2], "dim2");
+                    lp.addJoin("fact.c0", "dim1.c0", Predicate.Op.EQUALS);
+                    lp.addJoin("dim1.c0", "dim2.c0", Predicate.Op.EQUALS);
+                    lp.addProjectField("fact.c0", null);
+                    lp.setParallelism(parallelism);
+                    DbIterator plan = lp.physicalPlan(tid, stats, false);
+                    plan.open();
+                    rows[0] = 0;
+                    while (plan.hasNext()) {
+                        plan.next();
+                        rows[0]++;
+                    }
+                    plan.close();
+                }
+            }, 1, 3);
+            BenchmarkUtil.report("3-way join, parallelism " + n, millis, FACT_ROWS);
+        }
+        System.out.println(rows[0] + " result rows");
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
@@ -0,0 +1,86 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.Utility;
+import simpledb.file.BTreeFile;
+import simpledb.file.DbFile;
+import simpledb.file.HashFile;
+import simpledb.operators.IndexScan;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.IntField;
+import simpledb.tuple.Tuple;
+
+/**
+ * Looks up 10000 keys of a 200000 row table with an IndexScan, over a B+
+ * tree and then over a hash file holding the same rows, and times loading
+ * both files through the buffer pool.
+ */
+public class HashIndexBenchmark {
+
+    private static final int ROWS = 200000;
+    private static final int MAX_VALUE = 10000000;
+    private static final int LOOKUPS = 10000;
+
+    private static void load(DbFile f, ArrayList<Tuple> tuples) throws Exception {
+        TransactionId tid = new TransactionId();
+        for (Tuple t : tuples) {
+            Database.getBufferPool().insertTuple(tid, f.getId(), t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Database.resetBufferPool(10000);
+        final ArrayList<Tuple> tuples = BenchmarkUtil.randomTuples(ROWS, 2, MAX_VALUE, 1);
+        final DbFile[] files = new DbFile[2];
+        double treeLoad = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+            public void run() throws Exception {
+                File temp = File.createTempFile("bench", ".dat");
+                temp.deleteOnExit();
+                files[0] = new BTreeFile(temp, Utility.getTupleDesc(2), 0);
+                Database.getCatalog().addTable(files[0], temp.getName());
+                load(files[0], tuples);
+            }
+        }, 0, 1);
+        double hashLoad = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+            public void run() throws Exception {
+                File temp = File.createTempFile("bench", ".dat");
+                temp.deleteOnExit();
+                files[1] = new HashFile(temp, Utility.getTupleDesc(2), 0);
+                Database.getCatalog().addTable(files[1], temp.getName());
+                load(files[1], tuples);
+            }
+        }, 0, 1);
+
+        final int[] keys = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            keys[i] = ((IntField) tuples.get(i * (ROWS / LOOKUPS)).getField(0)).getValue();
+        }
+        double[] lookups = new double[2];
+        for (int mode = 0; mode < 2; mode++) {
+            final DbFile f = files[mode];
+            lookups[mode] = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+                public void run() throws Exception {
+                    TransactionId tid = new TransactionId();
+                    for (int key : keys) {
+                        IndexScan scan = new IndexScan(tid, f.getId(), "t", Predicate.Op.EQUALS, new IntField(key));
+                        scan.open();
+                        if (!scan.hasNext()) {
+                            throw new IllegalStateException("key " + key + " not found");
+                        }
+                        scan.close();
+                    }
+                    Database.getBufferPool().transactionComplete(tid);
+                }
+            }, 1, 5);
+        }
+        BenchmarkUtil.report("B+ tree load", treeLoad, ROWS);
+        BenchmarkUtil.report("hash file load", hashLoad, ROWS);
+        BenchmarkUtil.report("B+ tree, " + LOOKUPS + " lookups", lookups[0], LOOKUPS);
+        BenchmarkUtil.report("hash file, " + LOOKUPS + " lookups", lookups[1], LOOKUPS);
+    }
+}
@@ -0,0 +1,60 @@
+package simpledb.benchmark;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.file.HeapFile;
+import simpledb.operators.BatchAdapter;
+import simpledb.operators.BatchDbIterator;
+import simpledb.operators.HashJoin;
+import simpledb.operators.SeqScan;
+import simpledb.predicates.JoinPredicate;
+import simpledb.predicates.Predicate;
+
+/**
+ * Joins a 500000 row table with left inputs of every size HashJoin holds
+ * differently: a few rows compared as they are, just too many to be, and a
+ * 500000 row table hashed in memory and partitioned under a per-query
+ * memory budget of 4 MB.
+ */
+public class HashJoinBenchmark {
+
+    private static final int ROWS = 500000;
+
+    private static void time(String name, final HeapFile left, final HeapFile right, final TransactionId tid)
+            throws Exception {
+        final HashJoin[] last = new HashJoin[1];
+        double millis = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+            public void run() throws Exception {
+                HashJoin j = new HashJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                        new SeqScan(tid, left.getId(), "l"), new SeqScan(tid, right.getId(), "r"), false);
+                BatchDbIterator it = BatchAdapter.wrap(j);
+                it.open();
+                while (it.nextBatch() != null) {
+                }
+                it.close();
+                last[0] = j;
+            }
+        }, 1, 3);
+        BenchmarkUtil.report(name, millis, ROWS);
+        System.out.println("  " + last[0].getStrategy() + ", " + last[0].getSpillCount() + " partitions spilled");
+    }
+
+    public static void main(String[] args) throws Exception {
+        Database.resetBufferPool(10000);
+        HeapFile tiny = BenchmarkUtil.randomHeapFile(HashJoin.NESTED_LOOP_ROWS, 2, ROWS, 7);
+        HeapFile small = BenchmarkUtil.randomHeapFile(HashJoin.NESTED_LOOP_ROWS + 1, 2, ROWS, 7);
+        HeapFile large = BenchmarkUtil.randomHeapFile(ROWS, 2, ROWS, 13);
+        HeapFile probe = BenchmarkUtil.randomHeapFile(ROWS, 2, ROWS, 42);
+        TransactionId tid = new TransactionId();
+
+        time(HashJoin.NESTED_LOOP_ROWS + " left rows", tiny, probe, tid);
+        time((HashJoin.NESTED_LOOP_ROWS + 1) + " left rows", small, probe, tid);
+        time(ROWS + " left rows", large, probe, tid);
+        long global = Database.getMemoryBroker().getGlobalBudget();
+        long query = Database.getMemoryBroker().getQueryBudget();
+        Database.getMemoryBroker().setBudgets(global, 4 << 20);
+        time(ROWS + " left rows, 4 MB budget", large, probe, tid);
+        Database.getMemoryBroker().setBudgets(global, query);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
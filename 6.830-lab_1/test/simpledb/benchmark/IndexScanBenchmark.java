@@ -0,0 +1,90 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.Utility;
+import simpledb.file.BTreeFile;
+import simpledb.file.HeapFile;
+import simpledb.operators.DbIterator;
+import simpledb.operators.Filter;
+import simpledb.operators.IndexScan;
+import simpledb.operators.SeqScan;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.IntField;
+import simpledb.tuple.Tuple;
+
+/**
+ * Looks up 100 keys of a 100000 row table, and reads a range of 1% of its
+ * keys, with a SeqScan and a Filter over a heap file, then with an
+ * IndexScan over a B+ tree holding the same rows.
+ */
+public class IndexScanBenchmark {
+
+    private static final int ROWS = 100000;
+    private static final int MAX_VALUE = 1000000;
+    private static final int LOOKUPS = 100;
+
+    private static int drain(DbIterator it) throws Exception {
+        int n = 0;
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        return n;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Database.resetBufferPool(10000);
+        final HeapFile heap = BenchmarkUtil.randomHeapFile(ROWS, 2, MAX_VALUE, 1);
+        File temp = File.createTempFile("bench", ".dat");
+        temp.deleteOnExit();
+        final BTreeFile tree = new BTreeFile(temp, Utility.getTupleDesc(2), 0);
+        Database.getCatalog().addTable(tree, "tree");
+        ArrayList<Tuple> tuples = BenchmarkUtil.randomTuples(ROWS, 2, MAX_VALUE, 1);
+        TransactionId load = new TransactionId();
+        for (Tuple t : tuples) {
+            Database.getBufferPool().insertTuple(load, tree.getId(), t);
+        }
+        Database.getBufferPool().transactionComplete(load);
+
+        final int[] keys = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            keys[i] = ((IntField) tuples.get(i * (ROWS / LOOKUPS)).getField(0)).getValue();
+        }
+        for (int mode = 0; mode < 2; mode++) {
+            final boolean index = mode == 1;
+            double lookups = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+                public void run() throws Exception {
+                    TransactionId tid = new TransactionId();
+                    for (int key : keys) {
+                        IntField f = new IntField(key);
+                        drain(index ? new IndexScan(tid, tree.getId(), "t", Predicate.Op.EQUALS, f)
+                                : new Filter(new Predicate(0, Predicate.Op.EQUALS, f),
+                                        new SeqScan(tid, heap.getId(), "t")));
+                    }
+                    Database.getBufferPool().transactionComplete(tid);
+                }
+            }, 1, 3);
+            double range = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+                public void run() throws Exception {
+                    TransactionId tid = new TransactionId();
+                    IntField low = new IntField(MAX_VALUE / 2);
+                    IntField high = new IntField(MAX_VALUE / 2 + MAX_VALUE / 100);
+                    drain(index ? new IndexScan(tid, tree.getId(), "t", low, true, high, false)
+                            : new Filter(new Predicate(0, Predicate.Op.LESS_THAN, high),
+                                    new Filter(new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, low),
+                                            new SeqScan(tid, heap.getId(), "t"))));
+                    Database.getBufferPool().transactionComplete(tid);
+                }
+            }, 1, 5);
+            String name = index ? "IndexScan" : "SeqScan + Filter";
+            BenchmarkUtil.report(name + ", " + LOOKUPS + " lookups", lookups, (long) LOOKUPS * ROWS);
+            BenchmarkUtil.report(name + ", 1% range", range, ROWS);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package simpledb.benchmark;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.file.HeapFile;
+import simpledb.operators.BatchDbIterator;
+import simpledb.operators.Materialize;
+import simpledb.operators.SeqScan;
+
+/**
+ * Reads a 500000 row table of 4 fields, then replays it 5 times: running
+ * the scan again each time, from a Materialize holding every row in memory,
+ * and from one holding 10000 rows and spilling the rest. Also prints the
+ * heap each Materialize holds on to after the replays.
+ */
+public class MaterializeBenchmark {
+
+    private static final int ROWS = 500000;
+    private static final int PASSES = 6;
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static void drain(BatchDbIterator it) throws Exception {
+        while (it.nextBatch() != null) {
+        }
+    }
+
+    private static void replay(BatchDbIterator it) throws Exception {
+        for (int i = 0; i < PASSES; i++) {
+            drain(it);
+            it.rewind();
+        }
+    }
+
+    private static void time(String name, final HeapFile table, final TransactionId tid, final int maxRows)
+            throws Exception {
+        double millis = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+            public void run() throws Exception {
+                SeqScan scan = new SeqScan(tid, table.getId(), "t");
+                BatchDbIterator it = maxRows < 0 ? scan : new Materialize(scan, maxRows);
+                it.open();
+                replay(it);
+                it.close();
+            }
+        }, 1, 3);
+        BenchmarkUtil.report(name, millis, (long) ROWS * PASSES);
+        if (maxRows >= 0) {
+            long before = usedHeap();
+            Materialize m = new Materialize(new SeqScan(tid, table.getId(), "t"), maxRows);
+            m.open();
+            replay(m);
+            System.out.println("  heap held: " + (usedHeap() - before) / (1024 * 1024) + " MB");
+            m.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Database.resetBufferPool(10000);
+        HeapFile table = BenchmarkUtil.randomHeapFile(ROWS, 4, 100000, 42);
+        TransactionId tid = new TransactionId();
+
+        time("Scan again every pass", table, tid, -1);
+        time("Materialize in memory", table, tid, ROWS);
+        time("Materialize, 10000 rows in memory", table, tid, 10000);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
@@ -0,0 +1,71 @@
+package simpledb.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+import simpledb.operators.TupleSorter;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.Field;
+import simpledb.tuple.Tuple;
+
+/**
+ * Compares TupleSorter with the previous OrderBy implementation, which sorted
+ * with Collections.sort and a comparator that called Field.compare twice
+ * (EQUALS, then GREATER_THAN) per comparison.
+ */
+public class OrderByBenchmark {
+
+    private static final int ROWS = 500000;
+
+    /** The comparator OrderBy used before TupleSorter. */
+    static class FieldCompareComparator implements Comparator<Tuple> {
+        private final int field;
+        private final boolean asc;
+
+        FieldCompareComparator(int field, boolean asc) {
+            this.field = field;
+            this.asc = asc;
+        }
+
+        public int compare(Tuple o1, Tuple o2) {
+            Field t1 = o1.getField(field);
+            Field t2 = o2.getField(field);
+            if (t1.compare(Predicate.Op.EQUALS, t2))
+                return 0;
+            if (t1.compare(Predicate.Op.GREATER_THAN, t2))
+                return asc ? 1 : -1;
+            else
+                return asc ? -1 : 1;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final ArrayList<Tuple> input = BenchmarkUtil.randomTuples(ROWS, 3, 1 << 20, 42);
+
+        double old = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+            public void run() {
+                ArrayList<Tuple> copy = new ArrayList<Tuple>(input);
+                Collections.sort(copy, new FieldCompareComparator(0, true));
+            }
+        }, 3, 5);
+        BenchmarkUtil.report("Collections.sort, 1 int key", old, ROWS);
+
+        double packed = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+            public void run() {
+                ArrayList<Tuple> copy = new ArrayList<Tuple>(input);
+                new TupleSorter(new int[]{0}, new boolean[]{true}).sort(copy);
+            }
+        }, 3, 5);
+        BenchmarkUtil.report("TupleSorter, 1 int key", packed, ROWS);
+
+        final ArrayList<Tuple> dups = BenchmarkUtil.randomTuples(ROWS, 3, 64, 7);
+        double multi = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+            public void run() {
+                ArrayList<Tuple> copy = new ArrayList<Tuple>(dups);
+                new TupleSorter(new int[]{0, 1, 2}, new boolean[]{true, false, true}).sort(copy);
+            }
+        }, 3, 5);
+        BenchmarkUtil.report("TupleSorter, 3 int keys (asc,desc,asc)", multi, ROWS);
+    }
+}
@@ -0,0 +1,60 @@
+package simpledb.benchmark;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.WorkerPool;
+import simpledb.aggregates.Aggregator;
+import simpledb.file.HeapFile;
+import simpledb.operators.Aggregate;
+import simpledb.operators.DbIterator;
+import simpledb.operators.ParallelAggregate;
+import simpledb.operators.ParallelSeqScan;
+import simpledb.operators.SeqScan;
+
+/**
+ * Computes SUM grouped on a field with 1000 distinct values, and SUM without
+ * grouping, over a table that fits in the buffer pool: once with Aggregate
+ * over a SeqScan, then with a ParallelAggregate over a ParallelSeqScan of
+ * increasing parallelism, up to the number of cores or args[0].
+ */
+public class ParallelAggregateBenchmark {
+
+    private static final int ROWS = 2000000;
+
+    private static void run(DbIterator it) throws Exception {
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+        }
+        it.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Database.resetBufferPool(10000);
+        final HeapFile table = BenchmarkUtil.randomHeapFile(ROWS, 3, 1000, 42);
+        final TransactionId tid = new TransactionId();
+        int max = args.length > 0 ? Integer.parseInt(args[0]) : WorkerPool.availableProcessors();
+
+        final int[] groupings = { 1, Aggregator.NO_GROUPING };
+        for (final int g : groupings) {
+            String name = g == Aggregator.NO_GROUPING ? "sum" : "sum group by";
+            double millis = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+                public void run() throws Exception {
+                    ParallelAggregateBenchmark.run(new Aggregate(new SeqScan(tid, table.getId(), "t"), 2, g, Aggregator.Op.SUM));
+                }
+            }, 2, 5);
+            BenchmarkUtil.report(name + ", serial", millis, ROWS);
+            for (int n = 1; n <= max; n *= 2) {
+                final int parallelism = n;
+                millis = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+                    public void run() throws Exception {
+                        ParallelSeqScan scan = new ParallelSeqScan(tid, table.getId(), "t", parallelism);
+                        ParallelAggregateBenchmark.run(new ParallelAggregate(scan, 2, g, Aggregator.Op.SUM));
+                    }
+                }, 2, 5);
+                BenchmarkUtil.report(name + ", " + n + " workers", millis, ROWS);
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
@@ -0,0 +1,52 @@
+package simpledb.benchmark;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.WorkerPool;
+import simpledb.file.HeapFile;
+import simpledb.operators.ParallelHashJoin;
+import simpledb.operators.ParallelSeqScan;
+import simpledb.predicates.JoinPredicate;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.TupleBatch;
+
+/**
+ * Joins two tables of ROWS tuples on a key with about one match per tuple
+ * with a ParallelHashJoin of increasing parallelism, up to the number of
+ * cores or args[0].
+ */
+public class ParallelHashJoinBenchmark {
+
+    private static final int ROWS = 500000;
+
+    public static void main(String[] args) throws Exception {
+        Database.resetBufferPool(10000);
+        final HeapFile left = BenchmarkUtil.randomHeapFile(ROWS, 2, ROWS, 1);
+        final HeapFile right = BenchmarkUtil.randomHeapFile(ROWS, 2, ROWS, 2);
+        final TransactionId tid = new TransactionId();
+        final JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        final long[] rows = new long[1];
+
+        int max = args.length > 0 ? Integer.parseInt(args[0]) : WorkerPool.availableProcessors();
+        for (int n = 1; n <= max; n *= 2) {
+            final int parallelism = n;
+            double millis = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+                public void run() throws Exception {
+                    ParallelHashJoin j = new ParallelHashJoin(p,
+                            new ParallelSeqScan(tid, left.getId(), "l", parallelism),
+                            new ParallelSeqScan(tid, right.getId(), "r", parallelism),
+                            parallelism);
+                    j.open();
+                    rows[0] = 0;
+                    for (TupleBatch b = j.nextBatch(); b != null; b = j.nextBatch()) {
+                        rows[0] += b.numRows();
+                    }
+                    j.close();
+                }
+            }, 2, 5);
+            BenchmarkUtil.report("parallel hash join, " + n + " workers", millis, 2L * ROWS);
+        }
+        System.out.println(rows[0] + " result rows");
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
@@ -0,0 +1,46 @@
+package simpledb.benchmark;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.WorkerPool;
+import simpledb.file.HeapFile;
+import simpledb.operators.ParallelSeqScan;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.IntField;
+import simpledb.tuple.TupleBatch;
+
+/**
+ * Scans and filters a table that fits in the buffer pool with a
+ * ParallelSeqScan of increasing parallelism, up to the number of cores or
+ * args[0].
+ */
+public class ParallelScanBenchmark {
+
+    private static final int ROWS = 2000000;
+
+    public static void main(String[] args) throws Exception {
+        Database.resetBufferPool(10000);
+        final HeapFile table = BenchmarkUtil.randomHeapFile(ROWS, 3, 1000, 42);
+        final TransactionId tid = new TransactionId();
+        final Predicate pred = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(500));
+        final int[] sink = new int[1];
+
+        int max = args.length > 0 ? Integer.parseInt(args[0]) : WorkerPool.availableProcessors();
+        for (int n = 1; n <= max; n *= 2) {
+            final int parallelism = n;
+            double millis = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+                public void run() throws Exception {
+                    ParallelSeqScan scan = new ParallelSeqScan(tid, table.getId(), "t", parallelism);
+                    scan.addFilter(pred);
+                    scan.open();
+                    for (TupleBatch b = scan.nextBatch(); b != null; b = scan.nextBatch()) {
+                        sink[0] += b.numRows();
+                    }
+                    scan.close();
+                }
+            }, 3, 5);
+            BenchmarkUtil.report("parallel scan + filter, " + n + " workers", millis, ROWS);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
@@ -0,0 +1,95 @@
+package simpledb.benchmark;
+
+import java.util.ArrayList;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.aggregates.Aggregator;
+import simpledb.file.HeapFile;
+import simpledb.operators.Aggregate;
+import simpledb.operators.DbIterator;
+import simpledb.operators.Filter;
+import simpledb.operators.Join;
+import simpledb.operators.Project;
+import simpledb.operators.SeqScan;
+import simpledb.pipeline.PipelineCompiler;
+import simpledb.predicates.JoinPredicate;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.IntField;
+import simpledb.tuple.Type;
+
+/**
+ * Runs the same plans pulled through the operator tree and pushed through
+ * the pipelines the PipelineCompiler makes of them: a filter and projection
+ * over a scan, a grouped SUM over a filtered scan, and a join of a filtered
+ * dimension table with a fact table followed by a grouped SUM.
+ */
+public class PipelineBenchmark {
+
+    private static final int ROWS = 1000000;
+    private static final int DIM_ROWS = 200;
+
+    private interface Plan {
+        DbIterator build();
+    }
+
+    private static void run(DbIterator it) throws Exception {
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+        }
+        it.close();
+    }
+
+    private static void compare(String name, final Plan plan, long rows) throws Exception {
+        double millis = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+            public void run() throws Exception {
+                PipelineBenchmark.run(plan.build());
+            }
+        }, 2, 5);
+        BenchmarkUtil.report(name + ", pull", millis, rows);
+        millis = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+            public void run() throws Exception {
+                PipelineBenchmark.run(PipelineCompiler.compile(plan.build()));
+            }
+        }, 2, 5);
+        BenchmarkUtil.report(name + ", push", millis, rows);
+    }
+
+    private static Project project(DbIterator child, int... fields) {
+        ArrayList<Integer> f = new ArrayList<Integer>();
+        ArrayList<Type> types = new ArrayList<Type>();
+        for (int i : fields) {
+            f.add(i);
+            types.add(Type.INT_TYPE);
+        }
+        return new Project(f, types, child);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Database.resetBufferPool(10000);
+        final HeapFile fact = BenchmarkUtil.randomHeapFile(ROWS, 3, 1000, 42);
+        final HeapFile dim = BenchmarkUtil.randomHeapFile(DIM_ROWS, 2, 1000, 7);
+        final TransactionId tid = new TransactionId();
+        final Predicate half = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(500));
+
+        compare("filter, project", new Plan() {
+            public DbIterator build() {
+                return project(new Filter(half, new SeqScan(tid, fact.getId(), "f")), 2, 0);
+            }
+        }, ROWS);
+        compare("filter, sum group by", new Plan() {
+            public DbIterator build() {
+                return new Aggregate(new Filter(half, new SeqScan(tid, fact.getId(), "f")), 2, 0, Aggregator.Op.SUM);
+            }
+        }, ROWS);
+        compare("join, sum group by", new Plan() {
+            public DbIterator build() {
+                JoinPredicate eq = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+                DbIterator d = new Filter(half, new SeqScan(tid, dim.getId(), "d"));
+                return new Aggregate(new Join(eq, d, new SeqScan(tid, fact.getId(), "f")), 4, 1, Aggregator.Op.SUM);
+            }
+        }, ROWS);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
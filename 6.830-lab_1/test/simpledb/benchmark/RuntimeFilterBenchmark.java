@@ -0,0 +1,56 @@
+package simpledb.benchmark;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.file.HeapFile;
+import simpledb.operators.BatchAdapter;
+import simpledb.operators.BatchDbIterator;
+import simpledb.operators.DbIterator;
+import simpledb.operators.Filter;
+import simpledb.operators.HashJoin;
+import simpledb.operators.SeqScan;
+import simpledb.predicates.JoinPredicate;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.IntField;
+
+/**
+ * Joins a 500000 row, 8 field fact table with a 10000 row dimension table filtered
+ * down to 1% of its rows, with a hash join built on the dimension table,
+ * with and without pushing its runtime filter down to the fact table scan.
+ */
+public class RuntimeFilterBenchmark {
+
+    private static final int ROWS = 500000;
+
+    private static void time(String name, final HeapFile dim, final HeapFile fact, final TransactionId tid,
+            final boolean runtimeFilter) throws Exception {
+        final long[] dropped = new long[1];
+        double millis = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+            public void run() throws Exception {
+                DbIterator build = new Filter(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(100)),
+                        new SeqScan(tid, dim.getId(), "d"));
+                HashJoin j = new HashJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0), build,
+                        new SeqScan(tid, fact.getId(), "f"), runtimeFilter);
+                BatchDbIterator it = BatchAdapter.wrap(j);
+                it.open();
+                while (it.nextBatch() != null) {
+                }
+                it.close();
+                dropped[0] = j.getRowsDropped();
+            }
+        }, 2, 5);
+        BenchmarkUtil.report(name, millis, ROWS);
+        System.out.println("  rows dropped by the runtime filter: " + dropped[0]);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Database.resetBufferPool(10000);
+        HeapFile dim = BenchmarkUtil.randomHeapFile(10000, 2, 10000, 7);
+        HeapFile fact = BenchmarkUtil.randomHeapFile(ROWS, 8, 10000, 42);
+        TransactionId tid = new TransactionId();
+
+        time("HashJoin", dim, fact, tid, false);
+        time("HashJoin with runtime filter", dim, fact, tid, true);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
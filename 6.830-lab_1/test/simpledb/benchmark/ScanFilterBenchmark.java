@@ -0,0 +1,75 @@
+package simpledb.benchmark;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.file.HeapFile;
+import simpledb.operators.BatchAdapter;
+import simpledb.operators.BatchDbIterator;
+import simpledb.operators.DbIterator;
+import simpledb.operators.Filter;
+import simpledb.operators.SeqScan;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.IntField;
+
+/**
+ * Scans an 8 field table for the rows passing a filter that keeps 1% of
+ * them, one tuple at a time and in batches: once with a Filter over the
+ * scan, which sees every decoded row, then with the predicate pushed into
+ * the scan, which evaluates it on the pages and decodes the passing rows
+ * only.
+ */
+public class ScanFilterBenchmark {
+
+    private static final int ROWS = 500000;
+
+    private interface Plan {
+        DbIterator build();
+    }
+
+    private static void time(String name, final Plan plan) throws Exception {
+        // reading tuples one at a time decodes the pages the buffer pool keeps
+        Database.resetBufferPool(20000);
+        double millis = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+            public void run() throws Exception {
+                DbIterator it = plan.build();
+                it.open();
+                while (it.hasNext()) {
+                    it.next();
+                }
+                it.close();
+            }
+        }, 2, 5);
+        BenchmarkUtil.report(name + ", tuples", millis, ROWS);
+        Database.resetBufferPool(20000);
+        millis = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+            public void run() throws Exception {
+                BatchDbIterator it = BatchAdapter.wrap(plan.build());
+                it.open();
+                while (it.nextBatch() != null) {
+                }
+                it.close();
+            }
+        }, 2, 5);
+        BenchmarkUtil.report(name + ", batches", millis, ROWS);
+    }
+
+    public static void main(String[] args) throws Exception {
+        final HeapFile table = BenchmarkUtil.randomHeapFile(ROWS, 8, 1000, 42);
+        final TransactionId tid = new TransactionId();
+        final Predicate p = new Predicate(3, Predicate.Op.LESS_THAN, new IntField(10));
+
+        time("Filter over scan", new Plan() {
+            public DbIterator build() {
+                return new Filter(p, new SeqScan(tid, table.getId(), "t"));
+            }
+        });
+        time("pushed into scan", new Plan() {
+            public DbIterator build() {
+                SeqScan scan = new SeqScan(tid, table.getId(), "t");
+                scan.addFilter(p);
+                return scan;
+            }
+        });
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
@@ -0,0 +1,71 @@
+package simpledb.benchmark;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.file.HeapFile;
+import simpledb.operators.BatchAdapter;
+import simpledb.operators.BatchDbIterator;
+import simpledb.operators.DbIterator;
+import simpledb.operators.Join;
+import simpledb.operators.SemiJoin;
+import simpledb.operators.SeqScan;
+import simpledb.predicates.JoinPredicate;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.TupleBatch;
+
+/**
+ * Runs an IN subquery over a 20000 row table with a 2000 row subquery, the
+ * way it used to be planned, as a Join producing every matching pair, then
+ * as a hash SemiJoin returning each matching outer row once, and as the
+ * anti-join of NOT IN.
+ */
+public class SemiJoinBenchmark {
+
+    private static final int OUTER_ROWS = 20000;
+    private static final int INNER_ROWS = 2000;
+
+    private interface Plan {
+        DbIterator build();
+    }
+
+    private static void time(String name, final Plan plan) throws Exception {
+        final long[] rows = new long[1];
+        double millis = BenchmarkUtil.time(new BenchmarkUtil.Task() {
+            public void run() throws Exception {
+                BatchDbIterator it = BatchAdapter.wrap(plan.build());
+                it.open();
+                rows[0] = 0;
+                for (TupleBatch b = it.nextBatch(); b != null; b = it.nextBatch()) {
+                    rows[0] += b.numRows();
+                }
+                it.close();
+            }
+        }, 1, 3);
+        BenchmarkUtil.report(name + " (" + rows[0] + " rows)", millis, OUTER_ROWS);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Database.resetBufferPool(1000);
+        final HeapFile outer = BenchmarkUtil.randomHeapFile(OUTER_ROWS, 4, 10000, 42);
+        final HeapFile inner = BenchmarkUtil.randomHeapFile(INNER_ROWS, 2, 10000, 43);
+        final TransactionId tid = new TransactionId();
+        final JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+
+        time("IN as Join", new Plan() {
+            public DbIterator build() {
+                return new Join(p, new SeqScan(tid, outer.getId(), "o"), new SeqScan(tid, inner.getId(), "i"));
+            }
+        });
+        time("IN as SemiJoin", new Plan() {
+            public DbIterator build() {
+                return new SemiJoin(p, new SeqScan(tid, outer.getId(), "o"), new SeqScan(tid, inner.getId(), "i"), false);
+            }
+        });
+        time("NOT IN as anti SemiJoin", new Plan() {
+            public DbIterator build() {
+                return new SemiJoin(p, new SeqScan(tid, outer.getId(), "o"), new SeqScan(tid, inner.getId(), "i"), true);
+            }
+        });
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
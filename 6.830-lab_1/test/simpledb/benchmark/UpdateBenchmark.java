@@ -0,0 +1,70 @@
+package simpledb.benchmark;
+
+import java.util.ArrayList;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.file.HeapFile;
+import simpledb.operators.Filter;
+import simpledb.operators.SeqScan;
+import simpledb.operators.Update;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.Field;
+import simpledb.tuple.IntField;
+import simpledb.tuple.Tuple;
+
+/**
+ * Sets a field of half the rows of a 50000 row table, relocating every
+ * tuple through BufferPool.updateTuple, which deletes it and inserts it
+ * again, then with the Update operator, which changes the tuples in their
+ * slots. Every run updates a new table and commits; only the update is timed.
+ */
+public class UpdateBenchmark {
+
+    private static final int ROWS = 50000;
+    private static final int RUNS = 3;
+
+    private static Predicate half() {
+        return new Predicate(0, Predicate.Op.LESS_THAN, new IntField(50000));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Database.resetBufferPool(10000);
+        int[] fields = new int[] { 3 };
+        Field[] values = new Field[] { new IntField(-1) };
+        for (int mode = 0; mode < 2; mode++) {
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS + 1; run++) {
+                HeapFile table = BenchmarkUtil.randomHeapFile(ROWS, 4, 100000, run);
+                TransactionId tid = new TransactionId();
+                long start = System.nanoTime();
+                if (mode == 0) {
+                    BufferPool pool = Database.getBufferPool();
+                    ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+                    Filter in = new Filter(half(), new SeqScan(tid, table.getId(), "t"));
+                    in.open();
+                    while (in.hasNext()) {
+                        tuples.add(in.next());
+                    }
+                    in.close();
+                    for (Tuple t : tuples) {
+                        pool.updateTuple(tid, table.getId(), t, fields, values);
+                    }
+                } else {
+                    Update update = new Update(tid, table.getId(),
+                            new Filter(half(), new SeqScan(tid, table.getId(), "t")), fields, values);
+                    update.open();
+                    update.next();
+                    update.close();
+                }
+                if (run > 0) {
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                Database.getBufferPool().transactionComplete(tid);
+            }
+            BenchmarkUtil.report(mode == 0 ? "Relocate with BufferPool.updateTuple" : "Update in place", best / 1e6,
+                    ROWS);
+        }
+    }
+}
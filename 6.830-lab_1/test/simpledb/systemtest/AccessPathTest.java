@@ -0,0 +1,194 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.file.HeapFile;
+import simpledb.file.SecondaryIndex;
+import simpledb.logicalplan.LogicalPlan;
+import simpledb.operators.DbIterator;
+import simpledb.operators.Fetch;
+import simpledb.operators.Filter;
+import simpledb.operators.HashJoin;
+import simpledb.operators.IndexNestedLoopJoin;
+import simpledb.operators.IndexScan;
+import simpledb.operators.Join;
+import simpledb.operators.Project;
+import simpledb.optimizing.AccessPath;
+import simpledb.optimizing.statistics.TableStats;
+import simpledb.parser.Parser;
+import simpledb.predicates.Predicate;
+
+public class AccessPathTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 20000;
+    private static final int MAX_VALUE = 10000;
+
+    private HeapFile p;
+    private ArrayList<ArrayList<Integer>> pTuples;
+    private HeapFile q;
+    private ArrayList<ArrayList<Integer>> qTuples;
+    private HeapFile r;
+    private ArrayList<ArrayList<Integer>> rTuples;
+    private SecondaryIndex index;
+    private HashMap<String, TableStats> stats;
+    private TransactionId tid;
+
+    @Before public void createTables() throws Exception {
+        Database.resetBufferPool(1000);
+        // wide rows, so that few share a page and an index pays off for ranges
+        // wider than a bucket of the histograms
+        pTuples = new ArrayList<ArrayList<Integer>>();
+        p = SystemTestUtil.createRandomHeapFile(20, ROWS, MAX_VALUE, null, pTuples, "c");
+        Database.getCatalog().addTable(p, "ptable");
+        qTuples = new ArrayList<ArrayList<Integer>>();
+        q = SystemTestUtil.createRandomHeapFile(2, 20, MAX_VALUE, null, qTuples, "c");
+        Database.getCatalog().addTable(q, "qtable");
+        rTuples = new ArrayList<ArrayList<Integer>>();
+        r = SystemTestUtil.createRandomHeapFile(2, ROWS, MAX_VALUE, null, rTuples, "c");
+        Database.getCatalog().addTable(r, "rtable");
+
+        File f = File.createTempFile("index", ".dat");
+        f.deleteOnExit();
+        tid = new TransactionId();
+        index = SecondaryIndex.create(tid, SystemTestUtil.getUUID(), p.getId(), 0, f);
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getCatalog().addIndex(index);
+
+        stats = new HashMap<String, TableStats>();
+        stats.put("ptable", new TableStats(p.getId(), 1000));
+        stats.put("qtable", new TableStats(q.getId(), 1000));
+        stats.put("rtable", new TableStats(r.getId(), 1000));
+        Parser.setStatsMap(stats);
+        tid = new TransactionId();
+    }
+
+    private DbIterator plan(String query, boolean explain) throws Exception {
+        LogicalPlan lp = Parser.generateLogicalPlan(tid, query);
+        return lp.physicalPlan(tid, stats, explain);
+    }
+
+    /** @return the first operator of class c in plan, or null. */
+    private static DbIterator find(DbIterator plan, Class<?> c) {
+        if (plan == null || c.isInstance(plan))
+            return plan;
+        DbIterator found;
+        if (plan instanceof Project)
+            return find(((Project) plan).getChild(), c);
+        if (plan instanceof Filter)
+            return find(((Filter) plan).getChild(), c);
+        if (plan instanceof Fetch)
+            return find(((Fetch) plan).getChild(), c);
+        if (plan instanceof IndexNestedLoopJoin)
+            return find(((IndexNestedLoopJoin) plan).getChild(), c);
+        if (plan instanceof Join) {
+            found = find(((Join) plan).getLeftChild(), c);
+            return found != null ? found : find(((Join) plan).getRightChild(), c);
+        }
+        if (plan instanceof HashJoin) {
+            found = find(((HashJoin) plan).getLeftChild(), c);
+            return found != null ? found : find(((HashJoin) plan).getRightChild(), c);
+        }
+        return null;
+    }
+
+    private static ArrayList<ArrayList<Integer>> select(ArrayList<ArrayList<Integer>> rows, int field, int low,
+            int high) {
+        ArrayList<ArrayList<Integer>> out = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> row : rows) {
+            if (row.get(field) >= low && row.get(field) <= high)
+                out.add(row);
+        }
+        return out;
+    }
+
+    @Test public void findsIndex() {
+        AccessPath path = AccessPath.find(p.getId(), 0, Predicate.Op.LESS_THAN);
+        assertNotNull(path);
+        assertEquals(index, path.getIndex());
+        assertEquals(2, path.height());
+        assertNull(AccessPath.find(p.getId(), 0, Predicate.Op.NOT_EQUALS));
+        assertNull(AccessPath.find(p.getId(), 1, Predicate.Op.EQUALS));
+    }
+
+    /** An equality filter selecting a few rows reads them through the index. */
+    @Test public void selectiveFilterUsesIndex() throws Exception {
+        int key = pTuples.get(0).get(0);
+        DbIterator plan = plan("SELECT * FROM ptable WHERE ptable.c0 = " + key + ";", false);
+        IndexScan scan = (IndexScan) find(plan, IndexScan.class);
+        assertNotNull(scan);
+        assertEquals(index, scan.getIndex());
+        SystemTestUtil.matchTuples(plan, select(pTuples, 0, key, key));
+    }
+
+    /** Two filters bounding a narrow range are read as one index range. */
+    @Test public void rangeUsesIndex() throws Exception {
+        DbIterator plan = plan("SELECT * FROM ptable WHERE ptable.c0 >= 500 AND ptable.c0 <= 502 AND ptable.c0 <> 501;", false);
+        assertNotNull(find(plan, IndexScan.class));
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> row : select(pTuples, 0, 500, 502)) {
+            if (row.get(0) != 501)
+                expected.add(row);
+        }
+        SystemTestUtil.matchTuples(plan, expected);
+    }
+
+    /** A filter passing most rows costs less as a scan. */
+    @Test public void unselectiveFilterScans() throws Exception {
+        DbIterator plan = plan("SELECT * FROM ptable WHERE ptable.c0 > 100;", false);
+        assertNull(find(plan, IndexScan.class));
+        SystemTestUtil.matchTuples(plan, select(pTuples, 0, 101, MAX_VALUE));
+    }
+
+    /** A small table joined with the indexed field looks each of its rows up. */
+    @Test public void indexJoin() throws Exception {
+        DbIterator plan = plan("SELECT * FROM qtable, ptable WHERE qtable.c0 = ptable.c0;", false);
+        assertNotNull(find(plan, IndexNestedLoopJoin.class));
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> outer : qTuples) {
+            for (ArrayList<Integer> inner : select(pTuples, 0, outer.get(0), outer.get(0))) {
+                ArrayList<Integer> row = new ArrayList<Integer>(outer);
+                row.addAll(inner);
+                expected.add(row);
+            }
+        }
+        SystemTestUtil.matchTuples(plan, expected);
+    }
+
+    /** Looking up every row of a large table costs more than hashing it. */
+    @Test public void largeJoinHashes() throws Exception {
+        DbIterator plan = plan("SELECT * FROM rtable, ptable WHERE rtable.c0 = ptable.c0;", false);
+        assertNull(find(plan, IndexNestedLoopJoin.class));
+        assertNull(find(plan, IndexScan.class));
+    }
+
+    @Test public void explainPrintsAccessPath() throws Exception {
+        PrintStream out = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(bytes));
+        try {
+            plan("SELECT * FROM ptable WHERE ptable.c0 = 7;", true);
+            plan("SELECT * FROM ptable WHERE ptable.c0 > 100;", true);
+        } finally {
+            System.setOut(out);
+        }
+        String printed = bytes.toString();
+        assertTrue(printed, printed.contains("Access path of ptable: IndexScan of secondary index " + index.getName()));
+        assertTrue(printed, printed.contains("Access path of ptable: SeqScan"));
+        assertFalse(printed.contains("Exception"));
+    }
+}
@@ -0,0 +1,249 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.Utility;
+import simpledb.exceptions.DbException;
+import simpledb.file.BTreeFile;
+import simpledb.file.DbFileIterator;
+import simpledb.operators.Delete;
+import simpledb.operators.IndexScan;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.Field;
+import simpledb.tuple.IntField;
+import simpledb.tuple.StringField;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleDesc;
+import simpledb.tuple.Type;
+
+public class BTreeFileTest extends SimpleDbTestBase {
+
+    /** Transactions here dirty more pages than the default buffer pool holds. */
+    @Before public void largerBufferPool() {
+        Database.resetBufferPool(1000);
+    }
+
+    private static ArrayList<ArrayList<Integer>> readAll(DbFileIterator it) throws Exception {
+        ArrayList<ArrayList<Integer>> result = new ArrayList<ArrayList<Integer>>();
+        it.open();
+        while (it.hasNext()) {
+            result.add(SystemTestUtil.tupleToList(it.next()));
+        }
+        it.close();
+        return result;
+    }
+
+    private static ArrayList<ArrayList<Integer>> matching(ArrayList<ArrayList<Integer>> tuples,
+            Predicate.Op op, int key) {
+        ArrayList<ArrayList<Integer>> result = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> t : tuples) {
+            if (new IntField(t.get(0)).compare(op, new IntField(key))) {
+                result.add(t);
+            }
+        }
+        return result;
+    }
+
+    private static void assertSortedOn(ArrayList<ArrayList<Integer>> tuples, int field) {
+        for (int i = 1; i < tuples.size(); i++) {
+            assertTrue(tuples.get(i - 1).get(field) <= tuples.get(i).get(field));
+        }
+    }
+
+    private static void assertSameTuples(ArrayList<ArrayList<Integer>> expected,
+            ArrayList<ArrayList<Integer>> actual) {
+        ArrayList<String> e = new ArrayList<String>();
+        for (ArrayList<Integer> t : expected) {
+            e.add(t.toString());
+        }
+        ArrayList<String> a = new ArrayList<String>();
+        for (ArrayList<Integer> t : actual) {
+            a.add(t.toString());
+        }
+        Collections.sort(e);
+        Collections.sort(a);
+        assertEquals(e, a);
+    }
+
+    /** Tuples come back in key order, whatever order they were inserted in. */
+    @Test public void insertAndScan() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        BTreeFile f = SystemTestUtil.createRandomBTreeFile(2, 20000, 1 << 16, 0, tuples);
+
+        TransactionId tid = new TransactionId();
+        assertTrue(f.height(tid) >= 2);
+        ArrayList<ArrayList<Integer>> scanned = readAll(f.iterator(tid));
+        assertSortedOn(scanned, 0);
+        assertSameTuples(tuples, scanned);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Point and range lookups, with equal keys spread over several leaves. */
+    @Test public void lookups() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        BTreeFile f = SystemTestUtil.createRandomBTreeFile(2, 20000, 40, 0, tuples);
+
+        TransactionId tid = new TransactionId();
+        Predicate.Op[] ops = { Predicate.Op.EQUALS, Predicate.Op.LESS_THAN, Predicate.Op.LESS_THAN_OR_EQ,
+                Predicate.Op.GREATER_THAN, Predicate.Op.GREATER_THAN_OR_EQ };
+        for (Predicate.Op op : ops) {
+            for (int key : new int[] { -1, 0, 17, 39, 40 }) {
+                ArrayList<ArrayList<Integer>> found = readAll(f.indexIterator(tid, op, new IntField(key)));
+                assertSortedOn(found, 0);
+                assertSameTuples(matching(tuples, op, key), found);
+            }
+        }
+        ArrayList<ArrayList<Integer>> range = readAll(f.rangeIterator(tid, new IntField(10), false,
+                new IntField(20), true));
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> t : tuples) {
+            if (t.get(0) > 10 && t.get(0) <= 20) {
+                expected.add(t);
+            }
+        }
+        assertSameTuples(expected, range);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** IndexScan feeds Delete, which removes what it scans. */
+    @Test public void indexScanAndDelete() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        BTreeFile f = SystemTestUtil.createRandomBTreeFile(2, 5000, 100, 0, tuples);
+
+        TransactionId tid = new TransactionId();
+        IndexScan scan = new IndexScan(tid, f.getId(), "t", Predicate.Op.LESS_THAN, new IntField(50));
+        ArrayList<ArrayList<Integer>> below = matching(tuples, Predicate.Op.LESS_THAN, 50);
+        SystemTestUtil.matchTuples(scan, below);
+
+        Delete delete = new Delete(tid, f.getId(), scan);
+        delete.open();
+        assertEquals(below.size(), ((IntField) delete.next().getField(0)).getValue());
+        delete.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        assertSameTuples(matching(tuples, Predicate.Op.GREATER_THAN_OR_EQ, 50), readAll(f.iterator(tid)));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private static Tuple stringTuple(TupleDesc td, int i) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new StringField(String.format("key%06d", i), Type.STRING_LEN));
+        t.setField(1, new IntField(i));
+        return t;
+    }
+
+    /**
+     * String keys make for small pages, so that internal pages split and
+     * merge as well; pages freed by merges are used again.
+     */
+    @Test public void splitsAndMerges() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE, Type.INT_TYPE });
+        File temp = File.createTempFile("btree", ".dat");
+        temp.deleteOnExit();
+        BTreeFile f = new BTreeFile(temp, td, 0);
+        Database.getCatalog().addTable(f, SystemTestUtil.getUUID());
+
+        int n = 4000;
+        ArrayList<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < n; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order);
+        TransactionId tid = new TransactionId();
+        for (int i : order) {
+            Database.getBufferPool().insertTuple(tid, f.getId(), stringTuple(td, i));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        assertTrue(f.height(tid) >= 3);
+        int pages = f.numPages();
+        // delete all but every tenth tuple, in random order
+        for (int i : order) {
+            if (i % 10 != 0) {
+                Database.getBufferPool().deleteTuple(tid, f.getId(), stringTuple(td, i));
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        assertTrue(f.height(tid) < 3);
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        for (int i = 0; i < n; i += 10) {
+            assertEquals(new IntField(i), it.next().getField(1));
+        }
+        assertTrue(!it.hasNext());
+        it.close();
+        try {
+            Database.getBufferPool().deleteTuple(tid, f.getId(), stringTuple(td, 1));
+            fail("deleted a tuple not in the tree");
+        } catch (DbException e) {
+            // expected
+        }
+        for (int i : order) {
+            if (i % 10 != 0) {
+                Database.getBufferPool().insertTuple(tid, f.getId(), stringTuple(td, i));
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        assertTrue(f.numPages() <= pages + pages / 10);
+
+        tid = new TransactionId();
+        IndexScan scan = new IndexScan(tid, f.getId(), "", Predicate.Op.EQUALS,
+                new StringField("key001234", Type.STRING_LEN));
+        scan.open();
+        assertEquals(new IntField(1234), scan.next().getField(1));
+        assertTrue(!scan.hasNext());
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** An aborted transaction leaves the tree as it found it, splits included. */
+    @Test public void abort() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        BTreeFile f = SystemTestUtil.createRandomBTreeFile(2, 2000, 1 << 16, 0, tuples);
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 5000; i++) {
+            Database.getBufferPool().insertTuple(tid, f.getId(), Utility.getHeapTuple(new int[] { i, i }));
+        }
+        Field key = new IntField(tuples.get(0).get(0));
+        Database.getBufferPool().deleteTuple(tid, f.getId(), Utility.getHeapTuple(
+                new int[] { tuples.get(0).get(0), tuples.get(0).get(1) }));
+        Database.getBufferPool().transactionComplete(tid, false);
+
+        tid = new TransactionId();
+        ArrayList<ArrayList<Integer>> scanned = readAll(f.iterator(tid));
+        assertSortedOn(scanned, 0);
+        assertSameTuples(tuples, scanned);
+        assertTrue(!readAll(f.indexIterator(tid, Predicate.Op.EQUALS, key)).isEmpty());
+        Database.getBufferPool().transactionComplete(tid);
+
+        // the pages the aborted splits took are free again
+        int pages = f.numPages();
+        tid = new TransactionId();
+        for (int i = 0; i < 5000; i++) {
+            Database.getBufferPool().insertTuple(tid, f.getId(), Utility.getHeapTuple(new int[] { i, i }));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(pages, f.numPages());
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(BTreeFileTest.class);
+    }
+}
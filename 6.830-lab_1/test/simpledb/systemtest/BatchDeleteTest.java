@@ -0,0 +1,62 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.file.HeapFile;
+import simpledb.operators.Delete;
+import simpledb.operators.Filter;
+import simpledb.operators.SeqScan;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.IntField;
+
+public class BatchDeleteTest extends SimpleDbTestBase {
+
+    private static int delete(Delete op) throws Exception {
+        op.open();
+        int n = ((IntField) op.next().getField(0)).getValue();
+        op.close();
+        return n;
+    }
+
+    /** Deletes rows spread over every page of the table, page by page. */
+    @Test public void deleteByPage() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 5000, 100, null, tuples);
+        ArrayList<ArrayList<Integer>> kept = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> t : tuples) {
+            if (t.get(0) >= 30) {
+                kept.add(t);
+            }
+        }
+
+        TransactionId tid = new TransactionId();
+        Delete op = new Delete(tid, table.getId(), new Filter(
+                new Predicate(0, Predicate.Op.LESS_THAN, new IntField(30)), new SeqScan(tid, table.getId(), "")));
+        assertEquals(tuples.size() - kept.size(), delete(op));
+        SystemTestUtil.matchTuples(table, tid, kept);
+        Database.getBufferPool().transactionComplete(tid);
+        SystemTestUtil.matchTuples(table, kept);
+    }
+
+    @Test public void abort() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 2000, 100, null, tuples);
+
+        TransactionId tid = new TransactionId();
+        assertEquals(tuples.size(), delete(new Delete(tid, table.getId(), new SeqScan(tid, table.getId(), ""))));
+        SystemTestUtil.matchTuples(table, tid, new ArrayList<ArrayList<Integer>>());
+        Database.getBufferPool().transactionComplete(tid, false);
+        SystemTestUtil.matchTuples(table, tuples);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(BatchDeleteTest.class);
+    }
+}
@@ -0,0 +1,111 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.file.HeapFile;
+import simpledb.file.HeapFileAppender;
+import simpledb.operators.Insert;
+import simpledb.operators.SeqScan;
+import simpledb.operators.TupleArrayIterator;
+import simpledb.tuple.IntField;
+import simpledb.tuple.StringField;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleDesc;
+import simpledb.tuple.Type;
+
+public class BulkInsertTest extends SimpleDbTestBase {
+
+    private static int insert(Insert op) throws Exception {
+        op.open();
+        int n = ((IntField) op.next().getField(0)).getValue();
+        op.close();
+        return n;
+    }
+
+    /** The rows are appended in fresh pages; the rows already in the table stay. */
+    @Test public void appendPages() throws Exception {
+        ArrayList<ArrayList<Integer>> sourceTuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile source = SystemTestUtil.createRandomHeapFile(3, 5000, null, sourceTuples);
+        ArrayList<ArrayList<Integer>> destinationTuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile destination = SystemTestUtil.createRandomHeapFile(3, 100, null, destinationTuples);
+        int pages = destination.numPages();
+
+        TransactionId tid = new TransactionId();
+        Insert op = new Insert(tid, new SeqScan(tid, source.getId(), ""), destination.getId(), true);
+        assertEquals(5000, insert(op));
+        assertTrue(destination.numPages() > pages);
+
+        // the same transaction sees the rows, and so do others once it commits
+        destinationTuples.addAll(sourceTuples);
+        SystemTestUtil.matchTuples(destination, tid, destinationTuples);
+        Database.getBufferPool().transactionComplete(tid);
+        SystemTestUtil.matchTuples(destination, destinationTuples);
+    }
+
+    /** The pages appended by a transaction that aborts are emptied. */
+    @Test public void abort() throws Exception {
+        ArrayList<ArrayList<Integer>> sourceTuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile source = SystemTestUtil.createRandomHeapFile(2, 3000, null, sourceTuples);
+        ArrayList<ArrayList<Integer>> destinationTuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile destination = SystemTestUtil.createRandomHeapFile(2, 10, null, destinationTuples);
+
+        TransactionId tid = new TransactionId();
+        insert(new Insert(tid, new SeqScan(tid, source.getId(), ""), destination.getId(), true));
+        Database.getBufferPool().transactionComplete(tid, false);
+        SystemTestUtil.matchTuples(destination, destinationTuples);
+    }
+
+    @Test public void strings() throws Exception {
+        File f = File.createTempFile("bulk", ".dat");
+        f.deleteOnExit();
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+        HeapFile table = new HeapFile(f, td);
+        Database.getCatalog().addTable(table, "strings");
+
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 500; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField("row " + i, Type.STRING_LEN));
+            tuples.add(t);
+        }
+        TransactionId tid = new TransactionId();
+        TupleArrayIterator in = new TupleArrayIterator(tuples);
+        HeapFileAppender appender = new HeapFileAppender(tid, table);
+        in.open();
+        while (in.hasNext()) {
+            appender.add(in.next());
+        }
+        appender.flush();
+        assertEquals(500, appender.getRowsAdded());
+        assertEquals(table.numPages(), appender.getPagesWritten());
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, table.getId(), "s");
+        scan.open();
+        int i = 0;
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            assertEquals(new IntField(i), t.getField(0));
+            assertEquals(new StringField("row " + i, Type.STRING_LEN), t.getField(1));
+            i++;
+        }
+        scan.close();
+        assertEquals(500, i);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(BulkInsertTest.class);
+    }
+}
@@ -0,0 +1,160 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.aggregates.Aggregator;
+import simpledb.file.HeapFile;
+import simpledb.operators.Aggregate;
+import simpledb.operators.BatchAdapter;
+import simpledb.operators.BatchTupleIterator;
+import simpledb.operators.DbIterator;
+import simpledb.operators.Fetch;
+import simpledb.operators.Filter;
+import simpledb.operators.Join;
+import simpledb.operators.OrderBy;
+import simpledb.operators.Project;
+import simpledb.operators.SeqScan;
+import simpledb.optimizing.ColumnPruner;
+import simpledb.page.HeapPage;
+import simpledb.page.HeapPageId;
+import simpledb.pipeline.PipelineCompiler;
+import simpledb.predicates.JoinPredicate;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.IntField;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.Type;
+
+public class ColumnPruningTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 4000;
+    private static final int WIDTH = 8;
+
+    private HeapFile wide;
+    private HeapFile narrow;
+    private ArrayList<ArrayList<Integer>> wideTuples;
+    private TransactionId tid;
+
+    @Before public void createTables() throws Exception {
+        wideTuples = new ArrayList<ArrayList<Integer>>();
+        wide = SystemTestUtil.createRandomHeapFile(WIDTH, ROWS, 100, null, wideTuples);
+        narrow = SystemTestUtil.createRandomHeapFile(2, ROWS / 4, 100, null, new ArrayList<ArrayList<Integer>>());
+        tid = new TransactionId();
+    }
+
+    /** Runs it in batch mode and counts its rows by value. */
+    private static HashMap<ArrayList<Integer>, Integer> runBatches(DbIterator it) throws Exception {
+        DbIterator tuples = new BatchTupleIterator(BatchAdapter.wrap(it));
+        HashMap<ArrayList<Integer>, Integer> counts = new HashMap<ArrayList<Integer>, Integer>();
+        tuples.open();
+        while (tuples.hasNext()) {
+            ArrayList<Integer> row = SystemTestUtil.tupleToList(tuples.next());
+            Integer c = counts.get(row);
+            counts.put(row, c == null ? 1 : c + 1);
+        }
+        tuples.close();
+        return counts;
+    }
+
+    private SeqScan scan(HeapFile f) {
+        return new SeqScan(tid, f.getId(), "t");
+    }
+
+    private static Project project(DbIterator child, int... fields) {
+        ArrayList<Integer> f = new ArrayList<Integer>();
+        ArrayList<Type> types = new ArrayList<Type>();
+        for (int i : fields) {
+            f.add(i);
+            types.add(Type.INT_TYPE);
+        }
+        return new Project(f, types, child);
+    }
+
+    private static Predicate lessThan(int field, int value) {
+        return new Predicate(field, Predicate.Op.LESS_THAN, new IntField(value));
+    }
+
+    @Test public void pageDecodesOnlyRequestedFields() throws Exception {
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,
+                new HeapPageId(wide.getId(), 0), simpledb.Permissions.READ_ONLY);
+        TupleBatch all = new TupleBatch(wide.getTupleDesc());
+        TupleBatch some = new TupleBatch(wide.getTupleDesc());
+        page.fillBatch(all, 0);
+        page.fillBatch(some, 0, new int[] { 2, 5 });
+        assertEquals(all.size(), some.size());
+        for (int row = 0; row < all.size(); row++) {
+            assertEquals(wideTuples.get(row), SystemTestUtil.tupleToList(all.getTuple(row)));
+            assertEquals(all.getInt(2, row), some.getInt(2, row));
+            assertEquals(all.getInt(5, row), some.getInt(5, row));
+            assertEquals(0, some.getInt(0, row));
+            assertEquals(all.getRecordId(row), some.getRecordId(row));
+        }
+    }
+
+    /** Decoding a page lazily must not change what it writes back. */
+    @Test public void pageDataRoundTrip() throws Exception {
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,
+                new HeapPageId(wide.getId(), 0), simpledb.Permissions.READ_ONLY);
+        HeapPage copy = new HeapPage(page.getId(), page.getPageData());
+        byte[] before = copy.getPageData();
+        copy.iterator().next();
+        assertTrue(java.util.Arrays.equals(before, copy.getPageData()));
+    }
+
+    @Test public void fetchAfterFilters() throws Exception {
+        DbIterator pruned = ColumnPruner.prune(
+                project(new Filter(lessThan(1, 30), new Filter(lessThan(3, 50), scan(wide))), 6, 1, 0));
+        Project top = (Project) pruned;
+        assertTrue(top.getChild() instanceof Fetch);
+        // field 1 is decoded by the scan for its filter, fields 6 and 0 later
+        assertEquals(2, ((Fetch) top.getChild()).getFields().length);
+        DbIterator full = project(new Filter(lessThan(1, 30), new Filter(lessThan(3, 50), scan(wide))), 6, 1, 0);
+        HashMap<ArrayList<Integer>, Integer> expected = runBatches(full);
+        assertTrue(expected.size() > 0);
+        assertEquals(expected, runBatches(pruned));
+        assertEquals(expected, runBatches(PipelineCompiler.compile(pruned)));
+    }
+
+    @Test public void joinAggregateAndOrderBy() throws Exception {
+        JoinPredicate eq = new JoinPredicate(4, Predicate.Op.EQUALS, 1);
+        SeqScan bare = scan(wide);
+        DbIterator agg = ColumnPruner.prune(project(new Aggregate(
+                new Join(eq, bare, scan(narrow)), 7, 8, Aggregator.Op.SUM), 0, 1));
+        assertEquals(2, bare.getFields().length);
+        DbIterator full = project(new Aggregate(new Join(eq, scan(wide), scan(narrow)), 7, 8, Aggregator.Op.SUM), 0, 1);
+        assertEquals(runBatches(full), runBatches(agg));
+
+        int[] by = { 9 };
+        boolean[] asc = { true };
+        DbIterator sorted = ColumnPruner.prune(project(new OrderBy(by, asc,
+                new Join(eq, new Filter(lessThan(0, 10), scan(wide)), scan(narrow))), 2, 9));
+        DbIterator fullSorted = project(new OrderBy(by, asc,
+                new Join(eq, new Filter(lessThan(0, 10), scan(wide)), scan(narrow))), 2, 9);
+        assertEquals(runBatches(fullSorted), runBatches(sorted));
+    }
+
+    /** Plans whose every field is read are left as they are. */
+    @Test public void nothingToPrune() throws Exception {
+        SeqScan s = scan(narrow);
+        DbIterator plan = new Filter(lessThan(0, 50), s);
+        DbIterator pruned = ColumnPruner.prune(plan);
+        assertTrue(pruned instanceof Fetch);
+        SeqScan s2 = scan(narrow);
+        assertTrue(ColumnPruner.prune(project(s2, 1, 0)) instanceof Project);
+        assertNull(s2.getFields());
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ColumnPruningTest.class);
+    }
+}
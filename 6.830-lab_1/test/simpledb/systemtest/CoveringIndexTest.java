@@ -0,0 +1,216 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.Database;
+import simpledb.Transaction;
+import simpledb.TransactionId;
+import simpledb.file.HeapFile;
+import simpledb.file.SecondaryIndex;
+import simpledb.logicalplan.LogicalPlan;
+import simpledb.operators.DbIterator;
+import simpledb.operators.Fetch;
+import simpledb.operators.Filter;
+import simpledb.operators.IndexOnlyScan;
+import simpledb.operators.IndexScan;
+import simpledb.operators.Project;
+import simpledb.operators.SeqScan;
+import simpledb.operators.Update;
+import simpledb.optimizing.statistics.TableStats;
+import simpledb.parser.Parser;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.Field;
+import simpledb.tuple.IntField;
+import simpledb.tuple.Tuple;
+
+public class CoveringIndexTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 20000;
+    private static final int MAX_VALUE = 10000;
+
+    private HeapFile w;
+    private ArrayList<ArrayList<Integer>> wTuples;
+    private SecondaryIndex index;
+    private HashMap<String, TableStats> stats;
+    private TransactionId tid;
+
+    @Before public void createTable() throws Exception {
+        Database.resetBufferPool(1000);
+        wTuples = new ArrayList<ArrayList<Integer>>();
+        w = SystemTestUtil.createRandomHeapFile(8, ROWS, MAX_VALUE, null, wTuples, "c");
+        Database.getCatalog().addTable(w, "wtable");
+
+        File f = File.createTempFile("index", ".dat");
+        f.deleteOnExit();
+        tid = new TransactionId();
+        index = SecondaryIndex.create(tid, SystemTestUtil.getUUID(), w.getId(), 1, new int[] { 2, 3 }, f);
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getCatalog().addIndex(index);
+
+        stats = new HashMap<String, TableStats>();
+        stats.put("wtable", new TableStats(w.getId(), 1000));
+        Parser.setStatsMap(stats);
+        tid = new TransactionId();
+    }
+
+    private DbIterator plan(String query) throws Exception {
+        LogicalPlan lp = Parser.generateLogicalPlan(tid, query);
+        return lp.physicalPlan(tid, stats, false);
+    }
+
+    /** @return the scan at the bottom of a single table plan. */
+    private static DbIterator scanOf(DbIterator plan) {
+        while (true) {
+            if (plan instanceof Project)
+                plan = ((Project) plan).getChild();
+            else if (plan instanceof Filter)
+                plan = ((Filter) plan).getChild();
+            else if (plan instanceof Fetch)
+                plan = ((Fetch) plan).getChild();
+            else
+                return plan;
+        }
+    }
+
+    /** @return the given fields of the rows whose field key is between low and high. */
+    private ArrayList<ArrayList<Integer>> select(int key, int low, int high, int... fields) {
+        ArrayList<ArrayList<Integer>> out = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> row : wTuples) {
+            if (row.get(key) >= low && row.get(key) <= high) {
+                ArrayList<Integer> projected = new ArrayList<Integer>();
+                for (int f : fields)
+                    projected.add(row.get(f));
+                out.add(projected);
+            }
+        }
+        return out;
+    }
+
+    @Test public void entries() throws Exception {
+        assertArrayEquals(new int[] { 2, 3 }, index.getIncluded());
+        assertEquals(5, index.getFile().getTupleDesc().numFields());
+        assertTrue(index.covers(new boolean[] { false, true, true, true, false, false, false, false }));
+        assertTrue(!index.covers(new boolean[] { true, true, false, false, false, false, false, false }));
+        // the entries are narrower than the rows
+        assertTrue(index.getFile().numPages() < w.numPages());
+
+        DbIterator scan = new IndexOnlyScan(tid, index, "w");
+        ArrayList<ArrayList<Integer>> expected = select(1, 0, MAX_VALUE, 1, 2, 3);
+        ArrayList<ArrayList<Integer>> actual = new ArrayList<ArrayList<Integer>>();
+        int last = Integer.MIN_VALUE;
+        scan.open();
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            assertNull(t.getField(0));
+            int key = ((IntField) t.getField(1)).getValue();
+            assertTrue(key >= last);
+            last = key;
+            ArrayList<Integer> row = new ArrayList<Integer>();
+            for (int f = 1; f <= 3; f++)
+                row.add(((IntField) t.getField(f)).getValue());
+            actual.add(row);
+        }
+        scan.close();
+        assertEquals(sorted(expected), sorted(actual));
+    }
+
+    private static ArrayList<String> sorted(ArrayList<ArrayList<Integer>> rows) {
+        ArrayList<String> out = new ArrayList<String>();
+        for (ArrayList<Integer> row : rows)
+            out.add(row.toString());
+        Collections.sort(out);
+        return out;
+    }
+
+    /** A lookup reading only indexed and included fields does not read the table. */
+    @Test public void coveredLookup() throws Exception {
+        int key = wTuples.get(0).get(1);
+        DbIterator plan = plan("SELECT wtable.c2, wtable.c3 FROM wtable WHERE wtable.c1 = " + key + ";");
+        assertTrue(scanOf(plan) instanceof IndexOnlyScan);
+        SystemTestUtil.matchTuples(plan, select(1, key, key, 2, 3));
+    }
+
+    /** Without a filter on the key, the whole index is read instead of the wider table. */
+    @Test public void coveredScan() throws Exception {
+        DbIterator plan = plan("SELECT wtable.c1, wtable.c2 FROM wtable WHERE wtable.c3 < 5000;");
+        assertTrue(scanOf(plan) instanceof IndexOnlyScan);
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> row : wTuples) {
+            if (row.get(3) < 5000) {
+                ArrayList<Integer> projected = new ArrayList<Integer>();
+                projected.add(row.get(1));
+                projected.add(row.get(2));
+                expected.add(projected);
+            }
+        }
+        SystemTestUtil.matchTuples(plan, expected);
+    }
+
+    /** A query reading another field goes to the table. */
+    @Test public void uncovered() throws Exception {
+        int key = wTuples.get(0).get(1);
+        DbIterator plan = plan("SELECT wtable.c2, wtable.c4 FROM wtable WHERE wtable.c1 = " + key + ";");
+        DbIterator scan = scanOf(plan);
+        assertTrue(scan instanceof IndexScan);
+        assertNotNull(((IndexScan) scan).getIndex());
+        SystemTestUtil.matchTuples(plan, select(1, key, key, 2, 4));
+
+        plan = plan("SELECT * FROM wtable WHERE wtable.c3 < 5000;");
+        assertTrue(scanOf(plan) instanceof SeqScan);
+    }
+
+    /** Updating an included field updates the entries. */
+    @Test public void updateIncluded() throws Exception {
+        int key = wTuples.get(0).get(1);
+        TransactionId t = new TransactionId();
+        Update u = new Update(t, w.getId(), new Filter(new Predicate(1, Predicate.Op.EQUALS, new IntField(key)),
+                new SeqScan(t, w.getId(), "")), new int[] { 3 }, new Field[] { new IntField(-1) });
+        u.open();
+        int updated = ((IntField) u.next().getField(0)).getValue();
+        u.close();
+        Database.getBufferPool().transactionComplete(t);
+        assertEquals(select(1, key, key, 1).size(), updated);
+
+        DbIterator plan = plan("SELECT wtable.c3 FROM wtable WHERE wtable.c1 = " + key + ";");
+        assertTrue(scanOf(plan) instanceof IndexOnlyScan);
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < updated; i++)
+            expected.add(new ArrayList<Integer>(Collections.singletonList(-1)));
+        SystemTestUtil.matchTuples(plan, expected);
+    }
+
+    @Test public void createIndexStatement() throws Exception {
+        String name = "idx_" + SystemTestUtil.getUUID().replace('-', '_');
+        File f = new File(w.getFile().getAbsoluteFile().getParentFile(), name + ".idx");
+        f.deleteOnExit();
+
+        Transaction t = new Transaction();
+        t.start();
+        Parser.setTransaction(t);
+        Parser.processNextStatement("CREATE INDEX " + name + " ON wtable (c5) INCLUDE (wtable.c6, c0);");
+        t.commit();
+        Parser.setTransaction(null);
+
+        SecondaryIndex created = Database.getCatalog().getIndexes(w.getId()).get(1);
+        assertEquals(name, created.getName());
+        assertEquals(5, created.getField());
+        assertArrayEquals(new int[] { 6, 0 }, created.getIncluded());
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(CoveringIndexTest.class);
+    }
+}
@@ -0,0 +1,119 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static simpledb.systemtest.SystemTestUtil.readTuples;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.file.HeapFile;
+import simpledb.logicalplan.LogicalPlan;
+import simpledb.operators.BatchTupleIterator;
+import simpledb.operators.DbIterator;
+import simpledb.operators.Distinct;
+import simpledb.operators.OrderBy;
+import simpledb.operators.SeqScan;
+import simpledb.operators.SortedDistinct;
+import simpledb.optimizing.statistics.TableStats;
+import simpledb.parser.Parser;
+
+public class DistinctTest extends SimpleDbTestBase {
+
+    private HeapFile a;
+    private ArrayList<ArrayList<Integer>> aTuples;
+    private TransactionId tid;
+
+    @Before public void createTables() throws Exception {
+        aTuples = new ArrayList<ArrayList<Integer>>();
+        a = SystemTestUtil.createRandomHeapFile(2, 4000, 40, null, aTuples, "c");
+        Database.getCatalog().addTable(a, "atable");
+        tid = new TransactionId();
+    }
+
+    private SeqScan scan() {
+        return new SeqScan(tid, a.getId(), "a");
+    }
+
+    /** Without spilling, rows come out in the order they are first seen. */
+    @Test public void firstSight() throws Exception {
+        Distinct d = new Distinct(scan());
+        d.open();
+        assertEquals(new ArrayList<ArrayList<Integer>>(new LinkedHashSet<ArrayList<Integer>>(aTuples)), readTuples(d));
+        d.close();
+        assertEquals(0, d.getSpillCount());
+    }
+
+    /** With little memory partitions are spilled, and every row still comes out once. */
+    @Test public void spill() throws Exception {
+        HashSet<ArrayList<Integer>> expected = new HashSet<ArrayList<Integer>>(aTuples);
+        Distinct d = new Distinct(scan(), 50);
+        d.open();
+        ArrayList<ArrayList<Integer>> first = readTuples(d);
+        assertTrue(d.getSpillCount() > 0);
+        assertEquals(expected.size(), first.size());
+        assertEquals(expected, new HashSet<ArrayList<Integer>>(first));
+
+        d.rewind();
+        ArrayList<ArrayList<Integer>> batched = readTuples(new BatchTupleIterator(d));
+        d.close();
+        assertEquals(expected.size(), batched.size());
+        assertEquals(expected, new HashSet<ArrayList<Integer>>(batched));
+    }
+
+    @Test public void sorted() throws Exception {
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>(
+                new HashSet<ArrayList<Integer>>(aTuples));
+        Collections.sort(expected, new Comparator<ArrayList<Integer>>() {
+            public int compare(ArrayList<Integer> x, ArrayList<Integer> y) {
+                int c = x.get(0).compareTo(y.get(0));
+                return c != 0 ? c : x.get(1).compareTo(y.get(1));
+            }
+        });
+        SortedDistinct d = new SortedDistinct(new OrderBy(new int[] { 0, 1 }, new boolean[] { true, true }, scan()));
+        d.open();
+        assertEquals(expected, readTuples(d));
+        d.rewind();
+        assertEquals(expected, readTuples(new BatchTupleIterator(d)));
+        d.close();
+    }
+
+    private ArrayList<ArrayList<Integer>> runQuery(String query) throws Exception {
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put("atable", new TableStats(a.getId(), 1000));
+        Parser.setStatsMap(stats);
+        LogicalPlan lp = Parser.generateLogicalPlan(tid, query);
+        DbIterator plan = lp.physicalPlan(tid, stats, false);
+        plan.open();
+        ArrayList<ArrayList<Integer>> result = readTuples(plan);
+        plan.close();
+        return result;
+    }
+
+    @Test public void selectDistinct() throws Exception {
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < 40; i++) {
+            ArrayList<Integer> row = new ArrayList<Integer>();
+            row.add(i);
+            expected.add(row);
+        }
+        ArrayList<ArrayList<Integer>> result = runQuery("SELECT DISTINCT atable.c0 FROM atable;");
+        assertEquals(new HashSet<ArrayList<Integer>>(expected), new HashSet<ArrayList<Integer>>(result));
+        assertEquals(expected.size(), result.size());
+        assertEquals(expected, runQuery("SELECT DISTINCT atable.c0 FROM atable ORDER BY atable.c0;"));
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(DistinctTest.class);
+    }
+}
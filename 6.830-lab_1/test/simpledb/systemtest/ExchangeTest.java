@@ -0,0 +1,147 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static simpledb.systemtest.SystemTestUtil.countTuples;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.aggregates.Aggregator;
+import simpledb.file.HeapFile;
+import simpledb.logicalplan.LogicalPlan;
+import simpledb.operators.Aggregate;
+import simpledb.operators.DbIterator;
+import simpledb.operators.Exchange;
+import simpledb.operators.ParallelSeqScan;
+import simpledb.optimizing.statistics.TableStats;
+import simpledb.parser.Parser;
+
+public class ExchangeTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 5000;
+
+    private HeapFile a;
+    private HeapFile b;
+    private HeapFile c;
+    private ArrayList<ArrayList<Integer>> aTuples;
+    private ArrayList<ArrayList<Integer>> bTuples;
+    private TransactionId tid;
+
+    @Before public void createTables() throws Exception {
+        aTuples = new ArrayList<ArrayList<Integer>>();
+        bTuples = new ArrayList<ArrayList<Integer>>();
+        a = SystemTestUtil.createRandomHeapFile(2, ROWS, 300, null, aTuples, "c");
+        b = SystemTestUtil.createRandomHeapFile(2, ROWS, 300, null, bTuples, "c");
+        c = SystemTestUtil.createRandomHeapFile(2, ROWS / 10, 300, null, new ArrayList<ArrayList<Integer>>(), "c");
+        Database.getCatalog().addTable(a, "atable");
+        Database.getCatalog().addTable(b, "btable");
+        Database.getCatalog().addTable(c, "ctable");
+        tid = new TransactionId();
+    }
+
+    /** @return rows, each repeated times, counted by value. */
+    private static HashMap<ArrayList<Integer>, Integer> count(ArrayList<ArrayList<Integer>> rows, int times) {
+        HashMap<ArrayList<Integer>, Integer> counts = countTuples(rows);
+        for (Map.Entry<ArrayList<Integer>, Integer> e : counts.entrySet()) {
+            e.setValue(e.getValue() * times);
+        }
+        return counts;
+    }
+
+    private ParallelSeqScan scan(HeapFile f) {
+        return new ParallelSeqScan(tid, f.getId(), "t", 2);
+    }
+
+    @Test public void gatherAndRewind() throws Exception {
+        DbIterator gather = Exchange.gather(new DbIterator[] { scan(a), scan(a), scan(b) });
+        HashMap<ArrayList<Integer>, Integer> expected = count(aTuples, 2);
+        for (ArrayList<Integer> row : bTuples) {
+            Integer c = expected.get(row);
+            expected.put(row, c == null ? 1 : c + 1);
+        }
+        gather.open();
+        gather.next();
+        gather.rewind();
+        assertEquals(expected, countTuples(gather));
+        gather.close();
+    }
+
+    /** Every group is counted by exactly one of the consumers of a repartition. */
+    @Test public void repartition() throws Exception {
+        DbIterator[] parts = Exchange.repartition(new DbIterator[] { scan(a), scan(a) }, 0, 3);
+        DbIterator[] counts = new DbIterator[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            counts[i] = new Aggregate(parts[i], 1, 0, Aggregator.Op.COUNT);
+        }
+        DbIterator gather = Exchange.gather(counts);
+
+        HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        for (ArrayList<Integer> row : aTuples) {
+            Integer c = expected.get(row.get(0));
+            expected.put(row.get(0), c == null ? 2 : c + 2);
+        }
+        HashMap<Integer, Integer> actual = new HashMap<Integer, Integer>();
+        gather.open();
+        while (gather.hasNext()) {
+            ArrayList<Integer> row = SystemTestUtil.tupleToList(gather.next());
+            assertTrue("group " + row.get(0) + " seen twice", actual.put(row.get(0), row.get(1)) == null);
+        }
+        gather.close();
+        assertEquals(expected, actual);
+    }
+
+    @Test public void broadcast() throws Exception {
+        DbIterator[] copies = Exchange.broadcast(new DbIterator[] { scan(a) }, 3);
+        DbIterator gather = Exchange.gather(copies);
+        gather.open();
+        assertEquals(count(aTuples, 3), countTuples(gather));
+        gather.close();
+    }
+
+    private HashMap<ArrayList<Integer>, Integer> runQuery(String query, int parallelism) throws Exception {
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put("atable", new TableStats(a.getId(), 1000));
+        stats.put("btable", new TableStats(b.getId(), 1000));
+        stats.put("ctable", new TableStats(c.getId(), 1000));
+        Parser.setStatsMap(stats);
+        int old = Parser.parallelism;
+        try {
+            Parser.parallelism = parallelism;
+            LogicalPlan lp = Parser.generateLogicalPlan(tid, query);
+            DbIterator plan = lp.physicalPlan(tid, stats, false);
+            plan.open();
+            HashMap<ArrayList<Integer>, Integer> result = countTuples(plan);
+            plan.close();
+            return result;
+        } finally {
+            Parser.parallelism = old;
+        }
+    }
+
+    /** Joins and grouped aggregates planned with exchanges return what the serial plan returns. */
+    @Test public void parallelPlans() throws Exception {
+        String[] queries = {
+            "SELECT atable.c0 FROM atable, btable WHERE atable.c0 = btable.c0;",
+            "SELECT atable.c0 FROM atable, btable, ctable WHERE atable.c0 = btable.c0 AND btable.c0 = ctable.c0 AND atable.c0 < 100;",
+            "SELECT atable.c0 FROM atable, btable WHERE atable.c0 < btable.c0 AND atable.c0 < 5;",
+            "SELECT atable.c0, COUNT(atable.c0) FROM atable, btable WHERE atable.c0 = btable.c0 GROUP BY atable.c0;",
+        };
+        for (String q : queries) {
+            HashMap<ArrayList<Integer>, Integer> serial = runQuery(q, 1);
+            assertTrue(q, serial.size() > 0);
+            assertEquals(q, serial, runQuery(q, 4));
+        }
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ExchangeTest.class);
+    }
+}
@@ -0,0 +1,231 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.Utility;
+import simpledb.exceptions.DbException;
+import simpledb.file.DbFileIterator;
+import simpledb.file.HashFile;
+import simpledb.operators.IndexScan;
+import simpledb.page.HashDirectoryPage;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.IntField;
+import simpledb.tuple.StringField;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleDesc;
+import simpledb.tuple.Type;
+
+public class HashFileTest extends SimpleDbTestBase {
+
+    /** Transactions here dirty more pages than the default buffer pool holds. */
+    @Before public void largerBufferPool() {
+        Database.resetBufferPool(1000);
+    }
+
+    private static ArrayList<String> readAll(DbFileIterator it) throws Exception {
+        ArrayList<String> result = new ArrayList<String>();
+        it.open();
+        while (it.hasNext()) {
+            result.add(SystemTestUtil.tupleToList(it.next()).toString());
+        }
+        it.close();
+        Collections.sort(result);
+        return result;
+    }
+
+    private static ArrayList<String> withKey(ArrayList<ArrayList<Integer>> tuples, int key) {
+        ArrayList<String> result = new ArrayList<String>();
+        for (ArrayList<Integer> t : tuples) {
+            if (t.get(0) == key) {
+                result.add(t.toString());
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    private static ArrayList<String> toStrings(ArrayList<ArrayList<Integer>> tuples) {
+        ArrayList<String> result = new ArrayList<String>();
+        for (ArrayList<Integer> t : tuples) {
+            result.add(t.toString());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    @Test public void insertAndScan() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HashFile f = SystemTestUtil.createRandomHashFile(2, 20000, 1 << 16, 0, tuples);
+
+        TransactionId tid = new TransactionId();
+        assertTrue(f.getGlobalDepth(tid) >= 5);
+        assertEquals(toStrings(tuples), readAll(f.iterator(tid)));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Lookups return the tuples with the key, through the file and through IndexScan. */
+    @Test public void lookups() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HashFile f = SystemTestUtil.createRandomHashFile(2, 20000, 2000, 0, tuples);
+
+        TransactionId tid = new TransactionId();
+        for (int key : new int[] { -1, 0, 17, 1000, 1999, 2000 }) {
+            assertEquals(withKey(tuples, key), readAll(f.indexIterator(tid, Predicate.Op.EQUALS, new IntField(key))));
+        }
+        int key = tuples.get(0).get(0);
+        IndexScan scan = new IndexScan(tid, f.getId(), "h", Predicate.Op.EQUALS, new IntField(key));
+        ArrayList<String> scanned = new ArrayList<String>();
+        scan.open();
+        while (scan.hasNext()) {
+            scanned.add(SystemTestUtil.tupleToList(scan.next()).toString());
+        }
+        scan.close();
+        Collections.sort(scanned);
+        assertEquals(withKey(tuples, key), scanned);
+        try {
+            f.indexIterator(tid, Predicate.Op.LESS_THAN, new IntField(key));
+            fail("a hash file answered a range");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Equal keys cannot be split apart, and go to overflow pages instead. */
+    @Test public void duplicates() throws Exception {
+        File temp = File.createTempFile("hash", ".dat");
+        temp.deleteOnExit();
+        HashFile f = new HashFile(temp, Utility.getTupleDesc(2), 0);
+        Database.getCatalog().addTable(f, SystemTestUtil.getUUID());
+
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 3000; i++) {
+            int key = i % 10 == 0 ? i : 7;
+            Database.getBufferPool().insertTuple(tid, f.getId(), Utility.getHeapTuple(new int[] { key, i }));
+            ArrayList<Integer> t = new ArrayList<Integer>();
+            t.add(key);
+            t.add(i);
+            tuples.add(t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        // far from the maximum depth the splits would reach otherwise
+        assertTrue(f.getGlobalDepth(tid) <= 10);
+        assertTrue(f.numPages() < 40);
+        assertEquals(withKey(tuples, 7), readAll(f.indexIterator(tid, Predicate.Op.EQUALS, new IntField(7))));
+        assertEquals(withKey(tuples, 2990), readAll(f.indexIterator(tid, Predicate.Op.EQUALS, new IntField(2990))));
+        assertEquals(toStrings(tuples), readAll(f.iterator(tid)));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private static Tuple stringTuple(TupleDesc td, int i) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new StringField("key" + i, Type.STRING_LEN));
+        t.setField(1, new IntField(i));
+        return t;
+    }
+
+    /**
+     * String keys make for small buckets, so that the directory outgrows a
+     * page; it is only written where splits set entries.
+     */
+    @Test public void directoryGrowsPastOnePage() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE, Type.INT_TYPE });
+        File temp = File.createTempFile("hash", ".dat");
+        temp.deleteOnExit();
+        HashFile f = new HashFile(temp, td, 0);
+        Database.getCatalog().addTable(f, SystemTestUtil.getUUID());
+
+        int n = 40000;
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < n; i++) {
+            Database.getBufferPool().insertTuple(tid, f.getId(), stringTuple(td, i));
+            if ((i + 1) % 1000 == 0) {
+                Database.getBufferPool().transactionComplete(tid);
+                tid = new TransactionId();
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        int depth = f.getGlobalDepth(tid);
+        assertTrue((1 << depth) > HashDirectoryPage.ENTRIES);
+        // buckets, the meta page and a few directory pages
+        assertTrue(f.numPages() < (1 << depth) + 2 + (1 << depth) / HashDirectoryPage.ENTRIES + 2);
+        for (int i = 0; i < n; i += 97) {
+            DbFileIterator it = f.indexIterator(tid, Predicate.Op.EQUALS, new StringField("key" + i, Type.STRING_LEN));
+            it.open();
+            assertEquals(new IntField(i), it.next().getField(1));
+            assertTrue(!it.hasNext());
+            it.close();
+        }
+        int count = 0;
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        assertEquals(n, count);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Deletes remove single tuples, and an aborted transaction leaves no trace, splits included. */
+    @Test public void deleteAndAbort() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HashFile f = SystemTestUtil.createRandomHashFile(2, 4000, 500, 0, tuples);
+
+        TransactionId tid = new TransactionId();
+        ArrayList<ArrayList<Integer>> kept = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < tuples.size(); i++) {
+            ArrayList<Integer> t = tuples.get(i);
+            if (i % 2 == 0) {
+                Database.getBufferPool().deleteTuple(tid, f.getId(), Utility.getHeapTuple(new int[] { t.get(0), t.get(1) }));
+            } else {
+                kept.add(t);
+            }
+        }
+        try {
+            Database.getBufferPool().deleteTuple(tid, f.getId(), Utility.getHeapTuple(new int[] { -5, -5 }));
+            fail("deleted a tuple not in the file");
+        } catch (DbException e) {
+            // expected
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        int depth = f.getGlobalDepth(tid);
+        for (int i = 0; i < 20000; i++) {
+            Database.getBufferPool().insertTuple(tid, f.getId(), Utility.getHeapTuple(new int[] { i, i }));
+        }
+        ArrayList<Integer> first = kept.get(0);
+        Database.getBufferPool().deleteTuple(tid, f.getId(), Utility.getHeapTuple(new int[] { first.get(0), first.get(1) }));
+        Database.getBufferPool().transactionComplete(tid, false);
+
+        tid = new TransactionId();
+        assertEquals(depth, f.getGlobalDepth(tid));
+        assertEquals(toStrings(kept), readAll(f.iterator(tid)));
+        assertEquals(withKey(kept, first.get(0)),
+                readAll(f.indexIterator(tid, Predicate.Op.EQUALS, new IntField(first.get(0)))));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(HashFileTest.class);
+    }
+}
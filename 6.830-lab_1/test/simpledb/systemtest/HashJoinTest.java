@@ -0,0 +1,273 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import simpledb.Database;
+import simpledb.TestUtil;
+import simpledb.TransactionId;
+import simpledb.file.HeapFile;
+import simpledb.operators.BatchTupleIterator;
+import simpledb.operators.Filter;
+import simpledb.operators.HashJoin;
+import simpledb.operators.SeqScan;
+import simpledb.predicates.JoinPredicate;
+import simpledb.predicates.Predicate;
+import simpledb.predicates.RuntimeFilter;
+import simpledb.tuple.IntField;
+import simpledb.tuple.StringField;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
+import simpledb.tuple.Type;
+
+public class HashJoinTest extends SimpleDbTestBase {
+
+    private static ArrayList<ArrayList<Integer>> join(ArrayList<ArrayList<Integer>> left, int f1,
+            ArrayList<ArrayList<Integer>> right, int f2) {
+        ArrayList<ArrayList<Integer>> out = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> r : right) {
+            for (ArrayList<Integer> l : left) {
+                if (l.get(f1).equals(r.get(f2))) {
+                    ArrayList<Integer> row = new ArrayList<Integer>(l);
+                    row.addAll(r);
+                    out.add(row);
+                }
+            }
+        }
+        return out;
+    }
+
+    /** A small build side filters most of the probe side on its pages. */
+    @Test public void runtimeFilter() throws Exception {
+        ArrayList<ArrayList<Integer>> dim = new ArrayList<ArrayList<Integer>>();
+        HeapFile d = SystemTestUtil.createRandomHeapFile(2, 2000, 1000, null, dim);
+        ArrayList<ArrayList<Integer>> fact = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 5000, 1000, null, fact);
+        ArrayList<ArrayList<Integer>> small = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> row : dim) {
+            if (row.get(1) < 10) {
+                small.add(row);
+            }
+        }
+
+        TransactionId tid = new TransactionId();
+        SeqScan probe = new SeqScan(tid, f.getId(), "f");
+        HashJoin j = new HashJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 1),
+                new Filter(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(10)), new SeqScan(tid, d.getId(), "d")),
+                probe);
+        SystemTestUtil.matchTuples(j, join(small, 0, fact, 1));
+        assertSame(probe, j.getFilteredScan());
+        assertTrue(j.getRowsDropped() > fact.size() / 2);
+
+        SystemTestUtil.matchTuples(new BatchTupleIterator(j), join(small, 0, fact, 1));
+
+        // closing the join takes the filter off the scan
+        SystemTestUtil.matchTuples(probe, fact);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** The filter of the top join of a star goes through the join below it, down to the fact table. */
+    @Test public void throughJoins() throws Exception {
+        ArrayList<ArrayList<Integer>> d1 = new ArrayList<ArrayList<Integer>>();
+        HeapFile dim1 = SystemTestUtil.createRandomHeapFile(2, 20, 500, null, d1);
+        ArrayList<ArrayList<Integer>> d2 = new ArrayList<ArrayList<Integer>>();
+        HeapFile dim2 = SystemTestUtil.createRandomHeapFile(2, 400, 500, null, d2);
+        ArrayList<ArrayList<Integer>> fact = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(3, 3000, 500, null, fact);
+
+        TransactionId tid = new TransactionId();
+        SeqScan factScan = new SeqScan(tid, f.getId(), "f");
+        HashJoin inner = new HashJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 1),
+                new SeqScan(tid, dim2.getId(), "d2"), factScan);
+        HashJoin outer = new HashJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 2),
+                new SeqScan(tid, dim1.getId(), "d1"), inner);
+        SystemTestUtil.matchTuples(outer, join(d1, 0, join(d2, 0, fact, 1), 2));
+        assertSame(factScan, outer.getFilteredScan());
+        assertSame(factScan, inner.getFilteredScan());
+        assertTrue(outer.getRowsDropped() > 0);
+        outer.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test public void noRuntimeFilter() throws Exception {
+        ArrayList<ArrayList<Integer>> left = new ArrayList<ArrayList<Integer>>();
+        HeapFile l = SystemTestUtil.createRandomHeapFile(2, 300, 100, null, left);
+        ArrayList<ArrayList<Integer>> right = new ArrayList<ArrayList<Integer>>();
+        HeapFile r = SystemTestUtil.createRandomHeapFile(2, 300, 100, null, right);
+
+        TransactionId tid = new TransactionId();
+        HashJoin j = new HashJoin(new JoinPredicate(1, Predicate.Op.EQUALS, 0),
+                new SeqScan(tid, l.getId(), "l"), new SeqScan(tid, r.getId(), "r"), false);
+        SystemTestUtil.matchTuples(j, join(left, 1, right, 0));
+        assertEquals(null, j.getFilteredScan());
+        assertEquals(0, j.getRowsDropped());
+        j.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** A few left rows are compared with every right row, more are hashed. */
+    @Test public void strategyFollowsLeftSize() throws Exception {
+        ArrayList<ArrayList<Integer>> tiny = new ArrayList<ArrayList<Integer>>();
+        HeapFile t = SystemTestUtil.createRandomHeapFile(2, HashJoin.NESTED_LOOP_ROWS, 100, null, tiny);
+        ArrayList<ArrayList<Integer>> left = new ArrayList<ArrayList<Integer>>();
+        HeapFile l = SystemTestUtil.createRandomHeapFile(2, 300, 100, null, left);
+        ArrayList<ArrayList<Integer>> right = new ArrayList<ArrayList<Integer>>();
+        HeapFile r = SystemTestUtil.createRandomHeapFile(2, 1000, 100, null, right);
+
+        TransactionId tid = new TransactionId();
+        HashJoin j = new HashJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 1),
+                new SeqScan(tid, t.getId(), "t"), new SeqScan(tid, r.getId(), "r"));
+        SystemTestUtil.matchTuples(j, join(tiny, 0, right, 1));
+        assertEquals(HashJoin.Strategy.NESTED_LOOP, j.getStrategy());
+
+        j = new HashJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 1),
+                new SeqScan(tid, l.getId(), "l"), new SeqScan(tid, r.getId(), "r"));
+        SystemTestUtil.matchTuples(j, join(left, 0, right, 1));
+        assertEquals(HashJoin.Strategy.IN_MEMORY, j.getStrategy());
+        assertEquals(0, j.getSpillCount());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** More left rows than maxRows are partitioned, and spilled partitions joined afterwards. */
+    @Test public void partitionsBeyondMaxRows() throws Exception {
+        ArrayList<ArrayList<Integer>> left = new ArrayList<ArrayList<Integer>>();
+        HeapFile l = SystemTestUtil.createRandomHeapFile(2, 5000, 2000, null, left);
+        ArrayList<ArrayList<Integer>> right = new ArrayList<ArrayList<Integer>>();
+        HeapFile r = SystemTestUtil.createRandomHeapFile(2, 5000, 2000, null, right);
+        ArrayList<ArrayList<Integer>> expected = join(left, 1, right, 0);
+
+        TransactionId tid = new TransactionId();
+        SeqScan probe = new SeqScan(tid, r.getId(), "r");
+        HashJoin j = new HashJoin(new JoinPredicate(1, Predicate.Op.EQUALS, 0),
+                new SeqScan(tid, l.getId(), "l"), probe, true, 500);
+        SystemTestUtil.matchTuples(j, expected);
+        assertEquals(HashJoin.Strategy.PARTITIONED, j.getStrategy());
+        assertTrue(j.getSpillCount() > 0);
+        // the keys are partly on disk, so no runtime filter is pushed
+        assertEquals(null, j.getFilteredScan());
+
+        // a rewind runs the join again
+        j.open();
+        int n = 0;
+        while (j.hasNext()) {
+            j.next();
+            n++;
+        }
+        j.rewind();
+        while (j.hasNext()) {
+            j.next();
+            n--;
+        }
+        j.close();
+        assertEquals(0, n);
+        assertEquals(0, Database.getTempFileManager().getOpenFiles());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** The join partitions when the memory broker refuses more, and gives everything back. */
+    @Test public void partitionsWhenMemoryRefused() throws Exception {
+        Database.getMemoryBroker().setBudgets(1 << 20, 100 * 1024);
+        ArrayList<ArrayList<Integer>> left = new ArrayList<ArrayList<Integer>>();
+        HeapFile l = SystemTestUtil.createRandomHeapFile(2, 20000, 20000, null, left);
+        ArrayList<ArrayList<Integer>> right = new ArrayList<ArrayList<Integer>>();
+        HeapFile r = SystemTestUtil.createRandomHeapFile(2, 2000, 20000, null, right);
+
+        TransactionId tid = new TransactionId();
+        HashJoin j = new HashJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 1),
+                new SeqScan(tid, l.getId(), "l"), new SeqScan(tid, r.getId(), "r"));
+        SystemTestUtil.matchTuples(j, join(left, 0, right, 1));
+        assertEquals(HashJoin.Strategy.PARTITIONED, j.getStrategy());
+        assertTrue(j.getSpillCount() > 0);
+        assertEquals(0, Database.getMemoryBroker().getReserved());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Rows sharing one key cannot be split; the deepest pass holds them whatever the limit. */
+    @Test public void skewedKeys() throws Exception {
+        ArrayList<ArrayList<Integer>> left = new ArrayList<ArrayList<Integer>>();
+        HeapFile l = SystemTestUtil.createRandomHeapFile(2, 1000, 2, null, left);
+        ArrayList<ArrayList<Integer>> right = new ArrayList<ArrayList<Integer>>();
+        HeapFile r = SystemTestUtil.createRandomHeapFile(2, 10, 2, null, right);
+
+        TransactionId tid = new TransactionId();
+        HashJoin j = new HashJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                new SeqScan(tid, l.getId(), "l"), new SeqScan(tid, r.getId(), "r"), false, 100);
+        SystemTestUtil.matchTuples(j, join(left, 0, right, 0));
+        assertEquals(HashJoin.Strategy.PARTITIONED, j.getStrategy());
+        // each key is spilled once per pass, not split again down to the last bits of the hash
+        assertTrue(j.getSpillCount() <= 4);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Without left rows the right input is not read. */
+    @Test public void emptyLeft() throws Exception {
+        HeapFile l = SystemTestUtil.createRandomHeapFile(2, 0, null, new ArrayList<ArrayList<Integer>>());
+        TestUtil.MockScan r = new TestUtil.MockScan(0, 1000, 2);
+
+        TransactionId tid = new TransactionId();
+        HashJoin j = new HashJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                new SeqScan(tid, l.getId(), "l"), r);
+        SystemTestUtil.matchTuples(j, new ArrayList<ArrayList<Integer>>());
+        assertEquals(0, ((IntField) r.next().getField(0)).getValue());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Every key added passes, on tuples and on serialized records, and most others do not. */
+    @Test public void filterKeys() throws Exception {
+        TupleDesc ints = new TupleDesc(new Type[] { Type.INT_TYPE });
+        TupleBatch keys = new TupleBatch(ints, 1000);
+        for (int i = 0; i < 1000; i++) {
+            keys.addRow();
+            keys.setInt(0, i, i * 7);
+        }
+        RuntimeFilter f = new RuntimeFilter(0, Type.INT_TYPE, 1000);
+        for (int i = 0; i < 1000; i++) {
+            f.add(keys, 0, i);
+        }
+        byte[] data = new byte[4];
+        for (int i = 0; i < 7000; i++) {
+            data[0] = (byte) (i >>> 24);
+            data[1] = (byte) (i >>> 16);
+            data[2] = (byte) (i >>> 8);
+            data[3] = (byte) i;
+            boolean passed = f.filter(data, 0);
+            if (i % 7 == 0) {
+                assertTrue(passed);
+            }
+        }
+        assertEquals(7000, f.getRowsTested());
+        assertTrue(f.getRowsDropped() > 6000 * 9 / 10);
+
+        TupleDesc strings = new TupleDesc(new Type[] { Type.STRING_TYPE });
+        TupleBatch names = new TupleBatch(strings, 10);
+        RuntimeFilter g = new RuntimeFilter(0, Type.STRING_TYPE, 10);
+        for (int i = 0; i < 10; i++) {
+            names.addRow();
+            names.setField(0, i, new StringField("name" + i, Type.STRING_LEN));
+            g.add(names, 0, i);
+        }
+        for (int i = 0; i < 10; i++) {
+            StringField s = new StringField("name" + i, Type.STRING_LEN);
+            Tuple t = new Tuple(strings);
+            t.setField(0, s);
+            assertTrue(g.filter(t));
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            s.serialize(new DataOutputStream(bytes));
+            assertTrue(g.filter(bytes.toByteArray(), 0));
+        }
+        assertEquals(0, g.getRowsDropped());
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(HashJoinTest.class);
+    }
+}
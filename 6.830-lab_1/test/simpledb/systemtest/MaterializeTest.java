@@ -0,0 +1,144 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.exceptions.DbException;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.file.HeapFile;
+import simpledb.operators.AbstractDbIterator;
+import simpledb.operators.BatchTupleIterator;
+import simpledb.operators.DbIterator;
+import simpledb.operators.Join;
+import simpledb.operators.Materialize;
+import simpledb.operators.SeqScan;
+import simpledb.predicates.JoinPredicate;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleDesc;
+
+public class MaterializeTest extends SimpleDbTestBase {
+
+    /** Counts the rows read from its child. */
+    private static class Counter extends AbstractDbIterator {
+        private final DbIterator child;
+        int rows;
+
+        Counter(DbIterator child) {
+            this.child = child;
+        }
+
+        public TupleDesc getTupleDesc() {
+            return child.getTupleDesc();
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            child.open();
+        }
+
+        public void close() {
+            super.close();
+            child.close();
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            child.rewind();
+        }
+
+        protected Tuple readNext() throws DbException, TransactionAbortedException {
+            if (!child.hasNext()) {
+                return null;
+            }
+            rows++;
+            return child.next();
+        }
+    }
+
+    private static ArrayList<ArrayList<Integer>> readAll(DbIterator it) throws Exception {
+        ArrayList<ArrayList<Integer>> rows = new ArrayList<ArrayList<Integer>>();
+        while (it.hasNext()) {
+            rows.add(SystemTestUtil.tupleToList(it.next()));
+        }
+        return rows;
+    }
+
+    private void replay(int maxRows, boolean spills) throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(3, 5000, null, tuples);
+        TransactionId tid = new TransactionId();
+        Counter counter = new Counter(new SeqScan(tid, table.getId(), ""));
+        Materialize m = new Materialize(counter, maxRows);
+        m.open();
+        ArrayList<ArrayList<Integer>> first = readAll(m);
+        assertEquals(tuples.size(), first.size());
+        for (int i = 0; i < 3; i++) {
+            m.rewind();
+            assertEquals(first, readAll(m));
+        }
+        // the child ran once, whatever was spilled
+        assertEquals(tuples.size(), counter.rows);
+        assertEquals(spills, m.getSpilledRows() > 0);
+        m.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test public void inMemory() throws Exception {
+        replay(Materialize.DEFAULT_MAX_ROWS, false);
+    }
+
+    @Test public void spilled() throws Exception {
+        replay(1500, true);
+    }
+
+    /** A rewind in the middle of the first pass keeps the rest of the child. */
+    @Test public void rewindEarly() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 3000, null, tuples);
+        TransactionId tid = new TransactionId();
+        Materialize m = new Materialize(new SeqScan(tid, table.getId(), ""), 1000);
+        m.open();
+        for (int i = 0; i < 10; i++) {
+            m.next();
+        }
+        m.rewind();
+        SystemTestUtil.matchTuples(new BatchTupleIterator(m), tuples);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** A nested loop join replays its outer side from a spill file. */
+    @Test public void joinSpilledOuter() throws Exception {
+        ArrayList<ArrayList<Integer>> left = new ArrayList<ArrayList<Integer>>();
+        HeapFile l = SystemTestUtil.createRandomHeapFile(2, 3000, 200, null, left);
+        ArrayList<ArrayList<Integer>> right = new ArrayList<ArrayList<Integer>>();
+        HeapFile r = SystemTestUtil.createRandomHeapFile(2, 50, 200, null, right);
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> b : right) {
+            for (ArrayList<Integer> a : left) {
+                if (a.get(0) < b.get(1)) {
+                    ArrayList<Integer> row = new ArrayList<Integer>(a);
+                    row.addAll(b);
+                    expected.add(row);
+                }
+            }
+        }
+
+        TransactionId tid = new TransactionId();
+        Materialize outer = new Materialize(new SeqScan(tid, l.getId(), "l"), 1000);
+        Join j = new Join(new JoinPredicate(0, Predicate.Op.LESS_THAN, 1), outer, new SeqScan(tid, r.getId(), "r"));
+        SystemTestUtil.matchTuples(j, expected);
+        SystemTestUtil.matchTuples(new BatchTupleIterator(j), expected);
+        assertTrue(expected.size() > 0);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(MaterializeTest.class);
+    }
+}
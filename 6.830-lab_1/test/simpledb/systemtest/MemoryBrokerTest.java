@@ -0,0 +1,157 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import simpledb.Database;
+import simpledb.MemoryBroker;
+import simpledb.TransactionId;
+import simpledb.aggregates.Aggregator;
+import simpledb.file.HeapFile;
+import simpledb.operators.Aggregate;
+import simpledb.operators.Distinct;
+import simpledb.operators.Materialize;
+import simpledb.operators.OrderBy;
+import simpledb.operators.SemiJoin;
+import simpledb.operators.SeqScan;
+import simpledb.predicates.JoinPredicate;
+import simpledb.predicates.Predicate;
+
+public class MemoryBrokerTest extends SimpleDbTestBase {
+
+    /** Materialize spills once its query budget is used up, well before maxRows. */
+    @Test public void materializeSpills() throws Exception {
+        MemoryBroker broker = Database.getMemoryBroker();
+        broker.setBudgets(1 << 20, 50 * 1024);
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 5000, null, tuples);
+
+        TransactionId tid = new TransactionId();
+        Materialize m = new Materialize(new SeqScan(tid, table.getId(), ""));
+        m.open();
+        while (m.hasNext()) {
+            m.next();
+        }
+        assertTrue(m.getSpilledRows() > 0);
+        long reserved = broker.getReserved(null);
+        assertTrue(reserved > 0 && reserved <= 50 * 1024);
+        assertEquals(reserved, (long) broker.getReservations().get(null));
+        m.rewind();
+        int n = 0;
+        while (m.hasNext()) {
+            m.next();
+            n++;
+        }
+        assertEquals(tuples.size(), n);
+        m.close();
+        assertEquals(0, broker.getReserved());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test public void distinctSpills() throws Exception {
+        Database.getMemoryBroker().setBudgets(1 << 20, 100 * 1024);
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 20000, null, tuples);
+        ArrayList<ArrayList<Integer>> distinct = new ArrayList<ArrayList<Integer>>(
+                new HashSet<ArrayList<Integer>>(tuples));
+
+        TransactionId tid = new TransactionId();
+        Distinct d = new Distinct(new SeqScan(tid, table.getId(), ""));
+        d.open();
+        while (d.hasNext()) {
+            d.next();
+        }
+        assertTrue(d.getSpillCount() > 0);
+        d.close();
+        SystemTestUtil.matchTuples(d, distinct);
+        assertEquals(0, Database.getMemoryBroker().getReserved());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** The groups of an aggregate, then its results, are reserved, and given back on close. */
+    @Test public void aggregateReserves() throws Exception {
+        MemoryBroker broker = Database.getMemoryBroker();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 5000, null, new ArrayList<ArrayList<Integer>>());
+
+        TransactionId tid = new TransactionId();
+        Aggregate a = new Aggregate(new SeqScan(tid, table.getId(), ""), 1, 0, Aggregator.Op.SUM);
+        a.open();
+        int groups = 0;
+        while (a.hasNext()) {
+            a.next();
+            groups++;
+        }
+        assertTrue(broker.getReserved(null) >= groups * MemoryBroker.rowBytes(a.getTupleDesc()));
+        a.close();
+        assertEquals(0, broker.getReserved());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** The rows held by a sort and by the inner side of a semi-join are reserved, and given back on close. */
+    @Test public void sortAndSemiJoinReserve() throws Exception {
+        MemoryBroker broker = Database.getMemoryBroker();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 5000, null, new ArrayList<ArrayList<Integer>>());
+
+        TransactionId tid = new TransactionId();
+        OrderBy o = new OrderBy(0, true, new SeqScan(tid, table.getId(), ""));
+        o.open();
+        assertTrue(broker.getReserved(null) >= 5000 * MemoryBroker.rowBytes(o.getTupleDesc()));
+        o.close();
+        assertEquals(0, broker.getReserved());
+
+        SemiJoin s = new SemiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                new SeqScan(tid, table.getId(), ""), new SeqScan(tid, table.getId(), ""), false);
+        s.open();
+        assertTrue(s.hasNext());
+        assertTrue(broker.getReserved(null) >= 5000 * MemoryBroker.rowBytes(s.getTupleDesc()));
+        s.close();
+        assertEquals(0, broker.getReserved());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** A query waits to be admitted while another holds the global budget. */
+    @Test public void admissionWaits() throws Exception {
+        final MemoryBroker broker = new MemoryBroker(8000, 8000);
+        TransactionId first = new TransactionId();
+        broker.admit(first);
+        Database.getTempFileManager().setOwner(first);
+        MemoryBroker.Reservation r = broker.reserve();
+        Database.getTempFileManager().setOwner(null);
+        assertTrue(r.tryGrow(7500));
+        assertFalse(r.tryGrow(1000));
+        assertEquals(7500, (long) broker.getReservations().get(first));
+
+        final TransactionId second = new TransactionId();
+        final boolean[] admitted = new boolean[1];
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    broker.admit(second);
+                    admitted[0] = true;
+                } catch (Exception e) {
+                    // admitted stays false
+                }
+            }
+        };
+        t.start();
+        t.join(300);
+        assertFalse(admitted[0]);
+
+        // the first transaction completes
+        broker.release(first);
+        t.join(5000);
+        assertTrue(admitted[0]);
+        assertEquals(0, broker.getReserved());
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(MemoryBrokerTest.class);
+    }
+}
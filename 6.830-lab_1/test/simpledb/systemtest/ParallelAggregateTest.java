@@ -0,0 +1,103 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static simpledb.systemtest.SystemTestUtil.countTuples;
+import static simpledb.systemtest.SystemTestUtil.runTuples;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TransactionId;
+import simpledb.aggregates.Aggregator;
+import simpledb.file.HeapFile;
+import simpledb.operators.Aggregate;
+import simpledb.operators.DbIterator;
+import simpledb.operators.Exchange;
+import simpledb.operators.Filter;
+import simpledb.operators.ParallelAggregate;
+import simpledb.operators.ParallelHashJoin;
+import simpledb.operators.ParallelSeqScan;
+import simpledb.operators.SeqScan;
+import simpledb.predicates.JoinPredicate;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.IntField;
+
+public class ParallelAggregateTest extends SimpleDbTestBase {
+
+    // 3 int columns, about 340 tuples per page: enough pages for several morsels
+    private static final int ROWS = 30000;
+
+    private HeapFile table;
+    private TransactionId tid;
+
+    @Before public void createTable() throws Exception {
+        table = SystemTestUtil.createRandomHeapFile(3, ROWS, 500, null, new ArrayList<ArrayList<Integer>>());
+        tid = new TransactionId();
+    }
+
+    private ParallelSeqScan parallelScan(int workers) {
+        return new ParallelSeqScan(tid, table.getId(), "t", workers);
+    }
+
+    /** Every operator, with and without grouping, over a scan pushing partial aggregates. */
+    @Test public void overParallelScan() throws Exception {
+        int[] groups = { Aggregator.NO_GROUPING, 1 };
+        for (Aggregator.Op op : Aggregator.Op.values()) {
+            for (int g : groups) {
+                DbIterator serial = new Aggregate(new SeqScan(tid, table.getId(), "t"), 2, g, op);
+                DbIterator parallel = new ParallelAggregate(parallelScan(4), 2, g, op);
+                assertEquals(op + " grouped on " + g,
+                        countTuples(runTuples(serial)), countTuples(runTuples(parallel)));
+            }
+        }
+    }
+
+    /** Filters pushed into the scan run before the partial aggregates. */
+    @Test public void pushedFilterAndRewind() throws Exception {
+        Predicate p = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(100));
+        ParallelSeqScan scan = parallelScan(3);
+        scan.addFilter(p);
+        DbIterator serial = new Aggregate(new Filter(p, new SeqScan(tid, table.getId(), "t")),
+                2, 1, Aggregator.Op.AVG);
+        ParallelAggregate parallel = new ParallelAggregate(scan, 2, 1, Aggregator.Op.AVG);
+        HashMap<ArrayList<Integer>, Integer> expected = countTuples(runTuples(serial));
+        assertEquals(expected, countTuples(runTuples(parallel)));
+        parallel.open();
+        parallel.next();
+        parallel.rewind();
+        int rows = 0;
+        while (parallel.hasNext()) {
+            parallel.next();
+            rows++;
+        }
+        parallel.close();
+        assertEquals(expected.size(), rows);
+    }
+
+    /** Pipelines that are not scans are aggregated by a worker each. */
+    @Test public void overOtherPipelines() throws Exception {
+        DbIterator gathered = Exchange.gather(new DbIterator[] { parallelScan(2), parallelScan(2) });
+        DbIterator serial = new Aggregate(new SeqScan(tid, table.getId(), "t"), 2, 0, Aggregator.Op.SUM);
+        HashMap<ArrayList<Integer>, Integer> expected = new HashMap<ArrayList<Integer>, Integer>();
+        for (ArrayList<Integer> row : countTuples(runTuples(serial)).keySet()) {
+            ArrayList<Integer> doubled = new ArrayList<Integer>(row);
+            doubled.set(1, row.get(1) * 2);
+            expected.put(doubled, 1);
+        }
+        assertEquals(expected, countTuples(runTuples(new ParallelAggregate(gathered, 2, 0, Aggregator.Op.SUM))));
+
+        JoinPredicate jp = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        DbIterator join = new ParallelHashJoin(jp, parallelScan(2), parallelScan(2), 2);
+        DbIterator serialJoin = new ParallelHashJoin(jp, parallelScan(1), parallelScan(1), 1);
+        assertEquals(countTuples(runTuples(new Aggregate(serialJoin, 4, 1, Aggregator.Op.MAX))),
+                countTuples(runTuples(new ParallelAggregate(join, 4, 1, Aggregator.Op.MAX))));
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ParallelAggregateTest.class);
+    }
+}
@@ -0,0 +1,116 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static simpledb.systemtest.SystemTestUtil.countTuples;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TransactionId;
+import simpledb.file.HeapFile;
+import simpledb.operators.DbIterator;
+import simpledb.operators.Exchange;
+import simpledb.operators.ParallelHashJoin;
+import simpledb.operators.ParallelSeqScan;
+import simpledb.predicates.JoinPredicate;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.TupleBatch;
+
+public class ParallelHashJoinTest extends SimpleDbTestBase {
+
+    private HeapFile left;
+    private HeapFile right;
+    private ArrayList<ArrayList<Integer>> leftTuples;
+    private ArrayList<ArrayList<Integer>> rightTuples;
+    private TransactionId tid;
+
+    @Before public void createTables() throws Exception {
+        leftTuples = new ArrayList<ArrayList<Integer>>();
+        rightTuples = new ArrayList<ArrayList<Integer>>();
+        // few distinct keys, so that most of them match many tuples on both sides
+        left = SystemTestUtil.createRandomHeapFile(2, 3000, 200, null, leftTuples);
+        right = SystemTestUtil.createRandomHeapFile(3, 4000, 200, null, rightTuples);
+        tid = new TransactionId();
+    }
+
+    private static void add(HashMap<ArrayList<Integer>, Integer> counts, ArrayList<Integer> row) {
+        Integer c = counts.get(row);
+        counts.put(row, c == null ? 1 : c + 1);
+    }
+
+    /** @return the expected output of left.f1 = right.f2, counted by row. */
+    private HashMap<ArrayList<Integer>, Integer> expected(int f1, int f2) {
+        HashMap<ArrayList<Integer>, Integer> counts = new HashMap<ArrayList<Integer>, Integer>();
+        for (ArrayList<Integer> l : leftTuples) {
+            for (ArrayList<Integer> r : rightTuples) {
+                if (l.get(f1).equals(r.get(f2))) {
+                    ArrayList<Integer> row = new ArrayList<Integer>(l);
+                    row.addAll(r);
+                    add(counts, row);
+                }
+            }
+        }
+        return counts;
+    }
+
+    private ParallelHashJoin join(int f1, int f2, int parallelism) {
+        JoinPredicate p = new JoinPredicate(f1, Predicate.Op.EQUALS, f2);
+        return new ParallelHashJoin(p,
+                new ParallelSeqScan(tid, left.getId(), "l", 2),
+                new ParallelSeqScan(tid, right.getId(), "r", 2),
+                parallelism);
+    }
+
+    @Test public void matchesNestedLoops() throws Exception {
+        for (int parallelism = 1; parallelism <= 4; parallelism *= 2) {
+            ParallelHashJoin j = join(0, 1, parallelism);
+            j.open();
+            assertEquals(expected(0, 1), countTuples(j));
+            j.close();
+        }
+    }
+
+    @Test public void batchesAndRewind() throws Exception {
+        ParallelHashJoin j = join(1, 2, 3);
+        HashMap<ArrayList<Integer>, Integer> expected = expected(1, 2);
+        int rows = 0;
+        for (Integer c : expected.values()) {
+            rows += c;
+        }
+        j.open();
+        j.nextBatch();
+        j.rewind();
+        int seen = 0;
+        for (TupleBatch b = j.nextBatch(); b != null; b = j.nextBatch()) {
+            seen += b.numRows();
+        }
+        assertEquals(rows, seen);
+        j.rewind();
+        assertEquals(expected, countTuples(j));
+        j.close();
+    }
+
+    /** Gathered inputs are partitioned by each of the pipelines they gather. */
+    @Test public void gatheredInputs() throws Exception {
+        DbIterator l = Exchange.gather(new DbIterator[] {
+                new ParallelSeqScan(tid, left.getId(), "l", 1),
+                new ParallelSeqScan(tid, left.getId(), "l", 1) });
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        ParallelHashJoin j = new ParallelHashJoin(p, l, new ParallelSeqScan(tid, right.getId(), "r", 2), 2);
+        HashMap<ArrayList<Integer>, Integer> expected = expected(0, 0);
+        for (ArrayList<Integer> row : expected.keySet()) {
+            expected.put(row, expected.get(row) * 2);
+        }
+        j.open();
+        assertEquals(expected, countTuples(j));
+        j.close();
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ParallelHashJoinTest.class);
+    }
+}
@@ -0,0 +1,126 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static simpledb.systemtest.SystemTestUtil.countTuples;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.file.HeapFile;
+import simpledb.logicalplan.LogicalPlan;
+import simpledb.operators.DbIterator;
+import simpledb.operators.ParallelSeqScan;
+import simpledb.operators.Project;
+import simpledb.optimizing.statistics.TableStats;
+import simpledb.parser.Parser;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.IntField;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.Type;
+
+public class ParallelScanTest extends SimpleDbTestBase {
+
+    // 2 int columns, about 500 tuples per page: 100 pages, 7 morsels
+    private static final int ROWS = 50000;
+
+    private HeapFile table;
+    private ArrayList<ArrayList<Integer>> tuples;
+    private TransactionId tid;
+
+    @Before public void createTable() throws Exception {
+        tuples = new ArrayList<ArrayList<Integer>>();
+        table = SystemTestUtil.createRandomHeapFile(2, ROWS, 1000, null, tuples, "c");
+        Database.getCatalog().addTable(table, "ptable");
+        tid = new TransactionId();
+    }
+
+    @Test public void scanAll() throws Exception {
+        ParallelSeqScan scan = new ParallelSeqScan(tid, table.getId(), "t", 4);
+        scan.open();
+        assertEquals(countTuples(tuples), countTuples(scan));
+        scan.close();
+    }
+
+    @Test public void pushedFilterAndRewind() throws Exception {
+        ParallelSeqScan scan = new ParallelSeqScan(tid, table.getId(), "t", 4);
+        scan.addFilter(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(100)));
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> row : tuples) {
+            if (row.get(1) < 100) {
+                expected.add(row);
+            }
+        }
+        scan.open();
+        // read part of the output, then start over
+        scan.nextBatch();
+        scan.rewind();
+        assertEquals(countTuples(expected), countTuples(scan));
+        scan.rewind();
+        int rows = 0;
+        for (TupleBatch b = scan.nextBatch(); b != null; b = scan.nextBatch()) {
+            rows += b.numRows();
+        }
+        assertEquals(expected.size(), rows);
+        scan.close();
+    }
+
+    @Test public void workerPipeline() throws Exception {
+        ParallelSeqScan scan = new ParallelSeqScan(tid, table.getId(), "t", 3);
+        scan.setPipeline(new ParallelSeqScan.WorkerPipeline() {
+            public DbIterator build(DbIterator in) {
+                ArrayList<Integer> fields = new ArrayList<Integer>();
+                fields.add(1);
+                ArrayList<Type> types = new ArrayList<Type>();
+                types.add(Type.INT_TYPE);
+                return new Project(fields, types, in);
+            }
+        });
+        assertEquals(1, scan.getTupleDesc().numFields());
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> row : tuples) {
+            ArrayList<Integer> projected = new ArrayList<Integer>();
+            projected.add(row.get(1));
+            expected.add(projected);
+        }
+        scan.open();
+        assertEquals(countTuples(expected), countTuples(scan));
+        scan.close();
+    }
+
+    /** A query planned with a parallelism greater than one uses parallel scans. */
+    @Test public void parallelQuery() throws Exception {
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put("ptable", new TableStats(table.getId(), 1000));
+        Parser.setStatsMap(stats);
+        int old = Parser.parallelism;
+        try {
+            Parser.parallelism = 4;
+            LogicalPlan lp = Parser.generateLogicalPlan(tid, "SELECT t.c0 FROM ptable t WHERE t.c0 >= 500;");
+            assertEquals(4, lp.getParallelism());
+            DbIterator plan = lp.physicalPlan(tid, stats, false);
+            ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+            for (ArrayList<Integer> row : tuples) {
+                if (row.get(0) >= 500) {
+                    ArrayList<Integer> projected = new ArrayList<Integer>();
+                    projected.add(row.get(0));
+                    expected.add(projected);
+                }
+            }
+            plan.open();
+            assertEquals(countTuples(expected), countTuples(plan));
+            plan.close();
+        } finally {
+            Parser.parallelism = old;
+        }
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ParallelScanTest.class);
+    }
+}
@@ -0,0 +1,168 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static simpledb.systemtest.SystemTestUtil.countTuples;
+import static simpledb.systemtest.SystemTestUtil.runTuples;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.aggregates.Aggregator;
+import simpledb.file.HeapFile;
+import simpledb.logicalplan.LogicalPlan;
+import simpledb.operators.Aggregate;
+import simpledb.operators.DbIterator;
+import simpledb.operators.Filter;
+import simpledb.operators.Join;
+import simpledb.operators.OrderBy;
+import simpledb.operators.Project;
+import simpledb.operators.SeqScan;
+import simpledb.optimizing.statistics.TableStats;
+import simpledb.parser.Parser;
+import simpledb.pipeline.PipelineCompiler;
+import simpledb.pipeline.PipelinedPlan;
+import simpledb.predicates.JoinPredicate;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.IntField;
+import simpledb.tuple.Type;
+
+public class PipelineTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 3000;
+
+    private HeapFile a;
+    private HeapFile b;
+    private TransactionId tid;
+
+    @Before public void createTables() throws Exception {
+        a = SystemTestUtil.createRandomHeapFile(3, ROWS, 200, null, new ArrayList<ArrayList<Integer>>(), "c");
+        b = SystemTestUtil.createRandomHeapFile(2, ROWS, 200, null, new ArrayList<ArrayList<Integer>>(), "c");
+        Database.getCatalog().addTable(a, "atable");
+        Database.getCatalog().addTable(b, "btable");
+        tid = new TransactionId();
+    }
+
+    private SeqScan scan(HeapFile f) {
+        return new SeqScan(tid, f.getId(), "t");
+    }
+
+    private static Predicate lessThan(int field, int value) {
+        return new Predicate(field, Predicate.Op.LESS_THAN, new IntField(value));
+    }
+
+    private Project project(DbIterator child, int... fields) {
+        ArrayList<Integer> f = new ArrayList<Integer>();
+        ArrayList<Type> types = new ArrayList<Type>();
+        for (int i : fields) {
+            f.add(i);
+            types.add(Type.INT_TYPE);
+        }
+        return new Project(f, types, child);
+    }
+
+    @Test public void filterAndProject() throws Exception {
+        DbIterator pull = project(new Filter(lessThan(0, 50), new Filter(lessThan(1, 150), scan(a))), 2, 0);
+        DbIterator push = PipelineCompiler.compile(
+                project(new Filter(lessThan(0, 50), new Filter(lessThan(1, 150), scan(a))), 2, 0));
+        assertTrue(push instanceof PipelinedPlan);
+        ArrayList<ArrayList<Integer>> expected = runTuples(pull);
+        assertTrue(expected.size() > 0);
+        // nothing blocks between the scan and the output, so the order is kept
+        assertEquals(expected, runTuples(push));
+    }
+
+    @Test public void hashJoinIntoAggregate() throws Exception {
+        JoinPredicate eq = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        DbIterator pull = new Aggregate(new Join(eq, new Filter(lessThan(1, 100), scan(a)), scan(b)),
+                4, 0, Aggregator.Op.SUM);
+        DbIterator push = PipelineCompiler.compile(new Aggregate(
+                new Join(eq, new Filter(lessThan(1, 100), scan(a)), scan(b)), 4, 0, Aggregator.Op.SUM));
+        assertEquals(2, ((PipelinedPlan) push).getDependencies().size());
+        HashMap<ArrayList<Integer>, Integer> expected = countTuples(runTuples(pull));
+        assertTrue(expected.size() > 0);
+        assertEquals(expected, countTuples(runTuples(push)));
+    }
+
+    @Test public void orderByAfterJoin() throws Exception {
+        JoinPredicate eq = new JoinPredicate(1, Predicate.Op.EQUALS, 1);
+        int[] fields = { 3, 0, 4 };
+        boolean[] asc = { false, true, true };
+        DbIterator pull = new OrderBy(fields, asc, new Join(eq, scan(a), new Filter(lessThan(0, 20), scan(b))));
+        DbIterator push = PipelineCompiler.compile(
+                new OrderBy(fields, asc, new Join(eq, scan(a), new Filter(lessThan(0, 20), scan(b)))));
+        ArrayList<ArrayList<Integer>> expected = runTuples(pull);
+        ArrayList<ArrayList<Integer>> actual = runTuples(push);
+        assertEquals(countTuples(expected), countTuples(actual));
+        for (int i = 1; i < actual.size(); i++) {
+            ArrayList<Integer> prev = actual.get(i - 1), row = actual.get(i);
+            assertTrue(prev.get(3) > row.get(3) || prev.get(3).equals(row.get(3)) && prev.get(0) <= row.get(0));
+        }
+    }
+
+    /** Joins other than equality joins keep their nested loops, over pipelined inputs. */
+    @Test public void nonEquiJoinFallsBack() throws Exception {
+        JoinPredicate lt = new JoinPredicate(0, Predicate.Op.LESS_THAN, 1);
+        DbIterator pull = new Join(lt, new Filter(lessThan(0, 5), scan(a)), new Filter(lessThan(0, 30), scan(b)));
+        DbIterator push = PipelineCompiler.compile(
+                new Join(lt, new Filter(lessThan(0, 5), scan(a)), new Filter(lessThan(0, 30), scan(b))));
+        HashMap<ArrayList<Integer>, Integer> expected = countTuples(runTuples(pull));
+        assertTrue(expected.size() > 0);
+        assertEquals(expected, countTuples(runTuples(push)));
+    }
+
+    /** Rewinding runs the probe pipeline again over the hash table already built. */
+    @Test public void rewind() throws Exception {
+        JoinPredicate eq = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        DbIterator push = PipelineCompiler.compile(
+                project(new Join(eq, new Filter(lessThan(1, 20), scan(a)), scan(b)), 0, 4));
+        push.open();
+        HashMap<ArrayList<Integer>, Integer> first = countTuples(push);
+        assertTrue(first.size() > 0);
+        push.rewind();
+        push.next();
+        push.rewind();
+        assertEquals(first, countTuples(push));
+        push.close();
+    }
+
+    private HashMap<ArrayList<Integer>, Integer> runQuery(String query, boolean pipelined) throws Exception {
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put("atable", new TableStats(a.getId(), 1000));
+        stats.put("btable", new TableStats(b.getId(), 1000));
+        Parser.setStatsMap(stats);
+        boolean old = Parser.pipelined;
+        try {
+            Parser.pipelined = pipelined;
+            LogicalPlan lp = Parser.generateLogicalPlan(tid, query);
+            DbIterator plan = lp.physicalPlan(tid, stats, false);
+            assertEquals(pipelined, plan instanceof PipelinedPlan);
+            return countTuples(runTuples(plan));
+        } finally {
+            Parser.pipelined = old;
+        }
+    }
+
+    @Test public void parsedQueries() throws Exception {
+        String[] queries = {
+            "SELECT atable.c2 FROM atable WHERE atable.c0 < 40 AND atable.c1 > 20;",
+            "SELECT atable.c0 FROM atable, btable WHERE atable.c0 = btable.c0 AND btable.c1 < 50;",
+            "SELECT atable.c0, SUM(btable.c1) FROM atable, btable WHERE atable.c0 = btable.c0 GROUP BY atable.c0;",
+        };
+        for (String q : queries) {
+            HashMap<ArrayList<Integer>, Integer> pull = runQuery(q, false);
+            assertTrue(q, pull.size() > 0);
+            assertEquals(q, pull, runQuery(q, true));
+        }
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(PipelineTest.class);
+    }
+}
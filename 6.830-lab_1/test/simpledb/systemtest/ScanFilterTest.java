@@ -0,0 +1,135 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.file.HeapFile;
+import simpledb.file.HeapFileEncoder;
+import simpledb.operators.BatchAdapter;
+import simpledb.operators.BatchTupleIterator;
+import simpledb.operators.DbIterator;
+import simpledb.operators.Filter;
+import simpledb.operators.SeqScan;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.IntField;
+import simpledb.tuple.StringField;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleDesc;
+import simpledb.tuple.Type;
+
+public class ScanFilterTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 3000;
+    private static final String[] WORDS = { "apple", "apricot", "banana", "cherry", "berry", "", "app" };
+
+    private HeapFile ints;
+    private HeapFile strings;
+    private TransactionId tid;
+
+    @Before public void createTables() throws Exception {
+        ints = SystemTestUtil.createRandomHeapFile(3, ROWS, 100, null, new ArrayList<ArrayList<Integer>>());
+
+        // a table of (int, string) rows
+        File text = File.createTempFile("strings", ".txt");
+        text.deleteOnExit();
+        FileWriter w = new FileWriter(text);
+        Random r = new Random(7);
+        for (int i = 0; i < ROWS; i++) {
+            w.write(r.nextInt(100) + "," + WORDS[r.nextInt(WORDS.length)] + r.nextInt(3) + "\n");
+        }
+        w.close();
+        File data = File.createTempFile("strings", ".dat");
+        data.deleteOnExit();
+        Type[] types = { Type.INT_TYPE, Type.STRING_TYPE };
+        HeapFileEncoder.convert(text, data, BufferPool.PAGE_SIZE, 2, types);
+        strings = new HeapFile(data, new TupleDesc(types, new String[] { "i", "s" }));
+        Database.getCatalog().addTable(strings, SystemTestUtil.getUUID());
+        tid = new TransactionId();
+    }
+
+    private static HashMap<String, Integer> count(DbIterator it) throws Exception {
+        HashMap<String, Integer> counts = new HashMap<String, Integer>();
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            String row = t.getField(0) + "|" + t.getField(1);
+            Integer c = counts.get(row);
+            counts.put(row, c == null ? 1 : c + 1);
+        }
+        it.close();
+        return counts;
+    }
+
+    /** Compares a scan with p pushed into it, read both ways, with a Filter over a scan. */
+    private void check(HeapFile f, Predicate p) throws Exception {
+        HashMap<String, Integer> expected = count(new Filter(p, new SeqScan(tid, f.getId(), "t")));
+        SeqScan pushed = new SeqScan(tid, f.getId(), "t");
+        pushed.addFilter(p);
+        assertEquals(p.toString(), expected, count(pushed));
+        SeqScan batches = new SeqScan(tid, f.getId(), "t");
+        batches.addFilter(p);
+        assertEquals(p.toString(), expected, count(new BatchTupleIterator(BatchAdapter.wrap(batches))));
+    }
+
+    @Test public void intPredicates() throws Exception {
+        for (Predicate.Op op : Predicate.Op.values()) {
+            check(ints, new Predicate(1, op, new IntField(50)));
+        }
+        // nothing passes: every page is skipped
+        check(ints, new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(1000)));
+    }
+
+    @Test public void stringPredicates() throws Exception {
+        String[] operands = { "apple1", "app", "berry2", "", "zzz", "a" };
+        for (String s : operands) {
+            for (Predicate.Op op : Predicate.Op.values()) {
+                check(strings, new Predicate(1, op, new StringField(s, Type.STRING_LEN)));
+            }
+        }
+    }
+
+    @Test public void conjunction() throws Exception {
+        Predicate p1 = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(40));
+        Predicate p2 = new Predicate(1, Predicate.Op.LIKE, new StringField("rr", Type.STRING_LEN));
+        HashMap<String, Integer> expected = count(new Filter(p2, new Filter(p1, new SeqScan(tid, strings.getId(), "t"))));
+        assertTrue(expected.size() > 0);
+        SeqScan pushed = new SeqScan(tid, strings.getId(), "t");
+        pushed.addFilter(p1);
+        pushed.addFilter(p2);
+        assertEquals(expected, count(pushed));
+        assertEquals(2, pushed.getFilters().size());
+    }
+
+    /** Rows passing the filters are decoded without the filtered fields. */
+    @Test public void filteredFieldsNeedNotBeDecoded() throws Exception {
+        SeqScan scan = new SeqScan(tid, strings.getId(), "t");
+        scan.addFilter(new Predicate(1, Predicate.Op.EQUALS, new StringField("cherry0", Type.STRING_LEN)));
+        scan.setFields(new int[] { 0 });
+        DbIterator it = new BatchTupleIterator(BatchAdapter.wrap(scan));
+        int rows = 0;
+        it.open();
+        while (it.hasNext()) {
+            assertEquals(null, it.next().getField(1));
+            rows++;
+        }
+        it.close();
+        assertTrue(rows > 0);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ScanFilterTest.class);
+    }
+}
@@ -0,0 +1,291 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.Database;
+import simpledb.Transaction;
+import simpledb.TransactionId;
+import simpledb.Utility;
+import simpledb.exceptions.TransactionAbortedException;
+import simpledb.file.DbFileIterator;
+import simpledb.file.HeapFile;
+import simpledb.file.SecondaryIndex;
+import simpledb.operators.DbIterator;
+import simpledb.operators.Delete;
+import simpledb.operators.Filter;
+import simpledb.operators.Insert;
+import simpledb.operators.SeqScan;
+import simpledb.operators.TupleArrayIterator;
+import simpledb.operators.Update;
+import simpledb.page.BTreePage;
+import simpledb.parser.Parser;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.Field;
+import simpledb.tuple.IntField;
+import simpledb.tuple.Tuple;
+
+public class SecondaryIndexTest extends SimpleDbTestBase {
+
+    /** Transactions here dirty more pages than the default buffer pool holds. */
+    @Before public void largerBufferPool() {
+        Database.resetBufferPool(1000);
+    }
+
+    private static SecondaryIndex createIndex(HeapFile table, int field) throws Exception {
+        File f = File.createTempFile("index", ".dat");
+        f.deleteOnExit();
+        TransactionId tid = new TransactionId();
+        SecondaryIndex index = SecondaryIndex.create(tid, SystemTestUtil.getUUID(), table.getId(), field, f);
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getCatalog().addIndex(index);
+        return index;
+    }
+
+    /** Checks that index holds exactly one entry for each tuple of table, in key order. */
+    private static void checkIndex(SecondaryIndex index, HeapFile table) throws Exception {
+        TransactionId tid = new TransactionId();
+        ArrayList<String> expected = new ArrayList<String>();
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            expected.add(t.getField(index.getField()) + " " + t.getRecordId().getPageId().pageno()
+                    + " " + t.getRecordId().tupleno());
+        }
+        it.close();
+
+        ArrayList<String> actual = new ArrayList<String>();
+        Field last = null;
+        it = index.getFile().iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple e = it.next();
+            assertTrue(last == null || BTreePage.compare(last, e.getField(0)) <= 0);
+            last = e.getField(0);
+            actual.add(e.getField(0) + " " + index.getRecordId(e).getPageId().pageno()
+                    + " " + index.getRecordId(e).tupleno());
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+    }
+
+    private static int run(DbIterator op) throws Exception {
+        op.open();
+        int n = ((IntField) op.next().getField(0)).getValue();
+        op.close();
+        return n;
+    }
+
+    private static ArrayList<Tuple> newTuples(int n, int first) {
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < n; i++) {
+            tuples.add(Utility.getHeapTuple(new int[] { first + i, (first + i) % 97, i }));
+        }
+        return tuples;
+    }
+
+    /** An index built by a bulk load is a B+ tree like any other. */
+    @Test public void bulkLoad() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(3, 30000, 1000, null,
+                new ArrayList<ArrayList<Integer>>());
+        SecondaryIndex index = createIndex(table, 1);
+        assertEquals(1, Database.getCatalog().getIndexes(table.getId()).size());
+        TransactionId tid = new TransactionId();
+        assertTrue(index.getFile().height(tid) >= 2);
+        Database.getBufferPool().transactionComplete(tid);
+        checkIndex(index, table);
+
+        // the tree splits as usual after the load
+        tid = new TransactionId();
+        run(new Insert(tid, new TupleArrayIterator(newTuples(5000, 0)), table.getId()));
+        Database.getBufferPool().transactionComplete(tid);
+        checkIndex(index, table);
+    }
+
+    /** Inserts, deletes and updates keep the index in step with its table. */
+    @Test public void maintained() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(3, 2000, 100, null,
+                new ArrayList<ArrayList<Integer>>());
+        SecondaryIndex index = createIndex(table, 1);
+        SecondaryIndex other = createIndex(table, 2);
+
+        TransactionId tid = new TransactionId();
+        run(new Insert(tid, new TupleArrayIterator(newTuples(1000, 1000)), table.getId()));
+        Database.getBufferPool().transactionComplete(tid);
+        checkIndex(index, table);
+
+        tid = new TransactionId();
+        assertTrue(run(new Delete(tid, table.getId(), new Filter(
+                new Predicate(0, Predicate.Op.LESS_THAN, new IntField(30)),
+                new SeqScan(tid, table.getId(), "")))) > 0);
+        Database.getBufferPool().transactionComplete(tid);
+        checkIndex(index, table);
+
+        tid = new TransactionId();
+        assertTrue(run(new Update(tid, table.getId(), new Filter(
+                new Predicate(2, Predicate.Op.GREATER_THAN, new IntField(50)),
+                new SeqScan(tid, table.getId(), "")), new int[] { 1 }, new Field[] { new IntField(-7) })) > 0);
+        Database.getBufferPool().transactionComplete(tid);
+        checkIndex(index, table);
+        checkIndex(other, table);
+
+        tid = new TransactionId();
+        run(new Insert(tid, new TupleArrayIterator(newTuples(3000, 5000)), table.getId(), true));
+        Database.getBufferPool().transactionComplete(tid);
+        checkIndex(index, table);
+        checkIndex(other, table);
+    }
+
+    /** Changes to the index are rolled back with those to the table. */
+    @Test public void abort() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(3, 2000, 100, null,
+                new ArrayList<ArrayList<Integer>>());
+        SecondaryIndex index = createIndex(table, 0);
+
+        TransactionId tid = new TransactionId();
+        run(new Insert(tid, new TupleArrayIterator(newTuples(1000, 0)), table.getId()));
+        run(new Delete(tid, table.getId(), new Filter(
+                new Predicate(1, Predicate.Op.LESS_THAN, new IntField(50)),
+                new SeqScan(tid, table.getId(), ""))));
+        run(new Insert(tid, new TupleArrayIterator(newTuples(2000, 0)), table.getId(), true));
+        Database.getBufferPool().transactionComplete(tid, false);
+        checkIndex(index, table);
+    }
+
+    /** CREATE INDEX builds and registers an index of a table of the catalog. */
+    @Test public void createIndexStatement() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(3, 3000, 100, null,
+                new ArrayList<ArrayList<Integer>>(), "c");
+        Database.getCatalog().addTable(table, "indexed");
+        String name = "idx_" + SystemTestUtil.getUUID().replace('-', '_');
+        File f = new File(table.getFile().getAbsoluteFile().getParentFile(), name + ".idx");
+        f.deleteOnExit();
+
+        Transaction t = new Transaction();
+        t.start();
+        Parser.setTransaction(t);
+        Parser.processNextStatement("CREATE INDEX " + name + " ON indexed (indexed.c2);");
+        t.commit();
+        Parser.setTransaction(null);
+
+        assertEquals(1, Database.getCatalog().getIndexes(table.getId()).size());
+        SecondaryIndex index = Database.getCatalog().getIndexes(table.getId()).get(0);
+        assertEquals(name, index.getName());
+        assertEquals(2, index.getField());
+        assertEquals(f.getAbsoluteFile(), index.getFile().getFile().getAbsoluteFile());
+        checkIndex(index, table);
+    }
+
+    /** Until its creator commits, an index is its own, and other writers of the table abort. */
+    @Test public void createIndexPending() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(3, 3000, 100, null,
+                new ArrayList<ArrayList<Integer>>(), "c");
+        Database.getCatalog().addTable(table, "indexed");
+        String name = "idx_" + SystemTestUtil.getUUID().replace('-', '_');
+        new File(table.getFile().getAbsoluteFile().getParentFile(), name + ".idx").deleteOnExit();
+
+        Transaction t = new Transaction();
+        t.start();
+        Parser.setTransaction(t);
+        Parser.processNextStatement("CREATE INDEX " + name + " ON indexed (indexed.c2);");
+        assertTrue(Database.getCatalog().getIndexes(table.getId()).isEmpty());
+        assertEquals(1, Database.getCatalog().getIndexes(t.getId(), table.getId()).size());
+        TransactionId other = new TransactionId();
+        try {
+            Database.getBufferPool().insertTuple(other, table.getId(), newTuples(1, 0).get(0));
+            fail("another transaction wrote to a table being indexed");
+        } catch (TransactionAbortedException e) {
+            // expected
+        }
+        Database.getBufferPool().transactionComplete(other, false);
+        t.commit();
+        Parser.setTransaction(null);
+
+        assertEquals(1, Database.getCatalog().getIndexes(table.getId()).size());
+        checkIndex(Database.getCatalog().getIndexes(table.getId()).get(0), table);
+    }
+
+    /** An index created by a transaction that aborts is dropped, with its file. */
+    @Test public void createIndexAborted() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(3, 3000, 100, null,
+                new ArrayList<ArrayList<Integer>>(), "c");
+        Database.getCatalog().addTable(table, "indexed");
+        String name = "idx_" + SystemTestUtil.getUUID().replace('-', '_');
+        File f = new File(table.getFile().getAbsoluteFile().getParentFile(), name + ".idx");
+        f.deleteOnExit();
+
+        Transaction t = new Transaction();
+        t.start();
+        Parser.setTransaction(t);
+        Parser.processNextStatement("CREATE INDEX " + name + " ON indexed (indexed.c2);");
+        assertTrue(f.exists());
+        t.transactionComplete(true);
+        Parser.setTransaction(null);
+
+        assertTrue(Database.getCatalog().getIndexes(table.getId()).isEmpty());
+        assertFalse(f.exists());
+        try {
+            Database.getCatalog().getTableId(name);
+            fail("the index file is still a table");
+        } catch (NoSuchElementException e) {
+            // dropped
+        }
+    }
+
+    /** A committed index is written to the schema file, and loaded again with its table. */
+    @Test public void createIndexSaved() throws Exception {
+        String table = "saved_" + SystemTestUtil.getUUID().replace('-', '_');
+        String name = "idx_" + SystemTestUtil.getUUID().replace('-', '_');
+        File data = new File(table + ".dat");
+        File idx = new File(name + ".idx");
+        data.deleteOnExit();
+        idx.deleteOnExit();
+        File schema = File.createTempFile("catalog", ".txt");
+        schema.deleteOnExit();
+        FileWriter out = new FileWriter(schema);
+        out.write(table + " (a int, b int, c int)\n");
+        out.close();
+        Database.getCatalog().loadSchema(schema.getPath());
+
+        Transaction t = new Transaction();
+        t.start();
+        Parser.setTransaction(t);
+        Parser.processNextStatement("INSERT INTO " + table + " VALUES (1, 2, 3);");
+        Parser.processNextStatement("CREATE INDEX " + name + " ON " + table + " (b) INCLUDE (c);");
+        t.commit();
+        Parser.setTransaction(null);
+
+        Database.reset();
+        Database.getCatalog().loadSchema(schema.getPath());
+        int tableid = Database.getCatalog().getTableId(table);
+        assertEquals(1, Database.getCatalog().getIndexes(tableid).size());
+        SecondaryIndex index = Database.getCatalog().getIndexes(tableid).get(0);
+        assertEquals(name, index.getName());
+        assertEquals(1, index.getField());
+        assertArrayEquals(new int[] { 2 }, index.getIncluded());
+        assertEquals(idx.getAbsoluteFile(), index.getFile().getFile().getAbsoluteFile());
+        checkIndex(index, (HeapFile) Database.getCatalog().getDbFile(tableid));
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(SecondaryIndexTest.class);
+    }
+}
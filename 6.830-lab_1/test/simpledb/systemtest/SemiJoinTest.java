@@ -0,0 +1,166 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static simpledb.systemtest.SystemTestUtil.runTuples;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Vector;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.file.HeapFile;
+import simpledb.logicalplan.LogicalJoinNode;
+import simpledb.logicalplan.LogicalPlan;
+import simpledb.logicalplan.LogicalSubplanJoinNode;
+import simpledb.operators.BatchTupleIterator;
+import simpledb.operators.DbIterator;
+import simpledb.operators.Filter;
+import simpledb.operators.SemiJoin;
+import simpledb.operators.SeqScan;
+import simpledb.optimizing.JoinOptimizer;
+import simpledb.optimizing.statistics.TableStats;
+import simpledb.parser.Parser;
+import simpledb.predicates.JoinPredicate;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.IntField;
+
+public class SemiJoinTest extends SimpleDbTestBase {
+
+    private HeapFile a;
+    private HeapFile b;
+    private ArrayList<ArrayList<Integer>> aTuples;
+    private ArrayList<ArrayList<Integer>> bTuples;
+    private TransactionId tid;
+
+    @Before public void createTables() throws Exception {
+        aTuples = new ArrayList<ArrayList<Integer>>();
+        bTuples = new ArrayList<ArrayList<Integer>>();
+        a = SystemTestUtil.createRandomHeapFile(2, 2000, 300, null, aTuples, "c");
+        b = SystemTestUtil.createRandomHeapFile(2, 400, 300, null, bTuples, "c");
+        Database.getCatalog().addTable(a, "atable");
+        Database.getCatalog().addTable(b, "btable");
+        tid = new TransactionId();
+    }
+
+    /** The rows of a, in order, whose first field satisfies op with the first field of some row of b. */
+    private ArrayList<ArrayList<Integer>> expected(Predicate.Op op, boolean anti) {
+        ArrayList<ArrayList<Integer>> out = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> row : aTuples) {
+            boolean match = false;
+            for (ArrayList<Integer> inner : bTuples) {
+                if (new IntField(row.get(0)).compare(op, new IntField(inner.get(0)))) {
+                    match = true;
+                    break;
+                }
+            }
+            if (match != anti) {
+                out.add(row);
+            }
+        }
+        return out;
+    }
+
+    private SemiJoin semiJoin(Predicate.Op op, boolean anti) {
+        return new SemiJoin(new JoinPredicate(0, op, 0),
+                new SeqScan(tid, a.getId(), "a"), new SeqScan(tid, b.getId(), "b"), anti);
+    }
+
+    /** Every outer row comes out at most once, in order, whatever the predicate. */
+    @Test public void semiAndAnti() throws Exception {
+        Predicate.Op[] ops = { Predicate.Op.EQUALS, Predicate.Op.LESS_THAN, Predicate.Op.GREATER_THAN_OR_EQ,
+                Predicate.Op.NOT_EQUALS };
+        for (Predicate.Op op : ops) {
+            ArrayList<ArrayList<Integer>> semi = expected(op, false);
+            ArrayList<ArrayList<Integer>> anti = expected(op, true);
+            assertEquals(op.toString(), semi, runTuples(semiJoin(op, false)));
+            assertEquals(op.toString(), anti, runTuples(semiJoin(op, true)));
+            assertEquals(aTuples.size(), semi.size() + anti.size());
+        }
+    }
+
+    @Test public void batchesAndRewind() throws Exception {
+        SemiJoin join = semiJoin(Predicate.Op.EQUALS, false);
+        ArrayList<ArrayList<Integer>> expected = expected(Predicate.Op.EQUALS, false);
+        join.open();
+        join.next();
+        join.rewind();
+        ArrayList<ArrayList<Integer>> actual = new ArrayList<ArrayList<Integer>>();
+        DbIterator it = new BatchTupleIterator(join);
+        while (it.hasNext()) {
+            actual.add(SystemTestUtil.tupleToList(it.next()));
+        }
+        join.close();
+        assertEquals(expected, actual);
+    }
+
+    @Test public void exists() throws Exception {
+        DbIterator empty = new Filter(new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(1000)),
+                new SeqScan(tid, b.getId(), "b"));
+        assertEquals(aTuples, runTuples(new SemiJoin(null, new SeqScan(tid, a.getId(), "a"),
+                new SeqScan(tid, b.getId(), "b"), false)));
+        assertEquals(0, runTuples(new SemiJoin(null, new SeqScan(tid, a.getId(), "a"), empty, false)).size());
+        assertEquals(aTuples, runTuples(new SemiJoin(null, new SeqScan(tid, a.getId(), "a"), empty, true)));
+    }
+
+    private HashSet<ArrayList<Integer>> runQuery(String query) throws Exception {
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put("atable", new TableStats(a.getId(), 1000));
+        stats.put("btable", new TableStats(b.getId(), 1000));
+        Parser.setStatsMap(stats);
+        LogicalPlan lp = Parser.generateLogicalPlan(tid, query);
+        return new HashSet<ArrayList<Integer>>(runTuples(lp.physicalPlan(tid, stats, false)));
+    }
+
+    private HashSet<ArrayList<Integer>> firstFields(ArrayList<ArrayList<Integer>> rows) {
+        HashSet<ArrayList<Integer>> out = new HashSet<ArrayList<Integer>>();
+        for (ArrayList<Integer> row : rows) {
+            ArrayList<Integer> f = new ArrayList<Integer>();
+            f.add(row.get(0));
+            out.add(f);
+        }
+        return out;
+    }
+
+    @Test public void subqueries() throws Exception {
+        assertEquals(firstFields(expected(Predicate.Op.EQUALS, false)),
+                runQuery("SELECT atable.c0 FROM atable WHERE atable.c0 IN (SELECT btable.c0 FROM btable);"));
+        assertEquals(firstFields(expected(Predicate.Op.EQUALS, true)),
+                runQuery("SELECT atable.c0 FROM atable WHERE atable.c0 NOT IN (SELECT btable.c0 FROM btable);"));
+        assertEquals(firstFields(aTuples),
+                runQuery("SELECT atable.c0 FROM atable WHERE EXISTS (SELECT btable.c0 FROM btable);"));
+        assertEquals(0, runQuery("SELECT atable.c0 FROM atable WHERE NOT EXISTS (SELECT btable.c0 FROM btable);").size());
+    }
+
+    @Test public void cardinality() throws Exception {
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(a.getId(), "atable");
+        JoinOptimizer jo = new JoinOptimizer(lp, new Vector<LogicalJoinNode>());
+        TableStats stats = new TableStats(a.getId(), 1000);
+        DbIterator sub = new SeqScan(tid, b.getId(), "b");
+
+        int semi = jo.estimateSubplanJoinCardinality(
+                new LogicalSubplanJoinNode("atable", "atable.c0", sub, 30, Predicate.Op.EQUALS, false), 2000, stats);
+        int anti = jo.estimateSubplanJoinCardinality(
+                new LogicalSubplanJoinNode("atable", "atable.c0", sub, 30, Predicate.Op.EQUALS, true), 2000, stats);
+        // 30 keys out of about 300 values
+        assertTrue("semi-join estimate " + semi, semi > 100 && semi < 400);
+        assertEquals(2000, semi + anti);
+        assertEquals(2000, jo.estimateSubplanJoinCardinality(
+                new LogicalSubplanJoinNode("atable", "atable.c0", sub, 1000, Predicate.Op.EQUALS, false), 2000, stats));
+        assertEquals(0, jo.estimateSubplanJoinCardinality(
+                new LogicalSubplanJoinNode("atable", null, sub, 0, null, false), 2000, stats));
+        assertEquals(2000, jo.estimateSubplanJoinCardinality(
+                new LogicalSubplanJoinNode("atable", null, sub, 0, null, true), 2000, stats));
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(SemiJoinTest.class);
+    }
+}
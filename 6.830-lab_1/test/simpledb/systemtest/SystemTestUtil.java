@@ -3,6 +3,7 @@ package simpledb.systemtest;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -13,7 +14,9 @@ import org.junit.Assert;
 import simpledb.*;
 import simpledb.exceptions.DbException;
 import simpledb.exceptions.TransactionAbortedException;
+import simpledb.file.BTreeFile;
 import simpledb.file.DbFile;
+import simpledb.file.HashFile;
 import simpledb.file.HeapFile;
 import simpledb.file.HeapFileEncoder;
 import simpledb.operators.DbIterator;
@@ -28,6 +31,9 @@ public class SystemTestUtil {
 
     private static final int MAX_RAND_VALUE = 1 << 16;
 
+    /** Number of rows createRandomBTreeFile inserts per transaction. */
+    private static final int INSERT_BATCH = 1000;
+
     /** @param columnSpecification Mapping between column index and value. */
     public static HeapFile createRandomHeapFile(
             int columns, int rows, Map<Integer, Integer> columnSpecification,
@@ -95,6 +101,61 @@ public class SystemTestUtil {
         return temp;
     }
 
+    /**
+     * Creates a B+ tree of random tuples keyed on keyField, adds it to the
+     * catalog, and inserts the tuples through the buffer pool, committing
+     * every INSERT_BATCH rows.
+     */
+    public static BTreeFile createRandomBTreeFile(int columns, int rows, int maxValue, int keyField,
+            ArrayList<ArrayList<Integer>> tuples)
+            throws IOException, DbException, TransactionAbortedException {
+        File temp = File.createTempFile("btree", ".dat");
+        temp.deleteOnExit();
+        BTreeFile f = new BTreeFile(temp, Utility.getTupleDesc(columns), keyField);
+        Database.getCatalog().addTable(f, getUUID());
+        insertRandomTuples(f, columns, rows, maxValue, tuples);
+        return f;
+    }
+
+    /**
+     * Creates a hash file of random tuples keyed on keyField, adds it to the
+     * catalog, and inserts the tuples through the buffer pool, committing
+     * every INSERT_BATCH rows.
+     */
+    public static HashFile createRandomHashFile(int columns, int rows, int maxValue, int keyField,
+            ArrayList<ArrayList<Integer>> tuples)
+            throws IOException, DbException, TransactionAbortedException {
+        File temp = File.createTempFile("hash", ".dat");
+        temp.deleteOnExit();
+        HashFile f = new HashFile(temp, Utility.getTupleDesc(columns), keyField);
+        Database.getCatalog().addTable(f, getUUID());
+        insertRandomTuples(f, columns, rows, maxValue, tuples);
+        return f;
+    }
+
+    private static void insertRandomTuples(DbFile f, int columns, int rows, int maxValue,
+            ArrayList<ArrayList<Integer>> tuples)
+            throws IOException, DbException, TransactionAbortedException {
+        tuples.clear();
+        Random r = new Random();
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < rows; ++i) {
+            ArrayList<Integer> tuple = new ArrayList<Integer>(columns);
+            int[] values = new int[columns];
+            for (int j = 0; j < columns; ++j) {
+                values[j] = r.nextInt(maxValue);
+                tuple.add(values[j]);
+            }
+            tuples.add(tuple);
+            Database.getBufferPool().insertTuple(tid, f.getId(), Utility.getHeapTuple(values));
+            if ((i + 1) % INSERT_BATCH == 0) {
+                Database.getBufferPool().transactionComplete(tid);
+                tid = new TransactionId();
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
     public static ArrayList<Integer> tupleToList(Tuple tuple) {
         ArrayList<Integer> list = new ArrayList<Integer>();
         for (int i = 0; i < tuple.getTupleDesc().numFields(); ++i) {
@@ -160,6 +221,45 @@ public class SystemTestUtil {
         }
     }
 
+    /** @return the rows left in an open iterator, in the order they come out. */
+    public static ArrayList<ArrayList<Integer>> readTuples(DbIterator iterator)
+            throws DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        while (iterator.hasNext()) {
+            tuples.add(tupleToList(iterator.next()));
+        }
+        return tuples;
+    }
+
+    /** Opens the iterator, reads all its rows and closes it again. */
+    public static ArrayList<ArrayList<Integer>> runTuples(DbIterator iterator)
+            throws DbException, TransactionAbortedException {
+        iterator.open();
+        ArrayList<ArrayList<Integer>> tuples = readTuples(iterator);
+        iterator.close();
+        return tuples;
+    }
+
+    /**
+     * Counts rows by value, so that results that come out in no particular
+     * order can be compared with equals, without searching a list per row
+     * as matchTuples does.
+     */
+    public static HashMap<ArrayList<Integer>, Integer> countTuples(List<ArrayList<Integer>> tuples) {
+        HashMap<ArrayList<Integer>, Integer> counts = new HashMap<ArrayList<Integer>, Integer>();
+        for (ArrayList<Integer> t : tuples) {
+            Integer c = counts.get(t);
+            counts.put(t, c == null ? 1 : c + 1);
+        }
+        return counts;
+    }
+
+    /** @return the rows left in an open iterator, counted by value. */
+    public static HashMap<ArrayList<Integer>, Integer> countTuples(DbIterator iterator)
+            throws DbException, TransactionAbortedException {
+        return countTuples(readTuples(iterator));
+    }
+
     /**
      * Returns number of bytes of RAM used by JVM after calling System.gc many times.
      * @return amount of RAM (in bytes) used by JVM
@@ -0,0 +1,120 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.file.HeapFile;
+import simpledb.file.SpillFile;
+import simpledb.file.TempFileManager;
+import simpledb.operators.Materialize;
+import simpledb.operators.SeqScan;
+import simpledb.tuple.Field;
+import simpledb.tuple.IntField;
+import simpledb.tuple.StringField;
+import simpledb.tuple.TupleBatch;
+import simpledb.tuple.TupleDesc;
+import simpledb.tuple.Type;
+
+public class TempFileManagerTest extends SimpleDbTestBase {
+
+    private static File tempDirectory() throws Exception {
+        File dir = File.createTempFile("spilldir", "");
+        dir.delete();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    /** Rows come back with their tags, in order, as often as the file is rewound. */
+    @Test public void spillFileRoundTrip() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+        SpillFile f = new SpillFile(td);
+        for (int i = 0; i < 5000; i++) {
+            f.write(new Field[] { new IntField(i), new StringField("s" + i, Type.STRING_LEN) }, (byte) (i % 3));
+        }
+        assertEquals(5000, f.size());
+
+        TupleBatch batch = new TupleBatch(td);
+        byte[] tags = new byte[batch.capacity()];
+        for (int pass = 0; pass < 2; pass++) {
+            int i = 0;
+            while (f.read(batch, tags) != null) {
+                for (int row = 0; row < batch.size(); row++, i++) {
+                    assertEquals(i, batch.getInt(0, row));
+                    assertEquals(new StringField("s" + i, Type.STRING_LEN), batch.getField(1, row));
+                    assertEquals(i % 3, tags[row]);
+                }
+            }
+            assertEquals(5000, i);
+            f.rewind();
+        }
+        // strings are written without their padding
+        assertTrue(f.getBytes() > 0);
+        assertTrue(f.getBytes() < 5000L * td.getSize() / 4);
+        f.delete();
+        assertEquals(0, Database.getTempFileManager().getOpenFiles());
+    }
+
+    /** Spill files go to the configured directory and count against the transaction of the query. */
+    @Test public void directoryAndMetrics() throws Exception {
+        TempFileManager tempFiles = Database.getTempFileManager();
+        File dir = tempDirectory();
+        tempFiles.setDirectory(dir);
+
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 3000, null, tuples);
+        TransactionId tid = new TransactionId();
+        tempFiles.setOwner(tid);
+        Materialize m = new Materialize(new SeqScan(tid, table.getId(), ""), 100);
+        m.open();
+        while (m.hasNext()) {
+            m.next();
+        }
+        // bytes are counted as the buffer is written out, at the latest on the first read
+        m.rewind();
+        assertEquals(1, tempFiles.getOpenFiles());
+        assertEquals(1, dir.listFiles().length);
+        assertTrue(tempFiles.getBytesSpilled(tid) > 0);
+        assertEquals(tempFiles.getBytesSpilled(), tempFiles.getBytesSpilled(tid));
+        m.close();
+        assertEquals(0, dir.listFiles().length);
+        tempFiles.setOwner(null);
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(0, tempFiles.getBytesSpilled(tid));
+        assertEquals(1, tempFiles.getFilesCreated());
+    }
+
+    /** The files of an operator left open are deleted when its transaction aborts. */
+    @Test public void releaseOnAbort() throws Exception {
+        TempFileManager tempFiles = Database.getTempFileManager();
+        File dir = tempDirectory();
+        tempFiles.setDirectory(dir);
+
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 3000, null, tuples);
+        TransactionId tid = new TransactionId();
+        tempFiles.setOwner(tid);
+        Materialize m = new Materialize(new SeqScan(tid, table.getId(), ""), 100);
+        m.open();
+        m.rewind();
+        tempFiles.setOwner(null);
+        assertNull(tempFiles.getOwner());
+        assertEquals(1, dir.listFiles().length);
+
+        Database.getBufferPool().transactionComplete(tid, false);
+        assertEquals(0, dir.listFiles().length);
+        assertEquals(0, tempFiles.getOpenFiles());
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(TempFileManagerTest.class);
+    }
+}
@@ -0,0 +1,118 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import simpledb.Database;
+import simpledb.TransactionId;
+import simpledb.file.HeapFile;
+import simpledb.operators.Filter;
+import simpledb.operators.Insert;
+import simpledb.operators.SeqScan;
+import simpledb.operators.TupleArrayIterator;
+import simpledb.operators.Update;
+import simpledb.predicates.Predicate;
+import simpledb.tuple.Field;
+import simpledb.tuple.IntField;
+import simpledb.tuple.StringField;
+import simpledb.tuple.Tuple;
+import simpledb.tuple.TupleDesc;
+import simpledb.tuple.Type;
+
+public class UpdateTest extends SimpleDbTestBase {
+
+    private static int update(Update op) throws Exception {
+        op.open();
+        int n = ((IntField) op.next().getField(0)).getValue();
+        op.close();
+        return n;
+    }
+
+    /** Updates a field of the rows matching a filter, in their slots. */
+    @Test public void inPlace() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(3, 5000, 100, null, tuples);
+        int pages = table.numPages();
+        int matching = 0;
+        for (ArrayList<Integer> t : tuples) {
+            if (t.get(0) < 30) {
+                t.set(2, -1);
+                matching++;
+            }
+        }
+
+        TransactionId tid = new TransactionId();
+        Update op = new Update(tid, table.getId(), new Filter(
+                new Predicate(0, Predicate.Op.LESS_THAN, new IntField(30)), new SeqScan(tid, table.getId(), "")),
+                new int[] { 2 }, new Field[] { new IntField(-1) });
+        assertEquals(matching, update(op));
+        assertEquals(pages, table.numPages());
+        SystemTestUtil.matchTuples(table, tid, tuples);
+        Database.getBufferPool().transactionComplete(tid);
+        SystemTestUtil.matchTuples(table, tuples);
+    }
+
+    @Test public void abort() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 2000, 100, null, tuples);
+
+        TransactionId tid = new TransactionId();
+        assertEquals(tuples.size(), update(new Update(tid, table.getId(), new SeqScan(tid, table.getId(), ""),
+                new int[] { 0, 1 }, new Field[] { new IntField(5), new IntField(6) })));
+        Database.getBufferPool().transactionComplete(tid, false);
+        SystemTestUtil.matchTuples(table, tuples);
+    }
+
+    /** A string field takes a longer value in its fixed-width slot. */
+    @Test public void strings() throws Exception {
+        File f = File.createTempFile("update", ".dat");
+        f.deleteOnExit();
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+        HeapFile table = new HeapFile(f, td);
+        Database.getCatalog().addTable(table, "update_strings");
+
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 300; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField("r" + i, Type.STRING_LEN));
+            tuples.add(t);
+        }
+        TransactionId tid = new TransactionId();
+        Insert insert = new Insert(tid, new TupleArrayIterator(tuples), table.getId());
+        insert.open();
+        insert.next();
+        insert.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        StringField longer = new StringField("a much longer value", Type.STRING_LEN);
+        assertEquals(150, update(new Update(tid, table.getId(), new Filter(
+                new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(150)),
+                new SeqScan(tid, table.getId(), "")), new int[] { 1 }, new Field[] { longer })));
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, table.getId(), "s");
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            int i = ((IntField) t.getField(0)).getValue();
+            assertEquals(i >= 150 ? longer : new StringField("r" + i, Type.STRING_LEN), t.getField(1));
+            n++;
+        }
+        scan.close();
+        assertEquals(300, n);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(UpdateTest.class);
+    }
+}